@@ -0,0 +1,86 @@
+package manager;
+
+import model.Epic;
+import model.Subtask;
+import model.TaskStatus;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Пропускная способность обновления подзадач, когда каждый поток работает со своим эпиком.
+// Число потоков задаётся ключом -t, например: ConcurrentTaskManagerBenchmark -t 8
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConcurrentTaskManagerBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class SharedManager {
+        @Param({"concurrent", "synchronized"})
+        public String implementation;
+
+        TaskManager manager;
+
+        @Setup
+        public void setUp() {
+            manager = implementation.equals("concurrent")
+                    ? new ConcurrentTaskManager()
+                    : new SynchronizedTaskManager();
+        }
+    }
+
+    // Эпик потока со своими подзадачами без времени
+    @State(Scope.Thread)
+    public static class ThreadEpic {
+        Subtask[] epicSubtasks;
+
+        @Setup
+        public void setUp(SharedManager shared) {
+            Epic epic = new Epic("Эпик", "Описание эпика");
+            shared.manager.createEpic(epic);
+            epicSubtasks = new Subtask[100];
+            for (int i = 0; i < epicSubtasks.length; i++) {
+                epicSubtasks[i] = new Subtask("Подзадача " + i, "Описание", TaskStatus.NEW);
+                shared.manager.createSubtask(epicSubtasks[i], epic);
+            }
+        }
+    }
+
+    // InMemoryTaskManager за одной общей блокировкой — прежний способ работы из нескольких потоков
+    static class SynchronizedTaskManager extends InMemoryTaskManager {
+        @Override
+        public synchronized boolean createEpic(Epic epic) {
+            return super.createEpic(epic);
+        }
+
+        @Override
+        public synchronized boolean createSubtask(Subtask subtask, Epic epic) {
+            return super.createSubtask(subtask, epic);
+        }
+
+        @Override
+        public synchronized boolean updateSubtask(Subtask subtask) {
+            return super.updateSubtask(subtask);
+        }
+    }
+
+    @Benchmark
+    public boolean updateSubtask(SharedManager shared, ThreadEpic threadEpic) {
+        Subtask subtask = threadEpic.epicSubtasks[ThreadLocalRandom.current().nextInt(threadEpic.epicSubtasks.length)];
+        subtask.setStatus(subtask.getStatus() == TaskStatus.DONE ? TaskStatus.NEW : TaskStatus.DONE);
+        return shared.manager.updateSubtask(subtask);
+    }
+}
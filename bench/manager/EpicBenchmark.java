@@ -0,0 +1,68 @@
+package manager;
+
+import model.Epic;
+import model.Subtask;
+import model.TaskStatus;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Замеры пересчёта эпика: инкрементального при изменении подзадачи и полного через updateEpicStatus
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EpicBenchmark {
+
+    @Param({"10", "1000", "10000"})
+    public int subtasksPerEpic;
+
+    private InMemoryTaskManager manager;
+    private Epic epic;
+    private Subtask[] epicSubtasks;
+
+    @Setup
+    public void setUp() {
+        manager = new InMemoryTaskManager();
+        epic = new Epic("Эпик", "Описание эпика");
+        manager.createEpic(epic);
+        epicSubtasks = new Subtask[subtasksPerEpic];
+        for (int i = 0; i < subtasksPerEpic; i++) {
+            Subtask subtask = new Subtask("Подзадача " + i, "Описание подзадачи " + i, TaskStatus.NEW);
+            subtask.setStartTime(TaskManagerBenchmark.BOARD_START.plusMinutes(30L * i));
+            subtask.setDuration(Duration.ofMinutes(20));
+            manager.createSubtask(subtask, epic);
+            epicSubtasks[i] = subtask;
+        }
+    }
+
+    // Смена статуса одной подзадачи
+    @Benchmark
+    public TaskStatus updateSubtaskStatus() {
+        Subtask subtask = epicSubtasks[ThreadLocalRandom.current().nextInt(subtasksPerEpic)];
+        subtask.setStatus(subtask.getStatus() == TaskStatus.DONE ? TaskStatus.NEW : TaskStatus.DONE);
+        manager.updateSubtask(subtask);
+        return epic.getStatus();
+    }
+
+    // Полный пересчёт эпика по всем подзадачам
+    @Benchmark
+    public TaskStatus updateEpicStatus() {
+        manager.updateEpicStatus(epic);
+        return epic.getStatus();
+    }
+}
@@ -0,0 +1,132 @@
+package manager;
+
+import model.Task;
+import model.TaskStatus;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Замеры сохранения изменения на диск и загрузки доски из файла
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class FileBackedTaskManagerBenchmark {
+
+    // Доска, сохраняемая после каждого изменения выбранным способом
+    @State(Scope.Benchmark)
+    public static class MutationState {
+        @Param({"1000", "100000"})
+        public int boardSize;
+
+        @Param({"SNAPSHOT", "JOURNAL", "SEGMENTED", "PAGED"})
+        public PersistenceMode mode;
+
+        FileBackedTaskManager manager;
+        Task[] boardTasks;
+        File file;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            file = Files.createTempFile("kanban-bench", ".csv").toFile();
+            manager = FileBackedTaskManager.create(file, mode);
+            boardTasks = fillBoard(manager, boardSize);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            manager.close();
+            deleteBoardFiles(file);
+        }
+    }
+
+    // Сохранённая доска для замера загрузки
+    @State(Scope.Benchmark)
+    public static class LoadState {
+        @Param({"1000", "100000"})
+        public int boardSize;
+
+        @Param({"CSV", "BINARY", "CSV_DEFLATE"})
+        public SnapshotFormat format;
+
+        File file;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            file = Files.createTempFile("kanban-bench", ".csv").toFile();
+            try (FileBackedTaskManager manager = FileBackedTaskManager.create(file, PersistenceMode.JOURNAL)) {
+                fillBoard(manager, boardSize);
+                manager.setSnapshotFormat(format);
+                manager.save();
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            deleteBoardFiles(file);
+        }
+    }
+
+    static Task[] fillBoard(FileBackedTaskManager manager, int boardSize) {
+        Task[] boardTasks = new Task[boardSize];
+        for (int i = 0; i < boardSize; i++) {
+            boardTasks[i] = TaskManagerBenchmark.scheduledTask(i);
+            manager.createTask(boardTasks[i]);
+        }
+        return boardTasks;
+    }
+
+    static void deleteBoardFiles(File file) {
+        for (String suffix : new String[]{"", ".journal", ".journal.prev", ".history", ".index", ".pagelog"}) {
+            new File(file.getPath() + suffix).delete();
+        }
+        File[] segmentDirectories = file.getAbsoluteFile().getParentFile()
+                .listFiles((dir, name) -> name.startsWith(file.getName() + ".segments-"));
+        for (File directory : segmentDirectories != null ? segmentDirectories : new File[0]) {
+            for (File segment : directory.listFiles()) {
+                segment.delete();
+            }
+            directory.delete();
+        }
+    }
+
+    // Изменение одной задачи вместе с записью на диск
+    @Benchmark
+    public boolean updateTask(MutationState state) {
+        Task task = state.boardTasks[ThreadLocalRandom.current().nextInt(state.boardSize)];
+        task.setStatus(task.getStatus() == TaskStatus.NEW ? TaskStatus.DONE : TaskStatus.NEW);
+        return state.manager.updateTask(task);
+    }
+
+    // Просмотр задачи: обновление истории без записи снимка
+    @Benchmark
+    public Task getTaskById(MutationState state) {
+        Task task = state.boardTasks[ThreadLocalRandom.current().nextInt(state.boardSize)];
+        return state.manager.getTaskById(task.getId());
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public FileBackedTaskManager loadFromFile(LoadState state) {
+        FileBackedTaskManager manager = FileBackedTaskManager.loadFromFile(state.file);
+        manager.close();
+        return manager;
+    }
+}
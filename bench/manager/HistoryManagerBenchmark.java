@@ -0,0 +1,84 @@
+package manager;
+
+import model.Task;
+import model.TaskStatus;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Замеры добавления в историю, вытеснения из ограниченной истории и получения истории при заданном числе
+// просмотренных задач
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HistoryManagerBenchmark {
+
+    @Param({"10", "1000", "100000"})
+    public int historySize;
+
+    private HistoryManager historyManager;
+    private Task[] viewedTasks;
+
+    @Setup
+    public void setUp() {
+        historyManager = Managers.getDefaultHistory();
+        viewedTasks = new Task[historySize];
+        for (int i = 0; i < historySize; i++) {
+            viewedTasks[i] = new Task("Задача " + i, "Описание задачи " + i, TaskStatus.NEW);
+            viewedTasks[i].setId(i + 1);
+            historyManager.add(viewedTasks[i]);
+        }
+    }
+
+    // Повторный просмотр уже просмотренной задачи переносит её в конец истории
+    @Benchmark
+    public void add() {
+        historyManager.add(viewedTasks[ThreadLocalRandom.current().nextInt(historySize)]);
+    }
+
+    @Benchmark
+    public List<Task> getHistory() {
+        return historyManager.getHistory();
+    }
+
+    // Заполненная история ёмкостью historySize: каждый просмотр новой задачи вытесняет самую давнюю
+    @State(Scope.Benchmark)
+    public static class BoundedState {
+        HistoryManager historyManager;
+        Task[] newTasks;
+        int next;
+
+        @Setup
+        public void setUp(HistoryManagerBenchmark benchmark) {
+            historyManager = Managers.getDefaultHistory(benchmark.historySize);
+            for (Task task : benchmark.viewedTasks) {
+                historyManager.add(task);
+            }
+            newTasks = new Task[1024];
+            for (int i = 0; i < newTasks.length; i++) {
+                newTasks[i] = new Task("Новая задача " + i, "Описание", TaskStatus.NEW);
+                newTasks[i].setId(benchmark.historySize + i + 1);
+            }
+        }
+    }
+
+    @Benchmark
+    public void addWithEviction(BoundedState state) {
+        state.historyManager.add(state.newTasks[state.next++ & (state.newTasks.length - 1)]);
+    }
+}
@@ -0,0 +1,115 @@
+package manager;
+
+import model.Task;
+import model.TaskStatus;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Замеры проверки пересечений, создания, обновления задач, getPrioritizedTasks и расстановки задач без времени
+// на доске заданного размера
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class TaskManagerBenchmark {
+
+    static final LocalDateTime BOARD_START = LocalDateTime.of(2024, 1, 1, 0, 0);
+
+    @Param({"1000", "100000", "1000000"})
+    public int boardSize;
+
+    private InMemoryTaskManager manager;
+    private Task[] boardTasks;
+
+    @Setup
+    public void setUp() {
+        manager = new InMemoryTaskManager();
+        boardTasks = new Task[boardSize];
+        for (int i = 0; i < boardSize; i++) {
+            boardTasks[i] = scheduledTask(i);
+            manager.createTask(boardTasks[i]);
+        }
+    }
+
+    // Задачи занимают 20 минут из каждого получасового слота
+    static Task scheduledTask(int slot) {
+        Task task = new Task("Задача " + slot, "Описание задачи " + slot, TaskStatus.NEW);
+        task.setStartTime(BOARD_START.plusMinutes(30L * slot));
+        task.setDuration(Duration.ofMinutes(20));
+        return task;
+    }
+
+    // Проверка пересечения с занятым интервалом в случайном месте доски
+    @Benchmark
+    public boolean overlapCheck() {
+        Task probe = new Task("Проверка", "Описание", TaskStatus.NEW);
+        probe.setStartTime(BOARD_START.plusMinutes(30L * ThreadLocalRandom.current().nextInt(boardSize) + 10));
+        probe.setDuration(Duration.ofMinutes(15));
+        return manager.isOverlappingWithExistingTasks(probe);
+    }
+
+    // Создание задачи в свободном слоте и её удаление, чтобы размер доски не менялся
+    @Benchmark
+    public boolean createAndDeleteTask() {
+        Task task = scheduledTask(boardSize + 1);
+        boolean isCreated = manager.createTask(task);
+        manager.deleteTaskById(task.getId());
+        return isCreated;
+    }
+
+    // Обновление задачи без сдвига по времени: проверка пересечений со старой версией и переиндексация
+    @Benchmark
+    public boolean updateTask() {
+        Task task = boardTasks[ThreadLocalRandom.current().nextInt(boardSize)];
+        task.setStatus(task.getStatus() == TaskStatus.NEW ? TaskStatus.IN_PROGRESS : TaskStatus.NEW);
+        return manager.updateTask(task);
+    }
+
+    @Benchmark
+    public List<Task> getPrioritizedTasks() {
+        return manager.getPrioritizedTasks();
+    }
+
+    // Доска из boardSize запланированных задач и столько же задач без времени начала
+    @State(Scope.Benchmark)
+    public static class UnscheduledState {
+        InMemoryTaskManager manager;
+
+        @Setup
+        public void setUp(TaskManagerBenchmark benchmark) {
+            manager = new InMemoryTaskManager();
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            for (int i = 0; i < benchmark.boardSize; i++) {
+                manager.createTask(scheduledTask(i));
+                Task task = new Task("Без времени " + i, "Описание", TaskStatus.NEW);
+                task.setDuration(Duration.ofMinutes(5 + random.nextInt(120)));
+                manager.createTask(task);
+            }
+        }
+    }
+
+    // Пробная расстановка всех задач без времени начала в рабочие часы на десять лет вперёд
+    @Benchmark
+    public SchedulePlan planUnscheduledTasks(UnscheduledState state) {
+        return state.manager.planUnscheduledTasks(BOARD_START, BOARD_START.plusYears(10), LocalTime.of(9, 0),
+                LocalTime.of(18, 0));
+    }
+}
@@ -0,0 +1,153 @@
+package manager;
+
+import model.Task;
+import model.TaskStatus;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+// Жадная расстановка задач без времени начала в свободное время до горизонта планирования.
+// Расстановка ведётся в копии индекса времени. Нерабочие часы каждого дня до горизонта попадают в копию
+// как занятые интервалы (только в свободные от задач промежутки, чтобы интервалы не пересекались), поэтому
+// индекс промежутков сразу находит окно в рабочее время за O(log n), не перебирая дни.
+// Задачи берутся из очереди с приоритетом: сначала длинные, их труднее разместить, а короткие потом
+// заполняют оставшиеся промежутки; при равной длительности раньше идёт задача, созданная раньше.
+// Каждая задача ставится в самое раннее подходящее окно
+class AutoScheduler {
+
+    private static final Comparator<Task> PRIORITY = Comparator
+            .comparing(Task::getDuration, Comparator.reverseOrder())
+            .thenComparingInt(Task::getId);
+
+    private final TimeIndex scratch = new TimeIndex();
+    private final LocalDateTime from;
+    private final LocalDateTime horizon;
+    private int nextBlockerId; // Занятые нерабочие интервалы получают отрицательные ID
+
+    private AutoScheduler(LocalDateTime from, LocalDateTime horizon) {
+        this.from = from;
+        this.horizon = horizon;
+    }
+
+    // Метод для расчёта плана: scheduled — задачи индекса времени в порядке начала, candidates — задачи
+    // без времени начала. Рабочие часы не задаются (оба null) или задаются вместе
+    static SchedulePlan plan(List<Task> scheduled, Collection<? extends Task> candidates, LocalDateTime from,
+                             LocalDateTime horizon, LocalTime workStart, LocalTime workEnd) {
+        if (from == null || horizon == null || !from.isBefore(horizon)) {
+            throw new IllegalArgumentException("Горизонт планирования должен быть позже начала.");
+        }
+        boolean hasWorkingHours = workStart != null || workEnd != null;
+        if (hasWorkingHours && (workStart == null || workEnd == null || !workStart.isBefore(workEnd))) {
+            throw new IllegalArgumentException("Начало рабочего дня должно быть раньше его окончания.");
+        }
+
+        AutoScheduler scheduler = new AutoScheduler(from, horizon);
+        List<Task> occupied = hasWorkingHours ? scheduler.withNonWorkingHours(scheduled, workStart, workEnd) : scheduled;
+        if (!scheduler.scratch.addAllOrdered(occupied)) {
+            scheduler.scratch.addAll(occupied);
+        }
+        return scheduler.place(candidates);
+    }
+
+    private SchedulePlan place(Collection<? extends Task> candidates) {
+        SchedulePlan plan = new SchedulePlan();
+        PriorityQueue<Task> queue = new PriorityQueue<>(Math.max(1, candidates.size()), PRIORITY);
+        for (Task task : candidates) {
+            Duration duration = task.getDuration();
+            if (duration == null || duration.isZero() || duration.isNegative()) {
+                plan.skip(task.getId()); // Без длительности задаче нельзя подобрать окно
+            } else {
+                queue.add(task);
+            }
+        }
+
+        // Свободное время только убывает, поэтому если окна нужной длины до горизонта нет,
+        // его нет и для задач не короче этой: их можно не искать
+        Duration shortestUnplaced = null;
+        while (!queue.isEmpty()) {
+            Task task = queue.poll();
+            Duration duration = task.getDuration();
+            if (shortestUnplaced != null && duration.compareTo(shortestUnplaced) >= 0) {
+                plan.skip(task.getId());
+                continue;
+            }
+            LocalDateTime start = scratch.findFreeSlot(from, duration, null, null);
+            if (start.plus(duration).isAfter(horizon)) {
+                shortestUnplaced = duration;
+                plan.skip(task.getId());
+                continue;
+            }
+            plan.place(task.getId(), start);
+            Task placed = new Task(task.getName(), task.getDescription(), task.getStatus());
+            placed.setId(task.getId());
+            placed.setStartTime(start);
+            placed.setDuration(duration);
+            scratch.add(placed);
+        }
+        return plan;
+    }
+
+    // Метод для слияния задач индекса с нерабочими часами от from до горизонта (утро первого дня и ночи между
+    // рабочими днями) в один упорядоченный по началу список: индекс заполняется им по порядку без проверок пересечений
+    private List<Task> withNonWorkingHours(List<Task> scheduled, LocalTime workStart, LocalTime workEnd) {
+        List<Task> merged = new ArrayList<>(scheduled.size());
+        int next = 0;
+        LocalDateTime occupiedUntil = LocalDateTime.MIN; // Самое позднее окончание уже добавленных задач
+        LocalDate day = from.toLocalDate();
+        LocalDateTime nightStart = from;
+        LocalDateTime nightEnd = day.atTime(workStart);
+        while (true) {
+            while (next < scheduled.size() && scheduled.get(next).getStartTime().isBefore(nightStart)) {
+                occupiedUntil = max(occupiedUntil, occupiedUntil(scheduled.get(next)));
+                merged.add(scheduled.get(next++));
+            }
+            // Нерабочее время занимается только в промежутках между задачами, чтобы интервалы не пересекались
+            LocalDateTime free = max(nightStart, occupiedUntil);
+            while (next < scheduled.size() && scheduled.get(next).getStartTime().isBefore(nightEnd)) {
+                Task task = scheduled.get(next++);
+                if (free.isBefore(task.getStartTime())) {
+                    merged.add(blocker(free, task.getStartTime()));
+                }
+                merged.add(task);
+                free = max(free, occupiedUntil(task));
+                occupiedUntil = max(occupiedUntil, occupiedUntil(task));
+            }
+            if (free.isBefore(nightEnd)) {
+                merged.add(blocker(free, nightEnd));
+            }
+            if (!day.atTime(workEnd).isBefore(horizon)) {
+                break;
+            }
+            nightStart = day.atTime(workEnd);
+            day = day.plusDays(1);
+            nightEnd = day.atTime(workStart);
+        }
+        merged.addAll(scheduled.subList(next, scheduled.size()));
+        return merged;
+    }
+
+    // Задача без длительности занимает момент начала, как в индексе времени
+    private static LocalDateTime occupiedUntil(Task task) {
+        LocalDateTime end = TimeIndex.endOf(task);
+        return end.isAfter(task.getStartTime()) ? end : task.getStartTime().plusNanos(1);
+    }
+
+    private static LocalDateTime max(LocalDateTime first, LocalDateTime second) {
+        return first.isAfter(second) ? first : second;
+    }
+
+    private Task blocker(LocalDateTime start, LocalDateTime end) {
+        Task blocker = new Task("Нерабочее время", "", TaskStatus.NEW);
+        blocker.setId(--nextBlockerId);
+        blocker.setStartTime(start);
+        blocker.setDuration(Duration.between(start, end));
+        return blocker;
+    }
+}
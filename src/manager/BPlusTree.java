@@ -0,0 +1,221 @@
+package manager;
+
+import java.nio.ByteBuffer;
+import java.util.function.IntSupplier;
+
+// B+-дерево в страницах PageFile: ключ — ID задачи, значение — положение записи (страница и слот).
+// Лист: тип, число ключей, номер следующего листа, затем пары (ключ int, значение long) по возрастанию ключа.
+// Внутренняя страница: тип, число ключей, первый потомок, затем пары (ключ int, потомок int); в потомке после
+// ключа лежат ключи не меньше него. При удалении страницы не сливаются: ID растут, и освободившиеся места
+// в листьях заполняются редко, а дерево остаётся корректным и с неполными страницами.
+// Новые ID обычно больше всех существующих, поэтому при вставке в конец страница не делится пополам,
+// а в новую страницу переносится только новый ключ: листья остаются заполненными полностью.
+class BPlusTree {
+
+    static final byte LEAF = 3;
+    static final byte INTERNAL = 4;
+
+    private static final int TYPE = 0;
+    private static final int COUNT = 2;
+    private static final int LINK = 4; // Следующий лист или первый потомок
+    private static final int ENTRIES = 8;
+    private static final int LEAF_ENTRY = Integer.BYTES + Long.BYTES;
+    private static final int INTERNAL_ENTRY = Integer.BYTES * 2;
+    static final int MAX_LEAF_KEYS = (PageFile.PAGE_SIZE - ENTRIES) / LEAF_ENTRY;
+    static final int MAX_INTERNAL_KEYS = (PageFile.PAGE_SIZE - ENTRIES) / INTERNAL_ENTRY;
+
+    static final long NOT_FOUND = -1;
+    private static final int MAX_HEIGHT = 32;
+
+    private final PageFile pages;
+    private final IntSupplier allocator;
+    private int root;
+
+    BPlusTree(PageFile pages, IntSupplier allocator, int root) {
+        this.pages = pages;
+        this.allocator = allocator;
+        this.root = root;
+    }
+
+    // Метод для создания пустого дерева, возвращает номер корня
+    static int create(PageFile pages, IntSupplier allocator) {
+        int pageNo = allocator.getAsInt();
+        ByteBuffer leaf = pages.read(pageNo);
+        pages.markDirty(pageNo);
+        leaf.put(TYPE, LEAF).putShort(COUNT, (short) 0).putInt(LINK, 0);
+        return pageNo;
+    }
+
+    int getRoot() {
+        return root;
+    }
+
+    long get(int key) {
+        ByteBuffer page = pages.read(root);
+        while (page.get(TYPE) == INTERNAL) {
+            page = pages.read(childFor(page, key));
+        }
+        int index = search(page, key);
+        return index >= 0 ? page.getLong(ENTRIES + index * LEAF_ENTRY + Integer.BYTES) : NOT_FOUND;
+    }
+
+    void put(int key, long value) {
+        int[] path = new int[MAX_HEIGHT];
+        int depth = 0;
+        int pageNo = root;
+        ByteBuffer page = pages.read(pageNo);
+        while (page.get(TYPE) == INTERNAL) {
+            path[depth++] = pageNo;
+            pageNo = childFor(page, key);
+            page = pages.read(pageNo);
+        }
+        pages.markDirty(pageNo);
+        int index = search(page, key);
+        if (index >= 0) {
+            page.putLong(ENTRIES + index * LEAF_ENTRY + Integer.BYTES, value);
+            return;
+        }
+        int position = -index - 1;
+        int count = page.getShort(COUNT);
+        if (count < MAX_LEAF_KEYS) {
+            insertLeafEntry(page, position, count, key, value);
+            return;
+        }
+
+        // Лист переполнен: верхняя часть ключей переносится в новый лист
+        int splitAt = position == count && page.getInt(LINK) == 0 ? count : count / 2;
+        int siblingNo = allocator.getAsInt();
+        ByteBuffer sibling = pages.read(siblingNo);
+        pages.markDirty(siblingNo);
+        sibling.put(TYPE, LEAF).putShort(COUNT, (short) (count - splitAt)).putInt(LINK, page.getInt(LINK));
+        sibling.put(ENTRIES, page, ENTRIES + splitAt * LEAF_ENTRY, (count - splitAt) * LEAF_ENTRY);
+        page.putShort(COUNT, (short) splitAt).putInt(LINK, siblingNo);
+        if (position <= splitAt && splitAt < count) {
+            insertLeafEntry(page, position, splitAt, key, value);
+        } else {
+            insertLeafEntry(sibling, position - splitAt, count - splitAt, key, value);
+        }
+        insertIntoParent(path, depth, sibling.getInt(ENTRIES), siblingNo);
+    }
+
+    boolean remove(int key) {
+        int pageNo = root;
+        ByteBuffer page = pages.read(pageNo);
+        while (page.get(TYPE) == INTERNAL) {
+            pageNo = childFor(page, key);
+            page = pages.read(pageNo);
+        }
+        int index = search(page, key);
+        if (index < 0) {
+            return false;
+        }
+        pages.markDirty(pageNo);
+        int count = page.getShort(COUNT);
+        int offset = ENTRIES + index * LEAF_ENTRY;
+        page.put(offset, page, offset + LEAF_ENTRY, (count - index - 1) * LEAF_ENTRY);
+        page.putShort(COUNT, (short) (count - 1));
+        return true;
+    }
+
+    // Метод для добавления разделителя separator и новой страницы childNo в родителя; при делении корня
+    // дерево становится выше
+    private void insertIntoParent(int[] path, int depth, int separator, int childNo) {
+        while (depth > 0) {
+            int parentNo = path[--depth];
+            ByteBuffer parent = pages.read(parentNo);
+            pages.markDirty(parentNo);
+            int count = parent.getShort(COUNT);
+            int position = internalPosition(parent, count, separator);
+            if (count < MAX_INTERNAL_KEYS) {
+                insertInternalEntry(parent, position, count, separator, childNo);
+                return;
+            }
+
+            // Ключ splitAt поднимается в родителя, его потомок становится первым потомком новой страницы
+            int splitAt = position == count ? count : count / 2;
+            int siblingNo = allocator.getAsInt();
+            ByteBuffer sibling = pages.read(siblingNo);
+            pages.markDirty(siblingNo);
+            int raised;
+            if (splitAt == count) {
+                raised = separator;
+                sibling.put(TYPE, INTERNAL).putShort(COUNT, (short) 0).putInt(LINK, childNo);
+            } else {
+                // Новый ключ вставляется до деления, поэтому на странице временно на ключ больше
+                ByteBuffer merged = ByteBuffer.allocate(ENTRIES + (count + 1) * INTERNAL_ENTRY);
+                merged.put(0, parent, 0, ENTRIES + count * INTERNAL_ENTRY);
+                insertInternalEntry(merged, position, count, separator, childNo);
+                int total = count + 1;
+                int middle = total / 2;
+                raised = merged.getInt(ENTRIES + middle * INTERNAL_ENTRY);
+                sibling.put(TYPE, INTERNAL).putShort(COUNT, (short) (total - middle - 1))
+                        .putInt(LINK, merged.getInt(ENTRIES + middle * INTERNAL_ENTRY + Integer.BYTES));
+                sibling.put(ENTRIES, merged, ENTRIES + (middle + 1) * INTERNAL_ENTRY,
+                        (total - middle - 1) * INTERNAL_ENTRY);
+                parent.put(ENTRIES, merged, ENTRIES, middle * INTERNAL_ENTRY);
+                parent.putShort(COUNT, (short) middle);
+            }
+            separator = raised;
+            childNo = siblingNo;
+        }
+
+        int newRootNo = allocator.getAsInt();
+        ByteBuffer newRoot = pages.read(newRootNo);
+        pages.markDirty(newRootNo);
+        newRoot.put(TYPE, INTERNAL).putShort(COUNT, (short) 1).putInt(LINK, root);
+        newRoot.putInt(ENTRIES, separator).putInt(ENTRIES + Integer.BYTES, childNo);
+        root = newRootNo;
+    }
+
+    private static void insertLeafEntry(ByteBuffer page, int position, int count, int key, long value) {
+        int offset = ENTRIES + position * LEAF_ENTRY;
+        page.put(offset + LEAF_ENTRY, page, offset, (count - position) * LEAF_ENTRY);
+        page.putInt(offset, key).putLong(offset + Integer.BYTES, value);
+        page.putShort(COUNT, (short) (count + 1));
+    }
+
+    private static void insertInternalEntry(ByteBuffer page, int position, int count, int key, int child) {
+        int offset = ENTRIES + position * INTERNAL_ENTRY;
+        page.put(offset + INTERNAL_ENTRY, page, offset, (count - position) * INTERNAL_ENTRY);
+        page.putInt(offset, key).putInt(offset + Integer.BYTES, child);
+        page.putShort(COUNT, (short) (count + 1));
+    }
+
+    // Двоичный поиск ключа в листе: индекс ключа или -(место вставки) - 1
+    private static int search(ByteBuffer leaf, int key) {
+        int low = 0;
+        int high = leaf.getShort(COUNT) - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int middleKey = leaf.getInt(ENTRIES + middle * LEAF_ENTRY);
+            if (middleKey < key) {
+                low = middle + 1;
+            } else if (middleKey > key) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -(low + 1);
+    }
+
+    // Число ключей внутренней страницы, не больших key: место вставки разделителя
+    private static int internalPosition(ByteBuffer page, int count, int key) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (page.getInt(ENTRIES + middle * INTERNAL_ENTRY) <= key) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private static int childFor(ByteBuffer page, int key) {
+        int position = internalPosition(page, page.getShort(COUNT), key);
+        return position == 0 ? page.getInt(LINK) : page.getInt(ENTRIES + (position - 1) * INTERNAL_ENTRY + Integer.BYTES);
+    }
+}
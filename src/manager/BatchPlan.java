@@ -0,0 +1,236 @@
+package manager;
+
+import model.Epic;
+import model.IntHashMap;
+import model.IntHashSet;
+import model.Subtask;
+import model.Task;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.function.IntFunction;
+
+// Проверенный пакет изменений TaskBatch. Проверка ничего не меняет в менеджере, поэтому при ошибке пакет
+// не применяется совсем. Пересечения по времени проверяются за один проход: задачи пакета с временем начала
+// сортируются по нему и сравниваются с предыдущей, а каждая из них ищется в индексе времени без учёта
+// удаляемых задач и старых версий изменяемых. Применение пакета тоже здесь, общее для менеджеров: изменения
+// подзадач копятся по эпикам, чтобы каждый затронутый эпик пересчитывался один раз
+class BatchPlan {
+
+    // Изменения подзадач одного эпика в пакете
+    private static final class EpicChanges {
+        final IntHashSet removedIds = new IntHashSet();
+        final List<Subtask> changedSubtasks = new ArrayList<>();
+        boolean isReplaced; // Эпик заменён в пакете, поэтому пересчитывается полностью
+    }
+
+    private final TaskBatch batch;
+    private final IntHashSet deletedIds = new IntHashSet();
+    private final List<Task> deleted = new ArrayList<>(); // Удаляемые задачи, эпики и подзадачи
+    private final IntHashSet updatedIds = new IntHashSet();
+    private final IntHashMap<EpicChanges> epicChanges = new IntHashMap<>();
+
+    private BatchPlan(TaskBatch batch) {
+        this.batch = batch;
+    }
+
+    // Метод для проверки пакета по текущему состоянию менеджера: задачи, подзадачи и эпики ищутся
+    // через переданные функции, пересечения — по индексу времени
+    static BatchPlan prepare(TaskBatch batch, IntFunction<Task> tasks, IntFunction<Subtask> subtasks,
+                             IntFunction<Epic> epics, TimeIndex timeIndex) {
+        BatchPlan plan = new BatchPlan(batch);
+        plan.collectDeleted(tasks, subtasks, epics);
+        plan.checkUpdated(tasks, subtasks, epics);
+        plan.checkCreated(tasks, subtasks, epics);
+        plan.checkConflicts(timeIndex);
+        return plan;
+    }
+
+    // Удаление эпика удаляет и его подзадачи, повторы и неизвестные ID пропускаются
+    private void collectDeleted(IntFunction<Task> tasks, IntFunction<Subtask> subtasks, IntFunction<Epic> epics) {
+        for (int id : batch.getDeletedIds()) {
+            if (deletedIds.contains(id)) {
+                continue;
+            }
+            Task task = tasks.apply(id);
+            if (task == null) {
+                task = epics.apply(id);
+            }
+            if (task == null) {
+                task = subtasks.apply(id);
+            }
+            if (task == null) {
+                continue;
+            }
+            deletedIds.add(id);
+            deleted.add(task);
+            if (task instanceof Epic epic) {
+                epic.forEachSubtaskId(subtaskId -> {
+                    Subtask subtask = subtasks.apply(subtaskId);
+                    if (subtask != null && deletedIds.add(subtaskId)) {
+                        deleted.add(subtask);
+                    }
+                });
+            }
+        }
+    }
+
+    private void checkUpdated(IntFunction<Task> tasks, IntFunction<Subtask> subtasks, IntFunction<Epic> epics) {
+        for (Task task : batch.getUpdated()) {
+            int id = task.getId();
+            Task current = task instanceof Epic ? epics.apply(id)
+                    : task instanceof Subtask ? subtasks.apply(id) : tasks.apply(id);
+            if (current == null) {
+                throw new IllegalArgumentException("Изменяемая задача с ID " + id + " не найдена.");
+            }
+            if (deletedIds.contains(id)) {
+                throw new IllegalArgumentException("Задача с ID " + id + " в пакете и изменяется, и удаляется.");
+            }
+            if (!updatedIds.add(id)) {
+                throw new IllegalArgumentException("Задача с ID " + id + " изменяется в пакете дважды.");
+            }
+            if (task instanceof Subtask subtask && ((Subtask) current).getEpicId() != subtask.getEpicId()) {
+                throw new IllegalArgumentException("Перенос подзадачи с ID " + id
+                        + " в другой эпик выполняется через updateSubtaskEpic.");
+            }
+        }
+    }
+
+    private void checkCreated(IntFunction<Task> tasks, IntFunction<Subtask> subtasks, IntFunction<Epic> epics) {
+        Set<Task> created = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Task task : batch.getCreated()) {
+            int id = task.getId();
+            Task current = task instanceof Epic ? epics.apply(id)
+                    : task instanceof Subtask ? subtasks.apply(id) : tasks.apply(id);
+            if (current != null) {
+                throw new IllegalArgumentException("Задача с ID " + id + " уже существует.");
+            }
+            if (task instanceof Subtask subtask) {
+                // Эпик подзадачи создаётся раньше в том же пакете или уже есть и не удаляется
+                Epic epic = batch.getEpicOf(subtask);
+                if (!created.contains(epic) && (epics.apply(epic.getId()) == null
+                        || deletedIds.contains(epic.getId()))) {
+                    throw new IllegalArgumentException("Эпик подзадачи «" + task.getName() + "» не найден.");
+                }
+            }
+            if (!created.add(task)) {
+                throw new IllegalArgumentException("Задача «" + task.getName() + "» создаётся в пакете дважды.");
+            }
+        }
+    }
+
+    private void checkConflicts(TimeIndex timeIndex) {
+        List<Task> scheduled = new ArrayList<>();
+        for (Task task : getUpserted()) {
+            // Время эпика вычисляется по подзадачам, в индекс времени эпики не попадают
+            if (task.getStartTime() != null && !(task instanceof Epic)) {
+                scheduled.add(task);
+            }
+        }
+        scheduled.sort(Comparator.comparing(Task::getStartTime));
+
+        IntHashSet excludedIds = new IntHashSet();
+        deletedIds.forEach(excludedIds::add);
+        updatedIds.forEach(excludedIds::add);
+        Task previous = null;
+        for (Task task : scheduled) {
+            // Задачи пакета до текущей не пересекаются, поэтому дальше всех из них заканчивается предыдущая
+            if (previous != null && (previous.getStartTime().equals(task.getStartTime())
+                    || TimeIndex.endOf(previous).isAfter(task.getStartTime()))) {
+                throw new IllegalArgumentException("Задачи пакета «" + previous.getName() + "» и «"
+                        + task.getName() + "» пересекаются.");
+            }
+            Task conflictingTask = timeIndex.findConflictExcluding(task, excludedIds);
+            if (conflictingTask != null) {
+                throw new IllegalArgumentException("Задача пакета «" + task.getName()
+                        + "» пересекается с другой задачей. ID пересекающейся задачи: " + conflictingTask.getId());
+            }
+            previous = task;
+        }
+    }
+
+    IntHashSet getDeletedIds() {
+        return deletedIds;
+    }
+
+    // Изменённые и созданные задачи в порядке применения
+    List<Task> getUpserted() {
+        List<Task> upserted = new ArrayList<>(batch.getUpdated().size() + batch.getCreated().size());
+        upserted.addAll(batch.getUpdated());
+        upserted.addAll(batch.getCreated());
+        return upserted;
+    }
+
+    // Метод для применения проверенного пакета: удаления, изменения и создания, затем каждый затронутый эпик
+    // пересчитывается один раз. Вызывается один раз, пока менеджер не даёт изменять хранилища другим
+    void apply(TaskStorage storage) {
+        for (Task task : deleted) {
+            int id = task.getId();
+            storage.remove(task);
+            if (task instanceof Subtask subtask) {
+                storage.removeFromSchedule(id);
+                if (!deletedIds.contains(subtask.getEpicId())) {
+                    changesOf(subtask.getEpicId()).removedIds.add(id);
+                }
+            } else if (!(task instanceof Epic)) {
+                storage.removeFromSchedule(id);
+            }
+            storage.markChanged(id, true);
+        }
+
+        for (Task task : batch.getUpdated()) {
+            int id = task.getId();
+            storage.put(task);
+            if (task instanceof Epic) {
+                changesOf(id).isReplaced = true;
+            } else {
+                if (task instanceof Subtask subtask) {
+                    changesOf(subtask.getEpicId()).changedSubtasks.add(subtask);
+                }
+                storage.removeFromSchedule(id); // Удаляем старую версию
+                storage.addToSchedule(task);
+            }
+            storage.markChanged(id, false);
+        }
+
+        for (Task task : batch.getCreated()) {
+            int id = storage.generateId();
+            task.setId(id);
+            if (task instanceof Subtask subtask) {
+                subtask.setEpicId(batch.getEpicOf(subtask).getId());
+                changesOf(subtask.getEpicId()).changedSubtasks.add(subtask);
+            }
+            storage.put(task);
+            if (!(task instanceof Epic)) {
+                storage.addToSchedule(task);
+            }
+            storage.markChanged(id, false);
+        }
+
+        epicChanges.forEachKey(epicId -> {
+            Epic epic = storage.getEpic(epicId);
+            EpicChanges changes = epicChanges.get(epicId);
+            if (!changes.isReplaced && epic.needsRecalculation()) {
+                // Статус и время эпика приняты из сохранённого индекса, вклады подзадач собираются пересчётом
+                storage.recalculateEpic(epic);
+            }
+            epic.applySubtaskChanges(changes.removedIds, changes.changedSubtasks);
+            if (changes.isReplaced) {
+                storage.recalculateEpic(epic); // Заменённый эпик пересчитывается по всем подзадачам
+            }
+        });
+    }
+
+    private EpicChanges changesOf(int epicId) {
+        EpicChanges changes = epicChanges.get(epicId);
+        if (changes == null) {
+            changes = new EpicChanges();
+            epicChanges.put(epicId, changes);
+        }
+        return changes;
+    }
+}
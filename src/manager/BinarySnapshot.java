@@ -0,0 +1,293 @@
+package manager;
+
+import model.Epic;
+import model.Subtask;
+import model.Task;
+import model.TaskStatus;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+// Двоичный снимок задач.
+// Заголовок: сигнатура "KBIN" и номер версии (2 байта).
+// Таблица строк: количество, затем для каждой строки длина и байты UTF-8. Одинаковые названия и описания
+// хранятся один раз, задачи ссылаются на них по номеру (0 — null).
+// Задачи: количество, затем для каждой длина записи и сама запись: тип, id, статус, номера названия и описания,
+// флаги, длительность в минутах, начало в минутах от эпохи (UTC) и ID эпика для подзадачи.
+// Длина записи позволяет читать файлы, в которые следующие версии добавят поля в конец записи.
+// Целые числа записываются в формате varint (7 бит на байт), знаковые — в zigzag-кодировке.
+class BinarySnapshot {
+
+    private static final byte[] MAGIC = {'K', 'B', 'I', 'N'};
+    private static final int VERSION = 1;
+
+    private static final int TYPE_TASK = 0;
+    private static final int TYPE_EPIC = 1;
+    private static final int TYPE_SUBTASK = 2;
+
+    private static final int HAS_DURATION = 1;
+    private static final int HAS_START_TIME = 2;
+    private static final int HAS_SECONDS = 4; // Время начала не кратно минуте: дальше идут секунды и наносекунды
+
+    private static final TaskStatus[] STATUSES = TaskStatus.values();
+
+    private BinarySnapshot() {
+    }
+
+    // Метод для определения формата по сигнатуре в начале файла
+    static boolean isBinary(File file) {
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            byte[] header = in.readNBytes(MAGIC.length);
+            for (int i = 0; i < MAGIC.length; i++) {
+                if (header.length <= i || header[i] != MAGIC[i]) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (IOException e) {
+            throw new ManagerSaveException("Ошибка при чтении файла: " + e.getMessage());
+        }
+    }
+
+    static void write(OutputStream target, Iterable<? extends Task> tasks, Iterable<Epic> epics,
+                      Iterable<Subtask> subtasks) throws IOException {
+        // Сначала собираем таблицу строк, номер 0 занят значением null
+        Map<String, Integer> stringIndexes = new HashMap<>();
+        int[] taskCount = new int[1];
+        Consumer<Task> collectStrings = task -> {
+            stringIndexes.putIfAbsent(task.getName(), stringIndexes.size());
+            stringIndexes.putIfAbsent(task.getDescription(), stringIndexes.size());
+            taskCount[0]++;
+        };
+        stringIndexes.put(null, 0);
+        tasks.forEach(collectStrings);
+        epics.forEach(collectStrings);
+        subtasks.forEach(collectStrings);
+
+        String[] strings = new String[stringIndexes.size()];
+        for (Map.Entry<String, Integer> entry : stringIndexes.entrySet()) {
+            strings[entry.getValue()] = entry.getKey();
+        }
+
+        DataOutputStream out = new DataOutputStream(target);
+        out.write(MAGIC);
+        out.writeShort(VERSION);
+        writeVarInt(out, strings.length - 1);
+        for (int i = 1; i < strings.length; i++) {
+            byte[] bytes = strings[i].getBytes(StandardCharsets.UTF_8);
+            writeVarInt(out, bytes.length);
+            out.write(bytes);
+        }
+
+        writeVarInt(out, taskCount[0]);
+        RecordBuffer record = new RecordBuffer();
+        for (Task task : tasks) {
+            writeTask(out, record, task, TYPE_TASK, stringIndexes);
+        }
+        for (Epic epic : epics) {
+            writeTask(out, record, epic, TYPE_EPIC, stringIndexes);
+        }
+        for (Subtask subtask : subtasks) {
+            writeTask(out, record, subtask, TYPE_SUBTASK, stringIndexes);
+        }
+        out.flush();
+    }
+
+    private static void writeTask(DataOutputStream out, RecordBuffer record, Task task, int type,
+                                  Map<String, Integer> stringIndexes) throws IOException {
+        record.reset();
+        DataOutputStream recordOut = record.out;
+        recordOut.writeByte(type);
+        writeVarInt(recordOut, task.getId());
+        recordOut.writeByte(task.getStatus().ordinal());
+        writeVarInt(recordOut, stringIndexes.get(task.getName()));
+        writeVarInt(recordOut, stringIndexes.get(task.getDescription()));
+
+        // У эпика время вычисляется по подзадачам, поэтому не сохраняется, как и в CSV
+        Duration duration = type == TYPE_EPIC ? null : task.getDuration();
+        LocalDateTime startTime = type == TYPE_EPIC ? null : task.getStartTime();
+        int flags = 0;
+        if (duration != null) {
+            flags |= HAS_DURATION;
+        }
+        if (startTime != null) {
+            flags |= HAS_START_TIME;
+            if (startTime.getSecond() != 0 || startTime.getNano() != 0) {
+                flags |= HAS_SECONDS;
+            }
+        }
+        recordOut.writeByte(flags);
+        if (duration != null) {
+            writeVarLong(recordOut, zigzag(duration.toMinutes()));
+        }
+        if (startTime != null) {
+            writeVarLong(recordOut, zigzag(Math.floorDiv(startTime.toEpochSecond(ZoneOffset.UTC), 60)));
+            if ((flags & HAS_SECONDS) != 0) {
+                writeVarInt(recordOut, startTime.getSecond());
+                writeVarInt(recordOut, startTime.getNano());
+            }
+        }
+        if (type == TYPE_SUBTASK) {
+            writeVarInt(recordOut, ((Subtask) task).getEpicId());
+        }
+
+        writeVarInt(out, record.size());
+        record.writeTo(out);
+    }
+
+    // Метод для чтения снимка, каждая задача передаётся в consumer. Возвращает наибольший ID
+    static int read(File file, Consumer<Task> consumer) {
+        // Файл не отображается в память: в Windows отображённый файл нельзя перезаписать до сборки мусора
+        try {
+            return read(ByteBuffer.wrap(Files.readAllBytes(file.toPath())), consumer);
+        } catch (IOException e) {
+            throw new ManagerSaveException("Ошибка при загрузке из файла: " + e.getMessage());
+        } catch (BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new ManagerSaveException("Повреждённый двоичный снимок: " + file.getName());
+        }
+    }
+
+    private static int read(ByteBuffer buffer, Consumer<Task> consumer) {
+        for (byte expected : MAGIC) {
+            if (buffer.get() != expected) {
+                throw new IllegalArgumentException("Нет сигнатуры двоичного снимка.");
+            }
+        }
+        int version = buffer.getShort();
+        if (version > VERSION) {
+            throw new ManagerSaveException("Неподдерживаемая версия двоичного снимка: " + version);
+        }
+
+        String[] strings = new String[readVarInt(buffer) + 1];
+        byte[] scratch = new byte[256];
+        for (int i = 1; i < strings.length; i++) {
+            int length = readVarInt(buffer);
+            if (scratch.length < length) {
+                scratch = new byte[Math.max(length, scratch.length * 2)];
+            }
+            buffer.get(scratch, 0, length);
+            strings[i] = new String(scratch, 0, length, StandardCharsets.UTF_8);
+        }
+
+        int maxId = 0;
+        int taskCount = readVarInt(buffer);
+        for (int i = 0; i < taskCount; i++) {
+            int length = readVarInt(buffer);
+            int recordEnd = buffer.position() + length;
+            Task task = readTask(buffer, strings);
+            buffer.position(recordEnd); // Поля, добавленные следующими версиями, пропускаются
+            maxId = Math.max(maxId, task.getId());
+            consumer.accept(task);
+        }
+        return maxId;
+    }
+
+    private static Task readTask(ByteBuffer buffer, String[] strings) {
+        int type = buffer.get();
+        int id = readVarInt(buffer);
+        TaskStatus status = STATUSES[buffer.get()];
+        String name = strings[readVarInt(buffer)];
+        String description = strings[readVarInt(buffer)];
+        int flags = buffer.get();
+        Duration duration = null;
+        if ((flags & HAS_DURATION) != 0) {
+            duration = Duration.ofMinutes(unzigzag(readVarLong(buffer)));
+        }
+        LocalDateTime startTime = null;
+        if ((flags & HAS_START_TIME) != 0) {
+            long epochSecond = unzigzag(readVarLong(buffer)) * 60;
+            int nano = 0;
+            if ((flags & HAS_SECONDS) != 0) {
+                epochSecond += readVarInt(buffer);
+                nano = readVarInt(buffer);
+            }
+            startTime = LocalDateTime.ofEpochSecond(epochSecond, nano, ZoneOffset.UTC);
+        }
+
+        Task task;
+        switch (type) {
+            case TYPE_TASK:
+                task = new Task(name, description, status);
+                break;
+            case TYPE_EPIC:
+                Epic epic = new Epic(name, description);
+                epic.setId(id);
+                epic.setStatus(status);
+                return epic;
+            case TYPE_SUBTASK:
+                Subtask subtask = new Subtask(name, description, status);
+                subtask.setEpicId(readVarInt(buffer));
+                task = subtask;
+                break;
+            default:
+                throw new IllegalArgumentException("Неизвестный тип задачи: " + type);
+        }
+        task.setId(id);
+        task.setDuration(duration);
+        task.setStartTime(startTime);
+        return task;
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        writeVarLong(out, value & 0xFFFFFFFFL);
+    }
+
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static int readVarInt(ByteBuffer buffer) {
+        long value = readVarLong(buffer);
+        if (value > 0xFFFFFFFFL) {
+            throw new IllegalArgumentException("Число вне диапазона int.");
+        }
+        return (int) value;
+    }
+
+    private static long readVarLong(ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte current = buffer.get();
+            value |= (long) (current & 0x7F) << shift;
+            if (current >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Слишком длинное число.");
+    }
+
+    // Буфер одной записи, нужен, чтобы записать её длину перед содержимым
+    private static class RecordBuffer extends ByteArrayOutputStream {
+        final DataOutputStream out = new DataOutputStream(this);
+
+        RecordBuffer() {
+            super(64);
+        }
+    }
+}
@@ -0,0 +1,282 @@
+package manager;
+
+import model.Epic;
+import model.Subtask;
+import model.Task;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+// Файл с названиями и описаниями задач для ленивой загрузки FileBackedTaskManager.
+// При загрузке название и описание задачи или подзадачи дописываются в файл строкой "название,описание"
+// (с тем же экранированием, что в CSV), а у задачи в памяти заменяются общей строкой-меткой DETACHED.
+// Для каждого ID хранится ссылка на строку: смещение (старшие 40 бит) и длина (младшие 24 бита).
+// Ссылки лежат в массиве по ID: ID выдаются подряд, поэтому массив плотный и не требует упаковки.
+// Текст переносится только при загрузке, поэтому ссылка остаётся верной для всех объектов-заготовок с этим ID.
+// Файл служебный и остаётся после закрытия. Когда снимок прочитан, рядом пишется индекс <файл текстов>.index:
+// сигнатура "KBDY", версия, длина и CRC32 снимка, длина файла текстов после снимка и ссылки задач снимка,
+// в конце CRC32 всего предыдущего содержимого. Если при следующей ленивой загрузке длина и сумма снимка
+// совпали (время изменения не проверяется: его сохраняют копирование и грубые метки времени), файл
+// обрезается до этой длины, тексты задач снимка берутся по ссылкам без записи, а дописываются только тексты
+// из журнала.
+class BodyStore implements Closeable {
+
+    private static final int MAGIC = 0x4B424459; // "KBDY"
+    private static final int VERSION = 2;
+    private static final int LENGTH_BITS = 24;
+    private static final int MAX_LENGTH = (1 << LENGTH_BITS) - 1;
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+    // Метка задачи без текста; сравнивается по ссылке, поэтому не совпадает ни с одной строкой пользователя
+    @SuppressWarnings("StringOperationCanBeSimplified")
+    private static final String DETACHED = new String("");
+
+    private final File file;
+    private final File indexFile;
+    private final long snapshotLength;
+    private final int snapshotChecksum;
+    private final FileChannel channel;
+    private long fileSize;
+    private byte[] pending = new byte[WRITE_BUFFER_SIZE]; // Дописанные, но ещё не записанные в файл строки
+    private int pendingSize;
+    private long[] refs = new long[1024];
+    private boolean isReusingSnapshotBodies; // Тексты задач снимка уже лежат в файле, пока снимок читается
+
+    // Файл текстов для снимка snapshotFile. Подходящий файл прошлой ленивой загрузки используется повторно,
+    // иначе файл пересоздаётся
+    BodyStore(File file, File snapshotFile) {
+        this.file = file;
+        this.indexFile = new File(file.getPath() + ".index");
+        this.snapshotLength = snapshotFile.length();
+        try {
+            // Снимок всё равно читается целиком при загрузке, а лишний проход дешевле перезаписи всех текстов
+            this.snapshotChecksum = (int) DerivedIndex.checksumOf(snapshotFile);
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            long[] snapshotRefs = readIndex();
+            if (snapshotRefs != null) {
+                refs = snapshotRefs;
+                isReusingSnapshotBodies = true;
+            } else {
+                // Индекс удаляется до перезаписи файла, чтобы прерванная перезапись не выглядела готовой
+                Files.deleteIfExists(indexFile.toPath());
+                fileSize = 0;
+            }
+            channel.truncate(fileSize); // Тексты из журнала прошлой загрузки будут дописаны заново
+        } catch (IOException e) {
+            throw new ManagerSaveException("Ошибка при открытии файла текстов: " + e.getMessage());
+        }
+    }
+
+    // Метод для чтения ссылок задач снимка из индекса, возвращает null, если индекс не подходит к снимку
+    // или файл текстов короче записанного в индексе. Заодно запоминает длину файла текстов после снимка
+    private long[] readIndex() throws IOException {
+        if (!indexFile.exists()) {
+            return null;
+        }
+        byte[] bytes = Files.readAllBytes(indexFile.toPath());
+        if (bytes.length < Integer.BYTES) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length - Integer.BYTES);
+        if ((int) crc.getValue() != buffer.getInt(bytes.length - Integer.BYTES)) {
+            return null;
+        }
+        try {
+            if (buffer.getInt() != MAGIC || buffer.get() != VERSION) {
+                return null;
+            }
+            if (buffer.getLong() != snapshotLength || buffer.getInt() != snapshotChecksum) {
+                return null; // Снимок заменён после записи индекса
+            }
+            long bodiesEnd = buffer.getLong();
+            if (bodiesEnd > channel.size()) {
+                return null;
+            }
+            long[] snapshotRefs = new long[buffer.getInt()];
+            for (int i = 0; i < snapshotRefs.length; i++) {
+                snapshotRefs[i] = buffer.getLong();
+            }
+            fileSize = bodiesEnd;
+            return snapshotRefs;
+        } catch (BufferUnderflowException | NegativeArraySizeException e) {
+            return null; // Повреждённый индекс не мешает загрузке, файл текстов строится заново
+        }
+    }
+
+    // Метод для переноса текста загруженной задачи в файл. Эпики не переносятся: их объекты передаются
+    // в методы менеджера, и состояние эпика должно оставаться в одном объекте
+    void detach(Task task) {
+        if (task instanceof Epic) {
+            return;
+        }
+        StringBuilder body = new StringBuilder();
+        FileBackedTaskManager.appendEscaped(body, task.getName()).append(',');
+        FileBackedTaskManager.appendEscaped(body, task.getDescription()).append('\n');
+        byte[] bytes = body.toString().getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_LENGTH) {
+            return; // Очень длинный текст остаётся в памяти
+        }
+        int id = task.getId();
+        if (isReusingSnapshotBodies && id < refs.length && refs[id] != 0) {
+            // Текст задачи снимка уже в файле. Ссылка не бывает нулевой: длина строки текста не меньше двух байт
+            task.setName(DETACHED);
+            task.setDescription(DETACHED);
+            return;
+        }
+        long offset = fileSize + pendingSize;
+        if (pendingSize + bytes.length > pending.length) {
+            flush();
+            if (bytes.length > pending.length) {
+                pending = new byte[bytes.length];
+            }
+        }
+        System.arraycopy(bytes, 0, pending, pendingSize, bytes.length);
+        pendingSize += bytes.length;
+
+        if (id >= refs.length) {
+            refs = Arrays.copyOf(refs, Math.max(id + 1, refs.length * 2));
+        }
+        refs[id] = offset << LENGTH_BITS | bytes.length;
+        task.setName(DETACHED);
+        task.setDescription(DETACHED);
+    }
+
+    // Метод для отметки конца снимка: тексты задач из журнала дописываются после этой границы.
+    // Если файл текстов строился заново, рядом записывается индекс для следующей ленивой загрузки
+    void snapshotLoaded() {
+        if (isReusingSnapshotBodies) {
+            isReusingSnapshotBodies = false;
+            return;
+        }
+        flush();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeLong(snapshotLength);
+            out.writeInt(snapshotChecksum);
+            out.writeLong(fileSize);
+            out.writeInt(refs.length);
+            for (long ref : refs) {
+                out.writeLong(ref);
+            }
+            CRC32 crc = new CRC32();
+            crc.update(bytes.toByteArray());
+            out.writeInt((int) crc.getValue());
+
+            channel.force(false); // Тексты должны быть на диске раньше индекса, который на них ссылается
+            File temporaryFile = new File(indexFile.getPath() + ".tmp");
+            Files.write(temporaryFile.toPath(), bytes.toByteArray());
+            Files.move(temporaryFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new ManagerSaveException("Ошибка при записи индекса текстов: " + e.getMessage());
+        }
+    }
+
+    // Метод для проверки, что текст задачи хранится в файле, а не в объекте
+    static boolean isDetached(Task task) {
+        return task.getName() == DETACHED;
+    }
+
+    // Метод для получения копии задачи с текстом из файла; исходный объект без текста не меняется
+    Task materialize(Task skeleton) {
+        long ref = refs[skeleton.getId()];
+        String[] body = read(ref >>> LENGTH_BITS, (int) (ref & MAX_LENGTH));
+        Task task;
+        if (skeleton instanceof Subtask) {
+            Subtask subtask = new Subtask(body[0], body[1], skeleton.getStatus());
+            subtask.setEpicId(((Subtask) skeleton).getEpicId());
+            task = subtask;
+        } else {
+            task = new Task(body[0], body[1], skeleton.getStatus());
+        }
+        task.setId(skeleton.getId());
+        task.setDuration(skeleton.getDuration());
+        task.setStartTime(skeleton.getStartTime());
+        return task;
+    }
+
+    private String[] read(long offset, int length) {
+        if (offset + length > fileSize) {
+            flush();
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        try {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, offset + buffer.position()) < 0) {
+                    throw new ManagerSaveException("Файл текстов короче ожидаемого: " + file.getName());
+                }
+            }
+        } catch (IOException e) {
+            throw new ManagerSaveException("Ошибка при чтении файла текстов: " + e.getMessage());
+        }
+        byte[] bytes = buffer.array();
+        int separator = 0;
+        while (bytes[separator] != ',') {
+            separator += bytes[separator] == '\\' ? 2 : 1;
+        }
+        return new String[]{unescape(bytes, 0, separator), unescape(bytes, separator + 1, length - 1)};
+    }
+
+    // Раскрытие экранирования, как в TaskCsvReader.readString
+    private static String unescape(byte[] bytes, int start, int end) {
+        byte[] unescaped = new byte[end - start];
+        int length = 0;
+        for (int i = start; i < end; i++) {
+            byte current = bytes[i];
+            if (current == '\\' && i + 1 < end) {
+                byte escaped = bytes[++i];
+                switch (escaped) {
+                    case ',', '\\' -> current = escaped;
+                    case 'n' -> current = '\n';
+                    case 'r' -> current = '\r';
+                    default -> {
+                        unescaped[length++] = current;
+                        current = escaped;
+                    }
+                }
+            }
+            unescaped[length++] = current;
+        }
+        return new String(unescaped, 0, length, StandardCharsets.UTF_8);
+    }
+
+    private void flush() {
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(pending, 0, pendingSize);
+            while (buffer.hasRemaining()) {
+                fileSize += channel.write(buffer, fileSize);
+            }
+        } catch (IOException e) {
+            throw new ManagerSaveException("Ошибка при записи файла текстов: " + e.getMessage());
+        }
+        pendingSize = 0;
+    }
+
+    // Файл остаётся вместе с индексом для следующей ленивой загрузки того же снимка
+    @Override
+    public void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new ManagerSaveException("Ошибка при закрытии файла текстов: " + e.getMessage());
+        }
+    }
+}
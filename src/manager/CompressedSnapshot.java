@@ -0,0 +1,229 @@
+package manager;
+
+import model.Task;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// Снимок в формате CSV, сжатый блоками.
+// Заголовок: сигнатура "KDFL" и номер версии (1 байт). Затем блоки: длина несжатых данных, длина сжатых данных
+// и сами данные, сжатые Deflater в формате zlib (с контрольной суммой Adler-32). Блок заканчивается на границе
+// строки и сжимается независимо от других, поэтому при загрузке блоки распаковываются и разбираются параллельно.
+// Последний блок — маркер с нулевыми длинами: без него снимок считается оборванным.
+class CompressedSnapshot {
+
+    private static final byte[] MAGIC = {'K', 'D', 'F', 'L'};
+    private static final int VERSION = 1;
+
+    // Размер блока до сжатия: блок должен быть заметно больше строки, но не слишком большим для параллельного разбора
+    static final int BLOCK_SIZE = 256 * 1024;
+
+    private CompressedSnapshot() {
+    }
+
+    // Метод для определения формата по сигнатуре в начале файла
+    static boolean isCompressed(File file) {
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            return Arrays.equals(in.readNBytes(MAGIC.length), MAGIC);
+        } catch (IOException e) {
+            throw new ManagerSaveException("Ошибка при чтении файла: " + e.getMessage());
+        }
+    }
+
+    // Поток, который делит записываемый CSV на блоки по границам строк и сжимает каждый блок отдельно.
+    // finish() дописывает последний блок и маркер конца, не закрывая target
+    static final class BlockOutputStream extends OutputStream {
+        private final DataOutputStream out;
+        private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        private byte[] block = new byte[BLOCK_SIZE];
+        private int size;
+        private byte[] compressed = new byte[BLOCK_SIZE];
+
+        BlockOutputStream(OutputStream target) throws IOException {
+            out = new DataOutputStream(target);
+            out.write(MAGIC);
+            out.writeByte(VERSION);
+        }
+
+        @Override
+        public void write(int value) throws IOException {
+            write(new byte[]{(byte) value}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            while (length > 0) {
+                if (size == block.length) {
+                    writeFullBlock();
+                }
+                int copied = Math.min(length, block.length - size);
+                System.arraycopy(bytes, offset, block, size, copied);
+                size += copied;
+                offset += copied;
+                length -= copied;
+            }
+        }
+
+        // Метод для записи заполненного блока до последнего перевода строки, остаток переносится в следующий блок
+        private void writeFullBlock() throws IOException {
+            int end = size;
+            while (end > 0 && block[end - 1] != '\n') {
+                end--;
+            }
+            if (end == 0) {
+                block = Arrays.copyOf(block, block.length * 2); // Строка длиннее блока
+                return;
+            }
+            writeBlock(end);
+            System.arraycopy(block, end, block, 0, size - end);
+            size -= end;
+        }
+
+        private void writeBlock(int length) throws IOException {
+            deflater.reset();
+            deflater.setInput(block, 0, length);
+            deflater.finish();
+            int compressedLength = 0;
+            while (!deflater.finished()) {
+                if (compressedLength == compressed.length) {
+                    compressed = Arrays.copyOf(compressed, compressed.length * 2);
+                }
+                compressedLength += deflater.deflate(compressed, compressedLength, compressed.length - compressedLength);
+            }
+            out.writeInt(length);
+            out.writeInt(compressedLength);
+            out.write(compressed, 0, compressedLength);
+        }
+
+        void finish() throws IOException {
+            if (size > 0) {
+                writeBlock(size);
+                size = 0;
+            }
+            out.writeInt(0);
+            out.writeInt(0);
+            out.flush();
+            deflater.end();
+        }
+    }
+
+    // Положение сжатого блока в файле
+    private record Block(int offset, int rawLength, int compressedLength) {
+    }
+
+    // Результат разбора блока: задачи, признак пустой строки (конец задач) и первая строка с ошибкой
+    private record ParsedBlock(List<Task> tasks, boolean isEndReached, String errorLine) {
+    }
+
+    // Метод для чтения снимка, задачи размещаются в board. Возвращает наибольший ID
+    static int read(File file, InMemoryTaskManager board) {
+        // Файл не отображается в память: в Windows отображённый файл нельзя перезаписать до сборки мусора
+        byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(file.toPath());
+        } catch (IOException e) {
+            throw new ManagerSaveException("Ошибка при загрузке из файла: " + e.getMessage());
+        }
+
+        List<Block> blocks = new ArrayList<>();
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            buffer.position(MAGIC.length);
+            if (buffer.get() != VERSION) {
+                throw new ManagerSaveException("Неподдерживаемая версия сжатого снимка: " + file.getName());
+            }
+            while (true) {
+                int rawLength = buffer.getInt();
+                int compressedLength = buffer.getInt();
+                if (rawLength == 0 && compressedLength == 0) {
+                    break;
+                }
+                if (rawLength < 0 || compressedLength < 0 || compressedLength > buffer.remaining()) {
+                    throw new BufferUnderflowException();
+                }
+                blocks.add(new Block(buffer.position(), rawLength, compressedLength));
+                buffer.position(buffer.position() + compressedLength);
+            }
+        } catch (BufferUnderflowException e) {
+            throw new ManagerSaveException("Оборванный сжатый снимок: " + file.getName());
+        }
+        if (blocks.isEmpty()) {
+            throw new ManagerSaveException("Файл пустой.");
+        }
+
+        // Блоки независимы, поэтому распаковываются и разбираются параллельно; задачи размещаются в порядке файла
+        List<ParsedBlock> parsedBlocks = blocks.parallelStream()
+                .map(block -> parse(bytes, block, block == blocks.getFirst()))
+                .toList();
+        int maxId = 0;
+        for (ParsedBlock parsedBlock : parsedBlocks) {
+            for (Task task : parsedBlock.tasks()) {
+                maxId = Math.max(maxId, task.getId());
+                FileBackedTaskManager.putLoadedTask(board, task);
+            }
+            if (parsedBlock.errorLine() != null) {
+                throw new ManagerSaveException("Ошибка при обработке строки: " + parsedBlock.errorLine());
+            }
+            if (parsedBlock.isEndReached()) {
+                break;
+            }
+        }
+        return maxId;
+    }
+
+    private static ParsedBlock parse(byte[] file, Block block, boolean hasHeader) {
+        byte[] raw = new byte[block.rawLength()];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(file, block.offset(), block.compressedLength());
+            int length = 0;
+            while (length < raw.length && !inflater.finished()) {
+                int inflated = inflater.inflate(raw, length, raw.length - length);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                length += inflated;
+            }
+            if (length != raw.length || !inflater.finished()) {
+                throw new ManagerSaveException("Повреждённый блок сжатого снимка.");
+            }
+        } catch (DataFormatException e) {
+            throw new ManagerSaveException("Повреждённый блок сжатого снимка: " + e.getMessage());
+        } finally {
+            inflater.end();
+        }
+
+        List<Task> tasks = new ArrayList<>();
+        TaskCsvReader reader = new TaskCsvReader(raw, raw.length);
+        try {
+            if (hasHeader) {
+                reader.nextLine(); // Заголовок
+            }
+            while (reader.nextLine()) {
+                if (reader.isLineEmpty()) {
+                    return new ParsedBlock(tasks, true, null);
+                }
+                try {
+                    tasks.add(reader.readTask());
+                } catch (Exception e) {
+                    return new ParsedBlock(tasks, false, reader.currentLine());
+                }
+            }
+        } catch (IOException e) {
+            throw new ManagerSaveException("Ошибка при разборе блока: " + e.getMessage()); // Массив не читает файл
+        }
+        return new ParsedBlock(tasks, false, null);
+    }
+}
@@ -0,0 +1,735 @@
+package manager;
+
+import model.Epic;
+import model.Subtask;
+import model.Task;
+import model.TaskStatus;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Потокобезопасный менеджер задач без общей блокировки на все методы.
+// Подзадачи и агрегаты эпика изменяются под блокировкой полосы (stripe), выбранной по ID эпика,
+// поэтому изменения разных эпиков идут параллельно. Проверка пересечения по времени и вставка в индекс
+// выполняются под блокировкой расписания, которая берётся только для задач с startTime.
+// Порядок захвата: блокировки полос по возрастанию номера, затем расписание, затем история.
+// Вторичные индексы синхронизируются на самом индексе и переиндексируют задачу по хранилищу после изменения,
+// без других блокировок, поэтому последняя переиндексация отражает последнее изменение задачи.
+// Поля эпика, полученного через getEpicById, могут читаться одновременно с изменением другим потоком.
+public class ConcurrentTaskManager implements TaskManager {
+
+    private static final int DEFAULT_STRIPES = 64;
+
+    private final ConcurrentHashMap<Integer, Task> tasks = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Integer, Subtask> subtasks = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Integer, Epic> epics = new ConcurrentHashMap<>();
+    private final AtomicInteger idCounter = new AtomicInteger();
+
+    private final ReentrantLock[] epicLocks;
+    private final ReentrantLock scheduleLock = new ReentrantLock();
+    private final TimeIndex timeIndex = TimeIndex.concurrent();
+    private final TaskStorage storage = new Storage();
+    // ID задач в индексе времени; изменяется под блокировкой расписания, читается без неё,
+    // чтобы изменения подзадач без startTime (под блокировкой эпика) не ждали расписания
+    private final Set<Integer> scheduledIds = ConcurrentHashMap.newKeySet();
+
+    // InMemoryHistoryManager не потокобезопасен, обращения к нему синхронизируются на самом менеджере истории
+    private final HistoryManager historyManager = Managers.getDefaultHistory();
+
+    // Индексы задач и подзадач по статусу и дню начала, обращения к ним синхронизируются на самом индексе
+    private final SecondaryIndex secondaryIndex = new SecondaryIndex(this::getStoredTask);
+
+    // Версия данных увеличивается после каждого изменения, когда оно уже видно в хранилищах. Списки getAll* и
+    // getPrioritizedTasks отдаются неизменяемыми копиями, которые перестраиваются только после изменения
+    private final AtomicLong version = new AtomicLong();
+    private final SnapshotCache<Task> allTasks = new SnapshotCache<>(() -> new ArrayList<>(tasks.values()));
+    private final SnapshotCache<Epic> allEpics = new SnapshotCache<>(() -> new ArrayList<>(epics.values()));
+    private final SnapshotCache<Subtask> allSubtasks = new SnapshotCache<>(() -> new ArrayList<>(subtasks.values()));
+    private final SnapshotCache<Task> prioritizedTasks = new SnapshotCache<>(timeIndex::getTasks);
+
+    public ConcurrentTaskManager() {
+        this(DEFAULT_STRIPES);
+    }
+
+    // Число полос округляется вверх до степени двойки
+    public ConcurrentTaskManager(int stripes) {
+        if (stripes < 1) {
+            throw new IllegalArgumentException("Число блокировок должно быть положительным.");
+        }
+        int size = Integer.highestOneBit(stripes);
+        if (size < stripes) {
+            size *= 2;
+        }
+        epicLocks = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            epicLocks[i] = new ReentrantLock();
+        }
+    }
+
+    private int generateId() {
+        return idCounter.incrementAndGet();
+    }
+
+    // Методы для задач (Task)
+    @Override
+    public List<Task> getAllTasks() {
+        return allTasks.get(version.get());
+    }
+
+    @Override
+    public void deleteAllTasks() {
+        for (Integer id : tasks.keySet()) {
+            deleteTaskById(id);
+        }
+    }
+
+    @Override
+    public Task getTaskById(int id) {
+        Task task = tasks.get(id);
+        if (task != null) {
+            addToHistory(task);
+        }
+        return task;
+    }
+
+    @Override
+    public boolean createTask(Task task) {
+        if (tasks.containsKey(task.getId())) {
+            return false; // ID уже существует
+        }
+        if (task.getStartTime() == null) {
+            int id = generateId();
+            task.setId(id);
+            tasks.put(id, task);
+            reindex(id);
+            version.incrementAndGet();
+            return true;
+        }
+        scheduleLock.lock();
+        try {
+            Task conflictingTask = timeIndex.findConflict(task, null);
+            if (conflictingTask != null) {
+                throw new IllegalArgumentException("Задача пересекается с уже существующей. ID пересекающейся задачи: " + conflictingTask.getId());
+            }
+            int id = generateId();
+            task.setId(id);
+            tasks.put(id, task);
+            addToSchedule(task);
+            version.incrementAndGet();
+        } finally {
+            scheduleLock.unlock();
+        }
+        reindex(task.getId());
+        return true;
+    }
+
+    @Override
+    public boolean updateTask(Task task) {
+        scheduleLock.lock();
+        try {
+            if (!tasks.containsKey(task.getId())) {
+                return false;
+            }
+            // Старая версия задачи не считается пересечением
+            Task conflictingTask = timeIndex.findConflict(task, task.getId());
+            if (conflictingTask != null) {
+                throw new IllegalArgumentException("Задача пересекается с другой задачей. ID пересекающейся задачи: " + conflictingTask.getId());
+            }
+            tasks.put(task.getId(), task);
+            removeFromSchedule(task.getId()); // Удаляем старую версию
+            addToSchedule(task);
+            version.incrementAndGet();
+        } finally {
+            scheduleLock.unlock();
+        }
+        reindex(task.getId());
+        return true;
+    }
+
+    @Override
+    public void deleteTaskById(int id) {
+        scheduleLock.lock();
+        try {
+            if (tasks.remove(id) == null) {
+                return;
+            }
+            removeFromSchedule(id);
+            version.incrementAndGet();
+        } finally {
+            scheduleLock.unlock();
+        }
+        reindex(id);
+        removeFromHistory(id);
+    }
+
+    // Методы для эпиков (Epic)
+    @Override
+    public boolean createEpic(Epic epic) {
+        if (epics.containsKey(epic.getId())) {
+            return false;
+        }
+        int id = generateId();
+        epic.setId(id);
+        epics.put(id, epic);
+        version.incrementAndGet();
+        return true;
+    }
+
+    @Override
+    public List<Epic> getAllEpics() {
+        return allEpics.get(version.get());
+    }
+
+    @Override
+    public Epic getEpicById(int id) {
+        Epic epic = epics.get(id);
+        if (epic != null) {
+            addToHistory(epic);
+        }
+        return epic;
+    }
+
+    @Override
+    public boolean updateEpic(Epic epic) {
+        ReentrantLock lock = lockFor(epic.getId());
+        lock.lock();
+        try {
+            if (!epics.containsKey(epic.getId())) {
+                return false;
+            }
+            epics.put(epic.getId(), epic);
+            epic.recalculate(subtasks::get); // Полный пересчёт под блокировкой полосы эпика
+            version.incrementAndGet();
+        } finally {
+            lock.unlock();
+        }
+        return true;
+    }
+
+    @Override
+    public void deleteAllEpics() {
+        for (Integer id : epics.keySet()) {
+            deleteEpicById(id);
+        }
+    }
+
+    @Override
+    public void deleteEpicById(int id) {
+        Epic epic;
+        int[] subtaskIds;
+        ReentrantLock lock = lockFor(id);
+        lock.lock();
+        try {
+            epic = epics.remove(id);
+            if (epic == null) {
+                return;
+            }
+            subtaskIds = epic.getSubtaskIds().stream().mapToInt(Integer::intValue).toArray();
+            scheduleLock.lock();
+            try {
+                for (int subtaskId : subtaskIds) {
+                    subtasks.remove(subtaskId);
+                    removeFromSchedule(subtaskId);
+                }
+            } finally {
+                scheduleLock.unlock();
+            }
+            version.incrementAndGet();
+        } finally {
+            lock.unlock();
+        }
+        removeFromHistory(id);
+        for (int subtaskId : subtaskIds) {
+            reindex(subtaskId);
+            removeFromHistory(subtaskId);
+        }
+    }
+
+    // Методы для подзадач (Subtask)
+    @Override
+    public boolean createSubtask(Subtask subtask, Epic epic) {
+        if (subtasks.containsKey(subtask.getId())) {
+            return false;
+        }
+        ReentrantLock lock = lockFor(epic.getId());
+        lock.lock();
+        try {
+            // Эпик проверяется под его блокировкой, чтобы подзадача не попала в уже удалённый эпик
+            if (!epics.containsKey(epic.getId())) {
+                return false;
+            }
+            if (subtask.getStartTime() == null) {
+                subtask.setId(generateId());
+                subtask.setEpicId(epic.getId());
+                subtasks.put(subtask.getId(), subtask);
+            } else {
+                scheduleLock.lock();
+                try {
+                    Task conflictingTask = timeIndex.findConflict(subtask, null);
+                    if (conflictingTask != null) {
+                        throw new IllegalArgumentException("Подзадача пересекается с другой задачей. ID пересекающейся задачи: " + conflictingTask.getId());
+                    }
+                    subtask.setId(generateId());
+                    subtask.setEpicId(epic.getId());
+                    subtasks.put(subtask.getId(), subtask);
+                    addToSchedule(subtask);
+                } finally {
+                    scheduleLock.unlock();
+                }
+            }
+            epic.addSubtaskId(subtask.getId());
+            epic.applySubtask(subtask);
+            version.incrementAndGet();
+        } finally {
+            lock.unlock();
+        }
+        reindex(subtask.getId());
+        return true;
+    }
+
+    @Override
+    public List<Subtask> getAllSubtasks() {
+        return allSubtasks.get(version.get());
+    }
+
+    @Override
+    public Subtask getSubtaskById(int id) {
+        Subtask subtask = subtasks.get(id);
+        if (subtask != null) {
+            addToHistory(subtask);
+        }
+        return subtask;
+    }
+
+    @Override
+    public boolean updateSubtask(Subtask subtask) {
+        ReentrantLock lock = lockEpicOf(subtask);
+        try {
+            Subtask current = subtasks.get(subtask.getId());
+            if (current == null || current.getEpicId() != subtask.getEpicId()) {
+                return false; // Перенос в другой эпик выполняется через updateSubtaskEpic
+            }
+            if (subtask.getStartTime() == null && !scheduledIds.contains(subtask.getId())) {
+                subtasks.put(subtask.getId(), subtask);
+            } else {
+                scheduleLock.lock();
+                try {
+                    // Старая версия подзадачи не считается пересечением
+                    Task conflictingTask = timeIndex.findConflict(subtask, subtask.getId());
+                    if (conflictingTask != null) {
+                        throw new IllegalArgumentException("Подзадача пересекается с другой задачей. ID пересекающейся задачи: " + conflictingTask.getId());
+                    }
+                    subtasks.put(subtask.getId(), subtask);
+                    removeFromSchedule(subtask.getId()); // Удаляем старую версию
+                    addToSchedule(subtask);
+                } finally {
+                    scheduleLock.unlock();
+                }
+            }
+            Epic epic = epics.get(subtask.getEpicId());
+            if (epic != null) {
+                epic.applySubtask(subtask);
+            }
+            version.incrementAndGet();
+        } finally {
+            lock.unlock();
+        }
+        reindex(subtask.getId());
+        return true;
+    }
+
+    // Метод для переноса подзадачи в другой эпик. Переносится подзадача из хранилища, найденная по ID под
+    // блокировками полос: переданный объект мог быть уже заменён другим потоком через updateSubtask
+    public boolean updateSubtaskEpic(Subtask subtask, Epic newEpic) {
+        if (subtask == null || newEpic == null) {
+            return false;
+        }
+        int id = subtask.getId();
+        while (true) {
+            Subtask stored = subtasks.get(id);
+            if (stored == null) {
+                return false;
+            }
+            int oldEpicId = stored.getEpicId();
+            int oldStripe = stripeOf(oldEpicId);
+            int newStripe = stripeOf(newEpic.getId());
+            // Полосы захватываются по возрастанию номера, иначе встречные переносы могут заблокировать друг друга
+            ReentrantLock first = epicLocks[Math.min(oldStripe, newStripe)];
+            ReentrantLock second = epicLocks[Math.max(oldStripe, newStripe)];
+            first.lock();
+            second.lock();
+            try {
+                stored = subtasks.get(id);
+                if (stored == null) {
+                    return false; // Подзадачу удалил другой поток
+                }
+                if (stored.getEpicId() != oldEpicId) {
+                    continue; // Подзадачу перенёс другой поток, захватываем полосы её нового эпика
+                }
+                Epic targetEpic = epics.get(newEpic.getId());
+                if (targetEpic == null) {
+                    return false;
+                }
+                Epic oldEpic = epics.get(oldEpicId);
+                if (oldEpic != null) {
+                    oldEpic.removeSubtaskId(id); // Вклад подзадачи вычитается из старого эпика
+                }
+                stored.setEpicId(targetEpic.getId());
+                targetEpic.addSubtaskId(id);
+                targetEpic.applySubtask(stored);
+                version.incrementAndGet();
+                return true;
+            } finally {
+                second.unlock();
+                first.unlock();
+            }
+        }
+    }
+
+    @Override
+    public void deleteAllSubtasks() {
+        for (Integer id : subtasks.keySet()) {
+            deleteSubtaskById(id);
+        }
+    }
+
+    @Override
+    public void deleteSubtaskById(int id) {
+        Subtask subtask = subtasks.get(id);
+        if (subtask == null) {
+            return;
+        }
+        ReentrantLock lock = lockEpicOf(subtask);
+        try {
+            if (!scheduledIds.contains(id)) {
+                if (subtasks.remove(id) == null) {
+                    return; // Подзадачу удалил другой поток
+                }
+            } else {
+                scheduleLock.lock();
+                try {
+                    subtasks.remove(id);
+                    removeFromSchedule(id);
+                } finally {
+                    scheduleLock.unlock();
+                }
+            }
+            Epic epic = epics.get(subtask.getEpicId());
+            if (epic != null) {
+                epic.removeSubtaskId(id); // Статус и время эпика пересчитываются внутри
+            }
+            version.incrementAndGet();
+        } finally {
+            lock.unlock();
+        }
+        reindex(id);
+        removeFromHistory(id);
+    }
+
+    // Получение списка всех подзадач определённого эпика
+    @Override
+    public List<Subtask> getSubtasksOfEpic(int epicId) {
+        ReentrantLock lock = lockFor(epicId);
+        lock.lock();
+        try {
+            Epic epic = epics.get(epicId);
+            if (epic == null) {
+                return new ArrayList<>();
+            }
+            List<Subtask> epicSubtasks = new ArrayList<>(epic.getSubtaskCount());
+            for (int subtaskId : epic.getSubtaskIds()) {
+                Subtask subtask = subtasks.get(subtaskId);
+                if (subtask != null) {
+                    epicSubtasks.add(subtask);
+                }
+            }
+            return epicSubtasks;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Метод для применения пакета изменений. Пакет может затронуть любые эпики, поэтому захватываются все полосы
+    // по возрастанию номера и блокировка расписания: одиночные операции ждут, пока пакет не применится целиком
+    @Override
+    public void applyBatch(TaskBatch batch) {
+        BatchPlan plan;
+        for (ReentrantLock lock : epicLocks) {
+            lock.lock();
+        }
+        scheduleLock.lock();
+        try {
+            plan = BatchPlan.prepare(batch, tasks::get, subtasks::get, epics::get, timeIndex);
+            plan.apply(storage);
+            version.incrementAndGet();
+        } finally {
+            scheduleLock.unlock();
+            for (int i = epicLocks.length - 1; i >= 0; i--) {
+                epicLocks[i].unlock();
+            }
+        }
+        for (Task task : plan.getUpserted()) {
+            reindex(task.getId());
+        }
+        plan.getDeletedIds().forEach(id -> {
+            reindex(id);
+            removeFromHistory(id);
+        });
+    }
+
+    // Хранилища менеджера для применения пакета, вызываются под всеми блокировками. Вторичные индексы
+    // и история обновляются после снятия блокировок, поэтому изменения ID здесь не отмечаются
+    private final class Storage implements TaskStorage {
+
+        @Override
+        public void put(Task task) {
+            if (task instanceof Epic epic) {
+                epics.put(epic.getId(), epic);
+            } else if (task instanceof Subtask subtask) {
+                subtasks.put(subtask.getId(), subtask);
+            } else {
+                tasks.put(task.getId(), task);
+            }
+        }
+
+        @Override
+        public void remove(Task task) {
+            if (task instanceof Epic) {
+                epics.remove(task.getId());
+            } else if (task instanceof Subtask) {
+                subtasks.remove(task.getId());
+            } else {
+                tasks.remove(task.getId());
+            }
+        }
+
+        @Override
+        public Epic getEpic(int id) {
+            return epics.get(id);
+        }
+
+        @Override
+        public Task getTaskOrSubtask(int id) {
+            Task task = tasks.get(id);
+            return task != null ? task : subtasks.get(id);
+        }
+
+        @Override
+        public int generateId() {
+            return ConcurrentTaskManager.this.generateId();
+        }
+
+        @Override
+        public void addToSchedule(Task task) {
+            ConcurrentTaskManager.this.addToSchedule(task);
+        }
+
+        @Override
+        public void removeFromSchedule(int id) {
+            ConcurrentTaskManager.this.removeFromSchedule(id);
+        }
+
+        @Override
+        public void markChanged(int id, boolean isDeleted) {
+        }
+
+        @Override
+        public void recalculateEpic(Epic epic) {
+            epic.recalculate(subtasks::get);
+        }
+    }
+
+    // Метод для получения истории просмотров
+    @Override
+    public List<Task> getHistory() {
+        synchronized (historyManager) {
+            return historyManager.getHistory();
+        }
+    }
+
+    // Метод для получения списка задач по приоритету, читает индекс без блокировки
+    @Override
+    public List<Task> getPrioritizedTasks() {
+        return prioritizedTasks.get(version.get());
+    }
+
+    // Методы для выборки по времени, как и getPrioritizedTasks, читают индекс без блокировки
+    @Override
+    public List<Task> getTasksBetween(LocalDateTime from, LocalDateTime to) {
+        return timeIndex.getTasksBetween(from, to);
+    }
+
+    @Override
+    public List<Task> getNextTasks(LocalDateTime from, int limit) {
+        return timeIndex.getTasksStartingFrom(from, limit);
+    }
+
+    // Методы для выборки по вторичным индексам, как и история, синхронизируются на самом индексе
+    @Override
+    public List<Task> getTasksByStatus(TaskStatus status) {
+        synchronized (secondaryIndex) {
+            return secondaryIndex.getTasksByStatus(status);
+        }
+    }
+
+    @Override
+    public List<Task> getTasksStartingOn(LocalDate day) {
+        synchronized (secondaryIndex) {
+            return secondaryIndex.getTasksStartingOn(day);
+        }
+    }
+
+    @Override
+    public List<Task> getTasksByStatusBetween(TaskStatus status, LocalDateTime from, LocalDateTime to) {
+        synchronized (secondaryIndex) {
+            return secondaryIndex.getTasksByStatusBetween(status, from, to);
+        }
+    }
+
+    // Поиск свободного окна читает индекс промежутков, который меняется вместе с расписанием,
+    // поэтому выполняется под блокировкой расписания
+    @Override
+    public LocalDateTime findFreeSlot(LocalDateTime from, Duration duration) {
+        return findFreeSlot(from, duration, null, null);
+    }
+
+    @Override
+    public LocalDateTime findFreeSlot(LocalDateTime from, Duration duration, LocalTime workStart, LocalTime workEnd) {
+        scheduleLock.lock();
+        try {
+            return timeIndex.findFreeSlot(from, duration, workStart, workEnd);
+        } finally {
+            scheduleLock.unlock();
+        }
+    }
+
+    // Методы для расстановки задач без времени начала. План строится по копии индекса времени под всеми
+    // блокировками, как и пакет изменений, чтобы задачи не менялись между построением плана и его применением
+    @Override
+    public SchedulePlan planUnscheduledTasks(LocalDateTime from, LocalDateTime horizon, LocalTime workStart,
+                                             LocalTime workEnd) {
+        return schedule(from, horizon, workStart, workEnd, false);
+    }
+
+    @Override
+    public SchedulePlan scheduleUnscheduledTasks(LocalDateTime from, LocalDateTime horizon, LocalTime workStart,
+                                                 LocalTime workEnd) {
+        return schedule(from, horizon, workStart, workEnd, true);
+    }
+
+    private SchedulePlan schedule(LocalDateTime from, LocalDateTime horizon, LocalTime workStart, LocalTime workEnd,
+                                  boolean isApplied) {
+        SchedulePlan plan = scheduleLocked(from, horizon, workStart, workEnd, isApplied);
+        if (isApplied) {
+            plan.getStartTimes().keySet().forEach(this::reindex); // Задачи перешли в корзины дней начала
+        }
+        return plan;
+    }
+
+    private SchedulePlan scheduleLocked(LocalDateTime from, LocalDateTime horizon, LocalTime workStart,
+                                        LocalTime workEnd, boolean isApplied) {
+        for (ReentrantLock lock : epicLocks) {
+            lock.lock();
+        }
+        scheduleLock.lock();
+        try {
+            List<Task> unscheduled = new ArrayList<>();
+            for (Task task : tasks.values()) {
+                if (task.getStartTime() == null) {
+                    unscheduled.add(task);
+                }
+            }
+            for (Subtask subtask : subtasks.values()) {
+                if (subtask.getStartTime() == null) {
+                    unscheduled.add(subtask);
+                }
+            }
+            SchedulePlan plan = AutoScheduler.plan(timeIndex.getTasks(), unscheduled, from, horizon, workStart,
+                    workEnd);
+            if (isApplied) {
+                plan.apply(storage);
+                version.incrementAndGet();
+            }
+            return plan;
+        } finally {
+            scheduleLock.unlock();
+            for (int i = epicLocks.length - 1; i >= 0; i--) {
+                epicLocks[i].unlock();
+            }
+        }
+    }
+
+    // Изменение индекса времени, вызывается под блокировкой расписания
+    private void addToSchedule(Task task) {
+        timeIndex.add(task);
+        if (task.getStartTime() != null) {
+            scheduledIds.add(task.getId());
+        }
+    }
+
+    private void removeFromSchedule(int id) {
+        timeIndex.remove(id);
+        scheduledIds.remove(id);
+    }
+
+    // Метод для приведения вторичных индексов задачи с ID id к хранилищу после её изменения или удаления.
+    // Задача читается из хранилища под монитором индекса, поэтому из двух переиндексаций одной задачи
+    // последняя видит её последнее состояние, в каком бы порядке ни завершились сами изменения
+    private void reindex(int id) {
+        synchronized (secondaryIndex) {
+            Task task = getStoredTask(id);
+            if (task != null) {
+                secondaryIndex.add(task);
+            } else {
+                secondaryIndex.remove(id);
+            }
+        }
+    }
+
+    private Task getStoredTask(int id) {
+        Task task = tasks.get(id);
+        return task != null ? task : subtasks.get(id);
+    }
+
+    private void addToHistory(Task task) {
+        synchronized (historyManager) {
+            historyManager.add(task);
+        }
+    }
+
+    private void removeFromHistory(int id) {
+        synchronized (historyManager) {
+            historyManager.remove(id);
+        }
+    }
+
+    private int stripeOf(int epicId) {
+        return ((epicId * 0x9E3779B9) >>> 16) & (epicLocks.length - 1);
+    }
+
+    private ReentrantLock lockFor(int epicId) {
+        return epicLocks[stripeOf(epicId)];
+    }
+
+    // Захват полосы эпика подзадачи; эпик перепроверяется после захвата, так как подзадачу могли перенести
+    private ReentrantLock lockEpicOf(Subtask subtask) {
+        while (true) {
+            int epicId = subtask.getEpicId();
+            ReentrantLock lock = lockFor(epicId);
+            lock.lock();
+            if (subtask.getEpicId() == epicId) {
+                return lock;
+            }
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,268 @@
+package manager;
+
+import model.Epic;
+import model.IntHashMap;
+import model.Subtask;
+import model.Task;
+import model.TaskStatus;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.DateTimeException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+// Сохранённые вычисляемые данные доски: порядок запланированных задач по времени начала и статус и время эпиков.
+// Файл пишется рядом со снимком после его замены. Заголовок: сигнатура "KIDX", версия, длина и CRC32 снимка,
+// к которому относится индекс. Затем ID задач в порядке времени начала и для каждого эпика ID, число подзадач,
+// статус, начало, окончание и длительность. В конце CRC32 всего предыдущего содержимого.
+// Индекс принимается при загрузке, только если обе суммы сходятся, а журнал ничего не добавил к снимку.
+// Время эпиков считается так же, как при загрузке снимка: длительности подзадач в снимке хранятся в минутах.
+class DerivedIndex {
+
+    private static final int MAGIC = 0x4B494458; // "KIDX"
+    private static final int VERSION = 1;
+    private static final int READ_BUFFER_SIZE = 1024 * 1024;
+
+    private static final TaskStatus[] STATUSES = TaskStatus.values();
+
+    // Статус и время эпика по его подзадачам
+    private record EpicAggregates(int subtaskCount, TaskStatus status, LocalDateTime startTime,
+                                  LocalDateTime endTime, Duration duration) {
+    }
+
+    private final int[] orderedIds;
+    private final IntHashMap<EpicAggregates> epicAggregates;
+
+    private DerivedIndex(int[] orderedIds, IntHashMap<EpicAggregates> epicAggregates) {
+        this.orderedIds = orderedIds;
+        this.epicAggregates = epicAggregates;
+    }
+
+    // Индекс хранится рядом с файлом-снимком
+    static File fileOf(File snapshotFile) {
+        return new File(snapshotFile.getPath() + ".index");
+    }
+
+    // Метод для подготовки индекса доски, записанной в снимок длиной snapshotLength с суммой snapshotChecksum
+    static byte[] render(InMemoryTaskManager board, long snapshotLength, long snapshotChecksum) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeLong(snapshotLength);
+            out.writeInt((int) snapshotChecksum);
+
+            List<Task> ordered = board.timeIndex.getTasks();
+            out.writeInt(ordered.size());
+            for (Task task : ordered) {
+                out.writeInt(task.getId());
+            }
+
+            IntHashMap<EpicAggregates> aggregates = aggregate(board);
+            out.writeInt(aggregates.size());
+            for (int epicId : aggregates.keys()) {
+                EpicAggregates epic = aggregates.get(epicId);
+                out.writeInt(epicId);
+                out.writeInt(epic.subtaskCount());
+                out.writeByte(epic.status().ordinal());
+                writeDateTime(out, epic.startTime());
+                writeDateTime(out, epic.endTime());
+                out.writeLong(epic.duration().getSeconds());
+                out.writeInt(epic.duration().getNano());
+            }
+            out.writeInt((int) checksumOf(bytes.toByteArray()));
+        } catch (IOException e) {
+            throw new ManagerSaveException("Ошибка при подготовке индекса: " + e.getMessage());
+        }
+        return bytes.toByteArray();
+    }
+
+    // Накопленные значения эпика при вычислении его статуса и времени
+    private static final class EpicAccumulator {
+        private final int[] statusCounts = new int[STATUSES.length];
+        private int subtaskCount;
+        private LocalDateTime startTime;
+        private LocalDateTime endTime;
+        private Duration duration = Duration.ZERO;
+
+        void add(Subtask subtask) {
+            subtaskCount++;
+            if (subtask.getStatus() != null) {
+                statusCounts[subtask.getStatus().ordinal()]++;
+            }
+            LocalDateTime start = subtask.getStartTime();
+            if (start == null) {
+                return; // Как и в Epic, в длительность входят только подзадачи с заданным временем начала
+            }
+            Duration subtaskDuration = subtask.getDuration() != null
+                    ? Duration.ofMinutes(subtask.getDuration().toMinutes()) : null;
+            LocalDateTime end = subtaskDuration != null ? start.plus(subtaskDuration) : start;
+            if (startTime == null || start.isBefore(startTime)) {
+                startTime = start;
+            }
+            if (endTime == null || end.isAfter(endTime)) {
+                endTime = end;
+            }
+            if (subtaskDuration != null) {
+                duration = duration.plus(subtaskDuration);
+            }
+        }
+
+        EpicAggregates toAggregates() {
+            TaskStatus status;
+            if (subtaskCount == statusCounts[TaskStatus.NEW.ordinal()]) {
+                status = TaskStatus.NEW;
+            } else if (subtaskCount == statusCounts[TaskStatus.DONE.ordinal()]) {
+                status = TaskStatus.DONE;
+            } else {
+                status = TaskStatus.IN_PROGRESS;
+            }
+            return new EpicAggregates(subtaskCount, status, startTime, endTime, duration);
+        }
+    }
+
+    // Метод для вычисления статуса и времени эпиков за один проход по подзадачам, как после загрузки снимка
+    private static IntHashMap<EpicAggregates> aggregate(InMemoryTaskManager board) {
+        IntHashMap<EpicAccumulator> accumulators = new IntHashMap<>();
+        for (Epic epic : board.epics.values()) {
+            accumulators.put(epic.getId(), new EpicAccumulator());
+        }
+        for (Subtask subtask : board.subtasks.values()) {
+            EpicAccumulator accumulator = accumulators.get(subtask.getEpicId());
+            if (accumulator != null) {
+                accumulator.add(subtask);
+            }
+        }
+        IntHashMap<EpicAggregates> aggregates = new IntHashMap<>();
+        for (int epicId : accumulators.keys()) {
+            aggregates.put(epicId, accumulators.get(epicId).toAggregates());
+        }
+        return aggregates;
+    }
+
+    // Метод для чтения индекса снимка snapshotFile, возвращает null, если индекса нет или он не подходит к снимку
+    static DerivedIndex read(File indexFile, File snapshotFile) {
+        if (!indexFile.exists()) {
+            return null;
+        }
+        try {
+            byte[] bytes = Files.readAllBytes(indexFile.toPath());
+            if (bytes.length < Integer.BYTES) {
+                return null;
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            CRC32 crc = new CRC32();
+            crc.update(bytes, 0, bytes.length - Integer.BYTES);
+            if ((int) crc.getValue() != buffer.getInt(bytes.length - Integer.BYTES)) {
+                return null;
+            }
+            if (buffer.getInt() != MAGIC || buffer.get() != VERSION) {
+                return null;
+            }
+            long snapshotLength = buffer.getLong();
+            int snapshotChecksum = buffer.getInt();
+            if (snapshotLength != snapshotFile.length() || snapshotChecksum != (int) checksumOf(snapshotFile)) {
+                return null; // Снимок заменён после записи индекса
+            }
+
+            int[] orderedIds = new int[buffer.getInt()];
+            for (int i = 0; i < orderedIds.length; i++) {
+                orderedIds[i] = buffer.getInt();
+            }
+            int epicCount = buffer.getInt();
+            IntHashMap<EpicAggregates> epicAggregates = new IntHashMap<>();
+            for (int i = 0; i < epicCount; i++) {
+                int epicId = buffer.getInt();
+                int subtaskCount = buffer.getInt();
+                TaskStatus status = STATUSES[buffer.get()];
+                LocalDateTime startTime = readDateTime(buffer);
+                LocalDateTime endTime = readDateTime(buffer);
+                Duration duration = Duration.ofSeconds(buffer.getLong(), buffer.getInt());
+                epicAggregates.put(epicId, new EpicAggregates(subtaskCount, status, startTime, endTime, duration));
+            }
+            return new DerivedIndex(orderedIds, epicAggregates);
+        } catch (IOException | BufferUnderflowException | IndexOutOfBoundsException
+                 | DateTimeException e) {
+            return null; // Повреждённый индекс не мешает загрузке, данные вычисляются заново
+        }
+    }
+
+    // Метод для заполнения индекса времени доски в сохранённом порядке; scheduledCount — число загруженных задач
+    // и подзадач со временем начала. Возвращает false, если порядок не подходит к загруженным задачам
+    boolean adoptTimeOrder(InMemoryTaskManager board, int scheduledCount) {
+        if (orderedIds.length != scheduledCount) {
+            return false;
+        }
+        List<Task> ordered = new ArrayList<>(orderedIds.length);
+        for (int id : orderedIds) {
+            Task task = board.tasks.get(id);
+            if (task == null) {
+                task = board.subtasks.get(id);
+            }
+            if (task == null) {
+                return false;
+            }
+            ordered.add(task);
+        }
+        return board.timeIndex.addAllOrdered(ordered);
+    }
+
+    // Метод для установки сохранённых статуса и времени эпика; false, если сохранённых данных для него нет
+    // или число подзадач не совпадает
+    boolean adoptEpicAggregates(Epic epic) {
+        EpicAggregates aggregates = epicAggregates.get(epic.getId());
+        if (aggregates == null || aggregates.subtaskCount() != epic.getSubtaskCount()) {
+            return false;
+        }
+        epic.adoptAggregates(aggregates.status(), aggregates.startTime(), aggregates.endTime(),
+                aggregates.duration());
+        return true;
+    }
+
+    static long checksumOf(byte[] bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        return crc.getValue();
+    }
+
+    static long checksumOf(File file) throws IOException {
+        CRC32 crc = new CRC32();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                crc.update(buffer);
+                buffer.clear();
+            }
+        }
+        return crc.getValue();
+    }
+
+    private static void writeDateTime(DataOutputStream out, LocalDateTime dateTime) throws IOException {
+        out.writeBoolean(dateTime != null);
+        if (dateTime != null) {
+            out.writeLong(dateTime.toEpochSecond(ZoneOffset.UTC));
+            out.writeInt(dateTime.getNano());
+        }
+    }
+
+    private static LocalDateTime readDateTime(ByteBuffer buffer) {
+        if (buffer.get() == 0) {
+            return null;
+        }
+        return LocalDateTime.ofEpochSecond(buffer.getLong(), buffer.getInt(), ZoneOffset.UTC);
+    }
+}
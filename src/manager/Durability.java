@@ -0,0 +1,11 @@
+package manager;
+
+// Уровень надёжности сохранения FileBackedTaskManager
+public enum Durability {
+    // Каждое изменение записывается на диск до возврата из метода
+    SYNC,
+    // Изменения накапливаются и записываются пачкой раз в N миллисекунд или после N изменений
+    GROUP_COMMIT,
+    // Изменения записываются фоновым потоком сразу, как только он освободится
+    ASYNC
+}
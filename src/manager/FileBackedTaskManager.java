@@ -1,72 +1,392 @@
 package manager;
 
 import model.Epic;
+import model.IntHashSet;
 import model.Subtask;
 import model.Task;
 import model.TaskStatus;
 import java.io.*;
 import java.nio.file.Files;
-import java.util.ArrayList;
-import java.util.List;
 import java.time.Duration;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
-public class FileBackedTaskManager extends InMemoryTaskManager {
+public class FileBackedTaskManager extends InMemoryTaskManager implements AutoCloseable {
+
+    // Границы группы изменений по умолчанию для режима GROUP_COMMIT
+    private static final int DEFAULT_GROUP_COMMIT_MUTATIONS = 256;
+    private static final long DEFAULT_GROUP_COMMIT_DELAY_MILLIS = 50;
+
+    // Типы записей журнала
+    static final String UPSERT = "UPSERT";
+    static final String DELETE = "DELETE";
 
     private final File file;
+    private final PersistenceMode mode;
+    private final Durability durability;
+    private final HistoryLog historyLog;
+    private final PersistenceStrategy persistence; // Запись изменений в выбранном режиме сохранения
+    private BodyStore bodyStore; // Только при ленивой загрузке
+    private LinkedHashMap<Integer, Task> bodyCache; // Задачи с прочитанным текстом, в порядке обращений
+
+    // Состояние фоновой записи, защищено монитором менеджера
+    private Thread writerThread;
+    private int pendingMutations;
+    private long firstPendingNanos;
+    private long mutationSeq; // Номер последнего изменения
+    private long flushedSeq; // Номер последнего изменения, записанного на диск
+    private long flushRequestedSeq;
+    private int groupCommitMutations = DEFAULT_GROUP_COMMIT_MUTATIONS;
+    private long groupCommitDelayMillis = DEFAULT_GROUP_COMMIT_DELAY_MILLIS;
+    private boolean isClosed;
+    private boolean isDerivedIndexPersisted; // Рядом со снимком сохраняется индекс времени и статусов эпиков
+    private SnapshotFormat snapshotFormat = SnapshotFormat.CSV;
+    private RuntimeException writerFailure;
 
     // Конструктор, принимающий файл для авто сохранения
     public FileBackedTaskManager(File file) {
+        this(file, PersistenceMode.SNAPSHOT, Durability.SYNC, true);
+    }
+
+    // Конструктор только заполняет поля: пустой снимок, отслеживание изменений и фоновые потоки
+    // включаются в open, когда менеджер уже создан целиком
+    private FileBackedTaskManager(File file, PersistenceMode mode, Durability durability, boolean isNewBoard) {
         this.file = file;
+        this.mode = mode;
+        this.durability = durability;
+        this.historyLog = new HistoryLog(historyFileOf(file), isNewBoard);
+        this.persistence = switch (mode) {
+            case SNAPSHOT -> new SnapshotPersistence(file);
+            case JOURNAL -> new JournalPersistence(file);
+            case SEGMENTED -> new SegmentedPersistence(file);
+            case PAGED -> new PagedPersistence(file);
+        };
     }
 
-    // Метод для сохранения текущего состояния менеджера в файл
-    protected void save() {
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(file))) {
-            // Записываем заголовок
-            writer.write("id,type,name,status,description,duration,startTime,epic");
-            writer.newLine();
-
-            // Сохраняем задачи
-            for (Task task : tasks.values()) {
-                writer.write(taskToString(task));
-                writer.newLine();
+    // Создание новой доски с выбором способа сохранения
+    public static FileBackedTaskManager create(File file, PersistenceMode mode) {
+        return create(file, mode, Durability.SYNC);
+    }
+
+    // Создание новой доски с выбором способа сохранения и уровня надёжности
+    public static FileBackedTaskManager create(File file, PersistenceMode mode, Durability durability) {
+        FileBackedTaskManager manager = new FileBackedTaskManager(file, mode, durability, true);
+        manager.open(true);
+        return manager;
+    }
+
+    // Метод для подготовки созданного менеджера к работе: запуск отслеживания изменений, запись пустой доски
+    // и запуск фоновых потоков. Для загружаемой доски вызывается до чтения файлов
+    private void open(boolean isNewBoard) {
+        if (mode == PersistenceMode.SEGMENTED || mode == PersistenceMode.PAGED) {
+            enableDirtyTracking();
+        }
+        if (isNewBoard && mode != PersistenceMode.SNAPSHOT) {
+            save(); // Новая доска начинается с пустого снимка и пустого журнала, пустого каталога сегментов
+            // или пустого файла страниц
+        }
+        persistence.start(this);
+        if (durability != Durability.SYNC) {
+            writerThread = new Thread(this::runWriter, "task-manager-writer-" + file.getName());
+            writerThread.setDaemon(true);
+            writerThread.start();
+        }
+    }
+
+    // Файл журнала хранится рядом с файлом-снимком
+    static File journalFileOf(File file) {
+        return new File(file.getPath() + ".journal");
+    }
+
+    // Журнал, который сворачивается в снимок фоновой контрольной точкой
+    static File previousJournalFileOf(File file) {
+        return new File(file.getPath() + ".journal.prev");
+    }
+
+    // История просмотров хранится отдельно, чтобы чтение задачи не перезаписывало снимок
+    private static File historyFileOf(File file) {
+        return new File(file.getPath() + ".history");
+    }
+
+    public PersistenceMode getPersistenceMode() {
+        return mode;
+    }
+
+    public Durability getDurability() {
+        return durability;
+    }
+
+    public synchronized SnapshotFormat getSnapshotFormat() {
+        return snapshotFormat;
+    }
+
+    // Метод для выбора формата снимка, доска сразу перезаписывается в новом формате
+    public synchronized void setSnapshotFormat(SnapshotFormat snapshotFormat) {
+        if (this.snapshotFormat == snapshotFormat) {
+            return;
+        }
+        if (mode == PersistenceMode.SEGMENTED) {
+            throw new IllegalStateException("Сегменты всегда хранятся в CSV.");
+        }
+        if (mode == PersistenceMode.PAGED) {
+            throw new IllegalStateException("Страницы хранят задачи в своём формате, снимка нет.");
+        }
+        this.snapshotFormat = snapshotFormat;
+        persistSnapshot();
+    }
+
+    public synchronized boolean isDerivedIndexPersisted() {
+        return isDerivedIndexPersisted;
+    }
+
+    // Метод для включения сохранения порядка задач по времени и статуса и времени эпиков рядом со снимком,
+    // чтобы загрузка не вычисляла их заново. Загруженная доска с индексом продолжает его сохранять.
+    // В режиме JOURNAL индекс подходит только к снимку без журнала, поэтому снимок с индексом пишется при закрытии
+    public synchronized void setDerivedIndexPersisted(boolean isDerivedIndexPersisted) {
+        if (this.isDerivedIndexPersisted == isDerivedIndexPersisted) {
+            return;
+        }
+        if (storageOf(mode) != PersistenceMode.SNAPSHOT) {
+            throw new IllegalStateException("Индекс сохраняется только вместе со снимком.");
+        }
+        this.isDerivedIndexPersisted = isDerivedIndexPersisted;
+        if (isDerivedIndexPersisted) {
+            persistSnapshot();
+            return;
+        }
+        try {
+            Files.deleteIfExists(DerivedIndex.fileOf(file).toPath());
+        } catch (IOException e) {
+            throw new ManagerSaveException("Ошибка при удалении индекса: " + e.getMessage());
+        }
+    }
+
+    // Метод для преобразования сохранённой доски в другой формат снимка.
+    // Журнал исходной доски применяется, в target записываются снимок и история, журнал target удаляется
+    public static void convert(File source, File target, SnapshotFormat targetFormat) {
+        // Исходная доска загружается в своём режиме хранения, чтобы загрузка не перенесла её в другой
+        try (FileBackedTaskManager manager = loadFromFile(source, storageOf(source))) {
+            try (OutputStream out = new BufferedOutputStream(new FileOutputStream(target))) {
+                SnapshotPersistence.writeSnapshot(out, manager, targetFormat);
+                Files.deleteIfExists(journalFileOf(target).toPath());
+                Files.deleteIfExists(previousJournalFileOf(target).toPath());
+            } catch (IOException e) {
+                throw new ManagerSaveException("Ошибка при преобразовании файла: " + e.getMessage());
             }
+            HistoryLog targetHistory = new HistoryLog(historyFileOf(target), true);
+            targetHistory.rewrite(manager.getHistory());
+            targetHistory.close();
+        }
+    }
+
+    // Метод для настройки размера группы изменений в режиме GROUP_COMMIT
+    public synchronized void setGroupCommitLimits(int maxMutations, long maxDelayMillis) {
+        if (maxMutations <= 0 || maxDelayMillis < 0) {
+            throw new IllegalArgumentException("Размер группы должен быть положительным, а задержка неотрицательной.");
+        }
+        groupCommitMutations = maxMutations;
+        groupCommitDelayMillis = maxDelayMillis;
+        notifyAll();
+    }
 
-            // Сохраняем эпики
-            for (Epic epic : epics.values()) {
-                writer.write(taskToString(epic));
-                writer.newLine();
+    // Метод для ожидания записи на диск всех изменений, сделанных до его вызова
+    public synchronized void flush() {
+        if (writerThread == null) {
+            return; // В режиме SYNC все изменения уже записаны
+        }
+        long targetSeq = mutationSeq;
+        flushRequestedSeq = Math.max(flushRequestedSeq, targetSeq);
+        notifyAll();
+        while (flushedSeq < targetSeq && writerFailure == null) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ManagerSaveException("Ожидание записи на диск прервано.");
             }
+        }
+        if (writerFailure != null) {
+            throw new ManagerSaveException("Ошибка фоновой записи: " + writerFailure.getMessage());
+        }
+    }
 
-            // Сохраняем подзадачи
-            for (Subtask subtask : subtasks.values()) {
-                writer.write(taskToString(subtask));
-                writer.newLine();
+    // Метод для записи оставшихся изменений и остановки фонового потока
+    @Override
+    public void close() {
+        Thread thread;
+        synchronized (this) {
+            isClosed = true;
+            notifyAll();
+            thread = writerThread;
+        }
+        if (thread != null) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
             }
+        }
+        persistence.stop();
+        synchronized (this) {
+            try {
+                persistence.close(this, writerFailure == null);
+            } finally {
+                historyLog.close();
+                if (bodyStore != null) {
+                    bodyStore.close();
+                }
+            }
+            if (writerFailure != null) {
+                throw new ManagerSaveException("Ошибка фоновой записи: " + writerFailure.getMessage());
+            }
+        }
+    }
+
+    // Метод для сохранения текущего состояния менеджера в файл
+    protected void save() {
+        persistence.rewrite(this);
+    }
+
+    // Метод для записи снимка своих задач; при ленивой загрузке тексты задач читаются из файла текстов
+    void writeOwnSnapshot(OutputStream out) throws IOException {
+        SnapshotPersistence.writeSnapshot(out, withBodies(tasks.values()), epics.values(), withBodies(subtasks.values()), snapshotFormat);
+    }
+
+    // Методы фиксации изменений: журнал истории обновляется сразу, а изменение задач передаётся способу
+    // сохранения выбранного режима и записывается сразу или фоновым потоком в зависимости от надёжности
+    private void persistUpsert(Task task) {
+        persistence.recordUpsert(this, task);
+        commit();
+    }
+
+    private void persistDelete(List<Integer> ids) {
+        for (int id : ids) {
+            historyLog.appendRemoval(id);
+        }
+        persistence.recordDelete(this, ids);
+        commit();
+    }
+
+    // Пакет изменений фиксируется одной записью
+    private void persistBatch(List<Task> upserted, IntHashSet deletedIds) {
+        deletedIds.forEach(historyLog::appendRemoval);
+        persistence.recordBatch(this, upserted, deletedIds);
+        commit();
+    }
+
+    private void persistClear(String type) {
+        historyLog.rewrite(historyManager.getHistory());
+        persistence.recordClear(this, type);
+        commit();
+    }
 
-            // Пустая строка для разделения задач и истории
-            writer.newLine();
+    private void persistSnapshot() {
+        persistence.requestRewrite();
+        commit();
+    }
+
+    private void commit() {
+        if (durability == Durability.SYNC) {
+            persistence.writeNow(this);
+            return;
+        }
+        registerPendingMutation();
+    }
+
+    private void registerPendingMutation() {
+        if (pendingMutations++ == 0) {
+            firstPendingNanos = System.nanoTime();
+        }
+        mutationSeq++;
+        if (durability == Durability.ASYNC || pendingMutations >= groupCommitMutations) {
+            notifyAll();
+        }
+    }
+
+    // Просмотр меняет только историю, поэтому фиксируется в журнале истории без записи снимка
+    private void persistView(Task task) {
+        if (task == null) {
+            return;
+        }
+        historyLog.appendView(task.getId());
+        if (historyLog.needsCompaction()) {
+            historyLog.rewrite(historyManager.getHistory());
+        }
+    }
+
+    // Цикл фонового потока: забирает накопленные изменения под монитором, а пишет на диск без него
+    private void runWriter() {
+        try {
+            while (true) {
+                long batchSeq;
+                PersistenceStrategy.PendingWrite pendingWrite;
+                synchronized (this) {
+                    while (!isFlushDue()) {
+                        if (isClosed && pendingMutations == 0) {
+                            return;
+                        }
+                        waitForPendingMutations();
+                    }
+                    batchSeq = mutationSeq;
+                    pendingWrite = persistence.prepare(this);
+                    pendingMutations = 0;
+                }
 
-            // Сохраняем историю
-            String history = historyToString(historyManager);
-            if (!history.isEmpty()) {
-                writer.write(history);
+                pendingWrite.write();
+
+                synchronized (this) {
+                    flushedSeq = batchSeq;
+                    notifyAll();
+                }
             }
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                writerFailure = e;
+                notifyAll();
+            }
+        }
+    }
 
-        } catch (IOException e) {
-            throw new ManagerSaveException("Ошибка при сохранении в файл: " + e.getMessage());
+    private boolean isFlushDue() {
+        if (pendingMutations == 0) {
+            return false;
+        }
+        if (durability == Durability.ASYNC || isClosed || flushRequestedSeq > flushedSeq
+                || pendingMutations >= groupCommitMutations) {
+            return true;
+        }
+        return System.nanoTime() - firstPendingNanos >= TimeUnit.MILLISECONDS.toNanos(groupCommitDelayMillis);
+    }
+
+    private void waitForPendingMutations() {
+        try {
+            if (pendingMutations > 0 && durability == Durability.GROUP_COMMIT) {
+                long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - firstPendingNanos);
+                wait(Math.max(1, groupCommitDelayMillis - elapsedMillis));
+            } else {
+                wait();
+            }
+        } catch (InterruptedException e) {
+            isClosed = true; // Прерванный поток дописывает накопленное и завершается
         }
     }
 
     // Метод для преобразования задачи в строку CSV
-    private String taskToString(Task task) {
+    static String taskToString(Task task) {
         StringBuilder taskStringBuilder = new StringBuilder();
         taskStringBuilder.append(task.getId()).append(",");
         taskStringBuilder.append(getType(task)).append(",");
-        taskStringBuilder.append(task.getName()).append(",");
+        appendEscaped(taskStringBuilder, task.getName()).append(",");
         taskStringBuilder.append(task.getStatus()).append(",");
-        taskStringBuilder.append(task.getDescription()).append(",");
+        appendEscaped(taskStringBuilder, task.getDescription()).append(",");
         taskStringBuilder.append(task.getDuration() != null ? task.getDuration().toMinutes() : "null").append(",");
         taskStringBuilder.append(task.getStartTime() != null ? task.getStartTime().toString() : "null");
 
@@ -77,8 +397,26 @@ public class FileBackedTaskManager extends InMemoryTaskManager {
         return taskStringBuilder.toString();
     }
 
+    // Метод для экранирования текста: запятые и переводы строки в названии и описании не должны ломать разбор CSV
+    static StringBuilder appendEscaped(StringBuilder builder, String value) {
+        if (value == null) {
+            return builder.append("null");
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char current = value.charAt(i);
+            switch (current) {
+                case ',' -> builder.append("\\,");
+                case '\\' -> builder.append("\\\\");
+                case '\n' -> builder.append("\\n");
+                case '\r' -> builder.append("\\r");
+                default -> builder.append(current);
+            }
+        }
+        return builder;
+    }
+
     // Метод для определения типа задачи
-    private String getType(Task task) {
+    private static String getType(Task task) {
         if (task instanceof Epic) {
             return "EPIC";
         } else if (task instanceof Subtask) {
@@ -88,271 +426,542 @@ public class FileBackedTaskManager extends InMemoryTaskManager {
         }
     }
 
-    // Статический метод для создания задачи из строки CSV
-    private static Task fromString(String value) {
-        String[] fields = value.split(",");
-        int id = Integer.parseInt(fields[0]);
-        String type = fields[1];
-        String name = fields[2];
-        TaskStatus status = TaskStatus.valueOf(fields[3]);
-        String description = fields[4];
-        Duration duration = fields[5].equals("null") ? null : Duration.ofMinutes(Long.parseLong(fields[5]));
-        LocalDateTime startTime = fields[6].equals("null") ? null : LocalDateTime.parse(fields[6]);
-
-        switch (type) {
-            case "TASK":
-                Task task = new Task(name, description, status);
-                task.setId(id);
-                task.setDuration(duration);
-                task.setStartTime(startTime);
-                return task;
-            case "EPIC":
-                Epic epic = new Epic(name, description);
-                epic.setId(id);
-                epic.setStatus(status);
-                return epic;
-            case "SUBTASK":
-                int epicId = Integer.parseInt(fields[7]); // Epic ID находится на 8 позиции
-                Subtask subtask = new Subtask(name, description, status);
-                subtask.setId(id);
-                subtask.setDuration(duration);
-                subtask.setStartTime(startTime);
-                subtask.setEpicId(epicId);
-                return subtask;
-            default:
-                throw new IllegalArgumentException("Неизвестный тип задачи: " + type);
-        }
-    }
-
     // Статический метод для загрузки менеджера из файла
     public static FileBackedTaskManager loadFromFile(File file) {
-        FileBackedTaskManager manager = new FileBackedTaskManager(file);
-        try {
-            List<String> lines = Files.readAllLines(file.toPath());
+        // Если файл — манифест сегментов или файл страниц, доска велась в режиме SEGMENTED или PAGED,
+        // если рядом со снимком есть журнал (в режиме JOURNAL он есть всегда, пусть и пустой) — в режиме JOURNAL
+        PersistenceMode mode = storageOf(file);
+        if (mode == PersistenceMode.SNAPSHOT
+                && (journalFileOf(file).exists() || previousJournalFileOf(file).exists())) {
+            mode = PersistenceMode.JOURNAL;
+        }
+        return loadFromFile(file, mode);
+    }
 
-            if (lines.isEmpty()) {
-                throw new ManagerSaveException("Файл пустой.");
-            }
+    // Способ хранения сохранённой доски: SEGMENTED, PAGED или SNAPSHOT (снимок, возможно, с журналом)
+    private static PersistenceMode storageOf(File file) {
+        if (SegmentStore.isManifest(file)) {
+            return PersistenceMode.SEGMENTED;
+        }
+        if (PageStore.isPageFile(file)) {
+            return PersistenceMode.PAGED;
+        }
+        return PersistenceMode.SNAPSHOT;
+    }
 
-            int maxId = 0;
-            int lineIndex = 1; // Пропускаем заголовок
+    // Способ хранения доски в режиме mode: режимы SNAPSHOT и JOURNAL хранят доску снимком
+    private static PersistenceMode storageOf(PersistenceMode mode) {
+        return mode == PersistenceMode.JOURNAL ? PersistenceMode.SNAPSHOT : mode;
+    }
 
-            // Читаем задачи до пустой строки
-            while (lineIndex < lines.size() && !lines.get(lineIndex).isEmpty()) {
-                try {
-                    Task task = fromString(lines.get(lineIndex));
-                    int id = task.getId();
-                    if (id > maxId) {
-                        maxId = id;
-                    }
-                    if (task instanceof Epic) {
-                        manager.epics.put(id, (Epic) task);
-                    } else if (task instanceof Subtask) {
-                        manager.subtasks.put(id, (Subtask) task);
-                    } else {
-                        manager.tasks.put(id, task);
-                    }
-                } catch (Exception e) {
-                    throw new ManagerSaveException("Ошибка при обработке строки: " + lines.get(lineIndex));
-                }
-                lineIndex++;
-            }
+    // Загрузка менеджера из снимка и хвоста журнала с выбором дальнейшего способа сохранения
+    public static FileBackedTaskManager loadFromFile(File file, PersistenceMode mode) {
+        return loadFromFile(file, mode, Durability.SYNC);
+    }
 
-            // Добавляем все задачи в TreeSet для отсортированного хранения
-            manager.prioritizedTasks.addAll(manager.tasks.values());
-            manager.prioritizedTasks.addAll(manager.subtasks.values());
+    // Загрузка менеджера с выбором способа сохранения и уровня надёжности. Если доска хранилась иначе,
+    // она сразу переносится в новый способ хранения, а прежние файлы удаляются
+    public static FileBackedTaskManager loadFromFile(File file, PersistenceMode mode, Durability durability) {
+        return loadFromFile(file, mode, durability, 0);
+    }
 
-            // Обновляем счетчик ID
-            manager.idCounter = maxId;
+    // Ленивая загрузка большой доски: в памяти остаются ID, тип, статус, связь с эпиком и время задач, а названия
+    // и описания задач и подзадач переносятся в файл текстов и читаются из него при обращении. Прочитанные задачи
+    // хранятся в кэше на cacheCapacity задач, поэтому память зависит от числа используемых задач, а не от размера
+    // доски. Эпики загружаются полностью. Доска ведётся журналом: изменения не требуют перечитывать тексты
+    public static FileBackedTaskManager loadLazily(File file, int cacheCapacity) {
+        if (cacheCapacity <= 0) {
+            throw new IllegalArgumentException("Размер кэша должен быть положительным.");
+        }
+        if (storageOf(file) != PersistenceMode.SNAPSHOT) {
+            throw new IllegalArgumentException("Ленивая загрузка доски, хранящейся сегментами или страницами, "
+                    + "не поддерживается.");
+        }
+        return loadFromFile(file, PersistenceMode.JOURNAL, Durability.SYNC, cacheCapacity);
+    }
 
-            // Восстанавливаем связи между эпиками и подзадачами
-            for (Subtask subtask : manager.subtasks.values()) {
-                Epic epic = manager.epics.get(subtask.getEpicId());
-                if (epic != null) {
-                    epic.addSubtaskId(subtask.getId());
+    private static FileBackedTaskManager loadFromFile(File file, PersistenceMode mode, Durability durability,
+                                                      int bodyCacheCapacity) {
+        FileBackedTaskManager manager = new FileBackedTaskManager(file, mode, durability, false);
+        manager.open(false);
+        if (bodyCacheCapacity > 0) {
+            manager.enableLazyBodies(bodyCacheCapacity);
+        }
+        LinkedHashSet<Integer> historyIds = new LinkedHashSet<>();
+        boolean isJournalTorn;
+        PersistenceMode sourceStorage = storageOf(file);
+        SegmentStore sourceSegments = null;
+        DerivedIndex derivedIndex = null;
+        try {
+            if (sourceStorage == PersistenceMode.PAGED) {
+                // Открытое хранилище остаётся у менеджера, если доска и дальше ведётся страницами
+                PageStore sourcePages = new PageStore(file, PageStore.DEFAULT_POOL_PAGES);
+                try {
+                    int maxId = sourcePages.load(manager);
+                    manager.idCounter = Math.max(Math.max(maxId, sourcePages.getIdCounter()), manager.idCounter);
+                } catch (RuntimeException e) {
+                    sourcePages.close();
+                    throw e;
                 }
-            }
-
-            // Пересчитываем поля времени эпиков
-            for (Epic epic : manager.epics.values()) {
-                List<Subtask> epicSubtasks = new ArrayList<>();
-                for (int subtaskId : epic.getSubtaskIds()) {
-                    if (manager.subtasks.containsKey(subtaskId)) {
-                        epicSubtasks.add(manager.subtasks.get(subtaskId));
-                    }
+                if (manager.persistence instanceof PagedPersistence paged) {
+                    paged.adopt(sourcePages);
+                } else {
+                    sourcePages.close(); // Файл доски будет заменён снимком или манифестом
+                }
+                isJournalTorn = false; // Прерванная запись страниц уже восстановлена по журналу страниц
+                HistoryLog.replay(historyFileOf(file), historyIds);
+            } else if (sourceStorage == PersistenceMode.SEGMENTED) {
+                sourceSegments = manager.persistence instanceof SegmentedPersistence segmented
+                        ? segmented.getStore() : new SegmentStore(file);
+                int maxId = sourceSegments.load(manager);
+                isJournalTorn = maxId < 0;
+                HistoryLog.replay(historyFileOf(file), historyIds);
+                manager.idCounter = Math.max(maxId, manager.idCounter);
+            } else {
+                JournalPersistence.JournalReplay journal = loadSnapshotAndJournals(manager, historyIds);
+                isJournalTorn = journal.isTorn();
+                if (manager.persistence instanceof JournalPersistence journalPersistence) {
+                    journalPersistence.adoptJournal(journal.records());
+                }
+                // Индекс подходит, только если журнал ничего не изменил после снимка
+                File indexFile = DerivedIndex.fileOf(file);
+                manager.isDerivedIndexPersisted = indexFile.exists() && storageOf(mode) == PersistenceMode.SNAPSHOT;
+                if (!isJournalTorn && journal.records() == 0 && !previousJournalFileOf(file).exists()) {
+                    derivedIndex = DerivedIndex.read(indexFile, file);
                 }
-                epic.updateTimes(epicSubtasks); // Пересчёт времени эпика
             }
+        } catch (IOException e) {
+            throw new ManagerSaveException("Ошибка при загрузке из файла: " + e.getMessage());
+        }
 
-            // Обновляем статусы эпиков
-            for (Epic epic : manager.epics.values()) {
-                manager.updateEpicStatus(epic);
+        manager.restoreDerivedState(derivedIndex);
+
+        // Восстанавливаем историю
+        for (Integer id : historyIds) {
+            if (manager.tasks.containsKey(id)) {
+                manager.historyManager.add(manager.tasks.get(id));
+            } else if (manager.epics.containsKey(id)) {
+                manager.historyManager.add(manager.epics.get(id));
+            } else if (manager.subtasks.containsKey(id)) {
+                manager.historyManager.add(manager.subtasks.get(id));
             }
+        }
 
-            // Пропускаем пустую строку, если она существует
-            do {
-                lineIndex++;
-            } while (lineIndex < lines.size() && lines.get(lineIndex).isEmpty());
-
-            // Читаем и восстанавливаем историю
-            if (lineIndex < lines.size()) {
-                String historyLine = lines.get(lineIndex);
-                List<Integer> historyIds = historyFromString(historyLine);
-                for (Integer id : historyIds) {
-                    if (manager.tasks.containsKey(id)) {
-                        manager.historyManager.add(manager.tasks.get(id));
-                    } else if (manager.epics.containsKey(id)) {
-                        manager.historyManager.add(manager.epics.get(id));
-                    } else if (manager.subtasks.containsKey(id)) {
-                        manager.historyManager.add(manager.subtasks.get(id));
-                    }
+        // История из строки снимка старого формата переносится в журнал истории, заодно журнал сжимается
+        manager.historyLog.rewrite(manager.historyManager.getHistory());
+
+        if (sourceStorage != storageOf(mode)) {
+            // Новое хранилище становится действующим при замене файла доски (снимком, манифестом или файлом
+            // страниц), после этого прежние файлы удаляются. У файла страниц прежних файлов рядом нет
+            manager.save();
+            try {
+                if (sourceStorage == PersistenceMode.SEGMENTED) {
+                    sourceSegments.delete();
+                } else if (sourceStorage == PersistenceMode.SNAPSHOT) {
+                    Files.deleteIfExists(journalFileOf(file).toPath());
+                    Files.deleteIfExists(previousJournalFileOf(file).toPath());
+                    Files.deleteIfExists(DerivedIndex.fileOf(file).toPath());
                 }
+            } catch (IOException e) {
+                throw new ManagerSaveException("Ошибка при удалении прежних файлов: " + e.getMessage());
             }
-        } catch (IOException e) {
-            throw new ManagerSaveException("Ошибка при загрузке из файла: " + e.getMessage());
+        } else if (isJournalTorn) {
+            // Недописанную последнюю запись нельзя продолжать, поэтому сразу делаем новый снимок
+            manager.save();
+        } else if (mode == PersistenceMode.SNAPSHOT
+                && (journalFileOf(file).exists() || previousJournalFileOf(file).exists())) {
+            // Доска из режима JOURNAL сворачивает журнал в снимок, иначе она загрузилась бы снова как JOURNAL
+            manager.save();
+        } else if (previousJournalFileOf(file).exists()
+                && manager.persistence instanceof JournalPersistence journalPersistence) {
+            journalPersistence.resumeCheckpoint();
         }
+        manager.drainDirtyIds(); // Загруженные задачи уже на диске
         return manager;
     }
 
-
-    // Метод для преобразования истории в строку CSV
-    private static String historyToString(HistoryManager manager) {
-        List<Task> history = manager.getHistory();
-        StringBuilder historyStringBuilder = new StringBuilder();
-        for (Task task : history) {
-            historyStringBuilder.append(task.getId()).append(",");
+    // Метод для загрузки снимка и журналов. Возвращает число записей текущего журнала и признак оборванной
+    // записи в любом из журналов
+    private static JournalPersistence.JournalReplay loadSnapshotAndJournals(FileBackedTaskManager manager,
+                                                                           LinkedHashSet<Integer> historyIds)
+            throws IOException {
+        File file = manager.file;
+        // Доска продолжает сохраняться в своём формате
+        if (BinarySnapshot.isBinary(file)) {
+            manager.snapshotFormat = SnapshotFormat.BINARY;
+        } else if (CompressedSnapshot.isCompressed(file)) {
+            manager.snapshotFormat = SnapshotFormat.CSV_DEFLATE;
         }
-        if (!historyStringBuilder.isEmpty()) {
-            historyStringBuilder.deleteCharAt(historyStringBuilder.length() - 1); // Удаляем последнюю запятую
+        int maxId = SnapshotPersistence.readSnapshot(file, manager, historyIds);
+        if (manager.bodyStore != null) {
+            manager.bodyStore.snapshotLoaded();
         }
-        return historyStringBuilder.toString();
+
+        // Применяем журнал, ещё не свёрнутый в контрольную точку, журнал после неё и журнал истории
+        JournalPersistence.JournalReplay previousJournal =
+                JournalPersistence.replayJournal(previousJournalFileOf(file), manager, historyIds);
+        JournalPersistence.JournalReplay journal =
+                JournalPersistence.replayJournal(journalFileOf(file), manager, historyIds);
+        HistoryLog.replay(historyFileOf(file), historyIds);
+
+        // Обновляем счетчик ID
+        manager.idCounter = Math.max(maxId, manager.idCounter);
+        return new JournalPersistence.JournalReplay(journal.records(), previousJournal.isTorn() || journal.isTorn());
+    }
+
+    // Файл текстов для ленивой загрузки хранится рядом с файлом-снимком
+    private static File bodyFileOf(File file) {
+        return new File(file.getPath() + ".bodies");
     }
 
-    // Метод для восстановления истории из строки CSV
-    private static List<Integer> historyFromString(String value) {
-        String[] ids = value.split(",");
-        List<Integer> historyIds = new ArrayList<>();
-        for (String id : ids) {
-            historyIds.add(Integer.parseInt(id));
+    private void enableLazyBodies(int cacheCapacity) {
+        bodyStore = new BodyStore(bodyFileOf(file), file);
+        bodyCache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Task> eldest) {
+                return size() > cacheCapacity;
+            }
+        };
+    }
+
+    // Метод для размещения загруженной задачи в нужной коллекции
+    static void putLoadedTask(InMemoryTaskManager board, Task task) {
+        if (board instanceof FileBackedTaskManager manager && manager.bodyStore != null) {
+            manager.bodyStore.detach(task); // Текст задачи уходит в файл текстов, в памяти остаётся заготовка
+        }
+        int id = task.getId();
+        if (task instanceof Epic) {
+            board.epics.put(id, (Epic) task);
+        } else if (task instanceof Subtask) {
+            board.subtasks.put(id, (Subtask) task);
+        } else {
+            board.tasks.put(id, task);
         }
-        return historyIds;
     }
 
-    // Переопределяем методы, изменяющие состояние, чтобы добавить вызов save()
-    @Override
-    public boolean createTask(Task task) {
-        // Проверяем, пересекается ли задача с уже существующей
-        if (isOverlappingWithExistingTasks(task)) {
-            throw new IllegalArgumentException("Task overlaps with an existing task.");
+    // Метод для восстановления связей и вычисляемых полей после загрузки. Данные из сохранённого индекса
+    // принимаются после проверки, а то, что не прошло проверку, вычисляется заново
+    private void restoreDerivedState(DerivedIndex derivedIndex) {
+        // Индекс времени заполняется в сохранённом порядке или строится целиком по отсортированному списку
+        int scheduledCount = 0;
+        for (Task task : tasks.values()) {
+            scheduledCount += task.getStartTime() != null ? 1 : 0;
+        }
+        for (Subtask subtask : subtasks.values()) {
+            scheduledCount += subtask.getStartTime() != null ? 1 : 0;
+        }
+        if (derivedIndex == null || !derivedIndex.adoptTimeOrder(this, scheduledCount)) {
+            List<Task> scheduled = new ArrayList<>(tasks.size() + subtasks.size());
+            scheduled.addAll(tasks.values());
+            scheduled.addAll(subtasks.values());
+            timeIndex.addAll(scheduled);
+        }
+
+        // Восстанавливаем связи между эпиками и подзадачами
+        for (Subtask subtask : subtasks.values()) {
+            Epic epic = epics.get(subtask.getEpicId());
+            if (epic != null) {
+                epic.addSubtaskId(subtask.getId());
+            }
         }
 
+        // Статус и время эпика вычисляются за один проход по его подзадачам. Эпики независимы,
+        // а хранилище подзадач здесь только читается, поэтому эпики пересчитываются параллельно
+        new ArrayList<>(epics.values()).parallelStream().forEach(epic -> {
+            if (derivedIndex == null || !derivedIndex.adoptEpicAggregates(epic)) {
+                updateEpicStatus(epic);
+            }
+        });
+
+        rebuildSecondaryIndex();
+    }
+
+    // Переопределяем методы, изменяющие состояние, чтобы зафиксировать изменение на диске.
+    // Методы синхронизированы, чтобы фоновый поток записи видел согласованное состояние
+    @Override
+    public synchronized boolean createTask(Task task) {
+        // Пересечение по времени проверяется в super.createTask, исключение содержит ID пересекающейся задачи
         boolean result = super.createTask(task);
 
         if (result) {
-            save();
+            persistUpsert(task);
         }
 
         return result;
     }
 
     @Override
-    public boolean updateTask(Task task) {
+    public synchronized boolean updateTask(Task task) {
         boolean result = super.updateTask(task);
-        save();
+        if (result) {
+            persistUpsert(task);
+        }
         return result;
     }
 
     @Override
-    public void deleteTaskById(int id) {
-        super.deleteTaskById(id);
-        save();
+    public synchronized void deleteTaskById(int id) {
+        if (tasks.containsKey(id)) {
+            super.deleteTaskById(id);
+            persistDelete(List.of(id));
+        }
     }
 
     @Override
-    public void deleteAllTasks() {
+    public synchronized void deleteAllTasks() {
         super.deleteAllTasks();
-        save();
+        persistClear("TASK");
     }
 
     @Override
-    public boolean createEpic(Epic epic) {
+    public synchronized boolean createEpic(Epic epic) {
         boolean result = super.createEpic(epic);
-        save();
+        if (result) {
+            persistUpsert(epic);
+        }
         return result;
     }
 
     @Override
-    public boolean updateEpic(Epic epic) {
+    public synchronized boolean updateEpic(Epic epic) {
         boolean result = super.updateEpic(epic);
-        save();
+        if (result) {
+            persistUpsert(epic);
+        }
         return result;
     }
 
     @Override
-    public void deleteEpicById(int id) {
-        super.deleteEpicById(id);
-        save();
+    public synchronized void deleteEpicById(int id) {
+        Epic epic = epics.get(id);
+        if (epic != null) {
+            // Вместе с эпиком удаляются его подзадачи, их ID нужно запомнить до удаления
+            List<Integer> deletedIds = new ArrayList<>(epic.getSubtaskIds());
+            deletedIds.add(id);
+            super.deleteEpicById(id);
+            persistDelete(deletedIds);
+        }
     }
 
     @Override
-    public void deleteAllEpics() {
+    public synchronized void deleteAllEpics() {
         super.deleteAllEpics();
-        save();
+        persistClear("EPIC");
     }
 
     @Override
-    public boolean createSubtask(Subtask subtask, Epic epic) {
+    public synchronized boolean createSubtask(Subtask subtask, Epic epic) {
         boolean result = super.createSubtask(subtask, epic);
-        save();
+        if (result) {
+            persistUpsert(subtask);
+        }
         return result;
     }
 
     @Override
-    public boolean updateSubtask(Subtask subtask) {
+    public synchronized boolean updateSubtask(Subtask subtask) {
         boolean result = super.updateSubtask(subtask);
-        save();
+        if (result) {
+            persistUpsert(subtask);
+        }
         return result;
     }
 
     @Override
-    public boolean updateSubtaskEpic(Subtask subtask, Epic newEpic) {
+    public synchronized boolean updateSubtaskEpic(Subtask subtask, Epic newEpic) {
         boolean result = super.updateSubtaskEpic(subtask, newEpic);
-        save();
+        if (result && bodyStore != null && subtasks.containsKey(subtask.getId())
+                && subtasks.get(subtask.getId()) != subtask) {
+            // При ленивой загрузке передаётся копия с текстом, она заменяет заготовку с прежним эпиком
+            subtasks.put(subtask.getId(), subtask);
+            timeIndex.remove(subtask.getId());
+            timeIndex.add(subtask);
+        }
+        if (result) {
+            persistUpsert(subtask);
+        }
         return result;
     }
 
 
     @Override
-    public void deleteSubtaskById(int id) {
-        super.deleteSubtaskById(id);
-        save();
+    public synchronized void deleteSubtaskById(int id) {
+        if (subtasks.containsKey(id)) {
+            super.deleteSubtaskById(id);
+            persistDelete(List.of(id));
+        }
     }
 
     @Override
-    public void deleteAllSubtasks() {
+    public synchronized void applyBatch(TaskBatch batch) {
+        BatchPlan plan = planBatch(batch);
+        applyPlan(plan);
+        List<Task> upserted = plan.getUpserted();
+        if (!upserted.isEmpty() || !plan.getDeletedIds().isEmpty()) {
+            persistBatch(upserted, plan.getDeletedIds());
+        }
+    }
+
+    @Override
+    public synchronized void deleteAllSubtasks() {
         super.deleteAllSubtasks();
-        save();
+        persistClear("SUBTASK");
     }
 
     // Переопределяем методы получения задач для обновления истории и сохранения
     @Override
-    public Task getTaskById(int id) {
+    public synchronized Task getTaskById(int id) {
         Task task = super.getTaskById(id);
-        save();
-        return task;
+        persistView(task);
+        return withCachedBody(task);
     }
 
     @Override
-    public Epic getEpicById(int id) {
+    public synchronized Epic getEpicById(int id) {
         Epic epic = super.getEpicById(id);
-        save();
+        persistView(epic);
         return epic;
     }
 
     @Override
-    public Subtask getSubtaskById(int id) {
+    public synchronized Subtask getSubtaskById(int id) {
         Subtask subtask = super.getSubtaskById(id);
-        save();
-        return subtask;
+        persistView(subtask);
+        return withCachedBody(subtask);
+    }
+
+    // При ленивой загрузке списки задач возвращаются с текстами, а в памяти остаются заготовки
+    @Override
+    public synchronized List<Task> getAllTasks() {
+        return withCachedBodies(super.getAllTasks());
+    }
+
+    @Override
+    public synchronized List<Subtask> getAllSubtasks() {
+        return withCachedBodies(super.getAllSubtasks());
+    }
+
+    @Override
+    public synchronized List<Subtask> getSubtasksOfEpic(int epicId) {
+        return withCachedBodies(super.getSubtasksOfEpic(epicId));
+    }
+
+    @Override
+    public synchronized List<Task> getHistory() {
+        return withCachedBodies(super.getHistory());
+    }
+
+    @Override
+    public synchronized List<Task> getPrioritizedTasks() {
+        return withCachedBodies(super.getPrioritizedTasks());
+    }
+
+    @Override
+    public synchronized List<Task> getTasksBetween(LocalDateTime from, LocalDateTime to) {
+        return withCachedBodies(super.getTasksBetween(from, to));
+    }
+
+    @Override
+    public synchronized List<Task> getNextTasks(LocalDateTime from, int limit) {
+        return withCachedBodies(super.getNextTasks(from, limit));
+    }
+
+    @Override
+    public synchronized List<Task> getTasksByStatus(TaskStatus status) {
+        return withCachedBodies(super.getTasksByStatus(status));
+    }
+
+    @Override
+    public synchronized List<Task> getTasksStartingOn(LocalDate day) {
+        return withCachedBodies(super.getTasksStartingOn(day));
+    }
+
+    @Override
+    public synchronized List<Task> getTasksByStatusBetween(TaskStatus status, LocalDateTime from, LocalDateTime to) {
+        return withCachedBodies(super.getTasksByStatusBetween(status, from, to));
+    }
+
+    @Override
+    public synchronized LocalDateTime findFreeSlot(LocalDateTime from, Duration duration, LocalTime workStart,
+                                                   LocalTime workEnd) {
+        return super.findFreeSlot(from, duration, workStart, workEnd);
+    }
+
+    @Override
+    public synchronized SchedulePlan planUnscheduledTasks(LocalDateTime from, LocalDateTime horizon,
+                                                          LocalTime workStart, LocalTime workEnd) {
+        return super.planUnscheduledTasks(from, horizon, workStart, workEnd);
+    }
+
+    // Расставленные задачи фиксируются одной записью, как пакет изменений
+    @Override
+    public synchronized SchedulePlan scheduleUnscheduledTasks(LocalDateTime from, LocalDateTime horizon,
+                                                              LocalTime workStart, LocalTime workEnd) {
+        SchedulePlan plan = planUnscheduledTasks(from, horizon, workStart, workEnd);
+        if (bodyStore != null) {
+            attachBodies(plan.getStartTimes().keySet());
+        }
+        List<Task> scheduled = applySchedule(plan);
+        if (!scheduled.isEmpty()) {
+            persistBatch(scheduled, new IntHashSet());
+        }
+        return plan;
+    }
+
+    // Метод для замены заготовок задачами с текстом перед изменением на месте: иначе в запись изменения
+    // попала бы заготовка без текста. Копия из кэша больше не нужна, задача с текстом теперь в хранилище
+    private void attachBodies(Collection<Integer> ids) {
+        for (int id : ids) {
+            Task task = tasks.get(id);
+            if (task != null && BodyStore.isDetached(task)) {
+                tasks.put(id, withBodyFromCache(task));
+            }
+            Subtask subtask = subtasks.get(id);
+            if (subtask != null && BodyStore.isDetached(subtask)) {
+                subtasks.put(id, (Subtask) withBodyFromCache(subtask));
+            }
+        }
+    }
+
+    private Task withBodyFromCache(Task task) {
+        Task cached = bodyCache.remove(task.getId());
+        return cached != null ? cached : bodyStore.materialize(task);
+    }
+
+    // Метод для замены заготовок в списке задачами с текстом через кэш. Списки менеджера бывают неизменяемыми
+    // копиями, поэтому заготовки заменяются в новом списке; без ленивой загрузки список возвращается как есть
+    private <T extends Task> List<T> withCachedBodies(List<T> stored) {
+        if (bodyStore == null) {
+            return stored;
+        }
+        List<T> withBodies = new ArrayList<>(stored);
+        withBodies.replaceAll(this::withCachedBody);
+        return withBodies;
+    }
+
+    // Метод для получения задачи с текстом: заготовка заменяется копией из кэша или прочитанной из файла текстов.
+    // Текст переносится в файл только при загрузке, поэтому копия в кэше верна для любой заготовки с тем же ID
+    @SuppressWarnings("unchecked")
+    private <T extends Task> T withCachedBody(T task) {
+        if (task == null || !BodyStore.isDetached(task)) {
+            return task;
+        }
+        return (T) bodyCache.computeIfAbsent(task.getId(), id -> bodyStore.materialize(task));
+    }
+
+    // Метод для записи снимка: задачи читаются из файла текстов без кэша, чтобы не вытеснять используемые задачи
+    @SuppressWarnings("unchecked")
+    private <T extends Task> Iterable<T> withBodies(Collection<T> stored) {
+        if (bodyStore == null) {
+            return stored;
+        }
+        return () -> stored.stream()
+                .map(task -> BodyStore.isDetached(task) ? (T) bodyStore.materialize(task) : task)
+                .iterator();
+    }
+
+    // Число задач с текстом в кэше ленивой загрузки
+    synchronized int cachedBodyCount() {
+        return bodyCache == null ? 0 : bodyCache.size();
     }
 }
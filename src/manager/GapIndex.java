@@ -0,0 +1,213 @@
+package manager;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Индекс свободных промежутков между соседними задачами индекса времени.
+// Промежуток хранится под временем начала задачи перед ним и занимает [начало, конец): от окончания этой задачи
+// до начала следующей. Узлы образуют декартово дерево (treap) по ключу, в каждом узле хранится наибольшая длина
+// промежутка в поддереве, поэтому первый промежуток не короче заданного после заданного ключа ищется за O(log n).
+class GapIndex {
+
+    private static final class Node {
+        final LocalDateTime key;
+        final int priority;
+        LocalDateTime start;
+        LocalDateTime end;
+        long length; // Длина в наносекундах, слишком длинные промежутки ограничены Long.MAX_VALUE
+        long maxLength;
+        Node left;
+        Node right;
+
+        Node(LocalDateTime key, int priority, LocalDateTime start, LocalDateTime end) {
+            this.key = key;
+            this.priority = priority;
+            this.start = start;
+            this.end = end;
+            this.length = nanosBetween(start, end);
+            this.maxLength = length;
+        }
+    }
+
+    private Node root;
+
+    // Метод для добавления или замены промежутка [start, end) под ключом key
+    void put(LocalDateTime key, LocalDateTime start, LocalDateTime end) {
+        Node node = find(key);
+        if (node != null) {
+            // Ключ на месте, поэтому меняются только длина и максимумы на пути от корня
+            node.start = start;
+            node.end = end;
+            node.length = nanosBetween(start, end);
+            updatePath(root, key);
+            return;
+        }
+        root = insert(root, new Node(key, ThreadLocalRandom.current().nextInt(), start, end));
+    }
+
+    void remove(LocalDateTime key) {
+        root = remove(root, key);
+    }
+
+    void clear() {
+        root = null;
+    }
+
+    // Метод для построения индекса по промежуткам, уже упорядоченным по ключу, за O(n).
+    // Дерево строится сбалансированным, приоритеты убывают с глубиной, чтобы выполнялось свойство кучи
+    void build(LocalDateTime[] keys, LocalDateTime[] starts, LocalDateTime[] ends, int count) {
+        root = build(keys, starts, ends, 0, count, Integer.MAX_VALUE);
+    }
+
+    private static Node build(LocalDateTime[] keys, LocalDateTime[] starts, LocalDateTime[] ends, int from, int to,
+                              int priority) {
+        if (from >= to) {
+            return null;
+        }
+        int middle = (from + to) >>> 1;
+        Node node = new Node(keys[middle], priority, starts[middle], ends[middle]);
+        node.left = build(keys, starts, ends, from, middle, priority - 1);
+        node.right = build(keys, starts, ends, middle + 1, to, priority - 1);
+        update(node);
+        return node;
+    }
+
+    // Метод для поиска начала первого промежутка с ключом не меньше key и длиной не меньше duration;
+    // null, если такого промежутка нет
+    LocalDateTime findFirst(LocalDateTime key, Duration duration) {
+        Node node = findFirst(root, key, toNanos(duration));
+        return node != null ? node.start : null;
+    }
+
+    // Промежутки с ключом меньше key пропускаются по пути поиска ключа, а в поддеревьях справа от него
+    // спуск идёт только туда, где максимум длины достаточен
+    private static Node findFirst(Node node, LocalDateTime key, long length) {
+        if (node == null || node.maxLength < length) {
+            return null;
+        }
+        if (node.key.isBefore(key)) {
+            return findFirst(node.right, key, length);
+        }
+        Node found = findFirst(node.left, key, length);
+        if (found != null) {
+            return found;
+        }
+        if (node.length >= length) {
+            return node;
+        }
+        return findFirst(node.right, key, length);
+    }
+
+    private Node find(LocalDateTime key) {
+        Node node = root;
+        while (node != null) {
+            int comparison = key.compareTo(node.key);
+            if (comparison == 0) {
+                return node;
+            }
+            node = comparison < 0 ? node.left : node.right;
+        }
+        return null;
+    }
+
+    private static void updatePath(Node node, LocalDateTime key) {
+        if (node == null) {
+            return;
+        }
+        int comparison = key.compareTo(node.key);
+        if (comparison != 0) {
+            updatePath(comparison < 0 ? node.left : node.right, key);
+        }
+        update(node);
+    }
+
+    private static Node insert(Node node, Node inserted) {
+        if (node == null) {
+            return inserted;
+        }
+        if (inserted.key.isBefore(node.key)) {
+            node.left = insert(node.left, inserted);
+            if (node.left.priority > node.priority) {
+                node = rotateRight(node);
+            }
+        } else {
+            node.right = insert(node.right, inserted);
+            if (node.right.priority > node.priority) {
+                node = rotateLeft(node);
+            }
+        }
+        update(node);
+        return node;
+    }
+
+    private static Node remove(Node node, LocalDateTime key) {
+        if (node == null) {
+            return null;
+        }
+        int comparison = key.compareTo(node.key);
+        if (comparison < 0) {
+            node.left = remove(node.left, key);
+        } else if (comparison > 0) {
+            node.right = remove(node.right, key);
+        } else {
+            return merge(node.left, node.right);
+        }
+        update(node);
+        return node;
+    }
+
+    // Метод для слияния поддеревьев, все ключи left меньше ключей right
+    private static Node merge(Node left, Node right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        if (left.priority > right.priority) {
+            left.right = merge(left.right, right);
+            update(left);
+            return left;
+        }
+        right.left = merge(left, right.left);
+        update(right);
+        return right;
+    }
+
+    private static Node rotateRight(Node node) {
+        Node left = node.left;
+        node.left = left.right;
+        left.right = node;
+        update(node);
+        return left;
+    }
+
+    private static Node rotateLeft(Node node) {
+        Node right = node.right;
+        node.right = right.left;
+        right.left = node;
+        update(node);
+        return right;
+    }
+
+    private static void update(Node node) {
+        long maxLength = node.length;
+        if (node.left != null) {
+            maxLength = Math.max(maxLength, node.left.maxLength);
+        }
+        if (node.right != null) {
+            maxLength = Math.max(maxLength, node.right.maxLength);
+        }
+        node.maxLength = maxLength;
+    }
+
+    // Длина промежутка; у пересекающихся задач (возможны в загруженных данных) промежуток нулевой
+    private static long nanosBetween(LocalDateTime start, LocalDateTime end) {
+        return end.isAfter(start) ? toNanos(Duration.between(start, end)) : 0;
+    }
+
+    static long toNanos(Duration duration) {
+        return duration.getSeconds() >= Long.MAX_VALUE / 1_000_000_000L ? Long.MAX_VALUE : duration.toNanos();
+    }
+}
@@ -0,0 +1,127 @@
+package manager;
+
+import model.Task;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+// Журнал истории просмотров. Каждая запись — 4 байта: ID просмотренной задачи или -ID удалённой.
+// Файл отображён в память, поэтому дозапись не требует системных вызовов, нулевой ID означает конец журнала.
+class HistoryLog {
+
+    private static final int INITIAL_SIZE = 64 * 1024;
+    private static final int MIN_RECORDS_BEFORE_COMPACTION = 4096;
+
+    private final FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int records;
+    private int compactionThreshold = MIN_RECORDS_BEFORE_COMPACTION;
+
+    // Открывает журнал для дозаписи, при isNew существующий журнал очищается
+    HistoryLog(File file, boolean isNew) {
+        try {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            if (isNew) {
+                channel.truncate(0);
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(INITIAL_SIZE, channel.size()));
+            // Пропускаем уже записанные записи
+            while (buffer.remaining() >= Integer.BYTES && buffer.getInt(buffer.position()) != 0) {
+                buffer.position(buffer.position() + Integer.BYTES);
+                records++;
+            }
+        } catch (IOException e) {
+            throw new ManagerSaveException("Ошибка при открытии журнала истории: " + e.getMessage());
+        }
+    }
+
+    // Метод для применения журнала к списку ID истории, загруженному из снимка
+    static void replay(File file, LinkedHashSet<Integer> historyIds) {
+        if (!file.exists()) {
+            return;
+        }
+        try {
+            ByteBuffer content = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+            while (content.remaining() >= Integer.BYTES) {
+                int record = content.getInt();
+                if (record == 0) {
+                    break;
+                }
+                Integer id = Math.abs(record);
+                historyIds.remove(id);
+                if (record > 0) {
+                    historyIds.add(id);
+                }
+            }
+        } catch (IOException e) {
+            throw new ManagerSaveException("Ошибка при чтении журнала истории: " + e.getMessage());
+        }
+    }
+
+    void appendView(int id) {
+        append(id);
+    }
+
+    void appendRemoval(int id) {
+        append(-id);
+    }
+
+    private void append(int record) {
+        if (record == 0) {
+            return; // Нулевой ID нельзя отличить от конца журнала
+        }
+        if (buffer.remaining() < Integer.BYTES) {
+            grow();
+        }
+        buffer.putInt(record);
+        records++;
+    }
+
+    // Метод для увеличения отображённой области вдвое
+    private void grow() {
+        try {
+            int position = buffer.position();
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) buffer.capacity() * 2);
+            buffer.position(position);
+        } catch (IOException e) {
+            throw new ManagerSaveException("Ошибка при расширении журнала истории: " + e.getMessage());
+        }
+    }
+
+    // Журнал пора сжать, если записей стало вдвое больше, чем задач в истории после прошлого сжатия
+    boolean needsCompaction() {
+        return records >= compactionThreshold;
+    }
+
+    // Метод для перезаписи журнала текущей историей
+    void rewrite(List<Task> history) {
+        int oldPosition = buffer.position();
+        buffer.position(0);
+        records = 0;
+        for (Task task : history) {
+            append(task.getId());
+        }
+        // Затираем хвост старых записей, чтобы он не был прочитан при загрузке
+        for (int position = buffer.position(); position < oldPosition; position += Integer.BYTES) {
+            buffer.putInt(position, 0);
+        }
+        compactionThreshold = Math.max(MIN_RECORDS_BEFORE_COMPACTION, history.size() * 2);
+    }
+
+    void close() {
+        try {
+            buffer.force();
+            channel.close();
+        } catch (IOException e) {
+            throw new ManagerSaveException("Ошибка при закрытии журнала истории: " + e.getMessage());
+        }
+    }
+}
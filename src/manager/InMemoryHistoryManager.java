@@ -1,26 +1,46 @@
 package manager;
 
+import model.IntIntHashMap;
 import model.Task;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
-import java.util.HashMap;
 
+// История просмотров на заранее выделенных массивах: двусвязный список хранится в массивах prev/next
+// по номерам ячеек, ID отображается на ячейку в IntIntHashMap. Освобождённые ячейки связываются через next
+// в список свободных, поэтому add и remove в установившемся режиме ничего не выделяют.
+// При заданной ёмкости самая давняя запись вытесняется, когда история заполнена; без ёмкости массивы
+// растут удвоением. getHistory возвращает неизменяемую копию, которая строится заново только после изменения
+// истории; повторный просмотр последней задачи историю не меняет
 public class InMemoryHistoryManager implements HistoryManager {
-    private final Map<Integer, Node<Task>> nodeMap = new HashMap<>();
-    private Node<Task> head;
-    private Node<Task> tail;
-
-    private static class Node<T> {
-        T data;
-        Node<T> prev;
-        Node<T> next;
-
-        Node(Node<T> prev, T data, Node<T> next) {
-            this.prev = prev;
-            this.data = data;
-            this.next = next;
+    private static final int NONE = -1;
+    private static final int INITIAL_SLOTS = 16;
+
+    private final int capacity; // 0 — история не ограничена
+    private final IntIntHashMap slotsById;
+    private Task[] tasks;
+    private int[] prev;
+    private int[] next;
+    private int head = NONE;
+    private int tail = NONE;
+    private int freeHead = NONE;
+    private int used; // Ячейки с номерами от used ещё ни разу не занимались
+    private int size;
+    private long version;
+    private final SnapshotCache<Task> historySnapshot = new SnapshotCache<>(this::copyHistory);
+
+    public InMemoryHistoryManager() {
+        this.capacity = 0;
+        this.slotsById = new IntIntHashMap(INITIAL_SLOTS, NONE);
+        allocate(INITIAL_SLOTS);
+    }
+
+    public InMemoryHistoryManager(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Ёмкость истории должна быть положительной.");
         }
+        this.capacity = capacity;
+        this.slotsById = new IntIntHashMap(capacity, NONE);
+        allocate(capacity);
     }
 
     @Override
@@ -28,52 +48,116 @@ public class InMemoryHistoryManager implements HistoryManager {
         if (task == null) {
             return;
         }
-        remove(task.getId());
-        linkLast(task);
+        int slot = slotsById.get(task.getId());
+        if (slot == tail && slot != NONE && tasks[slot] == task) {
+            return;
+        }
+        version++;
+        if (slot != NONE) {
+            tasks[slot] = task;
+            if (slot != tail) {
+                unlink(slot);
+                linkLast(slot);
+            }
+            return;
+        }
+        if (capacity > 0 && size == capacity) {
+            evictOldest();
+        }
+        slot = takeFreeSlot();
+        tasks[slot] = task;
+        linkLast(slot);
+        slotsById.put(task.getId(), slot);
+        size++;
     }
 
-    private void linkLast(Task task) {
-        final Node<Task> oldTail = tail;
-        final Node<Task> newNode = new Node<>(oldTail, task, null);
-        tail = newNode;
-        if (oldTail != null) {
-            oldTail.next = newNode;
-        } else {
-            head = newNode;
+    @Override
+    public void remove(int id) {
+        int slot = slotsById.remove(id);
+        if (slot != NONE) {
+            release(slot);
+            version++;
         }
-        nodeMap.put(task.getId(), newNode);
     }
 
     @Override
-    public void remove(int id) {
-        Node<Task> node = nodeMap.remove(id);
-        if (node != null) {
-            removeNode(node);
+    public List<Task> getHistory() {
+        return historySnapshot.get(version);
+    }
+
+    private List<Task> copyHistory() {
+        List<Task> history = new ArrayList<>(size);
+        for (int slot = head; slot != NONE; slot = next[slot]) {
+            history.add(tasks[slot]);
         }
+        return history;
     }
 
-    private void removeNode(Node<Task> node) {
-        if (node.prev != null) {
-            node.prev.next = node.next;
-        } else {
-            head = node.next;
+    private void evictOldest() {
+        int oldest = head;
+        slotsById.remove(tasks[oldest].getId());
+        release(oldest);
+    }
+
+    private void release(int slot) {
+        unlink(slot);
+        tasks[slot] = null;
+        next[slot] = freeHead;
+        freeHead = slot;
+        size--;
+    }
+
+    private int takeFreeSlot() {
+        if (freeHead != NONE) {
+            int slot = freeHead;
+            freeHead = next[slot];
+            return slot;
+        }
+        if (used == tasks.length) {
+            grow();
         }
+        return used++;
+    }
 
-        if (node.next != null) {
-            node.next.prev = node.prev;
+    private void linkLast(int slot) {
+        prev[slot] = tail;
+        next[slot] = NONE;
+        if (tail != NONE) {
+            next[tail] = slot;
         } else {
-            tail = node.prev;
+            head = slot;
         }
+        tail = slot;
     }
 
-    @Override
-    public List<Task> getHistory() {
-        List<Task> history = new ArrayList<>();
-        Node<Task> current = head;
-        while (current != null) {
-            history.add(current.data);
-            current = current.next;
+    private void unlink(int slot) {
+        if (prev[slot] != NONE) {
+            next[prev[slot]] = next[slot];
+        } else {
+            head = next[slot];
         }
-        return history;
+
+        if (next[slot] != NONE) {
+            prev[next[slot]] = prev[slot];
+        } else {
+            tail = prev[slot];
+        }
+    }
+
+    private void allocate(int slots) {
+        tasks = new Task[slots];
+        prev = new int[slots];
+        next = new int[slots];
+    }
+
+    // Только для истории без ограничения: у ограниченной все ячейки выделены сразу
+    private void grow() {
+        Task[] oldTasks = tasks;
+        int[] oldPrev = prev;
+        int[] oldNext = next;
+        allocate(oldTasks.length * 2);
+        System.arraycopy(oldTasks, 0, tasks, 0, oldTasks.length);
+        System.arraycopy(oldPrev, 0, prev, 0, oldPrev.length);
+        System.arraycopy(oldNext, 0, next, 0, oldNext.length);
     }
 }
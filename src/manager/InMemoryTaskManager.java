@@ -5,49 +5,106 @@ import model.Subtask;
 import model.Task;
 import model.TaskStatus;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.TreeSet;
-import java.util.Comparator;
+import model.IntHashMap;
+import model.IntHashSet;
 
 import java.time.Duration;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
 
 public class InMemoryTaskManager implements TaskManager {
 
-    protected final HashMap<Integer, Task> tasks = new HashMap<>();
-    protected final HashMap<Integer, Subtask> subtasks = new HashMap<>();
-    protected final HashMap<Integer, Epic> epics = new HashMap<>();
+    // Хранилища с ключами int без упаковки ID
+    protected final IntHashMap<Task> tasks = new IntHashMap<>();
+    protected final IntHashMap<Subtask> subtasks = new IntHashMap<>();
+    protected final IntHashMap<Epic> epics = new IntHashMap<>();
     protected int idCounter = 0;
 
-    protected final HistoryManager historyManager = Managers.getDefaultHistory();
+    protected final HistoryManager historyManager;
+
+    // Индекс запланированных задач и подзадач по времени (задачи с startTime==null в него не попадают)
+    protected final TimeIndex timeIndex = new TimeIndex();
+    private final TaskStorage storage = new Storage();
+
+    // Индексы задач и подзадач по статусу и дню начала, обновляются в markDirty
+    private final SecondaryIndex secondaryIndex = new SecondaryIndex(this::getStoredTask);
+
+    // ID задач, созданных, изменённых или удалённых после последнего сохранения. Набор ведётся, только если
+    // отслеживание включено наследником. Эпики при изменении подзадач не отмечаются: их статус и время
+    // вычисляются по подзадачам при загрузке
+    private IntHashSet dirtyIds;
 
-    // TreeSet для хранения задач по приоритету(сначала с ближайшим startTime, задачи с starTime==null в конце)
-    protected final TreeSet<Task> prioritizedTasks = new TreeSet<>(
-            Comparator.comparing(
-                    Task::getStartTime,
-                    Comparator.nullsLast(Comparator.naturalOrder())
-            )
-    );
+    // Версия данных: увеличивается при любом изменении хранилищ или индекса времени. Списки getAll* и
+    // getPrioritizedTasks отдаются неизменяемыми копиями, которые перестраиваются только после изменения
+    private long version;
+    private final SnapshotCache<Task> allTasks = new SnapshotCache<>(() -> new ArrayList<>(tasks.values()));
+    private final SnapshotCache<Epic> allEpics = new SnapshotCache<>(() -> new ArrayList<>(epics.values()));
+    private final SnapshotCache<Subtask> allSubtasks = new SnapshotCache<>(() -> new ArrayList<>(subtasks.values()));
+    // Задачи с startTime == null в индекс не попадают
+    private final SnapshotCache<Task> prioritizedTasks = new SnapshotCache<>(timeIndex::getTasks);
+
+    public InMemoryTaskManager() {
+        this(Managers.getDefaultHistory());
+    }
+
+    public InMemoryTaskManager(HistoryManager historyManager) {
+        this.historyManager = historyManager;
+    }
 
     private int generateId() {
         return ++idCounter;
     }
 
+    protected void enableDirtyTracking() {
+        if (dirtyIds == null) {
+            dirtyIds = new IntHashSet();
+        }
+    }
+
+    // Все изменения хранилищ проходят через markDirty после изменения хранилища, поэтому здесь же
+    // увеличивается версия данных и переиндексируется задача
+    protected void markDirty(int id) {
+        version++;
+        Task task = getStoredTask(id);
+        if (task != null) {
+            secondaryIndex.add(task);
+        } else {
+            secondaryIndex.remove(id);
+        }
+        if (dirtyIds != null) {
+            dirtyIds.add(id);
+        }
+    }
+
+    // Метод для получения накопленных изменённых ID с очисткой набора. Удалённую задачу можно отличить
+    // по отсутствию её ID в хранилищах
+    protected int[] drainDirtyIds() {
+        if (dirtyIds == null || dirtyIds.isEmpty()) {
+            return new int[0];
+        }
+        int[] ids = dirtyIds.toArray();
+        dirtyIds.clear();
+        return ids;
+    }
+
     // Методы для задач (Task)
     @Override
     public List<Task> getAllTasks() {
-        return new ArrayList<>(tasks.values());
+        return allTasks.get(version);
     }
 
     @Override
     public void deleteAllTasks() {
-        for (int id : tasks.keySet()) {
+        int[] ids = tasks.keys();
+        tasks.clear();
+        for (int id : ids) {
             historyManager.remove(id);
-            prioritizedTasks.remove(tasks.get(id)); // Удаление из TreeSet
+            timeIndex.remove(id);
+            markDirty(id);
         }
-        tasks.clear();
     }
 
     @Override
@@ -64,14 +121,15 @@ public class InMemoryTaskManager implements TaskManager {
         if (tasks.containsKey(task.getId())) {
             return false; // ID уже существует
         }
-        Task conflictingTask = findConflictingTask(task);
+        Task conflictingTask = timeIndex.findConflict(task, null);
         if (conflictingTask != null) {
             throw new IllegalArgumentException("Задача пересекается с уже существующей. ID пересекающейся задачи: " + conflictingTask.getId());
         }
         int id = generateId();
         task.setId(id);
         tasks.put(id, task);
-        prioritizedTasks.add(task);
+        timeIndex.add(task);
+        markDirty(id);
         return true;
     }
 
@@ -81,14 +139,16 @@ public class InMemoryTaskManager implements TaskManager {
             return false;
         }
 
-        prioritizedTasks.remove(tasks.get(task.getId())); // Удаляем старую версию
-        Task conflictingTask = findConflictingTask(task);
+        // Старая версия задачи не считается пересечением
+        Task conflictingTask = timeIndex.findConflict(task, task.getId());
         if (conflictingTask != null) {
             throw new IllegalArgumentException("Задача пересекается с другой задачей. ID пересекающейся задачи: " + conflictingTask.getId());
         }
 
         tasks.put(task.getId(), task);
-        prioritizedTasks.add(task);
+        timeIndex.remove(task.getId()); // Удаляем старую версию
+        timeIndex.add(task);
+        markDirty(task.getId());
         return true;
     }
 
@@ -96,8 +156,9 @@ public class InMemoryTaskManager implements TaskManager {
     public void deleteTaskById(int id) {
         Task task = tasks.remove(id);
         if (task != null) {
-            prioritizedTasks.remove(task); // Удаление из TreeSet
+            timeIndex.remove(id);
             historyManager.remove(id);
+            markDirty(id);
         }
     }
 
@@ -110,12 +171,13 @@ public class InMemoryTaskManager implements TaskManager {
         int id = generateId();
         epic.setId(id);
         epics.put(id, epic);
+        markDirty(id);
         return true;
     }
 
     @Override
     public List<Epic> getAllEpics() {
-        return new ArrayList<>(epics.values());
+        return allEpics.get(version);
     }
 
     @Override
@@ -134,19 +196,25 @@ public class InMemoryTaskManager implements TaskManager {
         }
         epics.put(epic.getId(), epic);
         updateEpicStatus(epic);
+        markDirty(epic.getId());
         return true;
     }
 
     @Override
     public void deleteAllEpics() {
-        for (int id : epics.keySet()) {
+        int[] epicIds = epics.keys();
+        int[] subtaskIds = subtasks.keys();
+        epics.clear();
+        subtasks.clear();
+        for (int id : epicIds) {
             historyManager.remove(id);
+            markDirty(id);
         }
-        for (int id : subtasks.keySet()) {
+        for (int id : subtaskIds) {
             historyManager.remove(id);
+            timeIndex.remove(id);
+            markDirty(id);
         }
-        epics.clear();
-        subtasks.clear();
     }
 
     @Override
@@ -154,11 +222,14 @@ public class InMemoryTaskManager implements TaskManager {
         Epic epic = epics.remove(id);
         if (epic != null) {
             historyManager.remove(id);
+            markDirty(id);
 
-            for (int subtaskId : epic.getSubtaskIds()) {
+            epic.forEachSubtaskId(subtaskId -> {
                 subtasks.remove(subtaskId);
                 historyManager.remove(subtaskId);
-            }
+                timeIndex.remove(subtaskId);
+                markDirty(subtaskId);
+            });
         }
     }
 
@@ -173,25 +244,27 @@ public class InMemoryTaskManager implements TaskManager {
             return false;
         }
 
-        Task conflictingTask = findConflictingTask(subtask);
+        Task conflictingTask = timeIndex.findConflict(subtask, null);
         if (conflictingTask != null) {
             throw new IllegalArgumentException("Подзадача пересекается с другой задачей. ID пересекающейся задачи: " + conflictingTask.getId());
         }
 
+        prepareEpicForSubtaskChange(epic);
         int id = generateId();
         subtask.setId(id);
         subtask.setEpicId(epic.getId());
         subtasks.put(id, subtask);
-        prioritizedTasks.add(subtask);
+        timeIndex.add(subtask);
         epic.addSubtaskId(id);
-        updateEpicStatus(epic);
+        epic.applySubtask(subtask);
+        markDirty(id);
         return true;
     }
 
 
     @Override
     public List<Subtask> getAllSubtasks() {
-        return new ArrayList<>(subtasks.values());
+        return allSubtasks.get(version);
     }
 
     @Override
@@ -209,20 +282,22 @@ public class InMemoryTaskManager implements TaskManager {
             return false;
         }
 
-        prioritizedTasks.remove(subtasks.get(subtask.getId())); // Удаляем старую версию
-        Task conflictingTask = findConflictingTask(subtask);
+        // Старая версия подзадачи не считается пересечением
+        Task conflictingTask = timeIndex.findConflict(subtask, subtask.getId());
         if (conflictingTask != null) {
             throw new IllegalArgumentException("Подзадача пересекается с другой задачей. ID пересекающейся задачи: " + conflictingTask.getId());
         }
 
-
         subtasks.put(subtask.getId(), subtask);
-        prioritizedTasks.add(subtask);
+        timeIndex.remove(subtask.getId()); // Удаляем старую версию
+        timeIndex.add(subtask);
 
         Epic epic = epics.get(subtask.getEpicId());
         if (epic != null) {
-            updateEpicStatus(epic);
+            prepareEpicForSubtaskChange(epic);
+            epic.applySubtask(subtask);
         }
+        markDirty(subtask.getId());
         return true;
     }
 
@@ -236,40 +311,48 @@ public class InMemoryTaskManager implements TaskManager {
         }
 
         Epic oldEpic = epics.get(subtask.getEpicId());
+        prepareEpicForSubtaskChange(newEpic);
         if (oldEpic != null) {
-            oldEpic.removeSubtaskId(subtask.getId());
-            updateEpicStatus(oldEpic);
+            prepareEpicForSubtaskChange(oldEpic);
+            oldEpic.removeSubtaskId(subtask.getId()); // Вклад подзадачи вычитается из старого эпика
         }
 
         subtask.setEpicId(newEpic.getId());
         newEpic.addSubtaskId(subtask.getId());
-        updateEpicStatus(newEpic);
+        newEpic.applySubtask(subtask);
+        markDirty(subtask.getId());
 
         return true;
     }
 
     @Override
     public void deleteAllSubtasks() {
-        for (int id : subtasks.keySet()) {
+        int[] ids = subtasks.keys();
+        subtasks.clear();
+        for (int id : ids) {
             historyManager.remove(id);
+            timeIndex.remove(id);
+            markDirty(id);
         }
-        subtasks.clear();
         for (Epic epic : epics.values()) {
-            epic.getSubtaskIds().clear();
-            updateEpicStatus(epic);
+            epic.clearSubtasks();
         }
     }
 
     @Override
     public void deleteSubtaskById(int id) {
-        Subtask subtask = subtasks.remove(id);
+        Subtask subtask = subtasks.get(id);
         if (subtask != null) {
-            prioritizedTasks.remove(subtask); // Удаление из TreeSet
-            historyManager.remove(id);
             Epic epic = epics.get(subtask.getEpicId());
             if (epic != null) {
-                epic.removeSubtaskId(id);
-                updateEpicStatus(epic);
+                prepareEpicForSubtaskChange(epic);
+            }
+            subtasks.remove(id);
+            timeIndex.remove(id);
+            historyManager.remove(id);
+            markDirty(id);
+            if (epic != null) {
+                epic.removeSubtaskId(id); // Статус и время эпика пересчитываются внутри
             }
         }
     }
@@ -281,61 +364,107 @@ public class InMemoryTaskManager implements TaskManager {
         if (epic == null) {
             return new ArrayList<>();
         }
-        return epic.getSubtaskIds().stream()
-                .map(subtasks::get)
-                .toList();
+        List<Subtask> epicSubtasks = new ArrayList<>(epic.getSubtaskCount());
+        for (int subtaskId : epic.getSubtaskIds()) {
+            epicSubtasks.add(subtasks.get(subtaskId));
+        }
+        return epicSubtasks;
     }
 
-    // Метод для обновления статуса и времени эпика
+    // Метод для полного пересчёта статуса и времени эпика, при изменении одной подзадачи
+    // эпик пересчитывается инкрементально через Epic.applySubtask
     protected void updateEpicStatus(Epic epic) {
-        List<Integer> subtaskIds = epic.getSubtaskIds();
-        if (subtaskIds.isEmpty()) {
-            epic.setStatus(TaskStatus.NEW);
-            epic.setStartTime(null);
-            epic.setDuration(Duration.ZERO);
-            return;
+        epic.recalculate(subtasks::get);
+    }
+
+    // Метод для подготовки эпика к инкрементальному учёту подзадачи: если статус и время эпика приняты
+    // из сохранённого индекса, вклады подзадач сначала собираются полным пересчётом
+    protected void prepareEpicForSubtaskChange(Epic epic) {
+        if (epic.needsRecalculation()) {
+            updateEpicStatus(epic);
         }
+    }
 
-        boolean areAllSubtasksNew = true;
-        boolean areAllSubtasksDone = true;
+    // Метод для применения пакета изменений: пакет проверяется целиком до первого изменения, затем
+    // применяются удаления, изменения и создания, а затронутые эпики пересчитываются по одному разу
+    @Override
+    public void applyBatch(TaskBatch batch) {
+        applyPlan(planBatch(batch));
+    }
 
-        LocalDateTime earliestStart = null;
-        LocalDateTime latestEnd = null;
-        Duration totalDuration = Duration.ZERO;
+    BatchPlan planBatch(TaskBatch batch) {
+        return BatchPlan.prepare(batch, tasks::get, subtasks::get, epics::get, timeIndex);
+    }
 
-        for (int id : subtaskIds) {
-            Subtask subtask = subtasks.get(id);
-            if (subtask == null) continue;
-
-            TaskStatus status = subtask.getStatus();
-            if (status != TaskStatus.NEW) areAllSubtasksNew = false;
-            if (status != TaskStatus.DONE) areAllSubtasksDone = false;
-
-            if (subtask.getStartTime() != null) {
-                if (earliestStart == null || subtask.getStartTime().isBefore(earliestStart)) {
-                    earliestStart = subtask.getStartTime();
-                }
-                LocalDateTime subtaskEnd = subtask.getEndTime();
-                if (latestEnd == null || subtaskEnd.isAfter(latestEnd)) {
-                    latestEnd = subtaskEnd;
-                }
-                totalDuration = totalDuration.plus(subtask.getDuration());
+    void applyPlan(BatchPlan plan) {
+        plan.apply(storage);
+    }
+
+    // Хранилища менеджера для применения пакета: каждое изменение отмечается в markDirty,
+    // а удалённая задача уходит из истории
+    private final class Storage implements TaskStorage {
+
+        @Override
+        public void put(Task task) {
+            if (task instanceof Epic epic) {
+                epics.put(epic.getId(), epic);
+            } else if (task instanceof Subtask subtask) {
+                subtasks.put(subtask.getId(), subtask);
+            } else {
+                tasks.put(task.getId(), task);
             }
         }
 
-        if (areAllSubtasksNew) {
-            epic.setStatus(TaskStatus.NEW);
-        } else if (areAllSubtasksDone) {
-            epic.setStatus(TaskStatus.DONE);
-        } else {
-            epic.setStatus(TaskStatus.IN_PROGRESS);
+        @Override
+        public void remove(Task task) {
+            if (task instanceof Epic) {
+                epics.remove(task.getId());
+            } else if (task instanceof Subtask) {
+                subtasks.remove(task.getId());
+            } else {
+                tasks.remove(task.getId());
+            }
         }
 
-        epic.setStartTime(earliestStart);
-        epic.setDuration(totalDuration);
-        epic.setEndTime(latestEnd);
-    }
+        @Override
+        public Epic getEpic(int id) {
+            return epics.get(id);
+        }
+
+        @Override
+        public Task getTaskOrSubtask(int id) {
+            Task task = tasks.get(id);
+            return task != null ? task : subtasks.get(id);
+        }
+
+        @Override
+        public int generateId() {
+            return InMemoryTaskManager.this.generateId();
+        }
 
+        @Override
+        public void addToSchedule(Task task) {
+            timeIndex.add(task);
+        }
+
+        @Override
+        public void removeFromSchedule(int id) {
+            timeIndex.remove(id);
+        }
+
+        @Override
+        public void markChanged(int id, boolean isDeleted) {
+            if (isDeleted) {
+                historyManager.remove(id);
+            }
+            markDirty(id);
+        }
+
+        @Override
+        public void recalculateEpic(Epic epic) {
+            updateEpicStatus(epic);
+        }
+    }
 
     // Метод для получения истории просмотров
     @Override
@@ -346,45 +475,105 @@ public class InMemoryTaskManager implements TaskManager {
     // Метод для получения списка задач по приоритету
     @Override
     public List<Task> getPrioritizedTasks() {
-        // Фильтруем задачи с startTime == null
-        return prioritizedTasks.stream()
-                .filter(task -> task.getStartTime() != null)
-                .toList();
+        return prioritizedTasks.get(version);
+    }
+
+    // Методы для выборки по времени читают представления индекса времени, не копируя его целиком
+    @Override
+    public List<Task> getTasksBetween(LocalDateTime from, LocalDateTime to) {
+        return timeIndex.getTasksBetween(from, to);
+    }
+
+    @Override
+    public List<Task> getNextTasks(LocalDateTime from, int limit) {
+        return timeIndex.getTasksStartingFrom(from, limit);
+    }
+
+    // Методы для выборки по вторичным индексам возвращают задачи и подзадачи, эпики в индексы не входят
+    @Override
+    public List<Task> getTasksByStatus(TaskStatus status) {
+        return secondaryIndex.getTasksByStatus(status);
+    }
+
+    @Override
+    public List<Task> getTasksStartingOn(LocalDate day) {
+        return secondaryIndex.getTasksStartingOn(day);
     }
 
-    // Метод для проверки пересечения двух задач по времени
-    protected boolean isOverlapping(Task task1, Task task2) {
-        if (task1.getStartTime() == null || task2.getStartTime() == null) {
-            return false; // Если одна из задач не имеет времени старта, они не пересекаются
+    // Задачи со статусом status, начинающиеся в [from, to), в порядке времени начала
+    @Override
+    public List<Task> getTasksByStatusBetween(TaskStatus status, LocalDateTime from, LocalDateTime to) {
+        return secondaryIndex.getTasksByStatusBetween(status, from, to);
+    }
+
+    // Метод для построения вторичных индексов заново, когда хранилища заполнены без markDirty (при загрузке)
+    protected void rebuildSecondaryIndex() {
+        secondaryIndex.clear();
+        for (Task task : tasks.values()) {
+            secondaryIndex.add(task);
+        }
+        for (Subtask subtask : subtasks.values()) {
+            secondaryIndex.add(subtask);
         }
+    }
 
-        // Проверяем, пересекаются ли задачи
-        return !(task1.getEndTime().isBefore(task2.getStartTime()) || // task1 полностью до task2
-                task1.getEndTime().equals(task2.getStartTime()) ||  // task1 заканчивается ровно, когда начинается task2
-                task2.getEndTime().isBefore(task1.getStartTime()) || // task2 полностью до task1
-                task2.getEndTime().equals(task1.getStartTime()));   // task2 заканчивается ровно, когда начинается task1
+    private Task getStoredTask(int id) {
+        Task task = tasks.get(id);
+        return task != null ? task : subtasks.get(id);
+    }
+
+    // Методы для поиска свободного окна по индексу промежутков между задачами, O(log n)
+    @Override
+    public LocalDateTime findFreeSlot(LocalDateTime from, Duration duration) {
+        return findFreeSlot(from, duration, null, null);
+    }
+
+    @Override
+    public LocalDateTime findFreeSlot(LocalDateTime from, Duration duration, LocalTime workStart, LocalTime workEnd) {
+        return timeIndex.findFreeSlot(from, duration, workStart, workEnd);
     }
 
-    private Task findConflictingTask(Task newTask) {
-        for (Task existingTask : prioritizedTasks) {
-            if (existingTask.getStartTime() != null && isOverlapping(newTask, existingTask)) {
-                return existingTask; // Возвращаем пересекающуюся задачу
+    // Методы для расстановки задач без времени начала: план строится по копии индекса времени, поэтому
+    // planUnscheduledTasks ничего не меняет, а scheduleUnscheduledTasks применяет тот же план
+    @Override
+    public SchedulePlan planUnscheduledTasks(LocalDateTime from, LocalDateTime horizon, LocalTime workStart,
+                                             LocalTime workEnd) {
+        return AutoScheduler.plan(timeIndex.getTasks(), getUnscheduledTasks(), from, horizon, workStart, workEnd);
+    }
+
+    @Override
+    public SchedulePlan scheduleUnscheduledTasks(LocalDateTime from, LocalDateTime horizon, LocalTime workStart,
+                                                 LocalTime workEnd) {
+        SchedulePlan plan = planUnscheduledTasks(from, horizon, workStart, workEnd);
+        plan.apply(storage);
+        return plan;
+    }
+
+    private List<Task> getUnscheduledTasks() {
+        List<Task> unscheduled = new ArrayList<>();
+        for (Task task : tasks.values()) {
+            if (task.getStartTime() == null) {
+                unscheduled.add(task);
             }
         }
-        return null; // null если нет пересечений
+        for (Subtask subtask : subtasks.values()) {
+            if (subtask.getStartTime() == null) {
+                unscheduled.add(subtask);
+            }
+        }
+        return unscheduled;
+    }
+
+    // Метод для назначения времени начала по плану, возвращает изменённые задачи
+    List<Task> applySchedule(SchedulePlan plan) {
+        return plan.apply(storage);
     }
 
-    // Метод для проверки пересечения с уже существующими задачами в prioritizedTasks
+    // Метод для проверки пересечения с уже существующими задачами, O(log n) по индексу времени
     protected boolean isOverlappingWithExistingTasks(Task newTask) {
         if (newTask.getStartTime() == null || newTask.getDuration() == null) {
             return false;
         }
-
-        for (Task existingTask : prioritizedTasks) {
-            if (existingTask.getStartTime() != null && isOverlapping(newTask, existingTask)) {
-                return true; // Если хотя бы одна задача пересекается, возвращаем true
-            }
-        }
-        return false;
+        return timeIndex.findConflict(newTask, null) != null;
     }
 }
@@ -0,0 +1,397 @@
+package manager;
+
+import model.IntHashSet;
+import model.Task;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+// Способ сохранения JOURNAL: изменения дописываются в журнал <файл>.journal записями UPSERT, DELETE и CLEAR,
+// а снимок обновляется контрольной точкой. Заполненный журнал переименовывается в <файл>.journal.prev
+// и сворачивается в снимок фоновым потоком по файлам, без блокировки менеджера.
+// Журнал, пусть и пустой, есть всегда и отмечает режим доски
+class JournalPersistence extends SnapshotPersistence {
+
+    // Минимальное число записей в журнале, после которого снимок перезаписывается целиком
+    private static final int MIN_JOURNAL_RECORDS_BEFORE_CHECKPOINT = 1024;
+
+    static final String CLEAR = "CLEAR";
+
+    private final File journalFile;
+    private final File previousJournalFile;
+    // Незаписанные записи журнала: изменения одной задачи заменяют друг друга по её ID,
+    // удаления и очистки хранятся под отдельными ключами
+    private final LinkedHashMap<Object, String> pendingRecords = new LinkedHashMap<>();
+    private BufferedWriter journalWriter;
+    private int journalRecords; // Количество записей в журнале после последнего снимка
+
+    // Состояние контрольных точек, защищено snapshotLock. Блокировка берётся после монитора менеджера, не до него
+    private final Object snapshotLock = new Object();
+    private Thread checkpointThread;
+    private boolean hasPreviousJournal; // Есть журнал .prev, ещё не свёрнутый в снимок
+    private boolean isCheckpointRequested;
+    private boolean isCheckpointStopped;
+    private long snapshotGeneration; // Увеличивается при каждой замене файла-снимка
+    private Exception checkpointFailure;
+
+    JournalPersistence(File file) {
+        super(file);
+        this.journalFile = FileBackedTaskManager.journalFileOf(file);
+        this.previousJournalFile = FileBackedTaskManager.previousJournalFileOf(file);
+    }
+
+    @Override
+    public void start(FileBackedTaskManager board) {
+        try {
+            createJournal();
+        } catch (IOException e) {
+            throw new ManagerSaveException("Ошибка при создании журнала: " + e.getMessage());
+        }
+        checkpointThread = new Thread(() -> runCheckpoints(board), "task-manager-checkpoint-" + file.getName());
+        checkpointThread.setDaemon(true);
+        checkpointThread.start();
+    }
+
+    // Метод для продолжения журнала, загруженного вместе со снимком
+    void adoptJournal(int records) {
+        journalRecords = records;
+    }
+
+    @Override
+    public void recordUpsert(FileBackedTaskManager board, Task task) {
+        // Несколько изменений одной задачи внутри группы заменяют друг друга
+        putRecord(task.getId(), FileBackedTaskManager.UPSERT + "," + FileBackedTaskManager.taskToString(task));
+    }
+
+    @Override
+    public void recordDelete(FileBackedTaskManager board, List<Integer> ids) {
+        StringBuilder recordBuilder = new StringBuilder(FileBackedTaskManager.DELETE);
+        for (int id : ids) {
+            pendingRecords.remove(id); // Незаписанное изменение удалённой задачи уже не нужно
+            recordBuilder.append(",").append(id);
+        }
+        putRecord(new Object(), recordBuilder.toString());
+    }
+
+    // Пакет изменений фиксируется одной записью DELETE для удалений и записями UPSERT, которые
+    // дописываются в журнал одной операцией записи
+    @Override
+    public void recordBatch(FileBackedTaskManager board, List<Task> upserted, IntHashSet deletedIds) {
+        if (!deletedIds.isEmpty()) {
+            StringBuilder recordBuilder = new StringBuilder(FileBackedTaskManager.DELETE);
+            deletedIds.forEach(id -> {
+                pendingRecords.remove(id);
+                recordBuilder.append(",").append(id);
+            });
+            putRecord(new Object(), recordBuilder.toString());
+        }
+        for (Task task : upserted) {
+            recordUpsert(board, task);
+        }
+    }
+
+    @Override
+    public void recordClear(FileBackedTaskManager board, String type) {
+        putRecord(new Object(), CLEAR + "," + type);
+    }
+
+    // Запись переносится в конец очереди, чтобы сохранить порядок относительно удалений
+    private void putRecord(Object key, String record) {
+        pendingRecords.remove(key);
+        pendingRecords.put(key, record);
+    }
+
+    @Override
+    public void writeNow(FileBackedTaskManager board) {
+        if (isSnapshotDirty()) {
+            pendingRecords.clear(); // Снимок уже содержит все незаписанные записи журнала
+            super.writeNow(board);
+            return;
+        }
+        appendToJournal(pendingRecords.values());
+        pendingRecords.clear();
+        if (isCheckpointDue(board, 0)) {
+            rotateJournal();
+        }
+    }
+
+    @Override
+    public PendingWrite prepare(FileBackedTaskManager board) {
+        if (isSnapshotDirty()) {
+            pendingRecords.clear();
+            return super.prepare(board);
+        }
+        List<String> records = new ArrayList<>(pendingRecords.values());
+        boolean isRotationDue = isCheckpointDue(board, records.size());
+        pendingRecords.clear();
+        return () -> {
+            appendToJournal(records);
+            if (isRotationDue) {
+                rotateJournal();
+            }
+        };
+    }
+
+    // Снимок содержит всё состояние, поэтому журнал, в том числе ещё не свёрнутый в контрольную точку,
+    // заменяется пустым, а идущая контрольная точка отменяется
+    @Override
+    protected void replaceSnapshot(File snapshotFile) throws IOException {
+        synchronized (snapshotLock) {
+            closeJournalWriter();
+            super.replaceSnapshot(snapshotFile);
+            createJournal();
+            journalRecords = 0;
+            hasPreviousJournal = false;
+            snapshotGeneration++;
+        }
+    }
+
+    // Начатая контрольная точка дописывается, ещё не начатая будет выполнена после загрузки
+    @Override
+    public void stop() {
+        synchronized (snapshotLock) {
+            isCheckpointStopped = true;
+            snapshotLock.notifyAll();
+        }
+        if (checkpointThread != null) {
+            try {
+                checkpointThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public void close(FileBackedTaskManager board, boolean isWriterHealthy) {
+        if (isWriterHealthy && board.isDerivedIndexPersisted()) {
+            rewrite(board); // Следующая загрузка обойдётся без журнала и пересчёта
+        }
+        try {
+            closeJournalWriter();
+        } catch (IOException e) {
+            throw new ManagerSaveException("Ошибка при закрытии журнала: " + e.getMessage());
+        }
+        synchronized (snapshotLock) {
+            if (isWriterHealthy && checkpointFailure != null) {
+                throw new ManagerSaveException("Ошибка фоновой контрольной точки: " + checkpointFailure.getMessage());
+            }
+        }
+    }
+
+    // Метод для создания пустого журнала. Журнал есть рядом со снимком всё время, пока доска ведётся в режиме
+    // JOURNAL, даже сразу после контрольной точки, поэтому loadFromFile без режима определяет его по файлам
+    private void createJournal() throws IOException {
+        journalFile.createNewFile(); // Существующий журнал остаётся как есть
+    }
+
+    private void closeJournalWriter() throws IOException {
+        if (journalWriter != null) {
+            journalWriter.close();
+            journalWriter = null;
+        }
+    }
+
+    // Метод для дозаписи записей в журнал одной операцией записи
+    private void appendToJournal(Collection<String> records) {
+        try {
+            if (journalWriter == null) {
+                journalWriter = new BufferedWriter(new FileWriter(journalFile, true));
+            }
+            for (String record : records) {
+                journalWriter.write(record);
+                journalWriter.newLine();
+            }
+            journalWriter.flush();
+        } catch (IOException e) {
+            throw new ManagerSaveException("Ошибка при записи в журнал: " + e.getMessage());
+        }
+        journalRecords += records.size();
+    }
+
+    // Журнал не должен расти быстрее доски: после стольких же записей делаем новый снимок
+    private boolean isCheckpointDue(InMemoryTaskManager board, int newRecords) {
+        return journalRecords + newRecords >= Math.max(MIN_JOURNAL_RECORDS_BEFORE_CHECKPOINT,
+                board.tasks.size() + board.epics.size() + board.subtasks.size());
+    }
+
+    // Метод для переключения на новый журнал. Заполненный журнал переименовывается в .prev и сворачивается
+    // в снимок фоновым потоком, поэтому запись изменений ждёт только закрытия и переименования файла.
+    // Пока предыдущая контрольная точка не завершена, журнал продолжает расти
+    private void rotateJournal() {
+        synchronized (snapshotLock) {
+            if (!hasPreviousJournal) {
+                try {
+                    closeJournalWriter();
+                    if (journalFile.exists()) {
+                        Files.move(journalFile.toPath(), previousJournalFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+                        hasPreviousJournal = true;
+                    }
+                    createJournal();
+                } catch (IOException e) {
+                    throw new ManagerSaveException("Ошибка при переключении журнала: " + e.getMessage());
+                }
+                journalRecords = 0;
+            }
+            isCheckpointRequested = true;
+            snapshotLock.notifyAll();
+        }
+    }
+
+    // Метод для завершения контрольной точки, прерванной при прошлом завершении работы
+    void resumeCheckpoint() {
+        synchronized (snapshotLock) {
+            hasPreviousJournal = true;
+            isCheckpointRequested = true;
+            snapshotLock.notifyAll();
+        }
+    }
+
+    // Цикл потока контрольных точек
+    private void runCheckpoints(FileBackedTaskManager board) {
+        while (true) {
+            long generation;
+            synchronized (snapshotLock) {
+                while (!isCheckpointRequested && !isCheckpointStopped) {
+                    try {
+                        snapshotLock.wait();
+                    } catch (InterruptedException e) {
+                        return; // Незавершённая контрольная точка будет выполнена после загрузки
+                    }
+                }
+                if (isCheckpointStopped) {
+                    return;
+                }
+                isCheckpointRequested = false;
+                if (!hasPreviousJournal) {
+                    continue;
+                }
+                generation = snapshotGeneration;
+            }
+            try {
+                checkpoint(board.getSnapshotFormat(), generation);
+            } catch (RuntimeException | IOException e) {
+                synchronized (snapshotLock) {
+                    // Файл .prev остаётся на месте, следующая попытка будет при следующем переключении журнала
+                    checkpointFailure = e;
+                }
+            }
+        }
+    }
+
+    // Метод для сворачивания журнала .prev в снимок. Новый снимок строится по файлам, а не по задачам в памяти,
+    // поэтому не требует блокировки менеджера. Если за это время был записан полный снимок, результат отбрасывается
+    private void checkpoint(SnapshotFormat format, long generation) throws IOException {
+        InMemoryTaskManager board = new InMemoryTaskManager();
+        LinkedHashSet<Integer> ignoredHistoryIds = new LinkedHashSet<>(); // История хранится в журнале истории
+        readSnapshot(file, board, ignoredHistoryIds);
+        if (replayJournal(previousJournalFile, board, ignoredHistoryIds).isTorn()) {
+            throw new ManagerSaveException("Оборванная запись в журнале " + previousJournalFile.getName());
+        }
+
+        File checkpointFile = new File(file.getPath() + ".checkpoint");
+        try (FileOutputStream fileOut = new FileOutputStream(checkpointFile);
+             OutputStream out = new BufferedOutputStream(fileOut)) {
+            writeSnapshot(out, board, format);
+            out.flush();
+            fileOut.getFD().sync(); // Снимок должен быть на диске до удаления журнала, который он заменяет
+        }
+
+        synchronized (snapshotLock) {
+            if (generation != snapshotGeneration) {
+                Files.deleteIfExists(checkpointFile.toPath());
+                return;
+            }
+            Files.move(checkpointFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            // При сбое до удаления .prev он применится к новому снимку повторно, что безопасно:
+            // записи журнала задают итоговое значение, а не изменение
+            Files.deleteIfExists(previousJournalFile.toPath());
+            hasPreviousJournal = false;
+            snapshotGeneration++;
+        }
+    }
+
+    // Результат применения журнала: число записей и признак оборванной последней записи
+    record JournalReplay(int records, boolean isTorn) {
+    }
+
+    // Метод для применения журнала к загруженному снимку
+    static JournalReplay replayJournal(File journal, InMemoryTaskManager board,
+                                       LinkedHashSet<Integer> historyIds) throws IOException {
+        if (!journal.exists()) {
+            return new JournalReplay(0, false);
+        }
+        int records = 0;
+        try (TaskCsvReader reader = new TaskCsvReader(journal)) {
+            while (reader.nextLine()) {
+                if (reader.isLineEmpty()) {
+                    continue;
+                }
+                try {
+                    applyJournalRecord(reader, board, historyIds);
+                } catch (Exception e) {
+                    if (!reader.isLineTerminated()) {
+                        return new JournalReplay(records, true); // Запись оборвалась при сбое во время дозаписи
+                    }
+                    throw new ManagerSaveException("Ошибка при обработке записи журнала: " + reader.currentLine());
+                }
+                records++;
+            }
+        }
+        return new JournalReplay(records, false);
+    }
+
+    // Метод для применения одной записи журнала
+    private static void applyJournalRecord(TaskCsvReader reader, InMemoryTaskManager board,
+                                           LinkedHashSet<Integer> historyIds) {
+        if (reader.readKeyword(FileBackedTaskManager.UPSERT)) {
+            Task task = reader.readTask();
+            // Счетчик ID учитывает и задачи, удалённые позже, чтобы ID не выдавались повторно
+            board.idCounter = Math.max(board.idCounter, task.getId());
+            FileBackedTaskManager.putLoadedTask(board, task);
+        } else if (reader.readKeyword(FileBackedTaskManager.DELETE)) {
+            while (reader.hasNextField()) {
+                int id = reader.readInt();
+                board.tasks.remove(id);
+                board.epics.remove(id);
+                board.subtasks.remove(id);
+                historyIds.remove(id);
+            }
+        } else if (reader.readKeyword(CLEAR)) {
+            String payload = reader.readString();
+            switch (payload) {
+                case "TASK":
+                    board.tasks.forEachKey(historyIds::remove);
+                    board.tasks.clear();
+                    break;
+                case "EPIC":
+                    board.epics.forEachKey(historyIds::remove);
+                    board.subtasks.forEachKey(historyIds::remove);
+                    board.epics.clear();
+                    board.subtasks.clear();
+                    break;
+                case "SUBTASK":
+                    board.subtasks.forEachKey(historyIds::remove);
+                    board.subtasks.clear();
+                    break;
+                default:
+                    throw new IllegalArgumentException("Неизвестный тип задачи: " + payload);
+            }
+        } else {
+            throw new IllegalArgumentException("Неизвестная запись журнала: " + reader.currentLine());
+        }
+    }
+}
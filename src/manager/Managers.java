@@ -6,7 +6,22 @@ public class Managers {
         return new InMemoryTaskManager();
     }
 
+    // Менеджер, история которого хранит не больше historyCapacity последних просмотров
+    public static TaskManager getDefault(int historyCapacity) {
+        return new InMemoryTaskManager(getDefaultHistory(historyCapacity));
+    }
+
+    // Менеджер для одновременной работы из нескольких потоков
+    public static TaskManager getConcurrent() {
+        return new ConcurrentTaskManager();
+    }
+
     public static HistoryManager getDefaultHistory() {
         return new InMemoryHistoryManager();
     }
+
+    // История с вытеснением самых давних просмотров сверх capacity
+    public static HistoryManager getDefaultHistory(int capacity) {
+        return new InMemoryHistoryManager(capacity);
+    }
 }
@@ -0,0 +1,247 @@
+package manager;
+
+import model.IntHashSet;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.ObjIntConsumer;
+import java.util.zip.CRC32;
+
+// Файл из страниц фиксированного размера с пулом страниц в памяти.
+// Пул хранит не больше capacity чистых страниц и вытесняет давно не использованные (LRU). Изменённые страницы
+// не вытесняются до commit(), поэтому изменение страницы нужно отмечать markDirty сразу, до чтения других страниц.
+// commit() сначала записывает образы изменённых страниц в журнал страниц <файл>.pagelog с суммой CRC32, затем
+// записывает страницы на место и удаляет журнал. Журнал сбрасывается на диск до записи страниц, а страницы —
+// до удаления журнала, поэтому и при отключении питания порядок шагов на диске сохраняется. Если запись страниц
+// прервана, при открытии файла полный журнал применяется заново, а оборванный отбрасывается: страницы на месте
+// ещё не менялись.
+class PageFile implements Closeable {
+
+    static final int PAGE_SIZE = 4096;
+
+    private static final int LOG_MAGIC = 0x4B504C47; // "KPLG"
+    private static final int SCAN_PAGES = 64; // Страниц за одно чтение при последовательном просмотре
+
+    private final File file;
+    private final File logFile;
+    private final FileChannel channel;
+    private final int capacity;
+    private final LinkedHashMap<Integer, ByteBuffer> pool = new LinkedHashMap<>(16, 0.75f, true);
+    private final IntHashSet dirtyPages = new IntHashSet();
+    private int pageCount;
+
+    PageFile(File file, int capacity) {
+        this.file = file;
+        this.logFile = logFileOf(file);
+        this.capacity = capacity;
+        try {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            recover();
+            pageCount = (int) (channel.size() / PAGE_SIZE);
+        } catch (IOException e) {
+            throw new ManagerSaveException("Ошибка при открытии файла страниц: " + e.getMessage());
+        }
+    }
+
+    // Журнал страниц хранится рядом с файлом страниц
+    static File logFileOf(File file) {
+        return new File(file.getPath() + ".pagelog");
+    }
+
+    int getPageCount() {
+        return pageCount;
+    }
+
+    // Метод для получения страницы из пула или с диска
+    ByteBuffer read(int pageNo) {
+        ByteBuffer page = pool.get(pageNo);
+        if (page != null) {
+            return page;
+        }
+        if (pageNo < 0 || pageNo >= pageCount) {
+            throw new ManagerSaveException("Страница " + pageNo + " вне файла " + file.getName());
+        }
+        page = ByteBuffer.allocate(PAGE_SIZE);
+        try {
+            readFully(page, (long) pageNo * PAGE_SIZE);
+        } catch (IOException e) {
+            throw new ManagerSaveException("Ошибка при чтении страницы: " + e.getMessage());
+        }
+        evict(); // До добавления, чтобы новая чистая страница не была вытеснена сразу
+        pool.put(pageNo, page);
+        return page;
+    }
+
+    // Метод для добавления новой пустой страницы в конец файла, возвращает её номер
+    int allocate() {
+        int pageNo = pageCount++;
+        pool.put(pageNo, ByteBuffer.allocate(PAGE_SIZE));
+        dirtyPages.add(pageNo);
+        return pageNo;
+    }
+
+    void markDirty(int pageNo) {
+        if (!pool.containsKey(pageNo)) {
+            throw new IllegalStateException("Изменённая страница " + pageNo + " уже вытеснена из пула.");
+        }
+        dirtyPages.add(pageNo);
+    }
+
+    // Метод для записи изменённых страниц: журнал страниц, страницы на месте, удаление журнала
+    void commit() {
+        if (dirtyPages.isEmpty()) {
+            return;
+        }
+        int[] pageNos = dirtyPages.toArray();
+        try {
+            ByteBuffer log = ByteBuffer.allocate(Integer.BYTES * 2 + pageNos.length * (Integer.BYTES + PAGE_SIZE)
+                    + Integer.BYTES);
+            log.putInt(LOG_MAGIC).putInt(pageNos.length);
+            for (int pageNo : pageNos) {
+                log.putInt(pageNo).put(pool.get(pageNo).duplicate().clear());
+            }
+            CRC32 crc = new CRC32();
+            crc.update(log.array(), 0, log.position());
+            log.putInt((int) crc.getValue());
+            try (FileChannel logChannel = FileChannel.open(logFile.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                log.flip();
+                while (log.hasRemaining()) {
+                    logChannel.write(log);
+                }
+                logChannel.force(true); // Журнал должен быть на диске до того, как страницы начнут меняться на месте
+            }
+
+            writePages(pageNos);
+            channel.force(true); // Страницы должны быть на диске до удаления журнала, который их восстанавливает
+            Files.delete(logFile.toPath());
+        } catch (IOException e) {
+            throw new ManagerSaveException("Ошибка при записи страниц: " + e.getMessage());
+        }
+        dirtyPages.clear();
+        evict();
+    }
+
+    // Метод для записи изменённых страниц без журнала страниц: для файла, который ещё не стал файлом доски,
+    // прерванная запись ничего не портит
+    void commitUnlogged() {
+        try {
+            writePages(dirtyPages.toArray());
+        } catch (IOException e) {
+            throw new ManagerSaveException("Ошибка при записи страниц: " + e.getMessage());
+        }
+        dirtyPages.clear();
+        evict();
+    }
+
+    // Метод для сброса записанных страниц на диск: построенный без журнала файл должен быть на диске до того,
+    // как его переместят на место файла доски
+    void sync() {
+        try {
+            channel.force(true);
+        } catch (IOException e) {
+            throw new ManagerSaveException("Ошибка при записи страниц: " + e.getMessage());
+        }
+    }
+
+    int getDirtyPageCount() {
+        return dirtyPages.size();
+    }
+
+    private void writePages(int[] pageNos) throws IOException {
+        for (int pageNo : pageNos) {
+            writeFully(pool.get(pageNo).duplicate().clear(), (long) pageNo * PAGE_SIZE);
+        }
+    }
+
+    // Метод для последовательного просмотра всех страниц без заполнения пула; страницы из пула берутся оттуда
+    void forEachPage(ObjIntConsumer<ByteBuffer> action) {
+        ByteBuffer chunk = ByteBuffer.allocate(SCAN_PAGES * PAGE_SIZE);
+        try {
+            for (int first = 0; first < pageCount; first += SCAN_PAGES) {
+                int count = Math.min(SCAN_PAGES, pageCount - first);
+                chunk.clear().limit(count * PAGE_SIZE);
+                readFully(chunk, (long) first * PAGE_SIZE);
+                for (int i = 0; i < count; i++) {
+                    ByteBuffer cached = pool.get(first + i);
+                    action.accept(cached != null ? cached : chunk.slice(i * PAGE_SIZE, PAGE_SIZE), first + i);
+                }
+            }
+        } catch (IOException e) {
+            throw new ManagerSaveException("Ошибка при чтении страниц: " + e.getMessage());
+        }
+    }
+
+    // Вытесняются только чистые страницы, самые давние первыми
+    private void evict() {
+        Iterator<Map.Entry<Integer, ByteBuffer>> iterator = pool.entrySet().iterator();
+        while (pool.size() > capacity && iterator.hasNext()) {
+            if (!dirtyPages.contains(iterator.next().getKey())) {
+                iterator.remove();
+            }
+        }
+    }
+
+    // Метод для применения полного журнала страниц, оставшегося после прерванной записи
+    private void recover() throws IOException {
+        if (!logFile.exists()) {
+            return;
+        }
+        ByteBuffer log = ByteBuffer.wrap(Files.readAllBytes(logFile.toPath()));
+        if (isCompleteLog(log)) {
+            int count = log.getInt(Integer.BYTES);
+            for (int i = 0; i < count; i++) {
+                int offset = Integer.BYTES * 2 + i * (Integer.BYTES + PAGE_SIZE);
+                writeFully(log.slice(offset + Integer.BYTES, PAGE_SIZE), (long) log.getInt(offset) * PAGE_SIZE);
+            }
+            channel.force(true); // Восстановленные страницы должны быть на диске до удаления журнала
+        }
+        Files.delete(logFile.toPath());
+    }
+
+    private static boolean isCompleteLog(ByteBuffer log) {
+        int length = log.limit();
+        if (length < Integer.BYTES * 3 || log.getInt(0) != LOG_MAGIC) {
+            return false;
+        }
+        int count = log.getInt(Integer.BYTES);
+        if (count < 0 || (long) Integer.BYTES * 3 + (long) count * (Integer.BYTES + PAGE_SIZE) != length) {
+            return false;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(log.array(), 0, length - Integer.BYTES);
+        return (int) crc.getValue() == log.getInt(length - Integer.BYTES);
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Файл страниц короче ожидаемого: " + file.getName());
+            }
+        }
+    }
+
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new ManagerSaveException("Ошибка при закрытии файла страниц: " + e.getMessage());
+        }
+    }
+}
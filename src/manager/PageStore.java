@@ -0,0 +1,473 @@
+package manager;
+
+import model.Task;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Страничное хранилище задач для режима PAGED.
+// Файл доски состоит из страниц PageFile. Страница 0 — заголовок: сигнатура "KPGE", версия, корень B+-дерева,
+// начало списка свободных страниц и счётчик ID. Строки задач в формате снимка хранятся в страницах данных
+// со слотами: в начале страницы каталог слотов (смещение и длина записи), записи заполняют страницу с конца.
+// Запись длиннее MAX_INLINE_BYTES выносится в цепочку страниц переполнения, а в слоте остаётся ссылка на неё.
+// B+-дерево (BPlusTree) по ID хранит положение записи: номер страницы и слот. Изменение задачи меняет
+// её страницу данных, а лист дерева — только если запись переехала на другую страницу; все страницы
+// изменения записываются одним commit() PageFile через журнал страниц.
+// Свободное место страниц данных хранится в памяти (по байту на страницу) и строится при загрузке.
+class PageStore implements Closeable {
+
+    static final int DEFAULT_POOL_PAGES = 256;
+
+    private static final byte[] MAGIC = {'K', 'P', 'G', 'E'};
+    private static final int VERSION = 1;
+
+    // Поля заголовка
+    private static final int HEADER_PAGE = 0;
+    private static final int VERSION_OFFSET = 4;
+    private static final int ROOT = 8;
+    private static final int FREE_LIST = 12;
+    private static final int ID_COUNTER = 16;
+
+    // Типы страниц, кроме страниц дерева
+    private static final byte DATA = 2;
+    private static final byte OVERFLOW = 5;
+    private static final byte FREE = 6;
+
+    // Страница данных: тип, число слотов, начало занятой записями части, каталог слотов
+    private static final int TYPE = 0;
+    private static final int SLOT_COUNT = 2;
+    private static final int FREE_END = 4;
+    private static final int SLOTS = 8;
+    private static final int SLOT_SIZE = Short.BYTES * 2;
+
+    // Страница переполнения: тип, длина данных на странице, следующая страница цепочки, данные
+    private static final int OVERFLOW_LENGTH = 2;
+    private static final int NEXT = 4;
+    private static final int OVERFLOW_DATA = 8;
+    private static final int OVERFLOW_CAPACITY = PageFile.PAGE_SIZE - OVERFLOW_DATA;
+
+    // Запись в слоте: вид (в слоте или в цепочке переполнения), затем строка задачи или её длина и первая страница
+    private static final byte INLINE_RECORD = 0;
+    private static final byte OVERFLOW_RECORD = 1;
+    private static final int MAX_INLINE_BYTES = 1024;
+    private static final int OVERFLOW_REF_SIZE = 1 + Integer.BYTES * 2;
+
+    private static final int FREE_SPACE_UNIT = 16; // Свободное место в карте хранится в единицах по 16 байт
+    private static final int PARSE_CHUNK_BYTES = 1024 * 1024;
+    private static final int BUILD_DIRTY_PAGES = 1024; // При построении файла страницы пишутся пачками
+
+    private final PageFile pages;
+    private final BPlusTree tree;
+    private byte[] freeSpace; // Свободное место страниц данных; null, пока файл не просмотрен
+    private int lastDataPage; // Страница, в которую последней добавлялась запись
+
+    PageStore(File file, int poolPages) {
+        pages = new PageFile(file, poolPages);
+        try {
+            int root;
+            if (pages.getPageCount() == 0) {
+                int headerNo = pages.allocate();
+                pages.read(headerNo).put(0, MAGIC).putInt(VERSION_OFFSET, VERSION);
+                root = BPlusTree.create(pages, this::allocatePage);
+                pages.read(HEADER_PAGE).putInt(ROOT, root);
+                pages.commit();
+                freeSpace = new byte[0];
+            } else {
+                ByteBuffer header = pages.read(HEADER_PAGE);
+                byte[] magic = new byte[MAGIC.length];
+                header.get(0, magic);
+                if (!Arrays.equals(magic, MAGIC) || header.getInt(VERSION_OFFSET) != VERSION) {
+                    throw new ManagerSaveException("Неподдерживаемый файл страниц: " + file.getName());
+                }
+                root = header.getInt(ROOT);
+            }
+            tree = new BPlusTree(pages, this::allocatePage, root);
+        } catch (RuntimeException e) {
+            pages.close();
+            throw e;
+        }
+    }
+
+    // Метод для определения формата по сигнатуре в начале файла
+    static boolean isPageFile(File file) {
+        if (!file.isFile()) {
+            return false;
+        }
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            return Arrays.equals(in.readNBytes(MAGIC.length), MAGIC);
+        } catch (IOException e) {
+            throw new ManagerSaveException("Ошибка при чтении файла: " + e.getMessage());
+        }
+    }
+
+    int getIdCounter() {
+        return pages.read(HEADER_PAGE).getInt(ID_COUNTER);
+    }
+
+    // Изменение одной задачи: новая строка или null для удалённой задачи
+    private record Change(int id, byte[] record) {
+    }
+
+    // Подготовленная к записи пачка изменений. Готовится под монитором менеджера, пишется без него
+    static final class Batch {
+        private final List<Change> changes = new ArrayList<>();
+        private final int idCounter;
+
+        private Batch(int idCounter) {
+            this.idCounter = idCounter;
+        }
+    }
+
+    // Метод для подготовки строк изменённых задач
+    static Batch prepare(InMemoryTaskManager board, int[] dirtyIds) {
+        Batch batch = new Batch(board.idCounter);
+        for (int id : dirtyIds) {
+            Task task = SegmentStore.findTask(board, id);
+            batch.changes.add(new Change(id, task != null ? encode(task) : null));
+        }
+        return batch;
+    }
+
+    // Метод для записи подготовленной пачки. Все изменённые страницы пачки записываются одним commit(),
+    // поэтому при сбое на диске остаётся либо вся пачка, либо ничего
+    void write(Batch batch) {
+        for (Change change : batch.changes) {
+            long location = tree.get(change.id());
+            if (location != BPlusTree.NOT_FOUND) {
+                removeRecord(location);
+            }
+            if (change.record() != null) {
+                int preferredPage = location != BPlusTree.NOT_FOUND ? pageOf(location) : lastDataPage;
+                long newLocation = insertRecord(change.record(), preferredPage);
+                if (newLocation != location) {
+                    tree.put(change.id(), newLocation);
+                }
+            } else if (location != BPlusTree.NOT_FOUND) {
+                tree.remove(change.id());
+            }
+        }
+        updateHeader(batch.idCounter);
+        pages.commit();
+    }
+
+    // Метод для построения файла страниц со всеми задачами доски. Файл ещё не является файлом доски,
+    // поэтому страницы пишутся без журнала страниц; после построения его нужно переместить на место файла доски
+    static void build(File target, InMemoryTaskManager board) {
+        try {
+            Files.deleteIfExists(target.toPath());
+            Files.deleteIfExists(PageFile.logFileOf(target).toPath());
+        } catch (IOException e) {
+            throw new ManagerSaveException("Ошибка при подготовке файла страниц: " + e.getMessage());
+        }
+        try (PageStore store = new PageStore(target, DEFAULT_POOL_PAGES)) {
+            // Задачи добавляются по возрастанию ID: листья дерева заполняются целиком, а страницы данных подряд
+            int[] ids = new int[board.tasks.size() + board.epics.size() + board.subtasks.size()];
+            int count = 0;
+            for (int id : board.tasks.keys()) {
+                ids[count++] = id;
+            }
+            for (int id : board.epics.keys()) {
+                ids[count++] = id;
+            }
+            for (int id : board.subtasks.keys()) {
+                ids[count++] = id;
+            }
+            Arrays.sort(ids);
+            for (int id : ids) {
+                store.tree.put(id, store.insertRecord(encode(SegmentStore.findTask(board, id)), store.lastDataPage));
+                if (store.pages.getDirtyPageCount() >= BUILD_DIRTY_PAGES) {
+                    store.pages.commitUnlogged();
+                }
+            }
+            store.updateHeader(board.idCounter);
+            store.pages.commitUnlogged();
+            store.pages.sync();
+        }
+    }
+
+    // Метод для загрузки всех задач последовательным просмотром страниц данных, возвращает наибольший ID.
+    // Дерево при загрузке не читается: все записи лежат в страницах данных
+    int load(InMemoryTaskManager board) {
+        RecordParser parser = new RecordParser(board);
+        freeSpace = new byte[pages.getPageCount()];
+        pages.forEachPage((page, pageNo) -> {
+            if (page.get(TYPE) != DATA) {
+                return;
+            }
+            updateFreeSpace(pageNo, page);
+            int slotCount = page.getShort(SLOT_COUNT);
+            for (int slot = 0; slot < slotCount; slot++) {
+                int offset = page.getShort(SLOTS + slot * SLOT_SIZE);
+                int length = page.getShort(SLOTS + slot * SLOT_SIZE + Short.BYTES);
+                if (length > 0) {
+                    parser.add(readRecord(page, offset, length));
+                }
+            }
+        });
+        parser.parse();
+        return parser.maxId;
+    }
+
+    // Строки задач собираются в буфер и разбираются пачками тем же разборщиком, что и снимок
+    private static final class RecordParser {
+        private final InMemoryTaskManager board;
+        private byte[] buffer = new byte[PARSE_CHUNK_BYTES];
+        private int size;
+        private int maxId;
+
+        RecordParser(InMemoryTaskManager board) {
+            this.board = board;
+        }
+
+        void add(byte[] record) {
+            if (size + record.length + 1 > buffer.length) {
+                parse();
+                if (record.length + 1 > buffer.length) {
+                    buffer = new byte[record.length + 1];
+                }
+            }
+            System.arraycopy(record, 0, buffer, size, record.length);
+            size += record.length;
+            buffer[size++] = '\n';
+        }
+
+        void parse() {
+            TaskCsvReader reader = new TaskCsvReader(buffer, size);
+            try {
+                while (reader.nextLine()) {
+                    try {
+                        Task task = reader.readTask();
+                        maxId = Math.max(maxId, task.getId());
+                        FileBackedTaskManager.putLoadedTask(board, task);
+                    } catch (Exception e) {
+                        throw new ManagerSaveException("Ошибка при обработке записи: " + reader.currentLine());
+                    }
+                }
+            } catch (IOException e) {
+                throw new ManagerSaveException("Ошибка при разборе записей: " + e.getMessage()); // Массив не читает файл
+            }
+            size = 0;
+        }
+    }
+
+    private static byte[] encode(Task task) {
+        return FileBackedTaskManager.taskToString(task).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int pageOf(long location) {
+        return (int) (location >>> 16);
+    }
+
+    private static int slotOf(long location) {
+        return (int) (location & 0xFFFF);
+    }
+
+    private void updateHeader(int idCounter) {
+        ByteBuffer header = pages.read(HEADER_PAGE);
+        pages.markDirty(HEADER_PAGE);
+        header.putInt(ROOT, tree.getRoot()).putInt(ID_COUNTER, idCounter);
+    }
+
+    // Метод для добавления записи в страницу данных, возвращает её положение. Сначала пробуется страница
+    // preferredPage: при изменении задачи запись остаётся на прежней странице, если помещается
+    private long insertRecord(byte[] record, int preferredPage) {
+        byte[] stored;
+        if (record.length <= MAX_INLINE_BYTES) {
+            stored = new byte[1 + record.length];
+            stored[0] = INLINE_RECORD;
+            System.arraycopy(record, 0, stored, 1, record.length);
+        } else {
+            stored = new byte[OVERFLOW_REF_SIZE];
+            ByteBuffer.wrap(stored).put(OVERFLOW_RECORD).putInt(record.length).putInt(writeOverflow(record));
+        }
+
+        int pageNo = findDataPage(stored.length, preferredPage);
+        ByteBuffer page = pages.read(pageNo);
+        pages.markDirty(pageNo);
+        int slotCount = page.getShort(SLOT_COUNT);
+        int slot = 0;
+        while (slot < slotCount && page.getShort(SLOTS + slot * SLOT_SIZE + Short.BYTES) != 0) {
+            slot++;
+        }
+        int directoryEnd = SLOTS + Math.max(slotCount, slot + 1) * SLOT_SIZE;
+        if (page.getShort(FREE_END) - directoryEnd < stored.length) {
+            compact(page);
+        }
+        int offset = page.getShort(FREE_END) - stored.length;
+        page.put(offset, stored);
+        page.putShort(FREE_END, (short) offset);
+        page.putShort(SLOTS + slot * SLOT_SIZE, (short) offset);
+        page.putShort(SLOTS + slot * SLOT_SIZE + Short.BYTES, (short) stored.length);
+        if (slot == slotCount) {
+            page.putShort(SLOT_COUNT, (short) (slotCount + 1));
+        }
+        updateFreeSpace(pageNo, page);
+        lastDataPage = pageNo;
+        return (long) pageNo << 16 | slot;
+    }
+
+    // Метод для удаления записи; место записи освобождается, а страницы переполнения уходят в список свободных
+    private void removeRecord(long location) {
+        int pageNo = pageOf(location);
+        int slot = slotOf(location);
+        ByteBuffer page = pages.read(pageNo);
+        pages.markDirty(pageNo);
+        int offset = page.getShort(SLOTS + slot * SLOT_SIZE);
+        if (page.get(offset) == OVERFLOW_RECORD) {
+            freeOverflow(page.getInt(offset + 1 + Integer.BYTES));
+        }
+        page.putShort(SLOTS + slot * SLOT_SIZE, (short) 0);
+        page.putShort(SLOTS + slot * SLOT_SIZE + Short.BYTES, (short) 0);
+        int slotCount = page.getShort(SLOT_COUNT);
+        while (slotCount > 0 && page.getShort(SLOTS + (slotCount - 1) * SLOT_SIZE + Short.BYTES) == 0) {
+            slotCount--; // Пустые слоты в конце каталога не нужны
+        }
+        page.putShort(SLOT_COUNT, (short) slotCount);
+        updateFreeSpace(pageNo, page);
+    }
+
+    // Метод для выбора страницы данных, в которой помещается запись длиной length вместе с новым слотом
+    private int findDataPage(int length, int preferredPage) {
+        if (freeSpace == null) {
+            scanFreeSpace();
+        }
+        int needed = length + SLOT_SIZE;
+        if (preferredPage > 0 && preferredPage < freeSpace.length && hasRoom(preferredPage, needed)) {
+            return preferredPage;
+        }
+        for (int pageNo = 1; pageNo < freeSpace.length; pageNo++) {
+            if (hasRoom(pageNo, needed)) {
+                return pageNo;
+            }
+        }
+        int pageNo = allocatePage();
+        pages.read(pageNo).put(TYPE, DATA).putShort(SLOT_COUNT, (short) 0)
+                .putShort(FREE_END, (short) PageFile.PAGE_SIZE);
+        return pageNo;
+    }
+
+    private boolean hasRoom(int pageNo, int needed) {
+        return (freeSpace[pageNo] & 0xFF) * FREE_SPACE_UNIT >= needed;
+    }
+
+    // Свободное место страницы с учётом мест удалённых записей, которые освобождаются уплотнением
+    private void updateFreeSpace(int pageNo, ByteBuffer page) {
+        if (freeSpace == null) {
+            return;
+        }
+        if (pageNo >= freeSpace.length) {
+            freeSpace = Arrays.copyOf(freeSpace, Math.max(pageNo + 1, freeSpace.length * 2));
+        }
+        int slotCount = page.getShort(SLOT_COUNT);
+        int free = PageFile.PAGE_SIZE - SLOTS - slotCount * SLOT_SIZE;
+        for (int slot = 0; slot < slotCount; slot++) {
+            free -= page.getShort(SLOTS + slot * SLOT_SIZE + Short.BYTES);
+        }
+        freeSpace[pageNo] = (byte) Math.min(255, free / FREE_SPACE_UNIT);
+    }
+
+    // Метод для построения карты свободного места, если файл открыт без загрузки задач
+    private void scanFreeSpace() {
+        freeSpace = new byte[pages.getPageCount()];
+        pages.forEachPage((page, pageNo) -> {
+            if (page.get(TYPE) == DATA) {
+                updateFreeSpace(pageNo, page);
+            }
+        });
+    }
+
+    // Метод для переноса записей к концу страницы, чтобы места удалённых записей стали одним свободным участком
+    private static void compact(ByteBuffer page) {
+        byte[] image = new byte[PageFile.PAGE_SIZE];
+        page.get(0, image);
+        int end = PageFile.PAGE_SIZE;
+        int slotCount = page.getShort(SLOT_COUNT);
+        for (int slot = 0; slot < slotCount; slot++) {
+            int length = page.getShort(SLOTS + slot * SLOT_SIZE + Short.BYTES);
+            if (length > 0) {
+                end -= length;
+                page.put(end, image, page.getShort(SLOTS + slot * SLOT_SIZE), length);
+                page.putShort(SLOTS + slot * SLOT_SIZE, (short) end);
+            }
+        }
+        page.putShort(FREE_END, (short) end);
+    }
+
+    private byte[] readRecord(ByteBuffer page, int offset, int length) {
+        if (page.get(offset) == INLINE_RECORD) {
+            byte[] record = new byte[length - 1];
+            page.get(offset + 1, record);
+            return record;
+        }
+        byte[] record = new byte[page.getInt(offset + 1)];
+        int pageNo = page.getInt(offset + 1 + Integer.BYTES);
+        int position = 0;
+        while (pageNo != 0) {
+            ByteBuffer overflow = pages.read(pageNo);
+            int chunk = overflow.getShort(OVERFLOW_LENGTH);
+            overflow.get(OVERFLOW_DATA, record, position, chunk);
+            position += chunk;
+            pageNo = overflow.getInt(NEXT);
+        }
+        if (position != record.length) {
+            throw new ManagerSaveException("Повреждённая цепочка страниц переполнения.");
+        }
+        return record;
+    }
+
+    // Метод для записи длинной строки в цепочку страниц переполнения, возвращает первую страницу.
+    // Цепочка строится с конца, чтобы каждая страница сразу получила номер следующей
+    private int writeOverflow(byte[] record) {
+        int next = 0;
+        for (int start = (record.length - 1) / OVERFLOW_CAPACITY * OVERFLOW_CAPACITY; start >= 0;
+             start -= OVERFLOW_CAPACITY) {
+            int chunk = Math.min(OVERFLOW_CAPACITY, record.length - start);
+            int pageNo = allocatePage();
+            pages.read(pageNo).put(TYPE, OVERFLOW).putShort(OVERFLOW_LENGTH, (short) chunk).putInt(NEXT, next)
+                    .put(OVERFLOW_DATA, record, start, chunk);
+            next = pageNo;
+        }
+        return next;
+    }
+
+    private void freeOverflow(int pageNo) {
+        while (pageNo != 0) {
+            ByteBuffer page = pages.read(pageNo);
+            pages.markDirty(pageNo);
+            int next = page.getInt(NEXT);
+            ByteBuffer header = pages.read(HEADER_PAGE);
+            pages.markDirty(HEADER_PAGE);
+            page.put(TYPE, FREE).putInt(NEXT, header.getInt(FREE_LIST));
+            header.putInt(FREE_LIST, pageNo);
+            pageNo = next;
+        }
+    }
+
+    // Метод для получения пустой страницы: из списка свободных или новой в конце файла. Страница отмечена изменённой
+    private int allocatePage() {
+        ByteBuffer header = pages.read(HEADER_PAGE);
+        pages.markDirty(HEADER_PAGE);
+        int pageNo = header.getInt(FREE_LIST);
+        if (pageNo == 0) {
+            return pages.allocate();
+        }
+        ByteBuffer page = pages.read(pageNo);
+        pages.markDirty(pageNo);
+        header.putInt(FREE_LIST, page.getInt(NEXT));
+        page.put(0, new byte[PageFile.PAGE_SIZE]);
+        return pageNo;
+    }
+
+    @Override
+    public void close() {
+        pages.close();
+    }
+}
@@ -0,0 +1,83 @@
+package manager;
+
+import model.IntHashSet;
+import model.Task;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+
+// Способ сохранения PAGED: изменённые задачи, отмеченные InMemoryTaskManager, записываются в их страницы
+class PagedPersistence implements PersistenceStrategy {
+
+    private final File file;
+    private PageStore pageStore; // Заменяется при перезаписи файла доски
+
+    PagedPersistence(File file) {
+        this.file = file;
+    }
+
+    // Метод для продолжения работы с файлом страниц, открытым при загрузке
+    void adopt(PageStore pageStore) {
+        this.pageStore = pageStore;
+    }
+
+    @Override
+    public void recordUpsert(FileBackedTaskManager board, Task task) {
+    }
+
+    @Override
+    public void recordDelete(FileBackedTaskManager board, List<Integer> ids) {
+    }
+
+    @Override
+    public void recordBatch(FileBackedTaskManager board, List<Task> upserted, IntHashSet deletedIds) {
+    }
+
+    @Override
+    public void recordClear(FileBackedTaskManager board, String type) {
+    }
+
+    @Override
+    public void requestRewrite() {
+        throw new IllegalStateException("Страницы хранят задачи в своём формате, снимка нет.");
+    }
+
+    // Пачка пишется в хранилище, действовавшее при её подготовке
+    @Override
+    public PendingWrite prepare(FileBackedTaskManager board) {
+        PageStore store = pageStore;
+        PageStore.Batch batch = PageStore.prepare(board, board.drainDirtyIds());
+        return () -> store.write(batch);
+    }
+
+    // Метод для перезаписи файла страниц: новый файл строится рядом и заменяет файл доски целиком,
+    // поэтому при сбое остаётся либо прежний файл доски, либо новый
+    @Override
+    public void rewrite(FileBackedTaskManager board) {
+        File pagesFile = new File(file.getPath() + ".tmp");
+        PageStore.build(pagesFile, board);
+        if (pageStore != null) {
+            pageStore.close();
+            pageStore = null;
+        }
+        try {
+            Files.deleteIfExists(PageFile.logFileOf(file).toPath()); // Журнал прежнего файла уже применён при открытии
+            Files.move(pagesFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new ManagerSaveException("Ошибка при замене файла страниц: " + e.getMessage());
+        }
+        pageStore = new PageStore(file, PageStore.DEFAULT_POOL_PAGES);
+        board.drainDirtyIds();
+    }
+
+    @Override
+    public void close(FileBackedTaskManager board, boolean isWriterHealthy) {
+        if (pageStore != null) {
+            pageStore.close();
+        }
+    }
+}
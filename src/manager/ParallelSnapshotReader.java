@@ -0,0 +1,167 @@
+package manager;
+
+import model.Task;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+// Параллельный разбор CSV-снимка на ForkJoinPool.
+// Строки задач делятся пополам по границе строки, пока часть не станет меньше MIN_CHUNK_BYTES; каждая часть
+// разбирается своим TaskCsvReader, результаты склеиваются в порядке файла. Разбор части останавливается на
+// пустой строке (после неё идёт история старого формата) или на первой ошибке — при склейке побеждает то,
+// что встретилось в файле раньше, как и при последовательном чтении.
+class ParallelSnapshotReader {
+
+    // Файлы меньше этого размера быстрее прочитать последовательно
+    static final long MIN_PARALLEL_BYTES = 1024 * 1024;
+    private static final long MIN_CHUNK_BYTES = 256 * 1024;
+    private static final long NONE = Long.MAX_VALUE;
+
+    private ParallelSnapshotReader() {
+    }
+
+    // Результат разбора части: задачи, смещение первой пустой строки и первая строка с ошибкой
+    private record Chunk(List<Task> tasks, long emptyLineOffset, String errorLine) {
+
+        boolean isStopped() {
+            return emptyLineOffset != NONE || errorLine != null;
+        }
+
+        Chunk append(Chunk next) {
+            if (isStopped()) {
+                return this; // Следующая часть лежит после пустой строки или ошибки
+            }
+            List<Task> joined = new ArrayList<>(tasks.size() + next.tasks.size());
+            joined.addAll(tasks);
+            joined.addAll(next.tasks);
+            return new Chunk(joined, next.emptyLineOffset, next.errorLine);
+        }
+    }
+
+    // Метод для чтения снимка в формате CSV, возвращает наибольший ID
+    static int read(File snapshotFile, InMemoryTaskManager board, LinkedHashSet<Integer> historyIds)
+            throws IOException {
+        long tasksStart;
+        try (TaskCsvReader reader = new TaskCsvReader(snapshotFile)) {
+            if (!reader.nextLine()) {
+                throw new ManagerSaveException("Файл пустой.");
+            }
+            if (!reader.nextLine()) {
+                return 0;
+            }
+            tasksStart = reader.lineOffset();
+        }
+
+        long fileSize = snapshotFile.length();
+        Chunk result;
+        try {
+            result = ForkJoinPool.commonPool().invoke(new ParseTask(snapshotFile, tasksStart, fileSize));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        if (result.errorLine() != null) {
+            throw new ManagerSaveException("Ошибка при обработке строки: " + result.errorLine());
+        }
+
+        int maxId = 0;
+        for (Task task : result.tasks()) {
+            maxId = Math.max(maxId, task.getId());
+            FileBackedTaskManager.putLoadedTask(board, task);
+        }
+
+        // История в снимке старого формата идёт после пустой строки
+        if (result.emptyLineOffset() != NONE) {
+            try (TaskCsvReader reader = new TaskCsvReader(snapshotFile, result.emptyLineOffset(), fileSize)) {
+                while (reader.nextLine()) {
+                    if (!reader.isLineEmpty()) {
+                        while (reader.hasNextField()) {
+                            historyIds.add(reader.readInt());
+                        }
+                        break;
+                    }
+                }
+            }
+        }
+        return maxId;
+    }
+
+    private static final class ParseTask extends RecursiveTask<Chunk> {
+        private static final long serialVersionUID = 1L;
+
+        private final File file;
+        private final long start;
+        private final long end;
+
+        ParseTask(File file, long start, long end) {
+            this.file = file;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected Chunk compute() {
+            try {
+                if (end - start > 2 * MIN_CHUNK_BYTES) {
+                    long middle = nextLineStart(start + (end - start) / 2);
+                    if (middle < end) {
+                        ParseTask right = new ParseTask(file, middle, end);
+                        right.fork();
+                        Chunk left = new ParseTask(file, start, middle).compute();
+                        return left.append(right.join());
+                    }
+                }
+                return parse();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        // Метод для поиска начала строки, следующей за позицией position
+        private long nextLineStart(long position) throws IOException {
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                ByteBuffer buffer = ByteBuffer.allocate(4096);
+                long offset = position;
+                while (offset < end) {
+                    buffer.clear();
+                    int read = channel.read(buffer, offset);
+                    if (read < 0) {
+                        break;
+                    }
+                    for (int i = 0; i < read; i++) {
+                        if (buffer.get(i) == '\n') {
+                            return offset + i + 1;
+                        }
+                    }
+                    offset += read;
+                }
+                return end;
+            }
+        }
+
+        private Chunk parse() throws IOException {
+            List<Task> tasks = new ArrayList<>();
+            try (TaskCsvReader reader = new TaskCsvReader(file, start, end)) {
+                while (reader.nextLine()) {
+                    if (reader.isLineEmpty()) {
+                        return new Chunk(tasks, reader.lineOffset(), null);
+                    }
+                    try {
+                        tasks.add(reader.readTask());
+                    } catch (Exception e) {
+                        return new Chunk(tasks, NONE, reader.currentLine());
+                    }
+                }
+            }
+            return new Chunk(tasks, NONE, null);
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package manager;
+
+// Способ сохранения состояния FileBackedTaskManager на диск
+public enum PersistenceMode {
+    // Полная перезапись файла после каждого изменения
+    SNAPSHOT,
+    // Дозапись изменений в журнал, файл-снимок обновляется только при контрольной точке
+    JOURNAL,
+    // Задачи хранятся в файлах-сегментах по диапазонам ID, записываются только сегменты изменённых задач
+    SEGMENTED,
+    // Задачи хранятся в страницах одного файла с B+-деревом по ID, записываются только изменённые страницы
+    PAGED
+}
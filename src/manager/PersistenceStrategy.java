@@ -0,0 +1,58 @@
+package manager;
+
+import model.IntHashSet;
+import model.Task;
+
+import java.util.List;
+
+// Способ фиксации изменений FileBackedTaskManager на диске, по одной реализации на режим сохранения.
+// Методы record*, requestRewrite, writeNow, prepare и rewrite вызываются под монитором менеджера после изменения
+// его хранилищ: record* запоминают изменение, writeNow сразу записывает накопленное (режим SYNC), а prepare
+// забирает накопленное в пачку, которую фоновый поток записывает уже без монитора
+interface PersistenceStrategy {
+
+    // Запуск фоновой работы способа сохранения после создания менеджера
+    default void start(FileBackedTaskManager board) {
+    }
+
+    // Изменённая или созданная задача
+    void recordUpsert(FileBackedTaskManager board, Task task);
+
+    // Удалённые задачи, в том числе подзадачи удалённого эпика
+    void recordDelete(FileBackedTaskManager board, List<Integer> ids);
+
+    // Пакет изменений, который фиксируется одной записью
+    void recordBatch(FileBackedTaskManager board, List<Task> upserted, IntHashSet deletedIds);
+
+    // Удаление всех задач типа type: TASK, EPIC или SUBTASK
+    void recordClear(FileBackedTaskManager board, String type);
+
+    // Запрос полной перезаписи снимка при следующей записи: после смены формата снимка или включения индекса
+    void requestRewrite();
+
+    // Метод для записи накопленных изменений до возврата из метода менеджера
+    default void writeNow(FileBackedTaskManager board) {
+        prepare(board).write();
+    }
+
+    // Метод для подготовки накопленных изменений к записи. Запись на диск должна выполняться в том же порядке,
+    // в котором готовились пачки
+    PendingWrite prepare(FileBackedTaskManager board);
+
+    // Метод для полной перезаписи доски
+    void rewrite(FileBackedTaskManager board);
+
+    // Остановка фоновой работы, вызывается без монитора менеджера
+    default void stop() {
+    }
+
+    // Метод для закрытия файлов способа сохранения. Если фоновая запись не сорвалась (isWriterHealthy),
+    // перед закрытием можно дописать доску
+    default void close(FileBackedTaskManager board, boolean isWriterHealthy) {
+    }
+
+    // Подготовленная к записи пачка изменений
+    interface PendingWrite {
+        void write();
+    }
+}
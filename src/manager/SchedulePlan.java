@@ -0,0 +1,79 @@
+package manager;
+
+import model.Epic;
+import model.IntHashMap;
+import model.IntHashSet;
+import model.Subtask;
+import model.Task;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// План расстановки задач без времени начала: время начала для каждой размещённой задачи в порядке размещения
+// и ID задач, которым не нашлось места до горизонта планирования или у которых нет длительности
+public class SchedulePlan {
+    private final LinkedHashMap<Integer, LocalDateTime> startTimes = new LinkedHashMap<>();
+    private final List<Integer> unplacedIds = new ArrayList<>();
+
+    void place(int id, LocalDateTime startTime) {
+        startTimes.put(id, startTime);
+    }
+
+    void skip(int id) {
+        unplacedIds.add(id);
+    }
+
+    public Map<Integer, LocalDateTime> getStartTimes() {
+        return Collections.unmodifiableMap(startTimes);
+    }
+
+    // Время начала, назначенное задаче, или null, если задача не размещена
+    public LocalDateTime getStartTime(int id) {
+        return startTimes.get(id);
+    }
+
+    public List<Integer> getUnplacedIds() {
+        return Collections.unmodifiableList(unplacedIds);
+    }
+
+    public int getPlacedCount() {
+        return startTimes.size();
+    }
+
+    // Метод для назначения времени начала по плану, возвращает изменённые задачи. Эпики размещённых
+    // подзадач пересчитываются по одному разу
+    List<Task> apply(TaskStorage storage) {
+        List<Task> scheduled = new ArrayList<>(startTimes.size());
+        IntHashMap<List<Subtask>> scheduledSubtasks = new IntHashMap<>();
+        for (Map.Entry<Integer, LocalDateTime> entry : startTimes.entrySet()) {
+            int id = entry.getKey();
+            Task task = storage.getTaskOrSubtask(id);
+            task.setStartTime(entry.getValue());
+            storage.addToSchedule(task);
+            storage.markChanged(id, false);
+            scheduled.add(task);
+            if (task instanceof Subtask subtask) {
+                List<Subtask> epicSubtasks = scheduledSubtasks.get(subtask.getEpicId());
+                if (epicSubtasks == null) {
+                    epicSubtasks = new ArrayList<>();
+                    scheduledSubtasks.put(subtask.getEpicId(), epicSubtasks);
+                }
+                epicSubtasks.add(subtask);
+            }
+        }
+        scheduledSubtasks.forEachKey(epicId -> {
+            Epic epic = storage.getEpic(epicId);
+            if (epic != null) {
+                if (epic.needsRecalculation()) {
+                    storage.recalculateEpic(epic); // Вклады подзадач собираются, если агрегаты приняты из индекса
+                }
+                epic.applySubtaskChanges(new IntHashSet(), scheduledSubtasks.get(epicId));
+            }
+        });
+        return scheduled;
+    }
+}
@@ -0,0 +1,216 @@
+package manager;
+
+import model.IntHashMap;
+import model.IntIntHashMap;
+import model.Task;
+import model.TaskStatus;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.IntFunction;
+
+// Вторичные индексы задач и подзадач: по статусу и по дню начала. Хранятся только ID, задачи берутся
+// из хранилищ менеджера, поэтому замена объекта задачи с тем же ID индекс не ломает.
+// Статус и день запоминаются при добавлении, чтобы изменение задачи "на месте" не мешало её удалить.
+// Подзадачи эпика отдельно не индексируются: их ID уже хранит сам эпик.
+// ConcurrentTaskManager переиндексирует задачу после изменения хранилища, поэтому задачи по ID из индекса
+// в хранилище может уже не быть: такие ID пропускаются
+class SecondaryIndex {
+
+    // Время начала задачи, изменённой другим потоком до переиндексации, могло стать null
+    private static final Comparator<Task> BY_START = Comparator.comparing(Task::getStartTime,
+            Comparator.nullsLast(Comparator.naturalOrder()));
+
+    private final IntFunction<Task> taskById;
+    private final Partition byStatus = new Partition();
+    private final Partition byDay = new Partition();
+
+    SecondaryIndex(IntFunction<Task> taskById) {
+        this.taskById = taskById;
+    }
+
+    // Метод для добавления или переиндексации задачи. Задача без статуса в индекс статусов не попадает
+    void add(Task task) {
+        int id = task.getId();
+        if (task.getStatus() != null) {
+            byStatus.put(id, task.getStatus().ordinal());
+        } else {
+            byStatus.remove(id);
+        }
+        if (task.getStartTime() != null) {
+            byDay.put(id, dayOf(task.getStartTime()));
+        } else {
+            byDay.remove(id);
+        }
+    }
+
+    void remove(int id) {
+        byStatus.remove(id);
+        byDay.remove(id);
+    }
+
+    void clear() {
+        byStatus.clear();
+        byDay.clear();
+    }
+
+    // Метод для получения задач с заданным статусом: O(k)
+    List<Task> getTasksByStatus(TaskStatus status) {
+        Group group = byStatus.groupOf(status.ordinal());
+        List<Task> result = new ArrayList<>(group != null ? group.size : 0);
+        if (group != null) {
+            for (int i = 0; i < group.size; i++) {
+                addStored(result, group.ids[i]);
+            }
+        }
+        return result;
+    }
+
+    // Метод для получения задач, начинающихся в заданный день, в порядке времени начала: O(k log k)
+    List<Task> getTasksStartingOn(LocalDate day) {
+        Group group = byDay.groupOf((int) day.toEpochDay());
+        List<Task> result = new ArrayList<>(group != null ? group.size : 0);
+        if (group != null) {
+            for (int i = 0; i < group.size; i++) {
+                addStored(result, group.ids[i]);
+            }
+        }
+        result.sort(BY_START);
+        return result;
+    }
+
+    // Метод для получения задач с заданным статусом, начинающихся в [from, to), в порядке времени начала.
+    // Пересечение индексов строится от меньшей стороны: если задач со статусом меньше, чем дней в интервале,
+    // или в корзинах дней набирается больше задач, чем со статусом, отбираются задачи со статусом;
+    // иначе задачи корзин дней отбираются по статусу
+    List<Task> getTasksByStatusBetween(TaskStatus status, LocalDateTime from, LocalDateTime to) {
+        if (from == null || to == null || to.isBefore(from)) {
+            throw new IllegalArgumentException("Окончание интервала не может быть раньше начала.");
+        }
+        Group statusGroup = byStatus.groupOf(status.ordinal());
+        if (statusGroup == null || !from.isBefore(to)) {
+            return new ArrayList<>();
+        }
+        int firstDay = dayOf(from);
+        int lastDay = dayOf(to.minusNanos(1));
+        List<Group> dayGroups = new ArrayList<>();
+        long dayTaskCount = 0;
+        boolean isByDay = (long) lastDay - firstDay < statusGroup.size;
+        for (int day = firstDay; isByDay && day <= lastDay; day++) {
+            Group group = byDay.groupOf(day);
+            if (group != null) {
+                dayGroups.add(group);
+                dayTaskCount += group.size;
+                isByDay = dayTaskCount <= statusGroup.size;
+            }
+        }
+
+        List<Task> result = new ArrayList<>();
+        if (isByDay) {
+            for (Group group : dayGroups) {
+                for (int i = 0; i < group.size; i++) {
+                    if (byStatus.hasKey(group.ids[i], status.ordinal())) {
+                        addIfStartsBetween(result, taskById.apply(group.ids[i]), from, to);
+                    }
+                }
+            }
+        } else {
+            for (int i = 0; i < statusGroup.size; i++) {
+                addIfStartsBetween(result, taskById.apply(statusGroup.ids[i]), from, to);
+            }
+        }
+        result.sort(BY_START);
+        return result;
+    }
+
+    private void addStored(List<Task> result, int id) {
+        Task task = taskById.apply(id);
+        if (task != null) {
+            result.add(task);
+        }
+    }
+
+    private static void addIfStartsBetween(List<Task> result, Task task, LocalDateTime from, LocalDateTime to) {
+        if (task == null) {
+            return;
+        }
+        LocalDateTime start = task.getStartTime();
+        if (start != null && !start.isBefore(from) && start.isBefore(to)) {
+            result.add(task);
+        }
+    }
+
+    private static int dayOf(LocalDateTime time) {
+        return (int) time.toLocalDate().toEpochDay();
+    }
+
+    // Плотный массив ID одной группы: удаление переносит последний ID на место удалённого
+    private static final class Group {
+        int[] ids = new int[4];
+        int size;
+    }
+
+    // Разбиение ID на непересекающиеся группы по целочисленному ключу, у каждого ID не больше одной группы.
+    // Позиция ID в массиве группы хранится в IntIntHashMap, поэтому добавление и удаление — O(1),
+    // а обход группы — O(k). Опустевшая группа удаляется, чтобы корзины прошедших дней не копились
+    private static final class Partition {
+        private final IntHashMap<Group> groups = new IntHashMap<>();
+        private final IntIntHashMap keyById = new IntIntHashMap(0);
+        private final IntIntHashMap positionById = new IntIntHashMap(-1);
+
+        Group groupOf(int key) {
+            return groups.get(key);
+        }
+
+        // Метод для проверки, что ID есть в разбиении и лежит в группе key. Без проверки позиции ID, которого
+        // в разбиении нет (например, задача без статуса), совпал бы с ключом по умолчанию
+        boolean hasKey(int id, int key) {
+            return positionById.get(id) != -1 && keyById.get(id) == key;
+        }
+
+        void put(int id, int key) {
+            if (hasKey(id, key)) {
+                return;
+            }
+            remove(id);
+            Group group = groups.get(key);
+            if (group == null) {
+                group = new Group();
+                groups.put(key, group);
+            }
+            if (group.size == group.ids.length) {
+                group.ids = Arrays.copyOf(group.ids, group.size * 2);
+            }
+            positionById.put(id, group.size);
+            keyById.put(id, key);
+            group.ids[group.size++] = id;
+        }
+
+        void remove(int id) {
+            int position = positionById.remove(id);
+            if (position == -1) {
+                return;
+            }
+            int key = keyById.remove(id);
+            Group group = groups.get(key);
+            int last = group.ids[--group.size];
+            if (last != id) {
+                group.ids[position] = last;
+                positionById.put(last, position);
+            }
+            if (group.size == 0) {
+                groups.remove(key);
+            }
+        }
+
+        void clear() {
+            groups.clear();
+            keyById.clear();
+            positionById.clear();
+        }
+    }
+}
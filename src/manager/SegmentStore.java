@@ -0,0 +1,481 @@
+package manager;
+
+import model.Epic;
+import model.IntHashMap;
+import model.Subtask;
+import model.Task;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+// Сегментированное хранилище задач для режима SEGMENTED.
+// Файл доски служит манифестом: в нём записан номер поколения каталога сегментов <файл>.segments-<поколение>.
+// В каталоге у каждого эпика свой сегмент epic-<id> (эпик и его подзадачи), отдельные задачи лежат в сегментах
+// tasks-<n> по TASK_SEGMENT_SIZE подряд идущих ID, история просмотров — в журнале истории рядом с манифестом.
+// Файл <сегмент>.csv хранит строки задач в формате снимка (без заголовка), файл <сегмент>.delta — записи
+// UPSERT и DELETE в формате журнала, сделанные после последней перезаписи сегмента. При сохранении
+// затрагиваются только сегменты изменённых задач: изменения дописываются в .delta, а сегмент перезаписывается
+// целиком, если изменена заметная доля его задач или его .delta стал слишком длинным.
+class SegmentStore {
+
+    private static final String MANIFEST_HEADER = "SEGMENTS,1";
+    private static final String GENERATION = "generation";
+
+    private static final int TASK_SEGMENT_SHIFT = 10;
+    static final int TASK_SEGMENT_SIZE = 1 << TASK_SEGMENT_SHIFT;
+
+    // Записи .delta сворачиваются в сегмент, когда их становится вдвое меньше задач сегмента,
+    // но маленькие сегменты не перезаписываются чаще, чем раз в MIN_DELTA_RECORDS записей
+    private static final int MIN_DELTA_RECORDS = 16;
+
+    private static final String BASE_SUFFIX = ".csv";
+    private static final String DELTA_SUFFIX = ".delta";
+    private static final String EPIC_PREFIX = "epic-";
+    private static final String TASKS_PREFIX = "tasks-";
+
+    private final File manifest;
+    private long generation;
+    private File directory;
+
+    private final IntHashMap<Segment> epicSegments = new IntHashMap<>();
+    private final IntHashMap<Segment> taskSegments = new IntHashMap<>();
+    // Сегмент, в котором на диске лежит последняя запись задачи: нужен, чтобы удалить задачу
+    // или перенесённую в другой эпик подзадачу из прежнего сегмента
+    private final IntHashMap<Segment> locations = new IntHashMap<>();
+
+    // Сегмент: эпик с подзадачами (epicId > 0) или диапазон ID отдельных задач
+    private static final class Segment {
+        final String name;
+        final int epicId;
+        final int firstTaskId;
+        int deltaRecords;
+
+        Segment(String name, int epicId, int firstTaskId) {
+            this.name = name;
+            this.epicId = epicId;
+            this.firstTaskId = firstTaskId;
+        }
+    }
+
+    SegmentStore(File manifest) {
+        this.manifest = manifest;
+    }
+
+    // Метод для проверки, что файл доски — манифест сегментов
+    static boolean isManifest(File file) {
+        if (!file.isFile()) {
+            return false;
+        }
+        byte[] expected = MANIFEST_HEADER.getBytes(StandardCharsets.US_ASCII);
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            return Arrays.equals(in.readNBytes(expected.length), expected);
+        } catch (IOException e) {
+            throw new ManagerSaveException("Ошибка при чтении файла: " + e.getMessage());
+        }
+    }
+
+    private File directoryOf(long generation) {
+        return new File(manifest.getPath() + ".segments-" + generation);
+    }
+
+    private Segment segmentOf(Task task) {
+        if (task instanceof Epic) {
+            return epicSegment(task.getId());
+        } else if (task instanceof Subtask) {
+            return epicSegment(((Subtask) task).getEpicId());
+        }
+        int range = task.getId() >>> TASK_SEGMENT_SHIFT;
+        Segment segment = taskSegments.get(range);
+        if (segment == null) {
+            segment = new Segment(TASKS_PREFIX + range, 0, range << TASK_SEGMENT_SHIFT);
+            taskSegments.put(range, segment);
+        }
+        return segment;
+    }
+
+    private Segment epicSegment(int epicId) {
+        Segment segment = epicSegments.get(epicId);
+        if (segment == null) {
+            segment = new Segment(EPIC_PREFIX + epicId, epicId, 0);
+            epicSegments.put(epicId, segment);
+        }
+        return segment;
+    }
+
+    private File baseFileOf(Segment segment) {
+        return new File(directory, segment.name + BASE_SUFFIX);
+    }
+
+    private File deltaFileOf(Segment segment) {
+        return new File(directory, segment.name + DELTA_SUFFIX);
+    }
+
+    // Изменения одного сегмента: строки для перезаписи сегмента или записи для дозаписи в .delta
+    private record SegmentWrite(Segment segment, boolean isRewrite, List<String> lines) {
+    }
+
+    // Подготовленная к записи пачка изменений. Готовится под монитором менеджера, пишется без него
+    static final class Batch {
+        private final List<SegmentWrite> writes = new ArrayList<>();
+
+        boolean isEmpty() {
+            return writes.isEmpty();
+        }
+    }
+
+    // Метод для подготовки записи изменённых задач. Запись на диск должна выполняться в том же порядке,
+    // в котором готовились пачки
+    Batch prepare(InMemoryTaskManager board, int[] dirtyIds) {
+        // Записи группируются по сегментам: удаление из прежнего сегмента и запись в текущий
+        Map<Segment, List<String>> records = new LinkedHashMap<>();
+        for (int id : dirtyIds) {
+            Task task = findTask(board, id);
+            Segment previous = locations.get(id);
+            Segment current = task != null ? segmentOf(task) : null;
+            if (previous != null && previous != current) {
+                records.computeIfAbsent(previous, segment -> new ArrayList<>())
+                        .add(FileBackedTaskManager.DELETE + "," + id);
+            }
+            if (current != null) {
+                records.computeIfAbsent(current, segment -> new ArrayList<>())
+                        .add(FileBackedTaskManager.UPSERT + "," + FileBackedTaskManager.taskToString(task));
+                locations.put(id, current);
+            } else {
+                locations.remove(id);
+            }
+        }
+
+        Batch batch = new Batch();
+        for (Map.Entry<Segment, List<String>> entry : records.entrySet()) {
+            Segment segment = entry.getKey();
+            List<String> lines = entry.getValue();
+            int liveRecords = liveRecordsOf(board, segment);
+            int deltaRecords = segment.deltaRecords + lines.size();
+            if (lines.size() * 4 >= liveRecords
+                    || deltaRecords >= Math.max(MIN_DELTA_RECORDS, liveRecords / 2)) {
+                // Изменена четверть сегмента или .delta стал слишком длинным: сегмент перезаписывается
+                batch.writes.add(new SegmentWrite(segment, true, renderSegment(board, segment)));
+                segment.deltaRecords = 0;
+                if (liveRecords == 0) {
+                    forgetSegment(segment);
+                }
+            } else {
+                batch.writes.add(new SegmentWrite(segment, false, lines));
+                segment.deltaRecords = deltaRecords;
+            }
+        }
+        return batch;
+    }
+
+    // Метод для записи подготовленной пачки. Каждая запись атомарна в пределах своего сегмента, но не пачка
+    // целиком: при сбое посреди записи часть сегментов может не получить изменений этой пачки
+    void write(Batch batch) {
+        try {
+            for (SegmentWrite write : batch.writes) {
+                if (write.isRewrite()) {
+                    rewriteSegment(write.segment(), write.lines());
+                } else {
+                    try (BufferedWriter writer = new BufferedWriter(new FileWriter(deltaFileOf(write.segment()),
+                            StandardCharsets.UTF_8, true))) {
+                        for (String line : write.lines()) {
+                            writer.write(line);
+                            writer.newLine();
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new ManagerSaveException("Ошибка при записи сегмента: " + e.getMessage());
+        }
+    }
+
+    // Метод для перезаписи всех сегментов в каталог следующего поколения. Переход на него происходит
+    // заменой манифеста, поэтому при сбое на диске остаётся либо старое, либо новое состояние
+    void rewriteAll(InMemoryTaskManager board) {
+        long newGeneration = generation + 1;
+        File newDirectory = directoryOf(newGeneration);
+        epicSegments.clear();
+        taskSegments.clear();
+        locations.clear();
+        try {
+            deleteDirectory(newDirectory);
+            Files.createDirectories(newDirectory.toPath());
+            directory = newDirectory;
+
+            LinkedHashSet<Segment> segments = new LinkedHashSet<>();
+            for (Task task : board.tasks.values()) {
+                addLocation(task, segments);
+            }
+            for (Epic epic : board.epics.values()) {
+                addLocation(epic, segments);
+            }
+            for (Subtask subtask : board.subtasks.values()) {
+                addLocation(subtask, segments);
+            }
+            for (Segment segment : segments) {
+                Files.write(baseFileOf(segment).toPath(), renderSegment(board, segment), StandardCharsets.UTF_8);
+            }
+
+            File tmpManifest = new File(manifest.getPath() + ".tmp");
+            Files.write(tmpManifest.toPath(), List.of(MANIFEST_HEADER, GENERATION + "," + newGeneration),
+                    StandardCharsets.UTF_8);
+            Files.move(tmpManifest.toPath(), manifest.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            generation = newGeneration;
+            deleteStaleDirectories();
+        } catch (IOException e) {
+            throw new ManagerSaveException("Ошибка при записи сегментов: " + e.getMessage());
+        }
+    }
+
+    private void addLocation(Task task, LinkedHashSet<Segment> segments) {
+        Segment segment = segmentOf(task);
+        segments.add(segment);
+        locations.put(task.getId(), segment);
+    }
+
+    // Метод для удаления каталогов сегментов, когда доска переходит на другой способ сохранения
+    void delete() {
+        directory = null;
+        try {
+            deleteStaleDirectories();
+        } catch (IOException e) {
+            throw new ManagerSaveException("Ошибка при удалении сегментов: " + e.getMessage());
+        }
+        epicSegments.clear();
+        taskSegments.clear();
+        locations.clear();
+    }
+
+    // Метод для загрузки всех сегментов, возвращает наибольший ID. Сегменты независимы, поэтому читаются
+    // параллельно, а в хранилища менеджера переносятся последовательно. Если запись в .delta оборвана,
+    // возвращается -1: такой сегмент нельзя дописывать, и доску нужно перезаписать
+    int load(InMemoryTaskManager board) throws IOException {
+        for (String line : Files.readAllLines(manifest.toPath(), StandardCharsets.UTF_8)) {
+            if (line.startsWith(GENERATION + ",")) {
+                generation = Long.parseLong(line.substring(GENERATION.length() + 1));
+            }
+        }
+        directory = directoryOf(generation);
+        String[] names = directory.list((dir, name) -> name.endsWith(BASE_SUFFIX) || name.endsWith(DELTA_SUFFIX));
+        if (names == null) {
+            throw new ManagerSaveException("Не найден каталог сегментов: " + directory.getName());
+        }
+        LinkedHashSet<String> segmentNames = new LinkedHashSet<>();
+        for (String name : names) {
+            segmentNames.add(name.substring(0, name.lastIndexOf('.')));
+        }
+
+        List<SegmentContents> contents;
+        try {
+            contents = segmentNames.parallelStream().map(this::readSegment).toList();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        int maxId = 0;
+        boolean isTorn = false;
+        for (SegmentContents segmentContents : contents) {
+            Segment segment = segmentContents.segment();
+            segment.deltaRecords = segmentContents.deltaRecords();
+            for (Task task : segmentContents.tasks().values()) {
+                FileBackedTaskManager.putLoadedTask(board, task);
+                locations.put(task.getId(), segment);
+            }
+            maxId = Math.max(maxId, segmentContents.maxId());
+            isTorn |= segmentContents.isTorn();
+        }
+        deleteStaleDirectories(); // Каталоги, оставшиеся от прерванной перезаписи
+        return isTorn ? -1 : maxId;
+    }
+
+    // Прочитанный сегмент: задачи после применения .delta, наибольший ID (в том числе удалённых задач),
+    // число записей .delta и признак оборванной записи
+    private record SegmentContents(Segment segment, IntHashMap<Task> tasks, int maxId, int deltaRecords,
+                                   boolean isTorn) {
+    }
+
+    private SegmentContents readSegment(String name) {
+        Segment segment;
+        if (name.startsWith(EPIC_PREFIX)) {
+            int epicId = Integer.parseInt(name.substring(EPIC_PREFIX.length()));
+            segment = new Segment(name, epicId, 0);
+            synchronized (epicSegments) {
+                epicSegments.put(epicId, segment);
+            }
+        } else if (name.startsWith(TASKS_PREFIX)) {
+            int range = Integer.parseInt(name.substring(TASKS_PREFIX.length()));
+            segment = new Segment(name, 0, range << TASK_SEGMENT_SHIFT);
+            synchronized (taskSegments) {
+                taskSegments.put(range, segment);
+            }
+        } else {
+            throw new ManagerSaveException("Неизвестный сегмент: " + name);
+        }
+
+        IntHashMap<Task> tasks = new IntHashMap<>();
+        int maxId = 0;
+        int deltaRecords = 0;
+        try {
+            File baseFile = baseFileOf(segment);
+            if (baseFile.exists()) {
+                try (TaskCsvReader reader = new TaskCsvReader(baseFile)) {
+                    while (reader.nextLine()) {
+                        if (reader.isLineEmpty()) {
+                            continue;
+                        }
+                        try {
+                            Task task = reader.readTask();
+                            maxId = Math.max(maxId, task.getId());
+                            tasks.put(task.getId(), task);
+                        } catch (Exception e) {
+                            throw new ManagerSaveException("Ошибка при обработке строки: " + reader.currentLine());
+                        }
+                    }
+                }
+            }
+
+            File deltaFile = deltaFileOf(segment);
+            if (deltaFile.exists()) {
+                try (TaskCsvReader reader = new TaskCsvReader(deltaFile)) {
+                    while (reader.nextLine()) {
+                        if (reader.isLineEmpty()) {
+                            continue;
+                        }
+                        try {
+                            if (reader.readKeyword(FileBackedTaskManager.UPSERT)) {
+                                Task task = reader.readTask();
+                                maxId = Math.max(maxId, task.getId());
+                                tasks.put(task.getId(), task);
+                            } else if (reader.readKeyword(FileBackedTaskManager.DELETE)) {
+                                while (reader.hasNextField()) {
+                                    tasks.remove(reader.readInt());
+                                }
+                            } else {
+                                throw new IllegalArgumentException("Неизвестная запись: " + reader.currentLine());
+                            }
+                        } catch (Exception e) {
+                            if (!reader.isLineTerminated()) {
+                                // Запись оборвалась при сбое во время дозаписи
+                                return new SegmentContents(segment, tasks, maxId, deltaRecords, true);
+                            }
+                            throw new ManagerSaveException("Ошибка при обработке записи сегмента: " + reader.currentLine());
+                        }
+                        deltaRecords++;
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return new SegmentContents(segment, tasks, maxId, deltaRecords, false);
+    }
+
+    private void rewriteSegment(Segment segment, List<String> lines) throws IOException {
+        File baseFile = baseFileOf(segment);
+        if (lines.isEmpty()) {
+            Files.deleteIfExists(baseFile.toPath());
+        } else {
+            File tmpFile = new File(directory, baseFile.getName() + ".tmp");
+            Files.write(tmpFile.toPath(), lines, StandardCharsets.UTF_8);
+            Files.move(tmpFile.toPath(), baseFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        }
+        // При сбое до удаления .delta её записи применятся к новому сегменту повторно, что безопасно
+        Files.deleteIfExists(deltaFileOf(segment).toPath());
+    }
+
+    private void forgetSegment(Segment segment) {
+        if (segment.epicId > 0) {
+            epicSegments.remove(segment.epicId);
+        } else {
+            taskSegments.remove(segment.firstTaskId >>> TASK_SEGMENT_SHIFT);
+        }
+    }
+
+    // Число задач сегмента в памяти: для эпика — он сам и его подзадачи, для диапазона отдельных задач — размер
+    // диапазона, чтобы не перебирать его при каждом изменении
+    private static int liveRecordsOf(InMemoryTaskManager board, Segment segment) {
+        if (segment.epicId > 0) {
+            Epic epic = board.epics.get(segment.epicId);
+            return epic != null ? 1 + epic.getSubtaskCount() : 0;
+        }
+        return TASK_SEGMENT_SIZE;
+    }
+
+    // Метод для получения строк всех задач сегмента: эпик и его подзадачи или отдельные задачи диапазона по ID
+    private static List<String> renderSegment(InMemoryTaskManager board, Segment segment) {
+        List<String> lines = new ArrayList<>();
+        if (segment.epicId > 0) {
+            Epic epic = board.epics.get(segment.epicId);
+            if (epic != null) {
+                lines.add(FileBackedTaskManager.taskToString(epic));
+                epic.forEachSubtaskId(subtaskId -> {
+                    Subtask subtask = board.subtasks.get(subtaskId);
+                    if (subtask != null) {
+                        lines.add(FileBackedTaskManager.taskToString(subtask));
+                    }
+                });
+            }
+            return lines;
+        }
+        for (int id = segment.firstTaskId; id < segment.firstTaskId + TASK_SEGMENT_SIZE; id++) {
+            Task task = board.tasks.get(id);
+            if (task != null) {
+                lines.add(FileBackedTaskManager.taskToString(task));
+            }
+        }
+        return lines;
+    }
+
+    static Task findTask(InMemoryTaskManager board, int id) {
+        Task task = board.tasks.get(id);
+        if (task == null) {
+            task = board.epics.get(id);
+        }
+        if (task == null) {
+            task = board.subtasks.get(id);
+        }
+        return task;
+    }
+
+    // Метод для удаления всех каталогов сегментов, кроме текущего
+    private void deleteStaleDirectories() throws IOException {
+        String prefix = manifest.getName() + ".segments";
+        File parent = manifest.getAbsoluteFile().getParentFile();
+        File[] candidates = parent.listFiles((dir, name) -> name.startsWith(prefix));
+        if (candidates == null) {
+            return;
+        }
+        for (File candidate : candidates) {
+            if (candidate.isDirectory() && !candidate.getAbsoluteFile().equals(
+                    directory != null ? directory.getAbsoluteFile() : null)) {
+                deleteDirectory(candidate);
+            }
+        }
+    }
+
+    private static void deleteDirectory(File directory) throws IOException {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            Files.delete(file.toPath());
+        }
+        Files.delete(directory.toPath());
+    }
+}
@@ -0,0 +1,56 @@
+package manager;
+
+import model.IntHashSet;
+import model.Task;
+
+import java.io.File;
+import java.util.List;
+
+// Способ сохранения SEGMENTED: изменённые задачи, отмеченные InMemoryTaskManager, записываются в их сегменты.
+// Изменённые ID накапливаются в менеджере, поэтому пачка собирается при записи: несколько изменений одной задачи
+// дают одну запись
+class SegmentedPersistence implements PersistenceStrategy {
+
+    private final SegmentStore segmentStore;
+
+    SegmentedPersistence(File file) {
+        this.segmentStore = new SegmentStore(file);
+    }
+
+    SegmentStore getStore() {
+        return segmentStore;
+    }
+
+    @Override
+    public void recordUpsert(FileBackedTaskManager board, Task task) {
+    }
+
+    @Override
+    public void recordDelete(FileBackedTaskManager board, List<Integer> ids) {
+    }
+
+    @Override
+    public void recordBatch(FileBackedTaskManager board, List<Task> upserted, IntHashSet deletedIds) {
+    }
+
+    @Override
+    public void recordClear(FileBackedTaskManager board, String type) {
+    }
+
+    @Override
+    public void requestRewrite() {
+        throw new IllegalStateException("Сегменты всегда хранятся в CSV.");
+    }
+
+    @Override
+    public PendingWrite prepare(FileBackedTaskManager board) {
+        SegmentStore.Batch batch = segmentStore.prepare(board, board.drainDirtyIds());
+        return () -> segmentStore.write(batch);
+    }
+
+    @Override
+    public void rewrite(FileBackedTaskManager board) {
+        segmentStore.rewriteAll(board);
+        board.drainDirtyIds();
+    }
+}
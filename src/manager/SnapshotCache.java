@@ -0,0 +1,33 @@
+package manager;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Supplier;
+
+// Неизменяемая копия списка, помеченная версией данных, по которой она построена. Пока версия не изменилась,
+// возвращается один и тот же экземпляр; после изменения копия строится заново при первом чтении.
+// Копия публикуется через volatile-поле вместе с версией, поэтому кэш можно читать из нескольких потоков:
+// версию нужно прочитать до построения и увеличивать после изменения, тогда устаревшая копия не выдаётся
+// за свежую, а одновременное построение лишь повторяет работу
+class SnapshotCache<T> {
+
+    private record Snapshot<T>(long version, List<T> items) {
+    }
+
+    private final Supplier<List<T>> builder;
+    private volatile Snapshot<T> snapshot;
+
+    SnapshotCache(Supplier<List<T>> builder) {
+        this.builder = builder;
+    }
+
+    List<T> get(long version) {
+        Snapshot<T> current = snapshot;
+        if (current != null && current.version() == version) {
+            return current.items();
+        }
+        List<T> items = Collections.unmodifiableList(builder.get());
+        snapshot = new Snapshot<>(version, items);
+        return items;
+    }
+}
@@ -0,0 +1,11 @@
+package manager;
+
+// Формат файла-снимка FileBackedTaskManager, журнал изменений всегда пишется в CSV
+public enum SnapshotFormat {
+    // Текстовый CSV: id,type,name,status,description,duration,startTime,epic
+    CSV,
+    // Двоичный формат с версией, таблицей строк и временем в минутах от эпохи
+    BINARY,
+    // CSV, сжатый независимыми блоками Deflater; блоки распаковываются и разбираются параллельно
+    CSV_DEFLATE
+}
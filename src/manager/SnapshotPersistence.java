@@ -0,0 +1,253 @@
+package manager;
+
+import model.Epic;
+import model.IntHashSet;
+import model.Subtask;
+import model.Task;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+// Способ сохранения SNAPSHOT: после каждого изменения файл доски перезаписывается целиком.
+// Снимок пишется во временный файл и заменяет файл доски, рядом может сохраняться индекс DerivedIndex
+class SnapshotPersistence implements PersistenceStrategy {
+
+    protected final File file;
+    private boolean isSnapshotDirty;
+
+    SnapshotPersistence(File file) {
+        this.file = file;
+    }
+
+    @Override
+    public void recordUpsert(FileBackedTaskManager board, Task task) {
+        isSnapshotDirty = true;
+    }
+
+    @Override
+    public void recordDelete(FileBackedTaskManager board, List<Integer> ids) {
+        isSnapshotDirty = true;
+    }
+
+    @Override
+    public void recordBatch(FileBackedTaskManager board, List<Task> upserted, IntHashSet deletedIds) {
+        isSnapshotDirty = true;
+    }
+
+    @Override
+    public void recordClear(FileBackedTaskManager board, String type) {
+        isSnapshotDirty = true;
+    }
+
+    @Override
+    public void requestRewrite() {
+        isSnapshotDirty = true;
+    }
+
+    // Снимок содержит все накопленные изменения
+    protected boolean isSnapshotDirty() {
+        return isSnapshotDirty;
+    }
+
+    @Override
+    public void writeNow(FileBackedTaskManager board) {
+        rewrite(board);
+    }
+
+    // Снимок готовится в памяти, чтобы не держать монитор менеджера во время записи на диск
+    @Override
+    public PendingWrite prepare(FileBackedTaskManager board) {
+        isSnapshotDirty = false;
+        RenderedSnapshot snapshot = render(board);
+        return () -> writeRendered(snapshot);
+    }
+
+    @Override
+    public void rewrite(FileBackedTaskManager board) {
+        isSnapshotDirty = false;
+        File snapshotFile = new File(file.getPath() + ".tmp");
+        try {
+            // Сумма снимка для индекса считается при записи, чтобы не перечитывать файл
+            CRC32 checksum = board.isDerivedIndexPersisted() ? new CRC32() : null;
+            OutputStream fileOut = new FileOutputStream(snapshotFile);
+            try (OutputStream out = new BufferedOutputStream(
+                    checksum != null ? new CheckedOutputStream(fileOut, checksum) : fileOut)) {
+                board.writeOwnSnapshot(out);
+            }
+            byte[] derivedIndex = checksum != null
+                    ? DerivedIndex.render(board, snapshotFile.length(), checksum.getValue()) : null;
+            replaceSnapshot(snapshotFile);
+            writeDerivedIndex(derivedIndex);
+        } catch (IOException e) {
+            throw new ManagerSaveException("Ошибка при сохранении в файл: " + e.getMessage());
+        }
+    }
+
+    // Метод для замены файла-снимка готовым временным файлом. Снимок содержит всё состояние, поэтому журналы
+    // рядом с ним, если доска раньше велась в режиме JOURNAL, больше не нужны
+    protected void replaceSnapshot(File snapshotFile) throws IOException {
+        Files.move(snapshotFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        Files.deleteIfExists(FileBackedTaskManager.journalFileOf(file).toPath());
+        Files.deleteIfExists(FileBackedTaskManager.previousJournalFileOf(file).toPath());
+    }
+
+    // Метод для замены индекса после замены снимка. Если запись прервётся между ними, старый индекс
+    // не сойдётся с новым снимком по сумме и будет пропущен при загрузке
+    private void writeDerivedIndex(byte[] derivedIndex) throws IOException {
+        if (derivedIndex == null) {
+            return;
+        }
+        File indexFile = DerivedIndex.fileOf(file);
+        File temporaryFile = new File(indexFile.getPath() + ".tmp");
+        Files.write(temporaryFile.toPath(), derivedIndex);
+        Files.move(temporaryFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Снимок и индекс к нему, подготовленные в памяти
+    private record RenderedSnapshot(byte[] snapshot, byte[] derivedIndex) {
+    }
+
+    private static RenderedSnapshot render(FileBackedTaskManager board) {
+        ByteArrayOutputStream snapshot = new ByteArrayOutputStream();
+        try {
+            board.writeOwnSnapshot(snapshot);
+        } catch (IOException e) {
+            throw new ManagerSaveException("Ошибка при подготовке снимка: " + e.getMessage());
+        }
+        byte[] bytes = snapshot.toByteArray();
+        byte[] derivedIndex = board.isDerivedIndexPersisted()
+                ? DerivedIndex.render(board, bytes.length, DerivedIndex.checksumOf(bytes)) : null;
+        return new RenderedSnapshot(bytes, derivedIndex);
+    }
+
+    private void writeRendered(RenderedSnapshot snapshot) {
+        File snapshotFile = new File(file.getPath() + ".tmp");
+        try {
+            Files.write(snapshotFile.toPath(), snapshot.snapshot());
+            replaceSnapshot(snapshotFile);
+            writeDerivedIndex(snapshot.derivedIndex());
+        } catch (IOException e) {
+            throw new ManagerSaveException("Ошибка при сохранении в файл: " + e.getMessage());
+        }
+    }
+
+    // Метод для записи снимка всех задач в выбранном формате
+    static void writeSnapshot(OutputStream out, InMemoryTaskManager board, SnapshotFormat format) throws IOException {
+        writeSnapshot(out, board.tasks.values(), board.epics.values(), board.subtasks.values(), format);
+    }
+
+    static void writeSnapshot(OutputStream out, Iterable<Task> tasks, Iterable<Epic> epics,
+                              Iterable<Subtask> subtasks, SnapshotFormat format) throws IOException {
+        if (format == SnapshotFormat.BINARY) {
+            BinarySnapshot.write(out, tasks, epics, subtasks);
+            return;
+        }
+        if (format == SnapshotFormat.CSV_DEFLATE) {
+            CompressedSnapshot.BlockOutputStream blocks = new CompressedSnapshot.BlockOutputStream(out);
+            BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(blocks, StandardCharsets.UTF_8));
+            writeCsvSnapshot(writer, tasks, epics, subtasks);
+            writer.flush();
+            blocks.finish();
+            return;
+        }
+        BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        writeCsvSnapshot(writer, tasks, epics, subtasks);
+        writer.flush();
+    }
+
+    private static void writeCsvSnapshot(BufferedWriter writer, Iterable<Task> tasks, Iterable<Epic> epics,
+                                         Iterable<Subtask> subtasks) throws IOException {
+        // Записываем заголовок
+        writer.write("id,type,name,status,description,duration,startTime,epic");
+        writer.newLine();
+
+        // Сохраняем задачи
+        for (Task task : tasks) {
+            writer.write(FileBackedTaskManager.taskToString(task));
+            writer.newLine();
+        }
+
+        // Сохраняем эпики
+        for (Epic epic : epics) {
+            writer.write(FileBackedTaskManager.taskToString(epic));
+            writer.newLine();
+        }
+
+        // Сохраняем подзадачи
+        for (Subtask subtask : subtasks) {
+            writer.write(FileBackedTaskManager.taskToString(subtask));
+            writer.newLine();
+        }
+
+        // Пустая строка для разделения задач и истории, сама история хранится в журнале истории
+        writer.newLine();
+    }
+
+    // Метод для чтения снимка в любом формате, возвращает наибольший ID
+    static int readSnapshot(File snapshotFile, InMemoryTaskManager board, LinkedHashSet<Integer> historyIds)
+            throws IOException {
+        if (BinarySnapshot.isBinary(snapshotFile)) {
+            return BinarySnapshot.read(snapshotFile, task -> FileBackedTaskManager.putLoadedTask(board, task));
+        }
+        if (CompressedSnapshot.isCompressed(snapshotFile)) {
+            return CompressedSnapshot.read(snapshotFile, board);
+        }
+        return readCsvSnapshot(snapshotFile, board, historyIds);
+    }
+
+    // Метод для чтения снимка в формате CSV, возвращает наибольший ID
+    private static int readCsvSnapshot(File snapshotFile, InMemoryTaskManager board,
+                                       LinkedHashSet<Integer> historyIds) throws IOException {
+        if (snapshotFile.length() >= ParallelSnapshotReader.MIN_PARALLEL_BYTES) {
+            return ParallelSnapshotReader.read(snapshotFile, board, historyIds);
+        }
+        try (TaskCsvReader reader = new TaskCsvReader(snapshotFile)) {
+            if (!reader.nextLine()) {
+                throw new ManagerSaveException("Файл пустой.");
+            }
+
+            int maxId = 0;
+
+            // Читаем задачи после заголовка до пустой строки
+            while (reader.nextLine() && !reader.isLineEmpty()) {
+                try {
+                    Task task = reader.readTask();
+                    maxId = Math.max(maxId, task.getId());
+                    FileBackedTaskManager.putLoadedTask(board, task);
+                } catch (Exception e) {
+                    throw new ManagerSaveException("Ошибка при обработке строки: " + reader.currentLine());
+                }
+            }
+
+            // Пропускаем пустые строки и читаем историю, если файл сохранён в формате, где история хранилась в снимке
+            boolean hasHistoryLine = false;
+            while (reader.nextLine()) {
+                if (!reader.isLineEmpty()) {
+                    hasHistoryLine = true;
+                    break;
+                }
+            }
+            if (hasHistoryLine) {
+                while (reader.hasNextField()) {
+                    historyIds.add(reader.readInt());
+                }
+            }
+            return maxId;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package manager;
+
+import model.Epic;
+import model.Subtask;
+import model.Task;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+// Пакет изменений для TaskManager.applyBatch: задачи и эпики для создания, подзадачи вместе с эпиком,
+// изменённые задачи и ID удаляемых задач. Пакет применяется целиком или, если он противоречив или задачи
+// пересекаются по времени, не применяется совсем.
+// Порядок применения: удаления, изменения, затем создания в порядке добавления в пакет. Подзадачу можно
+// создать в эпике, созданном раньше в том же пакете
+public class TaskBatch {
+    private final List<Task> created = new ArrayList<>();
+    private final IdentityHashMap<Subtask, Epic> epicsOfCreatedSubtasks = new IdentityHashMap<>();
+    private final List<Task> updated = new ArrayList<>();
+    private final List<Integer> deletedIds = new ArrayList<>();
+
+    // Метод для добавления задачи или эпика; подзадачи добавляются через createSubtask
+    public void create(Task task) {
+        if (task instanceof Subtask) {
+            throw new IllegalArgumentException("Подзадача создаётся вместе с эпиком через createSubtask.");
+        }
+        created.add(task);
+    }
+
+    public void createSubtask(Subtask subtask, Epic epic) {
+        if (epic == null) {
+            throw new IllegalArgumentException("Для подзадачи нужен эпик.");
+        }
+        created.add(subtask);
+        epicsOfCreatedSubtasks.put(subtask, epic);
+    }
+
+    public void update(Task task) {
+        updated.add(task);
+    }
+
+    // Удаление эпика удаляет и его подзадачи, неизвестные ID пропускаются
+    public void delete(int id) {
+        deletedIds.add(id);
+    }
+
+    public boolean isEmpty() {
+        return created.isEmpty() && updated.isEmpty() && deletedIds.isEmpty();
+    }
+
+    List<Task> getCreated() {
+        return created;
+    }
+
+    Epic getEpicOf(Subtask subtask) {
+        return epicsOfCreatedSubtasks.get(subtask);
+    }
+
+    List<Task> getUpdated() {
+        return updated;
+    }
+
+    List<Integer> getDeletedIds() {
+        return deletedIds;
+    }
+}
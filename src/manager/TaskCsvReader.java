@@ -0,0 +1,409 @@
+package manager;
+
+import model.Epic;
+import model.Subtask;
+import model.Task;
+import model.TaskStatus;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+// Потоковое чтение CSV-файлов менеджера (снимка и журнала) через FileChannel или из готового массива байтов.
+// Строка целиком находится в буфере, поля разбираются прямо из байтов без split и без копии строки;
+// String создаётся только для названия и описания. Разделители — ASCII, поэтому в UTF-8 они не встречаются
+// внутри многобайтовых символов. В тексте "\," означает запятую, "\\" — обратную косую черту,
+// "\n" и "\r" — перевод строки и возврат каретки.
+class TaskCsvReader implements Closeable {
+
+    private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+
+    private static final byte[] NULL = bytesOf("null");
+    private static final byte[] TASK = bytesOf("TASK");
+    private static final byte[] EPIC = bytesOf("EPIC");
+    private static final byte[] SUBTASK = bytesOf("SUBTASK");
+    private static final TaskStatus[] STATUSES = TaskStatus.values();
+    private static final byte[][] STATUS_NAMES = new byte[STATUSES.length][];
+
+    static {
+        for (int i = 0; i < STATUSES.length; i++) {
+            STATUS_NAMES[i] = bytesOf(STATUSES[i].name());
+        }
+    }
+
+    private final FileChannel channel;
+    private ByteBuffer buffer;
+    private byte[] bytes;
+    private int limit; // Конец прочитанных данных в bytes
+    private boolean isEndOfFile;
+    private long bufferOffset; // Смещение bytes[0] в файле
+    private long remaining; // Сколько байт файла ещё можно прочитать
+
+    private int lineStart;
+    private int lineEnd = -1; // Позиция '\n' текущей строки (или конец данных)
+    private int position; // Начало следующего поля текущей строки
+    private boolean hasLine;
+
+    // Буфер для полей с экранированием, чтобы не создавать его на каждое поле
+    private byte[] unescaped = new byte[256];
+
+    TaskCsvReader(File file) throws IOException {
+        this(file, 0, Long.MAX_VALUE);
+    }
+
+    // Чтение части файла [start, end), используется для параллельного разбора снимка по частям
+    TaskCsvReader(File file, long start, long end) throws IOException {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        channel.position(start);
+        bufferOffset = start;
+        remaining = end - start;
+        bytes = new byte[(int) Math.min(INITIAL_BUFFER_SIZE, Math.max(remaining, 1))];
+        buffer = ByteBuffer.wrap(bytes);
+    }
+
+    // Чтение массива байтов целиком, например распакованного блока сжатого снимка
+    TaskCsvReader(byte[] bytes, int length) {
+        channel = null;
+        this.bytes = bytes;
+        buffer = ByteBuffer.wrap(bytes);
+        limit = length;
+        isEndOfFile = true;
+    }
+
+    // Смещение начала текущей строки в файле
+    long lineOffset() {
+        return bufferOffset + lineStart;
+    }
+
+    // Метод для перехода к следующей строке, возвращает false, если строк больше нет
+    boolean nextLine() throws IOException {
+        int next = lineEnd + 1;
+        int newline = indexOfNewline(next);
+        while (newline < 0 && !isEndOfFile) {
+            next = fill(next);
+            newline = indexOfNewline(next);
+        }
+        if (newline < 0) {
+            if (next >= limit) {
+                hasLine = false;
+                lineStart = limit;
+                lineEnd = limit - 1;
+                return false;
+            }
+            newline = limit; // Последняя строка без перевода строки
+        }
+        hasLine = true;
+        lineStart = next;
+        lineEnd = newline;
+        position = next;
+        return true;
+    }
+
+    boolean isLineEmpty() {
+        return contentEnd() == lineStart;
+    }
+
+    // Последняя строка файла без завершающего перевода строки могла быть записана не полностью
+    boolean isLineTerminated() {
+        return lineEnd < limit;
+    }
+
+    boolean hasNextField() {
+        return hasLine && position <= contentEnd();
+    }
+
+    // Метод для получения текущей строки целиком, используется только в сообщениях об ошибках
+    String currentLine() {
+        return hasLine ? new String(bytes, lineStart, contentEnd() - lineStart, StandardCharsets.UTF_8) : "";
+    }
+
+    int readInt() {
+        long value = readLong();
+        if (value != (int) value) {
+            throw new NumberFormatException("Число вне диапазона int: " + value);
+        }
+        return (int) value;
+    }
+
+    long readLong() {
+        int end = fieldEnd();
+        int index = position;
+        boolean isNegative = index < end && bytes[index] == '-';
+        if (isNegative) {
+            index++;
+        }
+        if (index == end) {
+            throw new NumberFormatException("Пустое числовое поле в строке: " + currentLine());
+        }
+        long value = 0;
+        for (; index < end; index++) {
+            int digit = bytes[index] - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException("Некорректное число в строке: " + currentLine());
+            }
+            value = Math.addExact(Math.multiplyExact(value, 10), digit);
+        }
+        skipField(end);
+        return isNegative ? -value : value;
+    }
+
+    // Метод для чтения текстового поля с раскрытием экранирования
+    String readString() {
+        int end = fieldEnd();
+        int escapes = 0;
+        for (int i = position; i < end; i++) {
+            if (bytes[i] == '\\') {
+                escapes++;
+                i++;
+            }
+        }
+        String value;
+        if (escapes == 0) {
+            value = new String(bytes, position, end - position, StandardCharsets.UTF_8);
+        } else {
+            if (unescaped.length < end - position) {
+                unescaped = new byte[end - position];
+            }
+            int length = 0;
+            for (int i = position; i < end; i++) {
+                byte current = bytes[i];
+                if (current == '\\' && i + 1 < end) {
+                    byte escaped = bytes[++i];
+                    switch (escaped) {
+                        case ',', '\\' -> current = escaped;
+                        case 'n' -> current = '\n';
+                        case 'r' -> current = '\r';
+                        default -> {
+                            // Неизвестная последовательность сохраняется как есть (файлы старого формата)
+                            unescaped[length++] = current;
+                            current = escaped;
+                        }
+                    }
+                }
+                unescaped[length++] = current;
+            }
+            value = new String(unescaped, 0, length, StandardCharsets.UTF_8);
+        }
+        skipField(end);
+        return value;
+    }
+
+    // Метод для чтения поля, которое может быть равно "null"; возвращает true и пропускает его, если это "null"
+    boolean skipNull() {
+        int end = fieldEnd();
+        if (matches(position, end, NULL)) {
+            skipField(end);
+            return true;
+        }
+        return false;
+    }
+
+    // Метод для чтения даты в формате LocalDateTime.toString без промежуточной строки
+    LocalDateTime readDateTime() {
+        int end = fieldEnd();
+        int start = position;
+        int length = end - start;
+        LocalDateTime value;
+        if (length >= 16 && bytes[start + 4] == '-' && bytes[start + 7] == '-' && bytes[start + 10] == 'T'
+                && bytes[start + 13] == ':' && (length == 16 || bytes[start + 16] == ':')) {
+            int second = 0;
+            int nano = 0;
+            if (length >= 19) {
+                second = digits(start + 17, 2);
+                if (length > 19) {
+                    if (bytes[start + 19] != '.' || length > 29) {
+                        throw new NumberFormatException("Некорректная дата в строке: " + currentLine());
+                    }
+                    nano = digits(start + 20, length - 20);
+                    for (int i = length - 20; i < 9; i++) {
+                        nano *= 10;
+                    }
+                }
+            } else if (length != 16) {
+                throw new NumberFormatException("Некорректная дата в строке: " + currentLine());
+            }
+            value = LocalDateTime.of(digits(start, 4), digits(start + 5, 2), digits(start + 8, 2),
+                    digits(start + 11, 2), digits(start + 14, 2), second, nano);
+        } else {
+            // Годы за пределами 0000–9999 и прочие редкие формы разбираются стандартным способом
+            value = LocalDateTime.parse(new String(bytes, start, length, StandardCharsets.US_ASCII));
+        }
+        skipField(end);
+        return value;
+    }
+
+    // Метод для чтения задачи: id,type,name,status,description,duration,startTime[,epic]
+    Task readTask() {
+        int id = readInt();
+        int typeEnd = fieldEnd();
+        byte[] type;
+        if (matches(position, typeEnd, TASK)) {
+            type = TASK;
+        } else if (matches(position, typeEnd, EPIC)) {
+            type = EPIC;
+        } else if (matches(position, typeEnd, SUBTASK)) {
+            type = SUBTASK;
+        } else {
+            throw new IllegalArgumentException("Неизвестный тип задачи: " + readString());
+        }
+        skipField(typeEnd);
+        String name = readString();
+        TaskStatus status = readStatus();
+        String description = readString();
+        Duration duration = skipNull() ? null : Duration.ofMinutes(readLong());
+        LocalDateTime startTime = skipNull() ? null : readDateTime();
+
+        if (type == EPIC) {
+            Epic epic = new Epic(name, description);
+            epic.setId(id);
+            epic.setStatus(status);
+            return epic;
+        }
+        Task task;
+        if (type == SUBTASK) {
+            Subtask subtask = new Subtask(name, description, status);
+            subtask.setEpicId(readInt());
+            task = subtask;
+        } else {
+            task = new Task(name, description, status);
+        }
+        task.setId(id);
+        task.setDuration(duration);
+        task.setStartTime(startTime);
+        return task;
+    }
+
+    // Метод для чтения типа записи журнала или другого короткого поля без экранирования
+    boolean readKeyword(String keyword) {
+        int end = fieldEnd();
+        if (end - position != keyword.length()) {
+            return false;
+        }
+        for (int i = 0; i < keyword.length(); i++) {
+            if (bytes[position + i] != keyword.charAt(i)) {
+                return false;
+            }
+        }
+        skipField(end);
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
+    private TaskStatus readStatus() {
+        int end = fieldEnd();
+        for (int i = 0; i < STATUSES.length; i++) {
+            if (matches(position, end, STATUS_NAMES[i])) {
+                skipField(end);
+                return STATUSES[i];
+            }
+        }
+        throw new IllegalArgumentException("Неизвестный статус в строке: " + currentLine());
+    }
+
+    private int digits(int start, int count) {
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            int digit = bytes[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException("Некорректная дата в строке: " + currentLine());
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    // Конец строки без '\r' (файлы, сохранённые в Windows)
+    private int contentEnd() {
+        return lineEnd > lineStart && bytes[lineEnd - 1] == '\r' ? lineEnd - 1 : lineEnd;
+    }
+
+    // Метод для поиска конца текущего поля: неэкранированной запятой или конца строки
+    private int fieldEnd() {
+        if (!hasNextField()) {
+            throw new IllegalArgumentException("Не хватает полей в строке: " + currentLine());
+        }
+        int end = contentEnd();
+        for (int i = position; i < end; i++) {
+            byte current = bytes[i];
+            if (current == '\\') {
+                i++;
+            } else if (current == ',') {
+                return i;
+            }
+        }
+        return end;
+    }
+
+    private void skipField(int end) {
+        position = end + 1;
+    }
+
+    private boolean matches(int start, int end, byte[] expected) {
+        if (end - start != expected.length) {
+            return false;
+        }
+        for (int i = 0; i < expected.length; i++) {
+            if (bytes[start + i] != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int indexOfNewline(int from) {
+        for (int i = from; i < limit; i++) {
+            if (bytes[i] == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // Метод для дочитывания файла: данные с позиции keepFrom сдвигаются в начало буфера,
+    // при нехватке места буфер увеличивается вдвое. Возвращает новое положение keepFrom
+    private int fill(int keepFrom) throws IOException {
+        int kept = limit - keepFrom;
+        if (kept == bytes.length) {
+            byte[] larger = new byte[bytes.length * 2];
+            System.arraycopy(bytes, keepFrom, larger, 0, kept);
+            bytes = larger;
+            buffer = ByteBuffer.wrap(bytes);
+        } else if (keepFrom > 0) {
+            System.arraycopy(bytes, keepFrom, bytes, 0, kept);
+        }
+        lineStart -= keepFrom;
+        lineEnd -= keepFrom;
+        position -= keepFrom;
+        bufferOffset += keepFrom;
+        buffer.clear().position(kept);
+        buffer.limit((int) Math.min(bytes.length, kept + remaining));
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                isEndOfFile = true;
+                break;
+            }
+        }
+        remaining -= buffer.position() - kept;
+        if (remaining == 0) {
+            isEndOfFile = true;
+        }
+        limit = buffer.position();
+        return 0;
+    }
+
+    private static byte[] bytesOf(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+}
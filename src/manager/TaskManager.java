@@ -3,6 +3,12 @@ package manager;
 import model.Epic;
 import model.Subtask;
 import model.Task;
+import model.TaskStatus;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
 import java.util.List;
 
 public interface TaskManager {
@@ -45,6 +51,9 @@ public interface TaskManager {
 
     void deleteSubtaskById(int id);
 
+    // Применение пакета изменений целиком: при противоречии или пересечении по времени не меняется ничего
+    void applyBatch(TaskBatch batch);
+
     // Получение списка подзадач эпика
     List<Subtask> getSubtasksOfEpic(int epicId);
 
@@ -53,4 +62,33 @@ public interface TaskManager {
 
     // Получение задач в порядке приоритета
     List<Task> getPrioritizedTasks();
+
+    // Получение задач, пересекающихся с интервалом [from, to), в порядке времени начала
+    List<Task> getTasksBetween(LocalDateTime from, LocalDateTime to);
+
+    // Получение первых limit задач, начинающихся не раньше from, в порядке времени начала
+    List<Task> getNextTasks(LocalDateTime from, int limit);
+
+    // Получение задач и подзадач с заданным статусом (эпики не входят)
+    List<Task> getTasksByStatus(TaskStatus status);
+
+    // Получение задач и подзадач, начинающихся в заданный день, в порядке времени начала
+    List<Task> getTasksStartingOn(LocalDate day);
+
+    // Получение задач и подзадач со статусом status, начинающихся в [from, to), в порядке времени начала
+    List<Task> getTasksByStatusBetween(TaskStatus status, LocalDateTime from, LocalDateTime to);
+
+    // Поиск самого раннего начала свободного окна длительностью duration не раньше from
+    LocalDateTime findFreeSlot(LocalDateTime from, Duration duration);
+
+    // Поиск свободного окна, целиком лежащего в рабочих часах [workStart, workEnd) одного дня
+    LocalDateTime findFreeSlot(LocalDateTime from, Duration duration, LocalTime workStart, LocalTime workEnd);
+
+    // План расстановки задач и подзадач без времени начала в свободное время [from, horizon) без изменения задач;
+    // рабочие часы [workStart, workEnd) не задаются (оба null) или задаются вместе
+    SchedulePlan planUnscheduledTasks(LocalDateTime from, LocalDateTime horizon, LocalTime workStart, LocalTime workEnd);
+
+    // Расстановка задач и подзадач без времени начала по такому же плану с назначением времени начала
+    SchedulePlan scheduleUnscheduledTasks(LocalDateTime from, LocalDateTime horizon, LocalTime workStart,
+                                          LocalTime workEnd);
 }
@@ -0,0 +1,35 @@
+package manager;
+
+import model.Epic;
+import model.Task;
+
+// Хранилища и индекс времени менеджера, через которые применяются проверенный пакет BatchPlan и план
+// расстановки SchedulePlan. Порядок изменений и учёт подзадач эпиков задаются в самих планах, поэтому
+// InMemoryTaskManager и ConcurrentTaskManager применяют их одним кодом, а различаются только хранилища
+// и учёт изменённых ID
+interface TaskStorage {
+
+    // Метод для размещения задачи, эпика или подзадачи в хранилище её типа
+    void put(Task task);
+
+    // Метод для удаления задачи, эпика или подзадачи из хранилища её типа
+    void remove(Task task);
+
+    Epic getEpic(int id);
+
+    // Задача или подзадача с ID id, эпики не ищутся
+    Task getTaskOrSubtask(int id);
+
+    int generateId();
+
+    // Изменение индекса времени, эпики в него не попадают
+    void addToSchedule(Task task);
+
+    void removeFromSchedule(int id);
+
+    // Вызывается после изменения или удаления задачи с ID id
+    void markChanged(int id, boolean isDeleted);
+
+    // Полный пересчёт статуса и времени эпика по его подзадачам
+    void recalculateEpic(Epic epic);
+}
@@ -0,0 +1,328 @@
+package manager;
+
+import model.IntHashMap;
+import model.IntHashSet;
+import model.Task;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.IntPredicate;
+
+// Индекс запланированных задач по интервалу [startTime, endTime).
+// Задачи в индексе не пересекаются, поэтому порядок по началу совпадает с порядком по окончанию,
+// и для проверки пересечения достаточно ближайших соседей по времени начала — O(log n).
+// Вместе с задачами ведётся индекс свободных промежутков между соседними задачами (GapIndex) для поиска окон.
+class TimeIndex {
+
+    // Интервал запоминается при добавлении, чтобы изменение задачи "на месте" не ломало индекс
+    private record Interval(Task task, LocalDateTime start, LocalDateTime end) {
+    }
+
+    private final NavigableMap<LocalDateTime, Interval> intervalsByStart;
+    private final IntHashMap<Interval> intervalsById = new IntHashMap<>();
+    private final GapIndex gaps = new GapIndex();
+
+    TimeIndex() {
+        this(new TreeMap<>());
+    }
+
+    private TimeIndex(NavigableMap<LocalDateTime, Interval> intervalsByStart) {
+        this.intervalsByStart = intervalsByStart;
+    }
+
+    // Индекс для ConcurrentTaskManager: изменения, findConflict и findFreeSlot выполняются под общей блокировкой
+    // расписания, а getTasks и size читают список без блокировки
+    static TimeIndex concurrent() {
+        return new TimeIndex(new ConcurrentSkipListMap<>());
+    }
+
+    // Метод для добавления задачи, задачи без startTime в индекс не попадают
+    void add(Task task) {
+        LocalDateTime start = task.getStartTime();
+        if (start == null) {
+            return;
+        }
+        remove(task.getId());
+        Interval interval = new Interval(task, start, endOf(task));
+        intervalsByStart.put(start, interval);
+        intervalsById.put(task.getId(), interval);
+
+        // Промежуток перед задачей делится на два
+        LocalDateTime previousStart = intervalsByStart.lowerKey(start);
+        if (previousStart != null) {
+            updateGapAfter(previousStart);
+        }
+        updateGapAfter(start);
+    }
+
+    // Метод для заполнения пустого индекса при загрузке. Интервалы сортируются параллельно и вставляются
+    // по порядку, а промежутки строятся одним проходом, а не пересчитываются при каждой вставке. Результат
+    // совпадает с вызовом add для каждой задачи по порядку: из задач с одинаковым startTime остаётся последняя
+    void addAll(Collection<? extends Task> tasks) {
+        if (!intervalsByStart.isEmpty()) {
+            for (Task task : tasks) {
+                add(task);
+            }
+            return;
+        }
+        Interval[] intervals = new Interval[tasks.size()];
+        int count = 0;
+        for (Task task : tasks) {
+            if (task.getStartTime() != null) {
+                intervals[count++] = new Interval(task, task.getStartTime(), endOf(task));
+            }
+        }
+        Arrays.parallelSort(intervals, 0, count, Comparator.comparing(Interval::start)); // Сортировка устойчивая
+
+        for (int i = 0; i < count; i++) {
+            intervalsById.put(intervals[i].task().getId(), intervals[i]);
+            intervalsByStart.put(intervals[i].start(), intervals[i]); // Интервал с тем же началом заменяется
+        }
+        rebuildGaps();
+    }
+
+    // Метод для заполнения пустого индекса задачами, уже упорядоченными по времени начала (порядок из сохранённого
+    // индекса). Порядок проверяется за O(n): если он нарушен или времена начала совпадают, индекс не меняется
+    // и возвращается false
+    boolean addAllOrdered(List<? extends Task> ordered) {
+        if (!intervalsByStart.isEmpty()) {
+            return false;
+        }
+        Interval[] intervals = new Interval[ordered.size()];
+        for (int i = 0; i < intervals.length; i++) {
+            Task task = ordered.get(i);
+            LocalDateTime start = task.getStartTime();
+            if (start == null || (i > 0 && !intervals[i - 1].start().isBefore(start))) {
+                return false;
+            }
+            intervals[i] = new Interval(task, start, endOf(task));
+        }
+        for (Interval interval : intervals) {
+            intervalsById.put(interval.task().getId(), interval);
+            intervalsByStart.put(interval.start(), interval);
+        }
+        rebuildGaps();
+        return true;
+    }
+
+    void remove(int id) {
+        Interval interval = intervalsById.remove(id);
+        if (interval != null && intervalsByStart.get(interval.start()) == interval) {
+            intervalsByStart.remove(interval.start());
+
+            // Промежутки до и после задачи сливаются
+            gaps.remove(interval.start());
+            LocalDateTime previousStart = intervalsByStart.lowerKey(interval.start());
+            if (previousStart != null) {
+                updateGapAfter(previousStart);
+            }
+        }
+    }
+
+    void clear() {
+        intervalsByStart.clear();
+        intervalsById.clear();
+        gaps.clear();
+    }
+
+    // Метод для пересчёта промежутка между задачей, начинающейся в start, и следующей за ней
+    private void updateGapAfter(LocalDateTime start) {
+        Map.Entry<LocalDateTime, Interval> next = intervalsByStart.higherEntry(start);
+        if (next == null) {
+            gaps.remove(start); // После последней задачи время свободно без ограничений
+            return;
+        }
+        gaps.put(start, occupiedUntil(intervalsByStart.get(start)), next.getKey());
+    }
+
+    // Метод для построения индекса промежутков после заполнения индекса целиком
+    private void rebuildGaps() {
+        int count = Math.max(0, intervalsByStart.size() - 1);
+        LocalDateTime[] keys = new LocalDateTime[count];
+        LocalDateTime[] starts = new LocalDateTime[count];
+        LocalDateTime[] ends = new LocalDateTime[count];
+        Interval previous = null;
+        int index = 0;
+        for (Interval interval : intervalsByStart.values()) {
+            if (previous != null) {
+                keys[index] = previous.start();
+                starts[index] = occupiedUntil(previous);
+                ends[index] = interval.start();
+                index++;
+            }
+            previous = interval;
+        }
+        gaps.build(keys, starts, ends, count);
+    }
+
+    // Метод для поиска задачи, пересекающейся с task; задача с ID excludedId (старая версия task) не учитывается.
+    // Задачи с одинаковым startTime считаются пересекающимися, даже если их длительность нулевая
+    Task findConflict(Task task, Integer excludedId) {
+        if (excludedId == null) {
+            return findConflict(task, id -> false);
+        }
+        int excluded = excludedId;
+        return findConflict(task, id -> id == excluded);
+    }
+
+    // Метод для поиска пересечения без учёта задач из excludedIds: старых версий изменяемых задач и удаляемых
+    // задач пакета изменений
+    Task findConflictExcluding(Task task, IntHashSet excludedIds) {
+        return findConflict(task, excludedIds::contains);
+    }
+
+    private Task findConflict(Task task, IntPredicate isExcluded) {
+        LocalDateTime start = task.getStartTime();
+        if (start == null) {
+            return null;
+        }
+        LocalDateTime end = endOf(task);
+
+        // Из задач, начавшихся раньше, дальше всех заканчивается ближайшая
+        Map.Entry<LocalDateTime, Interval> previous = intervalsByStart.lowerEntry(start);
+        while (previous != null && isExcluded.test(previous.getValue().task().getId())) {
+            previous = intervalsByStart.lowerEntry(previous.getKey());
+        }
+        if (previous != null && previous.getValue().end().isAfter(start)) {
+            return previous.getValue().task();
+        }
+
+        // Задача, начинающаяся в [start, end), пересекается с task
+        for (Interval next : intervalsByStart.tailMap(start, true).values()) {
+            if (!next.start().equals(start) && !next.start().isBefore(end)) {
+                break;
+            }
+            if (!isExcluded.test(next.task().getId())) {
+                return next.task();
+            }
+        }
+        return null;
+    }
+
+    // Метод для получения задач в порядке времени начала
+    List<Task> getTasks() {
+        List<Task> result = new ArrayList<>(intervalsByStart.size());
+        for (Interval interval : intervalsByStart.values()) {
+            result.add(interval.task());
+        }
+        return result;
+    }
+
+    // Метод для получения задач, пересекающихся с интервалом [from, to), в порядке времени начала.
+    // Задачи не пересекаются, поэтому из начавшихся раньше from в интервал может заходить только ближайшая,
+    // остальные берутся из представления subMap без копирования индекса: O(log n + k)
+    List<Task> getTasksBetween(LocalDateTime from, LocalDateTime to) {
+        if (from == null || to == null || to.isBefore(from)) {
+            throw new IllegalArgumentException("Окончание интервала не может быть раньше начала.");
+        }
+        List<Task> result = new ArrayList<>();
+        Map.Entry<LocalDateTime, Interval> previous = intervalsByStart.lowerEntry(from);
+        if (previous != null && previous.getValue().end().isAfter(from)) {
+            result.add(previous.getValue().task());
+        }
+        for (Interval interval : intervalsByStart.subMap(from, true, to, false).values()) {
+            result.add(interval.task());
+        }
+        return result;
+    }
+
+    // Метод для получения первых limit задач, начинающихся не раньше from: O(log n + limit)
+    List<Task> getTasksStartingFrom(LocalDateTime from, int limit) {
+        if (from == null || limit < 0) {
+            throw new IllegalArgumentException("Нужны время начала и неотрицательное число задач.");
+        }
+        List<Task> result = new ArrayList<>(Math.min(limit, 64));
+        Iterator<Interval> iterator = intervalsByStart.tailMap(from, true).values().iterator();
+        while (result.size() < limit && iterator.hasNext()) {
+            result.add(iterator.next().task());
+        }
+        return result;
+    }
+
+    // Метод для поиска самого раннего начала окна длительностью duration не раньше from, которое не пересекается
+    // с задачами и, если заданы рабочие часы [workStart, workEnd), целиком лежит в рабочем времени одного дня.
+    // Без рабочих часов — O(log n): окно сразу после from проверяется по соседям, иначе первый подходящий
+    // промежуток ищется в GapIndex. С рабочими часами поиск повторяется с начала следующего рабочего окна,
+    // пока найденное окно не попадёт в рабочее время: O(log n) на каждый отброшенный промежуток
+    LocalDateTime findFreeSlot(LocalDateTime from, Duration duration, LocalTime workStart, LocalTime workEnd) {
+        if (from == null || duration == null || duration.isNegative() || duration.isZero()) {
+            throw new IllegalArgumentException("Нужны время начала поиска и положительная длительность окна.");
+        }
+        boolean hasWorkingHours = workStart != null || workEnd != null;
+        if (hasWorkingHours && (workStart == null || workEnd == null || !workStart.isBefore(workEnd))) {
+            throw new IllegalArgumentException("Начало рабочего дня должно быть раньше его окончания.");
+        }
+        if (hasWorkingHours && Duration.between(workStart, workEnd).compareTo(duration) < 0) {
+            throw new IllegalArgumentException("Окно длиннее рабочего дня.");
+        }
+        LocalDateTime candidate = from;
+        while (true) {
+            if (hasWorkingHours) {
+                candidate = alignToWorkingHours(candidate, duration, workStart, workEnd);
+            }
+            LocalDateTime free = findFreeSlot(candidate, duration);
+            if (free.equals(candidate)) {
+                return free;
+            }
+            candidate = free;
+        }
+    }
+
+    // Метод для поиска самого раннего свободного окна без учёта рабочих часов
+    private LocalDateTime findFreeSlot(LocalDateTime from, Duration duration) {
+        // Окно не может начинаться раньше окончания задачи, которая идёт в момент from
+        LocalDateTime start = from;
+        Map.Entry<LocalDateTime, Interval> previous = intervalsByStart.lowerEntry(from);
+        if (previous != null && occupiedUntil(previous.getValue()).isAfter(start)) {
+            start = occupiedUntil(previous.getValue());
+        }
+        Map.Entry<LocalDateTime, Interval> next = intervalsByStart.ceilingEntry(start);
+        if (next == null || !next.getKey().isBefore(start.plus(duration))) {
+            return start;
+        }
+
+        // Иначе окно начинается в первом достаточном промежутке после следующей задачи или после последней задачи
+        LocalDateTime gapStart = gaps.findFirst(next.getKey(), duration);
+        return gapStart != null ? gapStart : occupiedUntil(intervalsByStart.lastEntry().getValue());
+    }
+
+    // Метод для переноса начала окна в рабочее время: в тот же день, если окно успевает закончиться до workEnd,
+    // иначе на начало следующего рабочего дня
+    private static LocalDateTime alignToWorkingHours(LocalDateTime start, Duration duration, LocalTime workStart,
+                                                     LocalTime workEnd) {
+        LocalTime time = start.toLocalTime();
+        if (time.isBefore(workStart)) {
+            return start.toLocalDate().atTime(workStart);
+        }
+        if (Duration.between(time, workEnd).compareTo(duration) >= 0) {
+            return start;
+        }
+        return start.toLocalDate().plusDays(1).atTime(workStart);
+    }
+
+    int size() {
+        return intervalsByStart.size();
+    }
+
+    // Задача без длительности занимает нулевой интервал
+    static LocalDateTime endOf(Task task) {
+        return task.getDuration() != null ? task.getEndTime() : task.getStartTime();
+    }
+
+    // Время, с которого может начинаться следующая задача. Задача с нулевым интервалом всё равно занимает
+    // момент начала (findConflict считает совпадение начал пересечением), поэтому окно начинается позже него
+    private static LocalDateTime occupiedUntil(Interval interval) {
+        return interval.end().isAfter(interval.start()) ? interval.end() : interval.start().plusNanos(1);
+    }
+}
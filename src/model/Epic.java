@@ -1,14 +1,34 @@
 package model;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.TreeMap;
+import java.util.function.IntConsumer;
+import java.util.function.IntFunction;
 import java.time.Duration;
 import java.time.LocalDateTime;
 
 public class Epic extends Task {
-    private final List<Integer> subtaskIds = new ArrayList<>();
+    private final IntHashSet subtaskIds = new IntHashSet();
     private LocalDateTime endTime; // Добавляем поле для времени завершения
 
+    // Вклад подзадачи в вычисляемые поля эпика на момент последнего учёта.
+    // Запоминается, потому что подзадачу могут изменить "на месте" до вызова updateSubtask
+    private record SubtaskContribution(TaskStatus status, LocalDateTime startTime, LocalDateTime endTime,
+                                       Duration duration) {
+    }
+
+    // Накопленные значения для пересчёта статуса и времени эпика за O(log n)
+    private final IntHashMap<SubtaskContribution> contributions = new IntHashMap<>();
+    private final int[] statusCounts = new int[TaskStatus.values().length];
+    private final TreeMap<LocalDateTime, Integer> startTimeCounts = new TreeMap<>();
+    private final TreeMap<LocalDateTime, Integer> endTimeCounts = new TreeMap<>();
+    private Duration totalDuration = Duration.ZERO;
+    // Статус и время приняты из сохранённых данных без учёта вкладов подзадач, перед изменением подзадач
+    // эпик нужно пересчитать полностью
+    private boolean isAggregateAdopted;
+
     public Epic(String name, String description) {
         super(name, description, TaskStatus.NEW);
     }
@@ -23,9 +43,28 @@ public class Epic extends Task {
         this.endTime = endTime;
     }
 
-    // Метод для получения списка ID подзадач
+    // Метод для получения списка ID подзадач в порядке возрастания (копия, O(k log k))
     public List<Integer> getSubtaskIds() {
-        return subtaskIds;
+        int[] ids = subtaskIds.toArray();
+        Arrays.sort(ids);
+        List<Integer> result = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            result.add(id);
+        }
+        return result;
+    }
+
+    // Методы для работы с ID подзадач без копирования и упаковки
+    public boolean containsSubtaskId(int id) {
+        return subtaskIds.contains(id);
+    }
+
+    public int getSubtaskCount() {
+        return subtaskIds.size();
+    }
+
+    public void forEachSubtaskId(IntConsumer action) {
+        subtaskIds.forEach(action);
     }
 
     // Методы для добавления и удаления подзадач
@@ -38,11 +77,151 @@ public class Epic extends Task {
     }
 
     public void removeSubtaskId(int id) {
-        if (!subtaskIds.contains(id)) {
+        if (!subtaskIds.remove(id)) {
             System.out.println("Подзадачи с ID " + id + " нет в этом Epic.");
             return;
         }
-        subtaskIds.remove(Integer.valueOf(id));
+        if (discardContribution(id)) {
+            refreshAggregates();
+        }
+    }
+
+    // Метод для удаления всех подзадач эпика
+    public void clearSubtasks() {
+        subtaskIds.clear();
+        resetAggregates();
+        isAggregateAdopted = false;
+        refreshAggregates();
+    }
+
+    // Метод для учёта новой или изменённой подзадачи: старый вклад вычитается, новый добавляется
+    public void applySubtask(Subtask subtask) {
+        addContribution(subtask);
+        refreshAggregates();
+    }
+
+    // Метод для учёта нескольких изменений подзадач сразу: вклады удалённых вычитаются, новых и изменённых
+    // добавляются, а статус и время пересчитываются один раз
+    public void applySubtaskChanges(IntHashSet removedIds, List<Subtask> changedSubtasks) {
+        removedIds.forEach(id -> {
+            if (subtaskIds.remove(id)) {
+                discardContribution(id);
+            }
+        });
+        for (Subtask subtask : changedSubtasks) {
+            if (subtask.getId() != id) {
+                subtaskIds.add(subtask.getId());
+                addContribution(subtask);
+            }
+        }
+        refreshAggregates();
+    }
+
+    private void addContribution(Subtask subtask) {
+        discardContribution(subtask.getId());
+        LocalDateTime subtaskStartTime = subtask.getStartTime();
+        Duration subtaskDuration = subtask.getDuration();
+        LocalDateTime subtaskEndTime = null;
+        if (subtaskStartTime != null) {
+            subtaskEndTime = subtaskDuration != null ? subtaskStartTime.plus(subtaskDuration) : subtaskStartTime;
+        }
+        SubtaskContribution contribution = new SubtaskContribution(subtask.getStatus(), subtaskStartTime,
+                subtaskEndTime, subtaskDuration);
+        contributions.put(subtask.getId(), contribution);
+
+        if (contribution.status() != null) {
+            statusCounts[contribution.status().ordinal()]++;
+        }
+        // Как и раньше, в длительность эпика входят только подзадачи с заданным временем начала
+        if (subtaskStartTime != null) {
+            startTimeCounts.merge(subtaskStartTime, 1, Integer::sum);
+            endTimeCounts.merge(subtaskEndTime, 1, Integer::sum);
+            if (subtaskDuration != null) {
+                totalDuration = totalDuration.plus(subtaskDuration);
+            }
+        }
+    }
+
+    // Метод для полного пересчёта по списку подзадач, статус и время вычисляются один раз в конце
+    public void recalculate(List<Subtask> subtasks) {
+        resetAggregates();
+        isAggregateAdopted = false;
+        for (Subtask subtask : subtasks) {
+            addContribution(subtask);
+        }
+        refreshAggregates();
+    }
+
+    // Метод для полного пересчёта по подзадачам из хранилища менеджера: подзадачи эпика ищутся по ID
+    // через subtaskById, отсутствующие в хранилище пропускаются
+    public void recalculate(IntFunction<Subtask> subtaskById) {
+        List<Subtask> subtasks = new ArrayList<>(getSubtaskCount());
+        forEachSubtaskId(id -> {
+            Subtask subtask = subtaskById.apply(id);
+            if (subtask != null) {
+                subtasks.add(subtask);
+            }
+        });
+        recalculate(subtasks);
+    }
+
+    private void resetAggregates() {
+        contributions.clear();
+        Arrays.fill(statusCounts, 0);
+        startTimeCounts.clear();
+        endTimeCounts.clear();
+        totalDuration = Duration.ZERO;
+    }
+
+    private boolean discardContribution(int id) {
+        SubtaskContribution contribution = contributions.remove(id);
+        if (contribution == null) {
+            return false;
+        }
+        if (contribution.status() != null) {
+            statusCounts[contribution.status().ordinal()]--;
+        }
+        if (contribution.startTime() != null) {
+            decrement(startTimeCounts, contribution.startTime());
+            decrement(endTimeCounts, contribution.endTime());
+            if (contribution.duration() != null) {
+                totalDuration = totalDuration.minus(contribution.duration());
+            }
+        }
+        return true;
+    }
+
+    private static void decrement(TreeMap<LocalDateTime, Integer> counts, LocalDateTime key) {
+        counts.computeIfPresent(key, (time, count) -> count > 1 ? count - 1 : null);
+    }
+
+    // Метод для установки готовых статуса и времени эпика при загрузке, без разбора подзадач
+    public void adoptAggregates(TaskStatus status, LocalDateTime startTime, LocalDateTime endTime, Duration duration) {
+        resetAggregates();
+        this.status = status;
+        this.startTime = startTime;
+        this.endTime = endTime;
+        this.duration = duration;
+        isAggregateAdopted = true;
+    }
+
+    public boolean needsRecalculation() {
+        return isAggregateAdopted;
+    }
+
+    // Метод для установки статуса и времени эпика по накопленным значениям
+    private void refreshAggregates() {
+        int subtaskCount = contributions.size();
+        if (subtaskCount == statusCounts[TaskStatus.NEW.ordinal()]) {
+            status = TaskStatus.NEW; // В том числе, если подзадач нет
+        } else if (subtaskCount == statusCounts[TaskStatus.DONE.ordinal()]) {
+            status = TaskStatus.DONE;
+        } else {
+            status = TaskStatus.IN_PROGRESS;
+        }
+        startTime = startTimeCounts.isEmpty() ? null : startTimeCounts.firstKey();
+        endTime = endTimeCounts.isEmpty() ? null : endTimeCounts.lastKey();
+        duration = totalDuration;
     }
 
     // Метод для пересчёта полей duration, startTime и endTime
@@ -52,7 +231,9 @@ public class Epic extends Task {
         LocalDateTime latestEndTime = null;
 
         for (Subtask subtask : subtasks) {
-            duration = duration.plus(subtask.getDuration());
+            if (subtask.getDuration() != null) {
+                duration = duration.plus(subtask.getDuration());
+            }
 
             // Определение самой ранней даты начала подзадачи
             if (startTime == null || (subtask.getStartTime() != null && subtask.getStartTime().isBefore(startTime))) {
@@ -81,7 +262,7 @@ public class Epic extends Task {
                 ", duration=" + duration +
                 ", startTime=" + startTime +
                 ", endTime=" + endTime +
-                ", subtaskIds=" + subtaskIds +
+                ", subtaskIds=" + getSubtaskIds() +
                 '}';
     }
 }
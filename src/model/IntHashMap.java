@@ -0,0 +1,234 @@
+package model;
+
+import java.util.AbstractCollection;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.IntConsumer;
+
+// Хеш-таблица с ключами int и открытой адресацией (линейное пробирование).
+// Ключи не упаковываются в Integer, а на запись не создаётся отдельный объект узла.
+// Значения null не допускаются: пустая ячейка — это ячейка с values[i] == null.
+public class IntHashMap<V> {
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private int[] keys;
+    private Object[] values;
+    private int size;
+    private int mask;
+    private int shift;
+    private int seed;
+    private int resizeThreshold;
+
+    public IntHashMap() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public IntHashMap(int expectedSize) {
+        allocate(tableSizeFor(expectedSize));
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean containsKey(int key) {
+        return get(key) != null;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        for (int slot = slotOf(key); values[slot] != null; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                return (V) values[slot];
+            }
+        }
+        return null;
+    }
+
+    // Метод для добавления или замены значения, возвращает предыдущее значение
+    @SuppressWarnings("unchecked")
+    public V put(int key, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("IntHashMap не хранит значения null.");
+        }
+        int slot = slotOf(key);
+        for (; values[slot] != null; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                V previous = (V) values[slot];
+                values[slot] = value;
+                return previous;
+            }
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        if (++size > resizeThreshold) {
+            resize(keys.length * 2);
+        }
+        return null;
+    }
+
+    // Метод для удаления значения, возвращает удалённое значение или null
+    @SuppressWarnings("unchecked")
+    public V remove(int key) {
+        for (int slot = slotOf(key); values[slot] != null; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                V removed = (V) values[slot];
+                deleteSlot(slot);
+                size--;
+                return removed;
+            }
+        }
+        return null;
+    }
+
+    public void clear() {
+        if (size == 0) {
+            return;
+        }
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    // Метод для получения копии ключей
+    public int[] keys() {
+        int[] result = new int[size];
+        int index = 0;
+        for (int slot = 0; slot < values.length; slot++) {
+            if (values[slot] != null) {
+                result[index++] = keys[slot];
+            }
+        }
+        return result;
+    }
+
+    public void forEachKey(IntConsumer action) {
+        for (int slot = 0; slot < values.length; slot++) {
+            if (values[slot] != null) {
+                action.accept(keys[slot]);
+            }
+        }
+    }
+
+    // Представление значений без копирования, изменять таблицу во время обхода нельзя
+    public Collection<V> values() {
+        return new AbstractCollection<>() {
+            @Override
+            public Iterator<V> iterator() {
+                return new Iterator<>() {
+                    private int slot = nextOccupied(0);
+
+                    @Override
+                    public boolean hasNext() {
+                        return slot < values.length;
+                    }
+
+                    @Override
+                    @SuppressWarnings("unchecked")
+                    public V next() {
+                        if (slot >= values.length) {
+                            throw new NoSuchElementException();
+                        }
+                        V value = (V) values[slot];
+                        slot = nextOccupied(slot + 1);
+                        return value;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    private int nextOccupied(int slot) {
+        while (slot < values.length && values[slot] == null) {
+            slot++;
+        }
+        return slot;
+    }
+
+    // Удаление со сдвигом следующих записей назад, чтобы цепочки пробирования не разрывались
+    private void deleteSlot(int slot) {
+        int free = slot;
+        int current = slot;
+        while (true) {
+            current = (current + 1) & mask;
+            if (values[current] == null) {
+                break;
+            }
+            int home = slotOf(keys[current]);
+            // Запись можно сдвинуть в свободную ячейку, если её исходная ячейка не лежит между free и current
+            boolean isHomeBetween = free <= current ? (free < home && home <= current) : (free < home || home <= current);
+            if (!isHomeBetween) {
+                keys[free] = keys[current];
+                values[free] = values[current];
+                free = current;
+            }
+        }
+        values[free] = null;
+    }
+
+    private void resize(int newCapacity) {
+        int[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate(newCapacity);
+        for (int slot = 0; slot < oldValues.length; slot++) {
+            if (oldValues[slot] != null) {
+                int newSlot = slotOf(oldKeys[slot]);
+                while (values[newSlot] != null) {
+                    newSlot = (newSlot + 1) & mask;
+                }
+                keys[newSlot] = oldKeys[slot];
+                values[newSlot] = oldValues[slot];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+        shift = Integer.numberOfLeadingZeros(capacity) + 1;
+        seed = seedFor(capacity);
+        resizeThreshold = capacity / 2; // Заполнение не больше половины, чтобы цепочки оставались короткими
+    }
+
+    private int slotOf(int key) {
+        return mix(key ^ seed) >>> shift;
+    }
+
+    // Перемешивание битов ключа (финализатор MurmurHash3): последовательные ID равномерно разбрасываются по таблице.
+    // Ячейка берётся из старших битов, поэтому обход одной таблицы идёт в порядке хеша; если так же вставлять ключи
+    // в меньшую таблицу (копирование, загрузка из файла), они ложатся в её начало одним длинным кластером.
+    // Поэтому хеш зависит от размера таблицы через seed
+    static int mix(int key) {
+        int hash = key;
+        hash ^= hash >>> 16;
+        hash *= 0x85EBCA6B;
+        hash ^= hash >>> 13;
+        hash *= 0xC2B2AE35;
+        hash ^= hash >>> 16;
+        return hash;
+    }
+
+    static int seedFor(int capacity) {
+        return capacity * 0x9E3779B9;
+    }
+
+    static int tableSizeFor(int expectedSize) {
+        int capacity = DEFAULT_CAPACITY;
+        while (capacity / 2 < expectedSize) {
+            capacity *= 2;
+        }
+        return capacity;
+    }
+}
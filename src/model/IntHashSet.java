@@ -0,0 +1,167 @@
+package model;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+// Множество int с открытой адресацией (линейное пробирование), без упаковки в Integer.
+// Ноль служит признаком пустой ячейки, поэтому его наличие хранится отдельным флагом.
+public class IntHashSet {
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private int[] keys;
+    private boolean hasZero;
+    private int size;
+    private int mask;
+    private int shift;
+    private int seed;
+    private int resizeThreshold;
+
+    public IntHashSet() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public IntHashSet(int expectedSize) {
+        allocate(IntHashMap.tableSizeFor(expectedSize));
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean contains(int key) {
+        if (key == 0) {
+            return hasZero;
+        }
+        for (int slot = slotOf(key); keys[slot] != 0; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Метод для добавления значения, возвращает false, если оно уже было в множестве
+    public boolean add(int key) {
+        if (key == 0) {
+            if (hasZero) {
+                return false;
+            }
+            hasZero = true;
+            size++;
+            return true;
+        }
+        int slot = slotOf(key);
+        for (; keys[slot] != 0; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                return false;
+            }
+        }
+        keys[slot] = key;
+        if (++size > resizeThreshold) {
+            resize(keys.length * 2);
+        }
+        return true;
+    }
+
+    // Метод для удаления значения, возвращает false, если его не было в множестве
+    public boolean remove(int key) {
+        if (key == 0) {
+            if (!hasZero) {
+                return false;
+            }
+            hasZero = false;
+            size--;
+            return true;
+        }
+        for (int slot = slotOf(key); keys[slot] != 0; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                deleteSlot(slot);
+                size--;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, 0);
+        hasZero = false;
+        size = 0;
+    }
+
+    public int[] toArray() {
+        int[] result = new int[size];
+        int index = 0;
+        if (hasZero) {
+            index++; // result[0] уже равен нулю
+        }
+        for (int key : keys) {
+            if (key != 0) {
+                result[index++] = key;
+            }
+        }
+        return result;
+    }
+
+    public void forEach(IntConsumer action) {
+        if (hasZero) {
+            action.accept(0);
+        }
+        for (int key : keys) {
+            if (key != 0) {
+                action.accept(key);
+            }
+        }
+    }
+
+    // Удаление со сдвигом следующих записей назад, чтобы цепочки пробирования не разрывались
+    private void deleteSlot(int slot) {
+        int free = slot;
+        int current = slot;
+        while (true) {
+            current = (current + 1) & mask;
+            if (keys[current] == 0) {
+                break;
+            }
+            int home = slotOf(keys[current]);
+            boolean isHomeBetween = free <= current ? (free < home && home <= current) : (free < home || home <= current);
+            if (!isHomeBetween) {
+                keys[free] = keys[current];
+                free = current;
+            }
+        }
+        keys[free] = 0;
+    }
+
+    private void resize(int newCapacity) {
+        int[] oldKeys = keys;
+        allocate(newCapacity);
+        for (int key : oldKeys) {
+            if (key != 0) {
+                int slot = slotOf(key);
+                while (keys[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = key;
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        mask = capacity - 1;
+        shift = Integer.numberOfLeadingZeros(capacity) + 1;
+        seed = IntHashMap.seedFor(capacity);
+        resizeThreshold = capacity / 2;
+    }
+
+    // Хеш зависит от размера таблицы, см. IntHashMap.mix
+    private int slotOf(int key) {
+        return IntHashMap.mix(key ^ seed) >>> shift;
+    }
+}
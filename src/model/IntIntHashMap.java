@@ -0,0 +1,170 @@
+package model;
+
+import java.util.Arrays;
+
+// Хеш-таблица int -> int с открытой адресацией (линейное пробирование), без упаковки ключей и значений.
+// Ноль служит признаком пустой ячейки, поэтому значение для ключа 0 хранится отдельно, как в IntHashSet.
+// Отсутствие ключа обозначается значением missingValue, заданным при создании.
+// Таблица сразу выделяется под expectedSize записей, поэтому пока записей не больше, put и remove
+// ничего не выделяют
+public class IntIntHashMap {
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private final int missingValue;
+    private int[] keys;
+    private int[] values;
+    private boolean hasZero;
+    private int zeroValue;
+    private int size;
+    private int mask;
+    private int shift;
+    private int seed;
+    private int resizeThreshold;
+
+    public IntIntHashMap(int missingValue) {
+        this(DEFAULT_CAPACITY, missingValue);
+    }
+
+    public IntIntHashMap(int expectedSize, int missingValue) {
+        this.missingValue = missingValue;
+        allocate(IntHashMap.tableSizeFor(expectedSize));
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean containsKey(int key) {
+        if (key == 0) {
+            return hasZero;
+        }
+        for (int slot = slotOf(key); keys[slot] != 0; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Метод для получения значения или missingValue, если ключа нет
+    public int get(int key) {
+        if (key == 0) {
+            return hasZero ? zeroValue : missingValue;
+        }
+        for (int slot = slotOf(key); keys[slot] != 0; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                return values[slot];
+            }
+        }
+        return missingValue;
+    }
+
+    // Метод для добавления или замены значения, возвращает предыдущее значение или missingValue
+    public int put(int key, int value) {
+        if (key == 0) {
+            int previous = hasZero ? zeroValue : missingValue;
+            if (!hasZero) {
+                hasZero = true;
+                size++;
+            }
+            zeroValue = value;
+            return previous;
+        }
+        int slot = slotOf(key);
+        for (; keys[slot] != 0; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                int previous = values[slot];
+                values[slot] = value;
+                return previous;
+            }
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        if (++size > resizeThreshold) {
+            resize(keys.length * 2);
+        }
+        return missingValue;
+    }
+
+    // Метод для удаления ключа, возвращает его значение или missingValue, если ключа не было
+    public int remove(int key) {
+        if (key == 0) {
+            if (!hasZero) {
+                return missingValue;
+            }
+            hasZero = false;
+            size--;
+            return zeroValue;
+        }
+        for (int slot = slotOf(key); keys[slot] != 0; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                int value = values[slot];
+                deleteSlot(slot);
+                size--;
+                return value;
+            }
+        }
+        return missingValue;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, 0);
+        hasZero = false;
+        size = 0;
+    }
+
+    // Удаление со сдвигом следующих записей назад, чтобы цепочки пробирования не разрывались
+    private void deleteSlot(int slot) {
+        int free = slot;
+        int current = slot;
+        while (true) {
+            current = (current + 1) & mask;
+            if (keys[current] == 0) {
+                break;
+            }
+            int home = slotOf(keys[current]);
+            boolean isHomeBetween = free <= current ? (free < home && home <= current) : (free < home || home <= current);
+            if (!isHomeBetween) {
+                keys[free] = keys[current];
+                values[free] = values[current];
+                free = current;
+            }
+        }
+        keys[free] = 0;
+    }
+
+    private void resize(int newCapacity) {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(newCapacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != 0) {
+                int slot = slotOf(oldKeys[i]);
+                while (keys[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+        shift = Integer.numberOfLeadingZeros(capacity) + 1;
+        seed = IntHashMap.seedFor(capacity);
+        resizeThreshold = capacity / 2;
+    }
+
+    // Хеш зависит от размера таблицы, см. IntHashMap.mix
+    private int slotOf(int key) {
+        return IntHashMap.mix(key ^ seed) >>> shift;
+    }
+}
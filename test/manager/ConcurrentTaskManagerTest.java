@@ -0,0 +1,285 @@
+package manager;
+
+import model.Epic;
+import model.Subtask;
+import model.Task;
+import model.TaskStatus;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ConcurrentTaskManagerTest {
+
+    private static final int THREADS = 8;
+
+    private TaskManager taskManager;
+
+    @BeforeEach
+    public void setUp() {
+        taskManager = Managers.getConcurrent();
+    }
+
+    // Проверка пересечения задач и пересчёта эпика, как у InMemoryTaskManager
+    @Test
+    public void testSingleThreadBehaviour() {
+        Task task = new Task("Задача 1", "Описание задачи", TaskStatus.NEW);
+        task.setStartTime(LocalDateTime.of(2023, 12, 1, 10, 0));
+        task.setDuration(Duration.ofMinutes(60));
+        taskManager.createTask(task);
+
+        Task overlapping = new Task("Задача 2", "Описание задачи 2", TaskStatus.NEW);
+        overlapping.setStartTime(LocalDateTime.of(2023, 12, 1, 10, 30));
+        overlapping.setDuration(Duration.ofMinutes(60));
+        assertThrows(IllegalArgumentException.class, () -> taskManager.createTask(overlapping),
+                "Создание задачи должно выбросить исключение при пересечении времени.");
+
+        Epic epic = new Epic("Эпик", "Описание эпика");
+        taskManager.createEpic(epic);
+        Subtask subtask = new Subtask("Подзадача", "Описание подзадачи", TaskStatus.DONE);
+        taskManager.createSubtask(subtask, epic);
+        assertEquals(TaskStatus.DONE, epic.getStatus(), "Статус эпика должен пересчитываться по подзадачам.");
+
+        taskManager.deleteEpicById(epic.getId());
+        assertNull(taskManager.getSubtaskById(subtask.getId()), "Подзадачи удалённого эпика должны удаляться.");
+        assertEquals(List.of(task), taskManager.getPrioritizedTasks(), "В списке приоритетов должна остаться только задача.");
+        assertEquals(List.of(task), taskManager.getTasksBetween(LocalDateTime.of(2023, 12, 1, 10, 30),
+                LocalDateTime.of(2023, 12, 1, 12, 0)), "Идущая задача должна попадать в интервал.");
+        assertEquals(List.of(), taskManager.getNextTasks(LocalDateTime.of(2023, 12, 1, 10, 30), 5),
+                "Задача, начавшаяся раньше, не должна быть следующей.");
+
+        // Пакет с пересечением не применяется, пакет без него применяется целиком
+        Epic batchEpic = new Epic("Эпик пакета", "Описание эпика");
+        Subtask batchSubtask = new Subtask("Подзадача пакета", "Описание подзадачи", TaskStatus.IN_PROGRESS);
+        TaskBatch batch = new TaskBatch();
+        batch.create(batchEpic);
+        batch.createSubtask(batchSubtask, batchEpic);
+        batch.create(overlapping);
+        assertThrows(IllegalArgumentException.class, () -> taskManager.applyBatch(batch),
+                "Пакет с пересечением должен отклоняться.");
+        assertEquals(List.of(), taskManager.getAllEpics(), "Отклонённый пакет не должен создавать эпики.");
+        batch.delete(task.getId());
+        taskManager.applyBatch(batch);
+        assertEquals(List.of(overlapping), taskManager.getPrioritizedTasks(), "Пакет должен занять время удалённой задачи.");
+        assertEquals(TaskStatus.IN_PROGRESS, batchEpic.getStatus(), "Статус эпика пакета должен быть рассчитан.");
+
+        // Подзадача без времени ставится сразу после задачи пакета
+        batchSubtask.setDuration(Duration.ofMinutes(30));
+        SchedulePlan plan = taskManager.scheduleUnscheduledTasks(LocalDateTime.of(2023, 12, 1, 10, 30),
+                LocalDateTime.of(2023, 12, 2, 0, 0), null, null);
+        assertEquals(LocalDateTime.of(2023, 12, 1, 11, 30), plan.getStartTime(batchSubtask.getId()),
+                "Подзадача должна занять первое свободное окно.");
+        assertEquals(LocalDateTime.of(2023, 12, 1, 12, 0), batchEpic.getEndTime(), "Время эпика должно пересчитаться.");
+
+        // Список по приоритету перестраивается после расстановки и затем отдаётся тем же экземпляром
+        List<Task> prioritized = taskManager.getPrioritizedTasks();
+        assertEquals(List.of(overlapping, batchSubtask), prioritized, "Расставленная подзадача должна попасть в список.");
+        assertSame(prioritized, taskManager.getPrioritizedTasks(), "Без изменений должен возвращаться тот же список.");
+    }
+
+    // Проверка параллельного создания подзадач в разных эпиках
+    @Test
+    public void testParallelSubtasksInDifferentEpics() throws Exception {
+        int subtasksPerThread = 500;
+        List<Epic> threadEpics = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            Epic epic = new Epic("Эпик " + i, "Описание эпика");
+            taskManager.createEpic(epic);
+            threadEpics.add(epic);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < THREADS; i++) {
+                Epic epic = threadEpics.get(i);
+                int thread = i;
+                futures.add(executor.submit(() -> {
+                    for (int j = 0; j < subtasksPerThread; j++) {
+                        Subtask subtask = new Subtask("Подзадача " + j, "Описание", j % 2 == 0 ? TaskStatus.DONE : TaskStatus.NEW);
+                        subtask.setStartTime(LocalDateTime.of(2024, 1, 1, 0, 0).plusHours((long) thread * subtasksPerThread + j));
+                        subtask.setDuration(Duration.ofMinutes(30));
+                        taskManager.createSubtask(subtask, epic);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(THREADS * subtasksPerThread, taskManager.getAllSubtasks().size(), "Все подзадачи должны быть созданы.");
+        assertEquals(THREADS * subtasksPerThread, taskManager.getPrioritizedTasks().size(), "Все подзадачи должны попасть в список приоритетов.");
+        Set<Integer> ids = new HashSet<>();
+        for (Subtask subtask : taskManager.getAllSubtasks()) {
+            ids.add(subtask.getId());
+        }
+        assertEquals(THREADS * subtasksPerThread, ids.size(), "ID подзадач не должны повторяться.");
+        for (Epic epic : threadEpics) {
+            assertEquals(subtasksPerThread, epic.getSubtaskCount(), "Каждый эпик должен содержать свои подзадачи.");
+            assertEquals(TaskStatus.IN_PROGRESS, epic.getStatus(), "Статус эпика должен учитывать все подзадачи.");
+            assertEquals(Duration.ofMinutes(30L * subtasksPerThread), epic.getDuration(), "Длительность эпика должна учитывать все подзадачи.");
+        }
+    }
+
+    // Проверка, что при одновременном создании пересекающихся задач создаётся только одна
+    @Test
+    public void testParallelConflictingTasks() throws Exception {
+        AtomicInteger created = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < THREADS * 10; i++) {
+                int offset = i % 30;
+                futures.add(executor.submit(() -> {
+                    Task task = new Task("Задача", "Описание", TaskStatus.NEW);
+                    task.setStartTime(LocalDateTime.of(2024, 1, 1, 10, 0).plusMinutes(offset));
+                    task.setDuration(Duration.ofMinutes(60));
+                    try {
+                        taskManager.createTask(task);
+                        created.incrementAndGet();
+                    } catch (IllegalArgumentException e) {
+                        rejected.incrementAndGet();
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(1, created.get(), "Из пересекающихся задач должна создаться только одна.");
+        assertEquals(THREADS * 10 - 1, rejected.get(), "Остальные задачи должны быть отклонены.");
+        assertEquals(1, taskManager.getPrioritizedTasks().size(), "В списке приоритетов должна быть одна задача.");
+    }
+
+    // Проверка переноса подзадач между эпиками одновременно с заменой подзадач копиями: эпик, в списке которого
+    // состоит подзадача из хранилища, должен совпадать с её epicId
+    @Test
+    public void testParallelSubtaskMovesKeepEpicMembership() throws Exception {
+        ConcurrentTaskManager manager = new ConcurrentTaskManager();
+        Epic first = new Epic("Эпик 1", "Описание эпика");
+        Epic second = new Epic("Эпик 2", "Описание эпика");
+        manager.createEpic(first);
+        manager.createEpic(second);
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            Subtask subtask = new Subtask("Подзадача " + i, "Описание", TaskStatus.NEW);
+            manager.createSubtask(subtask, i % 2 == 0 ? first : second);
+            ids.add(subtask.getId());
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < THREADS; i++) {
+                int thread = i;
+                futures.add(executor.submit(() -> {
+                    for (int j = 0; j < 2000; j++) {
+                        int id = ids.get((thread * 7 + j) % ids.size());
+                        Subtask stored = manager.getAllSubtasks().stream()
+                                .filter(subtask -> subtask.getId() == id).findFirst().orElseThrow();
+                        if (thread % 2 == 0) {
+                            Subtask copy = new Subtask(stored.getName(), stored.getDescription(), TaskStatus.IN_PROGRESS);
+                            copy.setId(id);
+                            copy.setEpicId(stored.getEpicId());
+                            manager.updateSubtask(copy);
+                        } else {
+                            manager.updateSubtaskEpic(stored, stored.getEpicId() == first.getId() ? second : first);
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        for (Subtask subtask : manager.getAllSubtasks()) {
+            Epic epic = subtask.getEpicId() == first.getId() ? first : second;
+            Epic other = epic == first ? second : first;
+            assertTrue(epic.containsSubtaskId(subtask.getId()), "Подзадача должна состоять в эпике из своего epicId.");
+            assertFalse(other.containsSubtaskId(subtask.getId()), "Подзадача не должна оставаться в другом эпике.");
+        }
+        assertEquals(ids.size(), first.getSubtaskCount() + second.getSubtaskCount(),
+                "Каждая подзадача должна состоять ровно в одном эпике.");
+
+        manager.deleteSubtaskById(ids.get(0));
+        Subtask deleted = new Subtask("Удалённая", "Описание", TaskStatus.NEW);
+        deleted.setId(ids.get(0));
+        assertFalse(manager.updateSubtaskEpic(deleted, first), "Удалённую подзадачу нельзя перенести.");
+        assertFalse(first.containsSubtaskId(ids.get(0)), "Перенос удалённой подзадачи не должен менять эпик.");
+    }
+
+    // Проверка выборок по статусу и дню начала через интерфейс после изменений из нескольких потоков
+    @Test
+    public void testSecondaryIndexQueries() throws Exception {
+        int tasksPerThread = 200;
+        Epic epic = new Epic("Эпик", "Описание эпика");
+        taskManager.createEpic(epic);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < THREADS; i++) {
+                int thread = i;
+                futures.add(executor.submit(() -> {
+                    for (int j = 0; j < tasksPerThread; j++) {
+                        LocalDateTime start = LocalDateTime.of(2024, 1, 1, 0, 0).plusHours((long) thread * tasksPerThread + j);
+                        Task task = thread % 2 == 0
+                                ? new Task("Задача " + j, "Описание", TaskStatus.NEW)
+                                : new Subtask("Подзадача " + j, "Описание", TaskStatus.NEW);
+                        task.setStartTime(start);
+                        task.setDuration(Duration.ofMinutes(30));
+                        if (task instanceof Subtask subtask) {
+                            taskManager.createSubtask(subtask, epic);
+                            subtask.setStatus(TaskStatus.DONE);
+                            taskManager.updateSubtask(subtask);
+                        } else {
+                            taskManager.createTask(task);
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(THREADS / 2 * tasksPerThread, taskManager.getTasksByStatus(TaskStatus.NEW).size(),
+                "Все задачи должны находиться по статусу.");
+        assertEquals(THREADS / 2 * tasksPerThread, taskManager.getTasksByStatus(TaskStatus.DONE).size(),
+                "Изменённые подзадачи должны находиться по новому статусу.");
+        List<Task> firstDay = taskManager.getTasksStartingOn(LocalDate.of(2024, 1, 1));
+        assertEquals(24, firstDay.size(), "Задачи первого дня должны находиться по дню начала.");
+        assertEquals(LocalDateTime.of(2024, 1, 1, 0, 0), firstDay.get(0).getStartTime(),
+                "Задачи дня должны идти в порядке времени начала.");
+        assertEquals(List.of(taskManager.getTasksStartingOn(LocalDate.of(2024, 1, 10)).get(8)),
+                taskManager.getTasksByStatusBetween(TaskStatus.DONE, LocalDateTime.of(2024, 1, 10, 8, 0),
+                        LocalDateTime.of(2024, 1, 10, 9, 0)), "Выборка по статусу и интервалу должна пересекать индексы.");
+
+        taskManager.deleteEpicById(epic.getId());
+        assertEquals(List.of(), taskManager.getTasksByStatus(TaskStatus.DONE),
+                "Подзадачи удалённого эпика не должны оставаться в индексе.");
+    }
+}
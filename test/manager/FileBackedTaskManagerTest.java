@@ -10,9 +10,16 @@ import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.time.Duration;
 import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.zip.CRC32;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -101,4 +108,911 @@ public class FileBackedTaskManagerTest {
         assertEquals(task1, history.getFirst(), "Первая задача в истории должна быть task1.");
         assertEquals(task2, history.get(1), "Вторая задача в истории должна быть task2.");
     }
+
+    // Проверка восстановления состояния из снимка и журнала
+    @Test
+    public void testJournalReplay() {
+        File file = new File("test_journal.csv");
+        TaskManager taskManager = FileBackedTaskManager.create(file, PersistenceMode.JOURNAL);
+
+        Task task1 = new Task("Задача 1", "Описание задачи 1", TaskStatus.NEW);
+        taskManager.createTask(task1);
+        Task task2 = new Task("Задача 2", "Описание задачи 2", TaskStatus.NEW);
+        taskManager.createTask(task2);
+
+        Epic epic = new Epic("Эпик 1", "Описание эпика");
+        taskManager.createEpic(epic);
+        Subtask subtask = new Subtask("Подзадача 1", "Описание подзадачи", TaskStatus.NEW);
+        taskManager.createSubtask(subtask, epic);
+
+        // Изменяем, удаляем и просматриваем задачи
+        task1.setStatus(TaskStatus.DONE);
+        taskManager.updateTask(task1);
+        subtask.setStatus(TaskStatus.IN_PROGRESS);
+        taskManager.updateSubtask(subtask);
+        taskManager.getTaskById(task2.getId());
+        taskManager.getTaskById(task1.getId());
+        taskManager.deleteTaskById(task2.getId());
+
+        FileBackedTaskManager loadedManager = FileBackedTaskManager.loadFromFile(file);
+
+        assertEquals(PersistenceMode.JOURNAL, loadedManager.getPersistenceMode(), "Режим журнала должен определяться автоматически.");
+        assertEquals(List.of(task1), loadedManager.getAllTasks(), "Удалённая задача не должна восстанавливаться.");
+        assertEquals(TaskStatus.DONE, loadedManager.getAllTasks().getFirst().getStatus(), "Изменение из журнала должно быть применено.");
+        assertEquals(TaskStatus.IN_PROGRESS, loadedManager.getAllEpics().getFirst().getStatus(), "Статус эпика должен быть пересчитан.");
+        assertEquals(List.of(task1), loadedManager.getHistory(), "История должна восстанавливаться из журнала.");
+
+        // Новая задача не должна получить ID удалённой
+        Task task3 = new Task("Задача 3", "Описание задачи 3", TaskStatus.NEW);
+        loadedManager.createTask(task3);
+        assertTrue(task3.getId() > subtask.getId(), "ID не должны выдаваться повторно.");
+    }
+
+    // Проверка, что пакет изменений дописывается в журнал одной записью удалений и записями изменённых задач
+    @Test
+    public void testBatchIsJournaledAndReplayed() throws IOException {
+        File file = new File("test_journal_batch.csv");
+        File journal = new File(file.getPath() + ".journal");
+        TaskManager taskManager = FileBackedTaskManager.create(file, PersistenceMode.JOURNAL);
+        Task task1 = new Task("Задача 1", "Описание задачи 1", TaskStatus.NEW);
+        taskManager.createTask(task1);
+        Epic epic = new Epic("Эпик 1", "Описание эпика");
+        taskManager.createEpic(epic);
+        Subtask subtask1 = new Subtask("Подзадача 1", "Описание подзадачи", TaskStatus.NEW);
+        taskManager.createSubtask(subtask1, epic);
+        long journalLines = Files.readAllLines(journal.toPath()).size();
+
+        TaskBatch batch = new TaskBatch();
+        batch.delete(subtask1.getId());
+        task1.setStatus(TaskStatus.DONE);
+        batch.update(task1);
+        Subtask subtask2 = new Subtask("Подзадача 2", "Описание подзадачи", TaskStatus.DONE);
+        batch.createSubtask(subtask2, epic);
+        Task task2 = new Task("Задача 2", "Описание задачи 2", TaskStatus.NEW);
+        batch.create(task2);
+        taskManager.applyBatch(batch);
+
+        assertEquals(journalLines + 4, Files.readAllLines(journal.toPath()).size(),
+                "Пакет должен дать одну запись удалений и по записи на изменённую задачу.");
+        FileBackedTaskManager loadedManager = FileBackedTaskManager.loadFromFile(file);
+        assertEquals(2, loadedManager.getAllTasks().size(), "Задачи пакета должны восстанавливаться.");
+        assertTrue(loadedManager.getAllTasks().containsAll(List.of(task1, task2)), "Задачи пакета должны восстанавливаться.");
+        assertEquals(TaskStatus.DONE, loadedManager.getTaskById(task1.getId()).getStatus(),
+                "Изменение из пакета должно быть применено.");
+        assertEquals(List.of(subtask2), loadedManager.getAllSubtasks(), "Удалённая подзадача не должна восстанавливаться.");
+        assertEquals(TaskStatus.DONE, loadedManager.getEpicById(epic.getId()).getStatus(),
+                "Статус эпика должен быть пересчитан по подзадачам пакета.");
+    }
+
+    // Проверка, что расставленное время начала сохраняется, а пробный план ничего не записывает
+    @Test
+    public void testScheduledStartTimesArePersisted() throws IOException {
+        File file = new File("test_journal_schedule.csv");
+        File journal = new File(file.getPath() + ".journal");
+        TaskManager taskManager = FileBackedTaskManager.create(file, PersistenceMode.JOURNAL);
+        Task task = new Task("Задача 1", "Описание задачи 1", TaskStatus.NEW);
+        task.setDuration(Duration.ofMinutes(45));
+        taskManager.createTask(task);
+        LocalDateTime from = LocalDateTime.of(2024, 1, 1, 8, 0);
+        long journalLength = journal.length();
+
+        taskManager.planUnscheduledTasks(from, from.plusDays(1), LocalTime.of(9, 0), LocalTime.of(18, 0));
+        assertEquals(journalLength, journal.length(), "Пробный план не должен записываться.");
+        taskManager.scheduleUnscheduledTasks(from, from.plusDays(1), LocalTime.of(9, 0), LocalTime.of(18, 0));
+
+        FileBackedTaskManager loadedManager = FileBackedTaskManager.loadFromFile(file);
+        assertEquals(LocalDateTime.of(2024, 1, 1, 9, 0), loadedManager.getTaskById(task.getId()).getStartTime(),
+                "Назначенное время начала должно восстанавливаться.");
+        assertEquals(1, loadedManager.getPrioritizedTasks().size(), "Задача должна попасть в расписание.");
+        assertEquals(List.of(task), loadedManager.getTasksByStatusBetween(TaskStatus.NEW, from, from.plusDays(1)),
+                "Вторичные индексы должны строиться при загрузке.");
+    }
+
+    // Проверка, что в режиме журнала изменения не перезаписывают снимок
+    @Test
+    public void testJournalDoesNotRewriteSnapshot() throws IOException {
+        File file = new File("test_journal_snapshot.csv");
+        TaskManager taskManager = FileBackedTaskManager.create(file, PersistenceMode.JOURNAL);
+        long snapshotLength = file.length();
+
+        taskManager.createTask(new Task("Задача 1", "Описание задачи 1", TaskStatus.NEW));
+        taskManager.createTask(new Task("Задача 2", "Описание задачи 2", TaskStatus.NEW));
+
+        assertEquals(snapshotLength, file.length(), "Снимок не должен перезаписываться при каждом изменении.");
+        assertEquals(2, FileBackedTaskManager.loadFromFile(file).getAllTasks().size(),
+                "Задачи должны восстанавливаться из журнала.");
+    }
+
+    // Проверка загрузки при оборванной последней записи журнала
+    @Test
+    public void testTornJournalRecordIsIgnored() throws IOException {
+        File file = new File("test_journal_torn.csv");
+        TaskManager taskManager = FileBackedTaskManager.create(file, PersistenceMode.JOURNAL);
+        taskManager.createTask(new Task("Задача 1", "Описание задачи 1", TaskStatus.NEW));
+
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(file.getPath() + ".journal", true))) {
+            writer.write("UPSERT,2,TASK,Задача");
+        }
+
+        TaskManager loadedManager = FileBackedTaskManager.loadFromFile(file);
+        assertEquals(1, loadedManager.getAllTasks().size(), "Оборванная запись журнала должна быть пропущена.");
+    }
+
+    // Проверка, что просмотр задачи не перезаписывает снимок, а история восстанавливается после загрузки
+    @Test
+    public void testViewDoesNotRewriteSnapshot() {
+        File file = new File("test_history_log.csv");
+        TaskManager taskManager = new FileBackedTaskManager(file);
+
+        Task task1 = new Task("Задача 1", "Описание задачи 1", TaskStatus.NEW);
+        taskManager.createTask(task1);
+        Task task2 = new Task("Задача 2", "Описание задачи 2", TaskStatus.NEW);
+        taskManager.createTask(task2);
+        long lastModified = file.lastModified();
+        long snapshotLength = file.length();
+
+        taskManager.getTaskById(task2.getId());
+        taskManager.getTaskById(task1.getId());
+        taskManager.getTaskById(task2.getId());
+
+        assertEquals(lastModified, file.lastModified(), "Просмотр задачи не должен перезаписывать снимок.");
+        assertEquals(snapshotLength, file.length(), "Просмотр задачи не должен менять снимок.");
+
+        // Удалённая задача не должна вернуться в историю после загрузки
+        taskManager.deleteTaskById(task2.getId());
+
+        TaskManager loadedManager = FileBackedTaskManager.loadFromFile(file);
+        assertEquals(List.of(task1), loadedManager.getHistory(), "История должна восстанавливаться из журнала истории.");
+    }
+
+    // Проверка фоновой записи: после flush() все изменения должны быть на диске
+    @Test
+    public void testAsyncFlush() {
+        File file = new File("test_async.csv");
+        try (FileBackedTaskManager taskManager = FileBackedTaskManager.create(file, PersistenceMode.JOURNAL, Durability.ASYNC)) {
+            Epic epic = new Epic("Эпик 1", "Описание эпика");
+            taskManager.createEpic(epic);
+            for (int i = 0; i < 1000; i++) {
+                taskManager.createSubtask(new Subtask("Подзадача " + i, "Описание подзадачи", TaskStatus.NEW), epic);
+            }
+            taskManager.flush();
+
+            TaskManager loadedManager = FileBackedTaskManager.loadFromFile(file);
+            assertEquals(1000, loadedManager.getAllSubtasks().size(), "После flush() все подзадачи должны быть записаны.");
+            assertEquals(1000, loadedManager.getSubtasksOfEpic(epic.getId()).size(), "Связи подзадач с эпиком должны восстановиться.");
+        }
+    }
+
+    // Проверка группировки: до заполнения группы изменения не записываются, flush() записывает их сразу
+    @Test
+    public void testGroupCommitWritesOnFlush() {
+        File file = new File("test_group_commit.csv");
+        file.delete(); // Файл мог остаться от предыдущего запуска
+        try (FileBackedTaskManager taskManager = FileBackedTaskManager.create(file, PersistenceMode.SNAPSHOT, Durability.GROUP_COMMIT)) {
+            taskManager.setGroupCommitLimits(10_000, 60_000);
+            Task task = new Task("Задача 1", "Описание задачи 1", TaskStatus.NEW);
+            taskManager.createTask(task);
+            assertFalse(file.exists(), "Изменение не должно записываться до заполнения группы.");
+
+            taskManager.flush();
+            assertEquals(List.of(task), FileBackedTaskManager.loadFromFile(file).getAllTasks(),
+                    "После flush() задача должна быть записана.");
+        }
+    }
+
+    // Проверка экранирования: запятые, обратная косая черта и переводы строки в тексте сохраняются без искажений
+    @Test
+    public void testSpecialCharactersInText() {
+        File file = new File("test_escaping.csv");
+        TaskManager taskManager = FileBackedTaskManager.create(file, PersistenceMode.JOURNAL);
+        Task task = new Task("Купить хлеб, молоко", "Путь C:\\temp\\new,\nвторая строка\r\n", TaskStatus.NEW);
+        task.setStartTime(LocalDateTime.of(2023, 12, 1, 10, 0, 30, 123_000_000));
+        task.setDuration(Duration.ofMinutes(15));
+        taskManager.createTask(task);
+        String longDescription = "д,".repeat(100_000); // Строка длиннее буфера чтения
+        Task longTask = new Task("Длинная задача", longDescription, TaskStatus.DONE);
+        taskManager.createTask(longTask);
+
+        TaskManager loadedManager = FileBackedTaskManager.loadFromFile(file);
+        Task loadedTask = loadedManager.getTaskById(task.getId());
+        assertEquals(task.getName(), loadedTask.getName(), "Название с запятой должно загружаться целиком.");
+        assertEquals(task.getDescription(), loadedTask.getDescription(), "Описание должно загружаться без искажений.");
+        assertEquals(task.getStartTime(), loadedTask.getStartTime(), "Время старта с секундами должно совпадать.");
+        assertEquals(longDescription, loadedManager.getTaskById(longTask.getId()).getDescription(),
+                "Длинное описание должно загружаться целиком.");
+    }
+
+    // Проверка загрузки файла старого формата, где история хранилась последней строкой снимка
+    @Test
+    public void testLoadLegacySnapshotWithHistoryLine() throws IOException {
+        File file = new File("test_legacy.csv");
+        new File(file.getPath() + ".journal").delete();
+        new File(file.getPath() + ".history").delete();
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(file))) {
+            writer.write("id,type,name,status,description,duration,startTime,epic\n");
+            writer.write("1,TASK,Задача 1,NEW,Описание задачи 1,60,2023-12-01T10:00\n");
+            writer.write("2,EPIC,Эпик 1,NEW,Описание эпика,null,null\n");
+            writer.write("3,SUBTASK,Подзадача 1,DONE,Описание подзадачи,null,null,2\n");
+            writer.write("\n");
+            writer.write("3,1\n");
+        }
+
+        TaskManager loadedManager = FileBackedTaskManager.loadFromFile(file);
+        assertEquals(LocalDateTime.of(2023, 12, 1, 11, 0), loadedManager.getAllTasks().getFirst().getEndTime(),
+                "Время окончания задачи должно восстановиться.");
+        assertEquals(TaskStatus.DONE, loadedManager.getAllEpics().getFirst().getStatus(), "Статус эпика должен пересчитаться.");
+        assertEquals(List.of(3, 1), loadedManager.getHistory().stream().map(Task::getId).toList(),
+                "История должна загружаться из строки снимка.");
+    }
+
+    // Проверка двоичного снимка: формат определяется при загрузке автоматически и сохраняется у загруженной доски
+    @Test
+    public void testBinarySnapshotRoundTrip() {
+        File file = new File("test_binary.csv");
+        FileBackedTaskManager taskManager = new FileBackedTaskManager(file);
+        taskManager.setSnapshotFormat(SnapshotFormat.BINARY);
+        Task task = new Task("Задача, с запятой", "Описание задачи", TaskStatus.IN_PROGRESS);
+        task.setStartTime(LocalDateTime.of(1969, 7, 20, 20, 17, 40));
+        task.setDuration(Duration.ofMinutes(150));
+        taskManager.createTask(task);
+        Epic epic = new Epic("Эпик 1", "Описание задачи");
+        taskManager.createEpic(epic);
+        Subtask subtask = new Subtask("Подзадача 1", null, TaskStatus.DONE);
+        subtask.setStartTime(LocalDateTime.of(2023, 12, 1, 10, 0));
+        subtask.setDuration(Duration.ofMinutes(30));
+        taskManager.createSubtask(subtask, epic);
+        taskManager.getSubtaskById(subtask.getId());
+
+        FileBackedTaskManager loadedManager = FileBackedTaskManager.loadFromFile(file);
+        assertEquals(SnapshotFormat.BINARY, loadedManager.getSnapshotFormat(), "Формат снимка должен определяться по файлу.");
+        Task loadedTask = loadedManager.getTaskById(task.getId());
+        assertEquals(task.getName(), loadedTask.getName(), "Название должно совпадать.");
+        assertEquals(task.getStatus(), loadedTask.getStatus(), "Статус должен совпадать.");
+        assertEquals(task.getStartTime(), loadedTask.getStartTime(), "Время старта с секундами должно совпадать.");
+        assertEquals(task.getDuration(), loadedTask.getDuration(), "Продолжительность должна совпадать.");
+        Subtask loadedSubtask = loadedManager.getSubtaskById(subtask.getId());
+        assertNull(loadedSubtask.getDescription(), "Пустое описание должно остаться null.");
+        assertEquals(epic.getId(), loadedSubtask.getEpicId(), "Связь с эпиком должна сохраниться.");
+        assertEquals(TaskStatus.DONE, loadedManager.getEpicById(epic.getId()).getStatus(), "Статус эпика должен пересчитаться.");
+        assertEquals(subtask.getEndTime(), loadedManager.getEpicById(epic.getId()).getEndTime(), "Время эпика должно пересчитаться.");
+    }
+
+    // Проверка преобразования доски из CSV в двоичный формат и обратно
+    @Test
+    public void testConvertBetweenFormats() {
+        File csvFile = new File("test_convert.csv");
+        File binaryFile = new File("test_convert.bin");
+        File restoredFile = new File("test_convert_restored.csv");
+        TaskManager taskManager = FileBackedTaskManager.create(csvFile, PersistenceMode.JOURNAL);
+        for (int i = 0; i < 100; i++) {
+            Task task = new Task("Задача " + i % 10, "Одинаковое описание задачи", TaskStatus.NEW);
+            task.setStartTime(LocalDateTime.of(2024, 1, 1, 0, 0).plusHours(i));
+            task.setDuration(Duration.ofMinutes(45));
+            taskManager.createTask(task);
+        }
+        taskManager.getTaskById(5);
+
+        FileBackedTaskManager.convert(csvFile, binaryFile, SnapshotFormat.BINARY);
+        FileBackedTaskManager.convert(binaryFile, restoredFile, SnapshotFormat.CSV);
+
+        assertTrue(binaryFile.length() < restoredFile.length() / 2, "Двоичный снимок должен быть заметно меньше CSV.");
+        FileBackedTaskManager binaryManager = FileBackedTaskManager.loadFromFile(binaryFile);
+        FileBackedTaskManager restoredManager = FileBackedTaskManager.loadFromFile(restoredFile);
+        assertEquals(SnapshotFormat.CSV, restoredManager.getSnapshotFormat(), "Обратное преобразование должно дать CSV.");
+        assertEquals(taskManager.getPrioritizedTasks(), binaryManager.getPrioritizedTasks(), "Задачи должны совпадать после преобразования.");
+        assertEquals(taskManager.getPrioritizedTasks(), restoredManager.getPrioritizedTasks(), "Задачи должны совпадать после обратного преобразования.");
+        assertEquals(List.of(5), restoredManager.getHistory().stream().map(Task::getId).toList(), "История должна переноситься.");
+    }
+
+    // Проверка сжатого снимка: несколько независимых блоков, определение формата и обнаружение обрыва
+    @Test
+    public void testCompressedSnapshotRoundTrip() throws IOException {
+        File file = new File("test_compressed.csv");
+        File csvFile = new File("test_compressed_plain.csv");
+        FileBackedTaskManager taskManager = FileBackedTaskManager.create(file, PersistenceMode.JOURNAL);
+        Epic epic = new Epic("Эпик", "Описание эпика");
+        taskManager.createEpic(epic);
+        LocalDateTime start = LocalDateTime.of(2024, 1, 1, 0, 0);
+        for (int i = 0; i < 6000; i++) {
+            Subtask subtask = new Subtask("Подзадача " + i, "Описание, с запятой и\nпереводом строки " + i,
+                    i % 2 == 0 ? TaskStatus.NEW : TaskStatus.DONE);
+            subtask.setStartTime(start.plusHours(i));
+            subtask.setDuration(Duration.ofMinutes(30));
+            taskManager.createSubtask(subtask, epic);
+        }
+        taskManager.getSubtaskById(10);
+        taskManager.setSnapshotFormat(SnapshotFormat.CSV_DEFLATE);
+        taskManager.close();
+        FileBackedTaskManager.convert(file, csvFile, SnapshotFormat.CSV);
+
+        assertTrue(file.length() > 0 && file.length() < csvFile.length() / 4, "Сжатый снимок должен быть намного меньше CSV.");
+        assertTrue(csvFile.length() > 2L * CompressedSnapshot.BLOCK_SIZE, "Снимок должен состоять из нескольких блоков.");
+        FileBackedTaskManager loadedManager = FileBackedTaskManager.loadFromFile(file);
+        assertEquals(SnapshotFormat.CSV_DEFLATE, loadedManager.getSnapshotFormat(), "Формат снимка должен определяться по файлу.");
+        assertEquals(taskManager.getPrioritizedTasks(), loadedManager.getPrioritizedTasks(), "Подзадачи должны совпадать.");
+        assertEquals(taskManager.getEpicById(epic.getId()), loadedManager.getEpicById(epic.getId()),
+                "Статус и время эпика должны пересчитываться.");
+        assertEquals(6001, loadedManager.idCounter, "Счётчик ID должен учитывать все блоки.");
+        assertEquals(10, loadedManager.getHistory().getFirst().getId(), "История должна сохраняться.");
+        loadedManager.close();
+
+        // Снимок без маркера конца считается оборванным
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        Files.write(file.toPath(), Arrays.copyOf(bytes, bytes.length - 8));
+        assertThrows(ManagerSaveException.class, () -> FileBackedTaskManager.loadFromFile(file),
+                "Оборванный сжатый снимок должен приводить к ошибке загрузки.");
+        bytes[bytes.length / 2] ^= 0x55;
+        Files.write(file.toPath(), bytes);
+        assertThrows(ManagerSaveException.class, () -> FileBackedTaskManager.loadFromFile(file),
+                "Повреждённый блок должен приводить к ошибке загрузки.");
+    }
+
+    // Проверка фоновой контрольной точки: заполненный журнал сворачивается в снимок, а состояние не теряется
+    @Test
+    public void testJournalIsCheckpointedInBackground() throws Exception {
+        File file = new File("test_checkpoint.csv");
+        File journalFile = new File(file.getPath() + ".journal");
+        File previousJournalFile = new File(file.getPath() + ".journal.prev");
+        try (FileBackedTaskManager taskManager = FileBackedTaskManager.create(file, PersistenceMode.JOURNAL)) {
+            for (int i = 0; i < 3000; i++) {
+                taskManager.createTask(new Task("Задача " + i, "Описание задачи", TaskStatus.NEW));
+            }
+            waitUntilGone(previousJournalFile);
+
+            List<String> journalLines = Files.readAllLines(journalFile.toPath());
+            assertTrue(journalLines.size() < 3000, "Свёрнутые записи должны удаляться из журнала.");
+            assertTrue(Files.readAllLines(file.toPath()).size() > 1000, "Свёрнутые записи должны попасть в снимок.");
+        }
+        assertEquals(3000, FileBackedTaskManager.loadFromFile(file).getAllTasks().size(),
+                "После контрольной точки все задачи должны загружаться.");
+    }
+
+    // Проверка, что режим JOURNAL сохраняется после контрольной точки и после записи полного снимка при закрытии
+    @Test
+    public void testJournalModeSurvivesCheckpointAndClose() throws Exception {
+        File file = new File("test_journal_mode.csv");
+        File previousJournalFile = new File(file.getPath() + ".journal.prev");
+        try (FileBackedTaskManager taskManager = FileBackedTaskManager.create(file, PersistenceMode.JOURNAL)) {
+            for (int i = 0; i < 1024; i++) {
+                taskManager.createTask(new Task("Задача " + i, "Описание задачи", TaskStatus.NEW));
+            }
+            waitUntilGone(previousJournalFile); // Весь журнал свёрнут в снимок
+        }
+        try (FileBackedTaskManager loadedManager = FileBackedTaskManager.loadFromFile(file)) {
+            assertEquals(PersistenceMode.JOURNAL, loadedManager.getPersistenceMode(),
+                    "После контрольной точки доска должна загружаться в режиме журнала.");
+            assertEquals(1024, loadedManager.getAllTasks().size(), "Задачи из контрольной точки должны загружаться.");
+            loadedManager.setDerivedIndexPersisted(true); // При закрытии пишется полный снимок
+        }
+        FileBackedTaskManager reloadedManager = FileBackedTaskManager.loadFromFile(file);
+        assertEquals(PersistenceMode.JOURNAL, reloadedManager.getPersistenceMode(),
+                "После записи снимка при закрытии доска должна загружаться в режиме журнала.");
+        reloadedManager.close();
+
+        // Явный переход в режим SNAPSHOT сворачивает журнал, и доска больше не определяется как JOURNAL
+        FileBackedTaskManager.loadFromFile(file, PersistenceMode.SNAPSHOT).close();
+        assertEquals(PersistenceMode.SNAPSHOT, FileBackedTaskManager.loadFromFile(file).getPersistenceMode(),
+                "После перехода в режим SNAPSHOT журнал не должен оставаться.");
+    }
+
+    // Проверка восстановления, если работа завершилась до сворачивания журнала .prev
+    @Test
+    public void testInterruptedCheckpointIsResumedAfterLoad() throws Exception {
+        File file = new File("test_checkpoint_resume.csv");
+        File journalFile = new File(file.getPath() + ".journal");
+        File previousJournalFile = new File(file.getPath() + ".journal.prev");
+        try (FileBackedTaskManager taskManager = FileBackedTaskManager.create(file, PersistenceMode.JOURNAL)) {
+            for (int i = 0; i < 10; i++) {
+                taskManager.createTask(new Task("Задача " + i, "Описание задачи", TaskStatus.NEW));
+            }
+        }
+        Files.move(journalFile.toPath(), previousJournalFile.toPath()); // Журнал переключён, снимок ещё не записан
+
+        try (FileBackedTaskManager loadedManager = FileBackedTaskManager.loadFromFile(file)) {
+            assertEquals(PersistenceMode.JOURNAL, loadedManager.getPersistenceMode(), "Режим должен определяться по журналу .prev.");
+            assertEquals(10, loadedManager.getAllTasks().size(), "Задачи из журнала .prev должны загружаться.");
+            loadedManager.deleteTaskById(1);
+            waitUntilGone(previousJournalFile);
+        }
+        // Заголовок, 10 задач и пустая строка; удаление осталось в новом журнале
+        assertEquals(12, Files.readAllLines(file.toPath()).size(), "Журнал .prev должен свернуться в снимок.");
+        assertEquals(9, FileBackedTaskManager.loadFromFile(file).getAllTasks().size(),
+                "Изменения после загрузки должны применяться поверх контрольной точки.");
+    }
+
+    // Проверка, что в режиме SEGMENTED изменение задачи записывается только в её сегмент
+    @Test
+    public void testSegmentedStoreWritesOnlyChangedSegment() throws IOException {
+        File file = new File("test_segmented.csv");
+        List<Task> created = new ArrayList<>();
+        try (FileBackedTaskManager taskManager = FileBackedTaskManager.create(file, PersistenceMode.SEGMENTED)) {
+            for (int i = 0; i < 3000; i++) {
+                Task task = new Task("Задача " + i, "Описание задачи", TaskStatus.NEW);
+                taskManager.createTask(task);
+                created.add(task);
+            }
+            File segments = segmentsDirectoryOf(file);
+            byte[] firstSegment = Files.readAllBytes(new File(segments, "tasks-0.csv").toPath());
+            long thirdSegmentDelta = new File(segments, "tasks-2.delta").length();
+
+            Task changed = created.get(1500);
+            changed.setStatus(TaskStatus.DONE);
+            taskManager.updateTask(changed);
+            taskManager.deleteTaskById(created.get(1501).getId());
+
+            assertArrayEquals(firstSegment, Files.readAllBytes(new File(segments, "tasks-0.csv").toPath()),
+                    "Сегменты без изменений не должны перезаписываться.");
+            assertEquals(thirdSegmentDelta, new File(segments, "tasks-2.delta").length(),
+                    "Изменения других сегментов не должны дописываться.");
+            List<String> delta = Files.readAllLines(new File(segments, "tasks-1.delta").toPath());
+            assertTrue(delta.get(delta.size() - 2).startsWith("UPSERT," + changed.getId() + ","),
+                    "Изменённая задача должна дописываться в свой сегмент.");
+            assertEquals("DELETE," + created.get(1501).getId(), delta.get(delta.size() - 1),
+                    "Удаление должно дописываться в сегмент задачи.");
+
+            // Удаление всех задач затрагивает каждый сегмент целиком, поэтому сегменты перезаписываются
+            taskManager.deleteAllTasks();
+            assertArrayEquals(new String[0], segments.list(), "Пустые сегменты должны удаляться.");
+            taskManager.createTask(new Task("Новая задача", "Описание задачи", TaskStatus.NEW));
+        }
+
+        try (FileBackedTaskManager loadedManager = FileBackedTaskManager.loadFromFile(file)) {
+            assertEquals(PersistenceMode.SEGMENTED, loadedManager.getPersistenceMode(), "Режим должен определяться по манифесту.");
+            assertEquals(1, loadedManager.getAllTasks().size(), "После загрузки должна остаться только новая задача.");
+            assertEquals(3001, loadedManager.getAllTasks().getFirst().getId(), "ID не должны выдаваться повторно.");
+        }
+    }
+
+    // Проверка, что изменение подзадачи затрагивает только сегмент её эпика
+    @Test
+    public void testSegmentedStoreKeepsEpicsInOwnSegments() throws IOException {
+        File file = new File("test_segmented_epics.csv");
+        Epic first = new Epic("Эпик 1", "Описание эпика");
+        Epic second = new Epic("Эпик 2", "Описание эпика");
+        Task task = new Task("Задача", "Описание задачи", TaskStatus.NEW);
+        List<Subtask> firstSubtasks = new ArrayList<>();
+        try (FileBackedTaskManager taskManager = FileBackedTaskManager.create(file, PersistenceMode.SEGMENTED)) {
+            taskManager.createEpic(first);
+            taskManager.createEpic(second);
+            taskManager.createTask(task);
+            for (int i = 0; i < 100; i++) {
+                Subtask subtask = new Subtask("Подзадача " + i, "Описание", TaskStatus.NEW);
+                taskManager.createSubtask(subtask, first);
+                firstSubtasks.add(subtask);
+                taskManager.createSubtask(new Subtask("Подзадача " + i, "Описание", TaskStatus.NEW), second);
+            }
+            taskManager.flush();
+            File segments = segmentsDirectoryOf(file);
+            assertArrayEquals(new String[]{"epic-1", "epic-2", "tasks-0"},
+                    Arrays.stream(segments.list()).map(name -> name.substring(0, name.lastIndexOf('.'))).distinct().sorted().toArray(),
+                    "У каждого эпика и у отдельных задач должны быть свои сегменты.");
+            byte[] secondSegment = Files.readAllBytes(new File(segments, "epic-2.csv").toPath());
+            byte[] taskSegment = Files.readAllBytes(new File(segments, "tasks-0.delta").toPath());
+
+            Subtask changed = firstSubtasks.get(10);
+            changed.setStatus(TaskStatus.DONE);
+            taskManager.updateSubtask(changed);
+            assertArrayEquals(secondSegment, Files.readAllBytes(new File(segments, "epic-2.csv").toPath()),
+                    "Сегмент другого эпика не должен перезаписываться.");
+            assertArrayEquals(taskSegment, Files.readAllBytes(new File(segments, "tasks-0.delta").toPath()),
+                    "Сегмент отдельных задач не должен перезаписываться.");
+
+            // Подзадача, перенесённая в другой эпик, удаляется из сегмента прежнего эпика
+            taskManager.updateSubtaskEpic(firstSubtasks.get(20), second);
+        }
+
+        try (FileBackedTaskManager loadedManager = FileBackedTaskManager.loadFromFile(file)) {
+            assertEquals(99, loadedManager.getSubtasksOfEpic(first.getId()).size(), "Перенесённая подзадача не должна остаться в прежнем эпике.");
+            assertEquals(101, loadedManager.getSubtasksOfEpic(second.getId()).size(), "Перенесённая подзадача должна загрузиться в новом эпике.");
+            assertEquals(TaskStatus.IN_PROGRESS, loadedManager.getEpicById(first.getId()).getStatus(), "Статус эпика должен пересчитываться.");
+            assertEquals(List.of(task), loadedManager.getAllTasks(), "Отдельная задача должна загружаться.");
+        }
+    }
+
+    // Проверка загрузки сегментов с эпиками и перехода между способами хранения
+    @Test
+    public void testSegmentedStoreRoundTripAndMigration() throws IOException {
+        File file = new File("test_segmented_migration.csv");
+        Epic epic = new Epic("Эпик", "Описание эпика");
+        Subtask subtask = new Subtask("Подзадача", "Описание, с запятой", TaskStatus.DONE);
+        subtask.setStartTime(LocalDateTime.of(2024, 1, 1, 10, 0));
+        subtask.setDuration(Duration.ofMinutes(30));
+        try (FileBackedTaskManager taskManager = FileBackedTaskManager.create(file, PersistenceMode.SEGMENTED, Durability.GROUP_COMMIT)) {
+            taskManager.createEpic(epic);
+            taskManager.createSubtask(subtask, epic);
+            taskManager.getSubtaskById(subtask.getId());
+        }
+
+        try (FileBackedTaskManager snapshotManager = FileBackedTaskManager.loadFromFile(file, PersistenceMode.SNAPSHOT)) {
+            assertEquals(List.of(subtask), snapshotManager.getSubtasksOfEpic(epic.getId()), "Подзадачи эпика должны восстанавливаться.");
+            assertEquals(TaskStatus.DONE, snapshotManager.getEpicById(epic.getId()).getStatus(), "Статус эпика должен пересчитываться.");
+            assertEquals(subtask.getStartTime(), snapshotManager.getPrioritizedTasks().getFirst().getStartTime(),
+                    "Время подзадачи должно сохраняться.");
+        }
+        assertTrue(Files.readAllLines(file.toPath()).getFirst().startsWith("id,type"), "После перехода файл доски должен стать снимком.");
+        assertEquals(0, segmentDirectoriesOf(file).length, "После перехода на снимок каталог сегментов должен удаляться.");
+
+        try (FileBackedTaskManager segmentedManager = FileBackedTaskManager.loadFromFile(file, PersistenceMode.SEGMENTED)) {
+            assertEquals(2, segmentedManager.getHistory().size(), "История должна сохраняться при переходе.");
+        }
+        assertEquals(1, segmentDirectoriesOf(file).length, "После перехода на сегменты каталог должен создаваться.");
+        assertEquals(subtask.getDescription(), FileBackedTaskManager.loadFromFile(file).getSubtaskById(subtask.getId()).getDescription(),
+                "Текст с запятой должен загружаться из сегмента.");
+    }
+
+    // Проверка параллельной загрузки большого снимка: порядок по времени, эпики и история старого формата
+    @Test
+    public void testParallelLoadOfLargeSnapshot() throws IOException {
+        File file = new File("test_parallel_load.csv");
+        int taskCount = 30000;
+        LocalDateTime start = LocalDateTime.of(2024, 1, 1, 0, 0);
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(file))) {
+            writer.write("id,type,name,status,description,duration,startTime,epic");
+            writer.newLine();
+            writer.write("1,EPIC,Эпик,NEW,Описание эпика,null,null");
+            writer.newLine();
+            // Задачи записаны в обратном порядке времени, подзадачи эпика чередуются с задачами
+            for (int id = 2; id <= taskCount; id++) {
+                LocalDateTime startTime = start.plusHours(taskCount - id);
+                if (id % 3 == 0) {
+                    writer.write(id + ",SUBTASK,Подзадача " + id + "," + (id % 2 == 0 ? "DONE" : "NEW")
+                            + ",Описание\\, с запятой,30," + startTime + ",1");
+                } else {
+                    writer.write(id + ",TASK,Задача " + id + ",NEW,Описание,30," + startTime);
+                }
+                writer.newLine();
+            }
+            writer.newLine();
+            writer.write("5,3");
+            writer.newLine();
+        }
+        assertTrue(file.length() >= ParallelSnapshotReader.MIN_PARALLEL_BYTES, "Снимок должен читаться по частям.");
+
+        FileBackedTaskManager loadedManager = FileBackedTaskManager.loadFromFile(file);
+        assertEquals(taskCount - 1, loadedManager.getPrioritizedTasks().size(), "Все задачи должны попасть в индекс времени.");
+        List<Task> prioritized = loadedManager.getPrioritizedTasks();
+        for (int i = 1; i < prioritized.size(); i++) {
+            assertTrue(prioritized.get(i - 1).getStartTime().isBefore(prioritized.get(i).getStartTime()),
+                    "Задачи должны быть упорядочены по времени начала.");
+        }
+        Epic epic = loadedManager.getAllEpics().getFirst();
+        assertEquals(taskCount / 3, epic.getSubtaskCount(), "Все подзадачи должны быть связаны с эпиком.");
+        assertEquals(TaskStatus.IN_PROGRESS, epic.getStatus(), "Статус эпика должен пересчитываться.");
+        assertEquals(start, epic.getStartTime(), "Начало эпика должно совпадать с самой ранней подзадачей.");
+        assertEquals("Описание, с запятой", loadedManager.getAllSubtasks().getFirst().getDescription(),
+                "Экранирование должно раскрываться при разборе по частям.");
+        assertEquals(List.of(5, 3), loadedManager.getHistory().stream().map(Task::getId).toList(),
+                "История после пустой строки должна загружаться.");
+        assertEquals(taskCount, loadedManager.idCounter, "Счётчик ID должен учитывать все части файла.");
+
+        // Ошибка в середине файла обнаруживается и при параллельном разборе
+        List<String> lines = new ArrayList<>(Files.readAllLines(file.toPath()));
+        lines.set(taskCount / 2, "испорченная строка");
+        Files.write(file.toPath(), lines);
+        assertThrows(ManagerSaveException.class, () -> FileBackedTaskManager.loadFromFile(file),
+                "Испорченная строка должна приводить к ошибке загрузки.");
+    }
+
+    // Проверка ленивой загрузки: тексты читаются из файла текстов по запросу, кэш ограничен, изменения сохраняются
+    @Test
+    public void testLazyLoadMaterializesBodiesOnDemand() throws IOException {
+        File file = new File("test_lazy_load.csv");
+        FileBackedTaskManager manager = new FileBackedTaskManager(file);
+        for (int i = 1; i <= 20; i++) {
+            manager.createTask(new Task("Задача " + i, "Описание, с запятой\n" + i, TaskStatus.NEW));
+        }
+        Epic epic = new Epic("Эпик", "Описание эпика");
+        manager.createEpic(epic);
+        Subtask subtask = new Subtask("Подзадача", "Описание подзадачи", TaskStatus.DONE);
+        subtask.setDuration(Duration.ofMinutes(30));
+        subtask.setStartTime(LocalDateTime.of(2024, 1, 1, 10, 0));
+        manager.createSubtask(subtask, epic);
+        Epic secondEpic = new Epic("Второй эпик", "Описание");
+        manager.createEpic(secondEpic);
+        manager.getTaskById(1);
+        manager.getSubtaskById(subtask.getId());
+        List<Task> expectedTasks = manager.getAllTasks();
+
+        FileBackedTaskManager lazyManager = FileBackedTaskManager.loadLazily(file, 4);
+        assertEquals(PersistenceMode.JOURNAL, lazyManager.getPersistenceMode(), "Ленивая доска должна вестись журналом.");
+        assertTrue(BodyStore.isDetached(lazyManager.tasks.get(1)), "Текст задачи не должен храниться в памяти.");
+        assertFalse(BodyStore.isDetached(lazyManager.epics.get(epic.getId())), "Эпик должен загружаться полностью.");
+        assertEquals(0, lazyManager.cachedBodyCount(), "До обращений кэш должен быть пустым.");
+
+        assertEquals(expectedTasks, lazyManager.getAllTasks(), "Задачи должны читаться с текстами.");
+        assertEquals(4, lazyManager.cachedBodyCount(), "Кэш не должен превышать заданный размер.");
+        assertEquals("Подзадача", lazyManager.getSubtasksOfEpic(epic.getId()).getFirst().getName(),
+                "Подзадачи эпика должны читаться с текстами.");
+        assertEquals(List.of("Задача 1", "Подзадача"), lazyManager.getHistory().stream().map(Task::getName).toList(),
+                "История должна содержать задачи с текстами.");
+        assertEquals("Описание подзадачи", lazyManager.getPrioritizedTasks().getFirst().getDescription(),
+                "Список по приоритету должен содержать задачи с текстами.");
+
+        // Изменённая задача и перенесённая подзадача хранятся целиком и переживают снимок и перезагрузку
+        Task task = lazyManager.getTaskById(2);
+        task.setName("Новое название");
+        lazyManager.updateTask(task);
+        Subtask movedSubtask = lazyManager.getSubtaskById(subtask.getId());
+        lazyManager.updateSubtaskEpic(movedSubtask, lazyManager.getEpicById(secondEpic.getId()));
+        lazyManager.createTask(new Task("Новая задача", "Описание", TaskStatus.NEW));
+        lazyManager.save();
+        lazyManager.close();
+        assertTrue(new File(file.getPath() + ".bodies").exists(), "Файл текстов должен оставаться для следующей загрузки.");
+
+        FileBackedTaskManager reloadedManager = FileBackedTaskManager.loadFromFile(file);
+        assertEquals("Новое название", reloadedManager.getTaskById(2).getName(), "Изменение должно сохраняться.");
+        assertEquals("Описание, с запятой\n3", reloadedManager.getTaskById(3).getDescription(),
+                "Снимок должен записываться с текстами из файла текстов.");
+        assertEquals(secondEpic.getId(), reloadedManager.getSubtaskById(subtask.getId()).getEpicId(),
+                "Перенос подзадачи должен сохраняться.");
+        assertEquals(21, reloadedManager.getAllTasks().size(), "Созданная задача должна сохраняться.");
+        reloadedManager.close();
+    }
+
+    // Проверка, что файл текстов не используется повторно для снимка той же длины с тем же временем изменения,
+    // но с другим содержимым
+    @Test
+    public void testLazyLoadRebuildsBodiesOfSameLengthSnapshot() throws IOException {
+        File file = new File("test_lazy_same_length.csv");
+        new File(file.getPath() + ".bodies").delete();
+        new File(file.getPath() + ".bodies.index").delete();
+        FileBackedTaskManager manager = new FileBackedTaskManager(file);
+        Task task = new Task("aaa", "Описание", TaskStatus.NEW);
+        manager.createTask(task);
+        manager.close();
+        FileBackedTaskManager.loadLazily(file, 2).close(); // Рядом со снимком записан индекс текстов
+
+        // Снимок переписан с названием той же длины, время изменения восстановлено
+        long lastModified = file.lastModified();
+        String snapshot = Files.readString(file.toPath());
+        Files.writeString(file.toPath(), snapshot.replace("aaa", "bbb"));
+        assertTrue(file.setLastModified(lastModified), "Время изменения снимка должно восстанавливаться.");
+
+        FileBackedTaskManager lazyManager = FileBackedTaskManager.loadLazily(file, 2);
+        assertEquals("bbb", lazyManager.getTaskById(task.getId()).getName(),
+                "Тексты должны читаться из нового снимка, а не из прежнего файла текстов.");
+        lazyManager.close();
+    }
+
+    // Проверка повторного использования файла текстов: если снимок не менялся, тексты задач снимка не перезаписываются,
+    // а после замены снимка файл текстов строится заново
+    @Test
+    public void testLazyLoadReusesBodiesOfUnchangedSnapshot() {
+        File file = new File("test_lazy_reuse.csv");
+        File indexFile = new File(file.getPath() + ".bodies.index");
+        new File(file.getPath() + ".bodies").delete();
+        indexFile.delete();
+        FileBackedTaskManager manager = new FileBackedTaskManager(file);
+        for (int i = 1; i <= 10; i++) {
+            manager.createTask(new Task("Задача " + i, "Описание " + i, TaskStatus.NEW));
+        }
+        manager.close();
+
+        // Изменение попадает в журнал, снимок остаётся прежним
+        FileBackedTaskManager lazyManager = FileBackedTaskManager.loadLazily(file, 2);
+        assertTrue(indexFile.exists(), "После чтения снимка должен записываться индекс текстов.");
+        Task task = lazyManager.getTaskById(2);
+        task.setName("Новое название");
+        lazyManager.updateTask(task);
+        lazyManager.close();
+        assertTrue(indexFile.setLastModified(1000), "Время изменения индекса должно устанавливаться.");
+
+        FileBackedTaskManager reusingManager = FileBackedTaskManager.loadLazily(file, 2);
+        assertEquals(1000, indexFile.lastModified(), "Индекс к неизменному снимку не должен перезаписываться.");
+        assertTrue(BodyStore.isDetached(reusingManager.tasks.get(3)), "Текст задачи снимка должен браться из файла.");
+        assertEquals("Описание 3", reusingManager.getTaskById(3).getDescription(),
+                "Тексты задач снимка должны читаться из прежнего файла текстов.");
+        assertEquals("Новое название", reusingManager.getTaskById(2).getName(),
+                "Текст из журнала должен дописываться поверх прежнего файла текстов.");
+        reusingManager.save(); // Снимок заменяется, прежний индекс к нему больше не подходит
+        reusingManager.close();
+
+        FileBackedTaskManager rebuiltManager = FileBackedTaskManager.loadLazily(file, 2);
+        assertNotEquals(1000, indexFile.lastModified(), "После замены снимка индекс текстов должен строиться заново.");
+        assertEquals("Новое название", rebuiltManager.getTaskById(2).getName(), "Изменение должно сохраняться.");
+        assertEquals("Описание 10", rebuiltManager.getTaskById(10).getDescription(),
+                "Тексты должны читаться из пересобранного файла текстов.");
+        rebuiltManager.close();
+    }
+
+    // Проверка сохранённого индекса: загрузка принимает порядок и статусы эпиков, а при несовпадении пересчитывает
+    @Test
+    public void testDerivedIndexIsAdoptedAndValidated() throws IOException {
+        File file = new File("test_derived_index.csv");
+        FileBackedTaskManager manager = new FileBackedTaskManager(file);
+        LocalDateTime start = LocalDateTime.of(2024, 3, 1, 9, 0);
+        Epic epic = new Epic("Эпик", "Описание");
+        manager.createEpic(epic);
+        for (int i = 0; i < 6; i++) {
+            Subtask subtask = new Subtask("Подзадача " + i, "Описание", i % 2 == 0 ? TaskStatus.DONE : TaskStatus.NEW);
+            subtask.setStartTime(start.plusHours(10 - i));
+            subtask.setDuration(Duration.ofSeconds(90)); // В снимке длительность хранится в минутах
+            manager.createSubtask(subtask, epic);
+        }
+        Task task = new Task("Задача", "Описание", TaskStatus.NEW);
+        task.setStartTime(start);
+        task.setDuration(Duration.ofMinutes(30));
+        manager.createTask(task);
+        manager.setDerivedIndexPersisted(true);
+        File indexFile = new File(file.getPath() + ".index");
+        assertTrue(indexFile.exists(), "Индекс должен записываться рядом со снимком.");
+
+        FileBackedTaskManager indexedManager = FileBackedTaskManager.loadFromFile(file);
+        Epic indexedEpic = indexedManager.getEpicById(epic.getId());
+        assertTrue(indexedEpic.needsRecalculation(), "Статус эпика должен приниматься из индекса.");
+        assertTrue(indexedManager.isDerivedIndexPersisted(), "Загруженная доска должна продолжать сохранять индекс.");
+
+        Files.delete(indexFile.toPath());
+        FileBackedTaskManager recomputedManager = FileBackedTaskManager.loadFromFile(file);
+        Epic recomputedEpic = recomputedManager.getEpicById(epic.getId());
+        assertFalse(recomputedEpic.needsRecalculation(), "Без индекса эпик должен пересчитываться.");
+        assertEquals(recomputedEpic, indexedEpic, "Статус и время эпика из индекса должны совпадать с пересчётом.");
+        assertEquals(recomputedEpic.getEndTime(), indexedEpic.getEndTime(), "Окончание эпика должно совпадать.");
+        assertEquals(recomputedManager.getPrioritizedTasks(), indexedManager.getPrioritizedTasks(),
+                "Порядок по времени из индекса должен совпадать с сортировкой.");
+
+        // Изменение подзадачи после принятия индекса пересчитывает эпик полностью
+        Subtask subtask = indexedManager.getSubtasksOfEpic(epic.getId()).getFirst();
+        subtask.setStatus(TaskStatus.DONE);
+        indexedManager.updateSubtask(subtask);
+        recomputedManager.updateSubtask(subtask);
+        assertEquals(recomputedEpic.getStatus(), indexedEpic.getStatus(), "Эпик должен пересчитываться после изменения.");
+        assertFalse(indexedEpic.needsRecalculation(), "После изменения эпик должен учитывать вклады подзадач.");
+
+        // Снимок, изменённый после записи индекса, не проходит проверку суммы
+        indexedManager.save();
+        assertTrue(FileBackedTaskManager.loadFromFile(file).getEpicById(epic.getId()).needsRecalculation(),
+                "Новый индекс должен приниматься.");
+        String snapshot = Files.readString(file.toPath());
+        Files.writeString(file.toPath(), snapshot.replace("Подзадача 1,NEW", "Подзадача 1,DONE"));
+        FileBackedTaskManager changedManager = FileBackedTaskManager.loadFromFile(file);
+        assertFalse(changedManager.getEpicById(epic.getId()).needsRecalculation(),
+                "Индекс к другому снимку не должен приниматься.");
+
+        // Повреждённый индекс тоже пропускается
+        byte[] index = Files.readAllBytes(indexFile.toPath());
+        index[index.length / 2] ^= 1;
+        Files.write(indexFile.toPath(), index);
+        assertFalse(FileBackedTaskManager.loadFromFile(file).getEpicById(epic.getId()).needsRecalculation(),
+                "Повреждённый индекс не должен приниматься.");
+
+        changedManager.setDerivedIndexPersisted(false);
+        assertFalse(indexFile.exists(), "Отключение индекса должно удалять его файл.");
+    }
+
+    // Проверка, что изменение задачи в режиме PAGED перезаписывает только её страницы
+    @Test
+    public void testPagedStoreWritesOnlyChangedPages() throws IOException {
+        File file = new File("test_paged.db");
+        List<Task> created = new ArrayList<>();
+        Epic epic = new Epic("Эпик", "Описание эпика");
+        Subtask longSubtask = new Subtask("Подзадача", "Длинное описание, ".repeat(400), TaskStatus.IN_PROGRESS);
+        try (FileBackedTaskManager taskManager = FileBackedTaskManager.create(file, PersistenceMode.PAGED)) {
+            for (int i = 0; i < 3000; i++) {
+                Task task = new Task("Задача " + i, "Описание задачи", TaskStatus.NEW);
+                taskManager.createTask(task);
+                created.add(task);
+            }
+            taskManager.createEpic(epic);
+            taskManager.createSubtask(longSubtask, epic); // Запись длиннее страницы уходит в страницы переполнения
+
+            byte[] before = Files.readAllBytes(file.toPath());
+            Task changed = created.get(1500);
+            changed.setStatus(TaskStatus.DONE);
+            taskManager.updateTask(changed);
+            byte[] after = Files.readAllBytes(file.toPath());
+            assertEquals(before.length, after.length, "Изменение задачи не должно увеличивать файл.");
+            assertTrue(changedPagesOf(before, after).size() <= 2,
+                    "Должны перезаписываться только страница задачи и заголовок.");
+
+            taskManager.deleteTaskById(created.get(2999).getId());
+            longSubtask.setDescription("Короткое описание");
+            taskManager.updateSubtask(longSubtask);
+        }
+
+        try (FileBackedTaskManager loadedManager = FileBackedTaskManager.loadFromFile(file)) {
+            assertEquals(PersistenceMode.PAGED, loadedManager.getPersistenceMode(), "Режим должен определяться по файлу страниц.");
+            assertEquals(2999, loadedManager.getAllTasks().size(), "Удалённая задача не должна загружаться.");
+            assertEquals(TaskStatus.DONE, loadedManager.getTaskById(created.get(1500).getId()).getStatus(),
+                    "Изменение задачи должно сохраняться.");
+            assertEquals(longSubtask, loadedManager.getSubtaskById(longSubtask.getId()), "Подзадача должна загружаться.");
+            assertEquals("Короткое описание", loadedManager.getSubtaskById(longSubtask.getId()).getDescription(),
+                    "Описание подзадачи должно сохраняться.");
+            assertEquals(TaskStatus.IN_PROGRESS, loadedManager.getEpicById(epic.getId()).getStatus(), "Статус эпика должен пересчитываться.");
+            Task task = new Task("Новая задача", "Описание задачи", TaskStatus.NEW);
+            loadedManager.createTask(task);
+            assertEquals(longSubtask.getId() + 1, task.getId(), "ID удалённой задачи не должен выдаваться повторно.");
+        }
+    }
+
+    // Проверка восстановления по журналу страниц и перехода между способами хранения
+    @Test
+    public void testPagedStoreRecoversPageLogAndMigrates() throws IOException {
+        File file = new File("test_paged_recovery.db");
+        File pageLog = new File(file.getPath() + ".pagelog");
+        Task task = new Task("Задача", "Описание, с запятой", TaskStatus.NEW);
+        byte[] before;
+        byte[] after;
+        try (FileBackedTaskManager taskManager = FileBackedTaskManager.create(file, PersistenceMode.PAGED)) {
+            taskManager.createTask(task);
+            taskManager.getTaskById(task.getId());
+            before = Files.readAllBytes(file.toPath());
+            task.setStatus(TaskStatus.DONE);
+            taskManager.updateTask(task);
+            after = Files.readAllBytes(file.toPath());
+        }
+
+        // Сбой после записи журнала страниц, но до записи страниц: полный журнал применяется при открытии
+        Files.write(file.toPath(), before);
+        Files.write(pageLog.toPath(), pageLogOf(after, changedPagesOf(before, after)));
+        try (FileBackedTaskManager loadedManager = FileBackedTaskManager.loadFromFile(file)) {
+            assertEquals(TaskStatus.DONE, loadedManager.getTaskById(task.getId()).getStatus(), "Полный журнал страниц должен применяться.");
+        }
+        assertFalse(pageLog.exists(), "Применённый журнал страниц должен удаляться.");
+
+        // Оборванный журнал отбрасывается: страницы на месте ещё не менялись
+        Files.write(file.toPath(), before);
+        byte[] tornLog = pageLogOf(after, changedPagesOf(before, after));
+        Files.write(pageLog.toPath(), Arrays.copyOf(tornLog, tornLog.length - 1));
+        try (FileBackedTaskManager loadedManager = FileBackedTaskManager.loadFromFile(file)) {
+            assertEquals(TaskStatus.NEW, loadedManager.getTaskById(task.getId()).getStatus(), "Оборванный журнал страниц не должен применяться.");
+        }
+        assertFalse(pageLog.exists(), "Оборванный журнал страниц должен удаляться.");
+
+        try (FileBackedTaskManager snapshotManager = FileBackedTaskManager.loadFromFile(file, PersistenceMode.JOURNAL)) {
+            assertEquals(task.getDescription(), snapshotManager.getTaskById(task.getId()).getDescription(), "Текст с запятой должен загружаться.");
+        }
+        assertTrue(Files.readAllLines(file.toPath()).getFirst().startsWith("id,type"), "После перехода файл доски должен стать снимком.");
+
+        try (FileBackedTaskManager pagedManager = FileBackedTaskManager.loadFromFile(file, PersistenceMode.PAGED)) {
+            assertEquals(List.of(task.getId()), pagedManager.getHistory().stream().map(Task::getId).toList(),
+                    "История должна сохраняться при переходе.");
+            assertThrows(IllegalStateException.class, () -> pagedManager.setSnapshotFormat(SnapshotFormat.BINARY),
+                    "У файла страниц нет формата снимка.");
+        }
+        assertFalse(new File(file.getPath() + ".journal").exists(), "После перехода на страницы журнал должен удаляться.");
+        assertEquals(PersistenceMode.PAGED, FileBackedTaskManager.loadFromFile(file).getPersistenceMode(),
+                "После перехода файл доски должен стать файлом страниц.");
+    }
+
+    private static List<Integer> changedPagesOf(byte[] before, byte[] after) {
+        List<Integer> pages = new ArrayList<>();
+        for (int offset = 0; offset < after.length; offset += PageFile.PAGE_SIZE) {
+            int end = offset + PageFile.PAGE_SIZE;
+            if (end > before.length || !Arrays.equals(before, offset, end, after, offset, end)) {
+                pages.add(offset / PageFile.PAGE_SIZE);
+            }
+        }
+        return pages;
+    }
+
+    // Журнал страниц в формате PageFile: сигнатура, число страниц, номера и образы страниц, CRC32
+    private static byte[] pageLogOf(byte[] file, List<Integer> pages) {
+        ByteBuffer log = ByteBuffer.allocate(Integer.BYTES * 3 + pages.size() * (Integer.BYTES + PageFile.PAGE_SIZE));
+        log.put("KPLG".getBytes(StandardCharsets.US_ASCII)).putInt(pages.size());
+        for (int page : pages) {
+            log.putInt(page).put(file, page * PageFile.PAGE_SIZE, PageFile.PAGE_SIZE);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(log.array(), 0, log.position());
+        log.putInt((int) crc.getValue());
+        return log.array();
+    }
+
+    private static File[] segmentDirectoriesOf(File file) {
+        return new File(".").listFiles((dir, name) -> name.startsWith(file.getName() + ".segments-"));
+    }
+
+    private static File segmentsDirectoryOf(File file) {
+        File[] directories = segmentDirectoriesOf(file);
+        assertEquals(1, directories.length, "Должен остаться только текущий каталог сегментов.");
+        return directories[0];
+    }
+
+    private static void waitUntilGone(File file) throws InterruptedException {
+        for (int i = 0; i < 500 && file.exists(); i++) {
+            Thread.sleep(10);
+        }
+        assertFalse(file.exists(), "Контрольная точка должна завершиться.");
+    }
 }
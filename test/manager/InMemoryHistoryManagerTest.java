@@ -5,6 +5,7 @@ import model.TaskStatus;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -172,4 +173,51 @@ public class InMemoryHistoryManagerTest {
         assertEquals(1, history.size(), "После удаления последней задачи история должна содержать 1 задачу.");
         assertEquals(task1, history.getFirst(), "Оставшаяся задача должна быть task1.");
     }
+
+    // Проверка вытеснения самых давних просмотров при заполненной истории
+    @Test
+    public void testBoundedHistoryEvictsOldest() {
+        HistoryManager bounded = Managers.getDefaultHistory(3);
+        Task[] tasks = new Task[5];
+        for (int i = 0; i < tasks.length; i++) {
+            tasks[i] = new Task("Задача " + i, "Описание " + i, TaskStatus.NEW);
+            tasks[i].setId(i);
+        }
+
+        bounded.add(tasks[0]);
+        bounded.add(tasks[1]);
+        bounded.add(tasks[2]);
+        bounded.add(tasks[0]); // Повторный просмотр делает task0 самой свежей
+        bounded.add(tasks[3]);
+
+        assertEquals(List.of(tasks[2], tasks[0], tasks[3]), bounded.getHistory(),
+                "Вытесняться должна самая давно просмотренная задача.");
+
+        bounded.remove(tasks[0].getId());
+        bounded.add(tasks[4]);
+        bounded.add(tasks[1]);
+
+        assertEquals(List.of(tasks[3], tasks[4], tasks[1]), bounded.getHistory(),
+                "Освобождённая при удалении ячейка должна использоваться повторно.");
+        assertThrows(IllegalArgumentException.class, () -> Managers.getDefaultHistory(0),
+                "Ёмкость истории должна быть положительной.");
+    }
+
+    // Проверка истории без ограничения на числе просмотров больше начального размера массивов
+    @Test
+    public void testUnboundedHistoryGrows() {
+        List<Task> expected = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            Task task = new Task("Задача " + i, "Описание " + i, TaskStatus.NEW);
+            task.setId(i);
+            historyManager.add(task);
+            expected.add(task);
+        }
+        for (int i = 0; i < 100; i += 2) {
+            historyManager.remove(i);
+        }
+        expected.removeIf(task -> task.getId() % 2 == 0);
+
+        assertEquals(expected, historyManager.getHistory(), "История должна сохранять все оставшиеся просмотры.");
+    }
 }
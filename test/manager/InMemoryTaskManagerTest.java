@@ -8,7 +8,9 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.time.Duration;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.LocalTime;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -79,6 +81,72 @@ public class InMemoryTaskManagerTest {
         assertFalse(prioritizedTasks.contains(task3), "Задачи без startTime не должны быть в приоритетном списке.");
     }
 
+    // Проверка выборки задач по интервалу времени и следующих задач
+    @Test
+    public void testTimeRangeQueries() {
+        LocalDateTime day = LocalDateTime.of(2024, 3, 1, 0, 0);
+        Task[] scheduled = new Task[5];
+        for (int i = 0; i < scheduled.length; i++) {
+            scheduled[i] = new Task("Задача " + i, "Описание задачи", TaskStatus.NEW);
+            scheduled[i].setStartTime(day.plusHours(9 + i * 2));
+            scheduled[i].setDuration(Duration.ofMinutes(90));
+            taskManager.createTask(scheduled[i]);
+        }
+        taskManager.createTask(new Task("Без времени", "Описание задачи", TaskStatus.NEW));
+
+        // 9:00-10:30, 11:00-12:30, 13:00-14:30, 15:00-16:30, 17:00-18:30
+        assertEquals(List.of(scheduled[1], scheduled[2]), taskManager.getTasksBetween(day.plusHours(12), day.plusHours(15)),
+                "Задача, начавшаяся раньше интервала, должна попадать в него, если ещё не закончилась.");
+        assertEquals(List.of(scheduled[1]), taskManager.getTasksBetween(day.plusMinutes(630), day.plusHours(13)),
+                "Задача, закончившаяся к началу интервала, и задача, начинающаяся в его конце, не должны попадать.");
+        assertEquals(List.of(), taskManager.getTasksBetween(day.plusHours(19), day.plusHours(23)),
+                "После последней задачи интервал должен быть пустым.");
+        assertEquals(List.of(scheduled[2], scheduled[3]), taskManager.getNextTasks(day.plusHours(12), 2),
+                "Следующие задачи должны начинаться не раньше заданного времени.");
+        assertEquals(List.of(scheduled[4]), taskManager.getNextTasks(day.plusHours(17), 10),
+                "Следующих задач не может быть больше, чем есть в индексе.");
+        assertThrows(IllegalArgumentException.class, () -> taskManager.getTasksBetween(day.plusHours(2), day),
+                "Интервал с окончанием раньше начала должен отклоняться.");
+        assertThrows(IllegalArgumentException.class, () -> taskManager.getNextTasks(day, -1),
+                "Отрицательное число задач должно отклоняться.");
+    }
+
+    // Проверка поиска свободного окна с рабочими часами и без них
+    @Test
+    public void testFindFreeSlot() {
+        LocalDateTime day = LocalDateTime.of(2024, 3, 1, 0, 0);
+        // 9:00-10:00, 10:00-11:00, 11:30-12:00, 14:00-17:00
+        int[][] schedule = {{540, 60}, {600, 60}, {690, 30}, {840, 180}};
+        for (int[] slot : schedule) {
+            Task task = new Task("Задача", "Описание задачи", TaskStatus.NEW);
+            task.setStartTime(day.plusMinutes(slot[0]));
+            task.setDuration(Duration.ofMinutes(slot[1]));
+            taskManager.createTask(task);
+        }
+
+        assertEquals(day.plusHours(8), taskManager.findFreeSlot(day.plusHours(8), Duration.ofMinutes(60)),
+                "Окно до первой задачи должно находиться сразу.");
+        assertEquals(day.plusHours(11), taskManager.findFreeSlot(day.plusMinutes(570), Duration.ofMinutes(30)),
+                "Окно должно начинаться после задач, идущих в момент начала поиска.");
+        assertEquals(day.plusHours(12), taskManager.findFreeSlot(day.plusHours(9), Duration.ofMinutes(45)),
+                "Короткие промежутки должны пропускаться.");
+        assertEquals(day.plusHours(17), taskManager.findFreeSlot(day.plusHours(9), Duration.ofHours(3)),
+                "Без подходящего промежутка окно начинается после последней задачи.");
+        assertEquals(day.plusDays(1).plusHours(9), taskManager.findFreeSlot(day.plusHours(9), Duration.ofHours(3),
+                LocalTime.of(9, 0), LocalTime.of(18, 0)), "Окно должно переноситься на следующий рабочий день.");
+        assertEquals(day.plusHours(12), taskManager.findFreeSlot(day, Duration.ofHours(2),
+                LocalTime.of(9, 0), LocalTime.of(18, 0)), "Окно должно начинаться не раньше рабочего дня.");
+
+        Task found = new Task("Найденное окно", "Описание задачи", TaskStatus.NEW);
+        found.setStartTime(taskManager.findFreeSlot(day.plusHours(9), Duration.ofMinutes(90)));
+        found.setDuration(Duration.ofMinutes(90));
+        assertTrue(taskManager.createTask(found), "Задача в найденном окне не должна пересекаться с другими.");
+        assertEquals(day.plusMinutes(17 * 60), taskManager.findFreeSlot(day.plusHours(12), Duration.ofMinutes(60)),
+                "Занятое окно должно исключаться из поиска.");
+        assertThrows(IllegalArgumentException.class, () -> taskManager.findFreeSlot(day, Duration.ofHours(10),
+                LocalTime.of(9, 0), LocalTime.of(18, 0)), "Окно длиннее рабочего дня должно отклоняться.");
+    }
+
     // Проверка отсутствия конфликтов сгенерированных ID
     @Test
     public void testNoIdConflict() {
@@ -201,4 +269,345 @@ public class InMemoryTaskManagerTest {
         assertFalse(epic1.getSubtaskIds().contains(subtask.getId()), "Подзадача не должна быть в старом эпике.");
         assertTrue(epic2.getSubtaskIds().contains(subtask.getId()), "Подзадача должна быть в новом эпике.");
     }
+
+    // Проверка, что сообщение о пересечении содержит ID задачи, а смежные задачи не пересекаются
+    @Test
+    public void testConflictMessageAndAdjacentTasks() {
+        Task longTask = new Task("Длинная задача", "Описание", TaskStatus.NEW);
+        longTask.setStartTime(LocalDateTime.of(2023, 12, 1, 8, 0));
+        longTask.setDuration(Duration.ofMinutes(240));
+        taskManager.createTask(longTask);
+
+        // Задача внутри длинной задачи
+        Task innerTask = new Task("Вложенная задача", "Описание", TaskStatus.NEW);
+        innerTask.setStartTime(LocalDateTime.of(2023, 12, 1, 10, 0));
+        innerTask.setDuration(Duration.ofMinutes(15));
+        IllegalArgumentException exception = assertThrows(IllegalArgumentException.class,
+                () -> taskManager.createTask(innerTask));
+        assertTrue(exception.getMessage().endsWith(String.valueOf(longTask.getId())),
+                "Сообщение должно содержать ID пересекающейся задачи.");
+
+        // Задача, начинающаяся ровно в момент окончания, не пересекается
+        Task adjacentTask = new Task("Смежная задача", "Описание", TaskStatus.NEW);
+        adjacentTask.setStartTime(LocalDateTime.of(2023, 12, 1, 12, 0));
+        adjacentTask.setDuration(Duration.ofMinutes(30));
+        assertTrue(taskManager.createTask(adjacentTask), "Смежная задача должна быть создана.");
+    }
+
+    // Проверка, что обновление задачи не конфликтует с её старой версией, а неудачное обновление не ломает индекс
+    @Test
+    public void testUpdateKeepsTimeIndexConsistent() {
+        Task task1 = new Task("Задача 1", "Описание", TaskStatus.NEW);
+        task1.setStartTime(LocalDateTime.of(2023, 12, 1, 10, 0));
+        task1.setDuration(Duration.ofMinutes(60));
+        taskManager.createTask(task1);
+
+        Task task2 = new Task("Задача 2", "Описание", TaskStatus.NEW);
+        task2.setStartTime(LocalDateTime.of(2023, 12, 1, 12, 0));
+        task2.setDuration(Duration.ofMinutes(60));
+        taskManager.createTask(task2);
+
+        // Сдвиг внутри собственного интервала
+        Task movedTask1 = new Task("Задача 1", "Описание", TaskStatus.NEW);
+        movedTask1.setId(task1.getId());
+        movedTask1.setStartTime(LocalDateTime.of(2023, 12, 1, 10, 30));
+        movedTask1.setDuration(Duration.ofMinutes(60));
+        assertTrue(taskManager.updateTask(movedTask1), "Задача не должна пересекаться со своей старой версией.");
+
+        // Сдвиг на чужой интервал отклоняется, индекс сохраняет прежнюю версию
+        Task conflictingTask1 = new Task("Задача 1", "Описание", TaskStatus.NEW);
+        conflictingTask1.setId(task1.getId());
+        conflictingTask1.setStartTime(LocalDateTime.of(2023, 12, 1, 11, 45));
+        conflictingTask1.setDuration(Duration.ofMinutes(30));
+        assertThrows(IllegalArgumentException.class, () -> taskManager.updateTask(conflictingTask1));
+        assertEquals(List.of(movedTask1, task2), taskManager.getPrioritizedTasks(),
+                "После отклонённого обновления индекс должен содержать прежние версии задач.");
+    }
+
+    // Проверка, что удалённые подзадачи освобождают время
+    @Test
+    public void testDeletedSubtasksReleaseTime() {
+        Epic epic = new Epic("Эпик 1", "Описание эпика");
+        taskManager.createEpic(epic);
+        Subtask subtask = new Subtask("Подзадача 1", "Описание подзадачи", TaskStatus.NEW);
+        subtask.setStartTime(LocalDateTime.of(2023, 12, 1, 10, 0));
+        subtask.setDuration(Duration.ofMinutes(60));
+        taskManager.createSubtask(subtask, epic);
+
+        taskManager.deleteEpicById(epic.getId());
+
+        Task task = new Task("Задача 1", "Описание", TaskStatus.NEW);
+        task.setStartTime(LocalDateTime.of(2023, 12, 1, 10, 0));
+        task.setDuration(Duration.ofMinutes(60));
+        assertTrue(taskManager.createTask(task), "Время удалённой подзадачи должно освободиться.");
+        assertEquals(List.of(task), taskManager.getPrioritizedTasks(), "Удалённая подзадача не должна оставаться в списке.");
+    }
+
+    // Проверка пакета изменений: пересечения со старыми версиями и удаляемыми задачами допустимы,
+    // эпик пересчитывается, а противоречивый пакет не меняет ничего
+    @Test
+    public void testApplyBatch() {
+        Task task1 = new Task("Задача 1", "Описание", TaskStatus.NEW);
+        task1.setStartTime(LocalDateTime.of(2023, 12, 1, 10, 0));
+        task1.setDuration(Duration.ofMinutes(60));
+        taskManager.createTask(task1);
+        Task task2 = new Task("Задача 2", "Описание", TaskStatus.NEW);
+        task2.setStartTime(LocalDateTime.of(2023, 12, 1, 12, 0));
+        task2.setDuration(Duration.ofMinutes(60));
+        taskManager.createTask(task2);
+        Epic epic = new Epic("Эпик 1", "Описание эпика");
+        taskManager.createEpic(epic);
+        Subtask subtask1 = new Subtask("Подзадача 1", "Описание", TaskStatus.NEW);
+        subtask1.setStartTime(LocalDateTime.of(2023, 12, 1, 14, 0));
+        subtask1.setDuration(Duration.ofMinutes(60));
+        taskManager.createSubtask(subtask1, epic);
+
+        TaskBatch batch = new TaskBatch();
+        batch.delete(task2.getId());
+        Task movedTask1 = new Task("Задача 1", "Описание", TaskStatus.IN_PROGRESS);
+        movedTask1.setId(task1.getId());
+        movedTask1.setStartTime(LocalDateTime.of(2023, 12, 1, 12, 0));
+        movedTask1.setDuration(Duration.ofMinutes(60));
+        batch.update(movedTask1);
+        Task task3 = new Task("Задача 3", "Описание", TaskStatus.NEW);
+        task3.setStartTime(LocalDateTime.of(2023, 12, 1, 10, 0));
+        task3.setDuration(Duration.ofMinutes(60));
+        batch.create(task3);
+        Subtask subtask2 = new Subtask("Подзадача 2", "Описание", TaskStatus.DONE);
+        subtask2.setStartTime(LocalDateTime.of(2023, 12, 1, 16, 0));
+        subtask2.setDuration(Duration.ofMinutes(60));
+        batch.createSubtask(subtask2, epic);
+        Epic epic2 = new Epic("Эпик 2", "Описание эпика");
+        batch.create(epic2);
+        Subtask subtask3 = new Subtask("Подзадача 3", "Описание", TaskStatus.DONE);
+        batch.createSubtask(subtask3, epic2);
+        taskManager.applyBatch(batch);
+
+        assertNull(taskManager.getTaskById(task2.getId()), "Удалённая задача не должна оставаться.");
+        assertEquals(List.of(task3, movedTask1, subtask1, subtask2), taskManager.getPrioritizedTasks(),
+                "Пакет должен занять время удалённой задачи и старой версии изменённой.");
+        assertEquals(TaskStatus.IN_PROGRESS, epic.getStatus(), "Статус эпика должен учитывать новую подзадачу.");
+        assertEquals(LocalDateTime.of(2023, 12, 1, 17, 0), epic.getEndTime(), "Окончание эпика должно сдвинуться.");
+        assertEquals(List.of(subtask3), taskManager.getSubtasksOfEpic(epic2.getId()),
+                "Подзадача должна попасть в эпик, созданный в том же пакете.");
+        assertEquals(TaskStatus.DONE, epic2.getStatus(), "Статус нового эпика должен быть рассчитан.");
+
+        // Одна задача пакета пересекается с существующей: не применяется ни одно изменение
+        TaskBatch conflictingBatch = new TaskBatch();
+        conflictingBatch.delete(subtask1.getId());
+        Task freeTask = new Task("Задача 4", "Описание", TaskStatus.NEW);
+        freeTask.setStartTime(LocalDateTime.of(2023, 12, 2, 10, 0));
+        freeTask.setDuration(Duration.ofMinutes(60));
+        conflictingBatch.create(freeTask);
+        Task conflictingTask = new Task("Задача 5", "Описание", TaskStatus.NEW);
+        conflictingTask.setStartTime(LocalDateTime.of(2023, 12, 1, 12, 30));
+        conflictingTask.setDuration(Duration.ofMinutes(60));
+        conflictingBatch.create(conflictingTask);
+        assertThrows(IllegalArgumentException.class, () -> taskManager.applyBatch(conflictingBatch));
+        assertEquals(List.of(task3, movedTask1, subtask1, subtask2), taskManager.getPrioritizedTasks(),
+                "Отклонённый пакет не должен менять расписание.");
+        assertEquals(2, taskManager.getAllTasks().size(), "Отклонённый пакет не должен создавать задачи.");
+        assertEquals(0, freeTask.getId(), "Задача отклонённого пакета не должна получить ID.");
+
+        // Задачи пакета пересекаются между собой
+        TaskBatch selfConflictingBatch = new TaskBatch();
+        Task first = new Task("Задача 6", "Описание", TaskStatus.NEW);
+        first.setStartTime(LocalDateTime.of(2023, 12, 3, 10, 0));
+        first.setDuration(Duration.ofMinutes(60));
+        Task second = new Task("Задача 7", "Описание", TaskStatus.NEW);
+        second.setStartTime(LocalDateTime.of(2023, 12, 3, 10, 30));
+        second.setDuration(Duration.ofMinutes(60));
+        selfConflictingBatch.create(second);
+        selfConflictingBatch.create(first);
+        assertThrows(IllegalArgumentException.class, () -> taskManager.applyBatch(selfConflictingBatch));
+        assertEquals(2, taskManager.getAllTasks().size(), "Пересекающиеся задачи пакета не должны создаваться.");
+    }
+
+    // Проверка расстановки задач без времени начала: пробный план ничего не меняет, длинные задачи ставятся
+    // первыми в самые ранние окна рабочего времени, а неподходящие задачи остаются без времени
+    @Test
+    public void testScheduleUnscheduledTasks() {
+        LocalDateTime day = LocalDateTime.of(2023, 12, 1, 0, 0);
+        Task busy = new Task("Занятое время", "Описание", TaskStatus.NEW);
+        busy.setStartTime(day.withHour(9));
+        busy.setDuration(Duration.ofHours(1));
+        taskManager.createTask(busy);
+        Task longTask = unscheduledTask("Длинная", Duration.ofHours(2));
+        Task shortTask = unscheduledTask("Короткая", Duration.ofHours(1));
+        Task shortestTask = unscheduledTask("Самая короткая", Duration.ofMinutes(30));
+        Task noDuration = unscheduledTask("Без длительности", null);
+        Task tooLong = unscheduledTask("Длиннее рабочего дня", Duration.ofHours(10));
+        Epic epic = new Epic("Эпик", "Описание эпика");
+        taskManager.createEpic(epic);
+        Subtask subtask = new Subtask("Подзадача", "Описание", TaskStatus.NEW);
+        subtask.setDuration(Duration.ofHours(1));
+        taskManager.createSubtask(subtask, epic);
+
+        SchedulePlan dryRun = taskManager.planUnscheduledTasks(day, day.plusDays(2), LocalTime.of(9, 0),
+                LocalTime.of(18, 0));
+        assertEquals(day.withHour(10), dryRun.getStartTime(longTask.getId()), "Длинная задача ставится первой.");
+        assertEquals(day.withHour(12), dryRun.getStartTime(shortTask.getId()),
+                "При равной длительности раньше ставится созданная раньше задача.");
+        assertEquals(day.withHour(13), dryRun.getStartTime(subtask.getId()), "Подзадачи тоже расставляются.");
+        assertEquals(day.withHour(14), dryRun.getStartTime(shortestTask.getId()));
+        assertTrue(dryRun.getUnplacedIds().containsAll(List.of(noDuration.getId(), tooLong.getId())),
+                "Задачи без длительности и длиннее рабочего дня не размещаются.");
+        assertNull(longTask.getStartTime(), "Пробный план не должен назначать время.");
+        assertEquals(List.of(busy), taskManager.getPrioritizedTasks(), "Пробный план не должен менять расписание.");
+
+        SchedulePlan plan = taskManager.scheduleUnscheduledTasks(day, day.plusDays(2), LocalTime.of(9, 0),
+                LocalTime.of(18, 0));
+        assertEquals(dryRun.getStartTimes(), plan.getStartTimes(), "План должен совпадать с пробным.");
+        assertEquals(List.of(busy, longTask, shortTask, subtask, shortestTask), taskManager.getPrioritizedTasks(),
+                "Расставленные задачи должны попасть в расписание.");
+        assertEquals(day.withHour(14), epic.getEndTime(), "Время эпика должно учитывать расставленную подзадачу.");
+
+        // Окно до горизонта кончилось, а вне рабочих часов задачи не ставятся
+        Task lateTask = unscheduledTask("Поздняя", Duration.ofHours(4));
+        SchedulePlan nextPlan = taskManager.planUnscheduledTasks(day.withHour(15), day.plusDays(1).withHour(12),
+                LocalTime.of(9, 0), LocalTime.of(18, 0));
+        assertNull(nextPlan.getStartTime(lateTask.getId()), "Задача не должна выходить за горизонт или рабочие часы.");
+        assertEquals(day.plusDays(1).withHour(9), taskManager.planUnscheduledTasks(day.withHour(15),
+                day.plusDays(2), LocalTime.of(9, 0), LocalTime.of(18, 0)).getStartTime(lateTask.getId()),
+                "Задача должна переноситься на следующий рабочий день.");
+    }
+
+    private Task unscheduledTask(String name, Duration duration) {
+        Task task = new Task(name, "Описание", TaskStatus.NEW);
+        task.setDuration(duration);
+        taskManager.createTask(task);
+        return task;
+    }
+
+    // Проверка кэширования списков: без изменений возвращается тот же неизменяемый экземпляр
+    @Test
+    public void testSnapshotsAreReusedUntilChange() {
+        Task task = new Task("Задача", "Описание", TaskStatus.NEW);
+        task.setStartTime(LocalDateTime.of(2024, 1, 1, 10, 0));
+        task.setDuration(Duration.ofMinutes(30));
+        taskManager.createTask(task);
+        Epic epic = new Epic("Эпик", "Описание");
+        taskManager.createEpic(epic);
+        taskManager.getTaskById(task.getId());
+
+        List<Task> tasks = taskManager.getAllTasks();
+        List<Epic> epics = taskManager.getAllEpics();
+        List<Subtask> subtasks = taskManager.getAllSubtasks();
+        List<Task> prioritized = taskManager.getPrioritizedTasks();
+        List<Task> history = taskManager.getHistory();
+
+        assertSame(tasks, taskManager.getAllTasks(), "Без изменений должен возвращаться тот же список задач.");
+        assertSame(epics, taskManager.getAllEpics(), "Без изменений должен возвращаться тот же список эпиков.");
+        assertSame(subtasks, taskManager.getAllSubtasks(), "Без изменений должен возвращаться тот же список подзадач.");
+        assertSame(prioritized, taskManager.getPrioritizedTasks(), "Без изменений должен возвращаться тот же список по приоритету.");
+        taskManager.getTaskById(task.getId());
+        assertSame(history, taskManager.getHistory(), "Повторный просмотр последней задачи не должен менять историю.");
+        assertThrows(UnsupportedOperationException.class, () -> tasks.add(task), "Список должен быть неизменяемым.");
+
+        Task second = new Task("Вторая задача", "Описание", TaskStatus.NEW);
+        second.setStartTime(LocalDateTime.of(2024, 1, 1, 9, 0));
+        second.setDuration(Duration.ofMinutes(30));
+        taskManager.createTask(second);
+        taskManager.getTaskById(second.getId());
+
+        assertEquals(List.of(task), tasks, "Выданный список не должен меняться после изменения.");
+        assertEquals(2, taskManager.getAllTasks().size(), "После изменения список должен строиться заново.");
+        assertEquals(List.of(second, task), taskManager.getPrioritizedTasks(), "Новая задача должна попасть в список по приоритету.");
+        assertEquals(List.of(task, second), taskManager.getHistory(), "Просмотр новой задачи должен попасть в историю.");
+    }
+
+    // Проверка выборок по статусу и дню начала после создания, изменения и удаления
+    @Test
+    public void testSecondaryIndexQueries() {
+        InMemoryTaskManager manager = new InMemoryTaskManager();
+        Task morning = new Task("Утро", "Описание", TaskStatus.IN_PROGRESS);
+        morning.setStartTime(LocalDateTime.of(2024, 1, 1, 9, 0));
+        morning.setDuration(Duration.ofMinutes(30));
+        manager.createTask(morning);
+        Task unscheduled = new Task("Без времени", "Описание", TaskStatus.IN_PROGRESS);
+        manager.createTask(unscheduled);
+        Epic epic = new Epic("Эпик", "Описание");
+        manager.createEpic(epic);
+        Subtask evening = new Subtask("Вечер", "Описание", TaskStatus.NEW);
+        evening.setStartTime(LocalDateTime.of(2024, 1, 1, 18, 0));
+        evening.setDuration(Duration.ofMinutes(30));
+        manager.createSubtask(evening, epic);
+        Subtask nextDay = new Subtask("Следующий день", "Описание", TaskStatus.IN_PROGRESS);
+        nextDay.setStartTime(LocalDateTime.of(2024, 1, 2, 8, 0));
+        nextDay.setDuration(Duration.ofMinutes(30));
+        manager.createSubtask(nextDay, epic);
+
+        assertEquals(3, manager.getTasksByStatus(TaskStatus.IN_PROGRESS).size(),
+                "В выборку по статусу должны попасть задачи и подзадачи, но не эпики.");
+        assertEquals(List.of(morning, evening), manager.getTasksStartingOn(LocalDate.of(2024, 1, 1)),
+                "Задачи дня должны идти в порядке времени начала.");
+        assertEquals(List.of(morning, nextDay), manager.getTasksByStatusBetween(TaskStatus.IN_PROGRESS,
+                LocalDateTime.of(2024, 1, 1, 0, 0), LocalDateTime.of(2024, 1, 3, 0, 0)),
+                "Выборка по статусу и интервалу должна пересекать индексы.");
+
+        // Изменение на месте с последующим обновлением переносит задачу в другие группы
+        evening.setStatus(TaskStatus.IN_PROGRESS);
+        evening.setStartTime(LocalDateTime.of(2024, 1, 2, 10, 0));
+        manager.updateSubtask(evening);
+        manager.deleteTaskById(morning.getId());
+
+        assertEquals(List.of(), manager.getTasksStartingOn(LocalDate.of(2024, 1, 1)),
+                "Перенесённая и удалённая задачи не должны оставаться в прежнем дне.");
+        assertEquals(List.of(nextDay, evening), manager.getTasksByStatusBetween(TaskStatus.IN_PROGRESS,
+                LocalDateTime.of(2024, 1, 2, 8, 0), LocalDateTime.of(2024, 1, 2, 11, 0)),
+                "Изменённая подзадача должна находиться по новому статусу и дню.");
+        assertEquals(List.of(), manager.getTasksByStatus(TaskStatus.NEW), "Прежний статус не должен находить задачу.");
+
+        manager.deleteAllEpics();
+        assertEquals(List.of(unscheduled), manager.getTasksByStatus(TaskStatus.IN_PROGRESS),
+                "Подзадачи удалённых эпиков не должны оставаться в индексе.");
+    }
+
+    // Проверка задачи без статуса: она создаётся и удаляется, но не попадает в выборку по статусу
+    @Test
+    public void testTaskWithoutStatusIsNotIndexedByStatus() {
+        InMemoryTaskManager manager = new InMemoryTaskManager();
+        Task task = new Task("Без статуса", "Описание", null);
+        task.setStartTime(LocalDateTime.of(2024, 1, 1, 9, 0));
+        task.setDuration(Duration.ofMinutes(30));
+
+        assertTrue(manager.createTask(task), "Задача без статуса должна создаваться.");
+        assertEquals(List.of(task), manager.getAllTasks(), "Задача без статуса должна быть в хранилище.");
+        assertEquals(List.of(task), manager.getTasksStartingOn(LocalDate.of(2024, 1, 1)),
+                "Задача без статуса должна находиться по дню начала.");
+        for (TaskStatus status : TaskStatus.values()) {
+            assertEquals(List.of(), manager.getTasksByStatus(status), "Задача без статуса не должна попасть в выборку " + status + ".");
+        }
+
+        task.setStatus(TaskStatus.DONE);
+        manager.updateTask(task);
+        assertEquals(List.of(task), manager.getTasksByStatus(TaskStatus.DONE), "Заданный статус должен попасть в индекс.");
+        task.setStatus(null);
+        manager.updateTask(task);
+        assertEquals(List.of(), manager.getTasksByStatus(TaskStatus.DONE), "Снятый статус должен уйти из индекса.");
+        manager.deleteTaskById(task.getId());
+        assertEquals(List.of(), manager.getAllTasks(), "Задача без статуса должна удаляться.");
+    }
+
+    // Проверка выборки по статусу и интервалу через корзины дней: задача без статуса в том же дне
+    // не должна попадать в выборку ни по одному статусу
+    @Test
+    public void testTaskWithoutStatusIsNotFoundByStatusBetween() {
+        InMemoryTaskManager manager = new InMemoryTaskManager();
+        Task withoutStatus = new Task("Без статуса", "Описание", null);
+        withoutStatus.setStartTime(LocalDateTime.of(2024, 1, 1, 9, 0));
+        withoutStatus.setDuration(Duration.ofMinutes(30));
+        manager.createTask(withoutStatus);
+        Task newTask = new Task("Новая", "Описание", TaskStatus.NEW);
+        newTask.setStartTime(LocalDateTime.of(2024, 1, 1, 11, 0));
+        newTask.setDuration(Duration.ofMinutes(30));
+        manager.createTask(newTask);
+        // Задачи без времени увеличивают группу NEW, чтобы выборка шла от корзины дня
+        manager.createTask(new Task("Без времени 1", "Описание", TaskStatus.NEW));
+        manager.createTask(new Task("Без времени 2", "Описание", TaskStatus.NEW));
+
+        assertEquals(List.of(newTask), manager.getTasksByStatusBetween(TaskStatus.NEW,
+                LocalDateTime.of(2024, 1, 1, 0, 0), LocalDateTime.of(2024, 1, 2, 0, 0)),
+                "Задача без статуса не должна попадать в выборку NEW.");
+    }
 }
@@ -115,4 +115,44 @@ public class EpicTest {
         taskManager.updateSubtask(subtask2);
         assertEquals(TaskStatus.DONE, epic.getStatus(), "Если все подзадачи DONE, статус эпика должен быть DONE.");
     }
+
+    // Проверка пересчёта эпика при изменении, удалении и переносе подзадач
+    @Test
+    public void testEpicAggregatesFollowSubtaskChanges() {
+        InMemoryTaskManager taskManager = new InMemoryTaskManager();
+
+        Epic epic = new Epic("Эпик 1", "Описание эпика");
+        taskManager.createEpic(epic);
+        Epic otherEpic = new Epic("Эпик 2", "Описание эпика");
+        taskManager.createEpic(otherEpic);
+
+        Subtask subtask1 = new Subtask("Подзадача 1", "Описание подзадачи 1", TaskStatus.DONE);
+        subtask1.setStartTime(LocalDateTime.of(2023, 12, 1, 10, 0));
+        subtask1.setDuration(Duration.ofMinutes(60));
+        taskManager.createSubtask(subtask1, epic);
+
+        Subtask subtask2 = new Subtask("Подзадача 2", "Описание подзадачи 2", TaskStatus.NEW);
+        subtask2.setStartTime(LocalDateTime.of(2023, 12, 1, 12, 0));
+        subtask2.setDuration(Duration.ofMinutes(30));
+        taskManager.createSubtask(subtask2, epic);
+        assertEquals(TaskStatus.IN_PROGRESS, epic.getStatus(), "Подзадачи NEW и DONE дают статус IN_PROGRESS.");
+
+        // Изменение подзадачи "на месте" с переносом на более позднее время
+        subtask2.setStartTime(LocalDateTime.of(2023, 12, 1, 15, 0));
+        taskManager.updateSubtask(subtask2);
+        assertEquals(LocalDateTime.of(2023, 12, 1, 15, 30), epic.getEndTime(), "Время завершения эпика должно сдвинуться.");
+        assertEquals(Duration.ofMinutes(90), epic.getDuration(), "Длительность не должна учитывать старую версию подзадачи.");
+
+        // Перенос подзадачи в другой эпик
+        taskManager.updateSubtaskEpic(subtask2, otherEpic);
+        assertEquals(TaskStatus.DONE, epic.getStatus(), "В эпике осталась только подзадача DONE.");
+        assertEquals(LocalDateTime.of(2023, 12, 1, 11, 0), epic.getEndTime(), "Время завершения эпика должно пересчитаться.");
+        assertEquals(LocalDateTime.of(2023, 12, 1, 15, 0), otherEpic.getStartTime(), "Новый эпик должен учесть подзадачу.");
+
+        // Удаление последней подзадачи
+        taskManager.deleteSubtaskById(subtask1.getId());
+        assertEquals(TaskStatus.NEW, epic.getStatus(), "Эпик без подзадач должен иметь статус NEW.");
+        assertNull(epic.getStartTime(), "Эпик без подзадач не должен иметь времени начала.");
+        assertEquals(Duration.ZERO, epic.getDuration(), "Эпик без подзадач должен иметь нулевую длительность.");
+    }
 }
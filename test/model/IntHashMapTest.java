@@ -0,0 +1,57 @@
+package model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IntHashMapTest {
+
+    // Проверка базовых операций
+    @Test
+    public void testPutGetRemove() {
+        IntHashMap<String> map = new IntHashMap<>();
+
+        assertNull(map.put(1, "один"), "Для нового ключа предыдущего значения нет.");
+        assertEquals("один", map.put(1, "первый"), "Замена должна вернуть предыдущее значение.");
+        map.put(0, "ноль");
+        map.put(-5, "минус пять");
+
+        assertEquals(3, map.size(), "Размер должен учитывать все ключи.");
+        assertEquals("первый", map.get(1), "Значение должно быть заменено.");
+        assertEquals("ноль", map.get(0), "Ключ 0 должен храниться как обычный ключ.");
+        assertEquals("минус пять", map.remove(-5), "Удаление должно вернуть значение.");
+        assertFalse(map.containsKey(-5), "Удалённый ключ не должен находиться.");
+        assertThrows(IllegalArgumentException.class, () -> map.put(2, null), "Значение null не допускается.");
+    }
+
+    // Проверка на случайной последовательности операций в сравнении с HashMap
+    @Test
+    public void testMatchesHashMap() {
+        IntHashMap<Integer> map = new IntHashMap<>();
+        Map<Integer, Integer> expected = new HashMap<>();
+        Random random = new Random(42);
+
+        for (int i = 0; i < 200_000; i++) {
+            int key = random.nextInt(5_000);
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(key), map.remove(key), "Результат удаления должен совпадать.");
+            } else {
+                assertEquals(expected.put(key, i), map.put(key, i), "Результат добавления должен совпадать.");
+            }
+        }
+
+        assertEquals(expected.size(), map.size(), "Размеры должны совпадать.");
+        for (int key = 0; key < 5_000; key++) {
+            assertEquals(expected.get(key), map.get(key), "Значения должны совпадать для ключа " + key);
+        }
+        List<Integer> values = new ArrayList<>(map.values());
+        assertEquals(expected.size(), values.size(), "Обход значений должен вернуть все значения.");
+        assertEquals(expected.size(), map.keys().length, "Копия ключей должна содержать все ключи.");
+    }
+}
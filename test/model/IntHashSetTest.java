@@ -0,0 +1,57 @@
+package model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IntHashSetTest {
+
+    // Проверка базовых операций, включая ноль
+    @Test
+    public void testAddContainsRemove() {
+        IntHashSet set = new IntHashSet();
+
+        assertTrue(set.add(0), "Ноль должен добавляться.");
+        assertTrue(set.add(7), "Новое значение должно добавляться.");
+        assertFalse(set.add(7), "Повторное значение не должно добавляться.");
+        assertEquals(2, set.size(), "Размер должен учитывать ноль.");
+        assertArrayEquals(new int[]{0, 7}, sortedArray(set), "Массив должен содержать все значения.");
+
+        assertTrue(set.remove(0), "Ноль должен удаляться.");
+        assertFalse(set.contains(0), "Удалённый ноль не должен находиться.");
+        assertFalse(set.remove(8), "Отсутствующее значение не удаляется.");
+    }
+
+    // Проверка на случайной последовательности операций в сравнении с HashSet
+    @Test
+    public void testMatchesHashSet() {
+        IntHashSet set = new IntHashSet();
+        Set<Integer> expected = new HashSet<>();
+        Random random = new Random(7);
+
+        for (int i = 0; i < 200_000; i++) {
+            int value = random.nextInt(3_000);
+            if (random.nextBoolean()) {
+                assertEquals(expected.remove(value), set.remove(value), "Результат удаления должен совпадать.");
+            } else {
+                assertEquals(expected.add(value), set.add(value), "Результат добавления должен совпадать.");
+            }
+        }
+
+        assertEquals(expected.size(), set.size(), "Размеры должны совпадать.");
+        for (int value = 0; value < 3_000; value++) {
+            assertEquals(expected.contains(value), set.contains(value), "Наличие должно совпадать для " + value);
+        }
+    }
+
+    private static int[] sortedArray(IntHashSet set) {
+        int[] values = set.toArray();
+        Arrays.sort(values);
+        return values;
+    }
+}
@@ -0,0 +1,59 @@
+package model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IntIntHashMapTest {
+
+    // Проверка базовых операций, включая ключ ноль и значение для отсутствующего ключа
+    @Test
+    public void testPutGetRemove() {
+        IntIntHashMap map = new IntIntHashMap(-1);
+
+        assertEquals(-1, map.put(0, 5), "Для нового ключа должно возвращаться значение отсутствия.");
+        assertEquals(-1, map.put(7, 9), "Для нового ключа должно возвращаться значение отсутствия.");
+        assertEquals(9, map.put(7, 10), "Замена должна возвращать прежнее значение.");
+        assertEquals(2, map.size(), "Размер должен учитывать ноль.");
+        assertEquals(5, map.get(0), "Значение для нуля должно находиться.");
+        assertEquals(-1, map.get(8), "Отсутствующий ключ должен давать значение отсутствия.");
+
+        assertEquals(5, map.remove(0), "Удаление должно возвращать значение.");
+        assertFalse(map.containsKey(0), "Удалённый ноль не должен находиться.");
+        assertEquals(-1, map.remove(8), "Отсутствующий ключ не удаляется.");
+
+        map.clear();
+        assertTrue(map.isEmpty(), "После очистки таблица должна быть пустой.");
+        assertEquals(-1, map.get(7), "После очистки ключи не должны находиться.");
+    }
+
+    // Проверка на случайной последовательности операций в сравнении с HashMap
+    @Test
+    public void testMatchesHashMap() {
+        IntIntHashMap map = new IntIntHashMap(4, -1);
+        Map<Integer, Integer> expected = new HashMap<>();
+        Random random = new Random(11);
+
+        for (int i = 0; i < 200_000; i++) {
+            int key = random.nextInt(3_000);
+            if (random.nextBoolean()) {
+                assertEquals(expected.getOrDefault(key, -1), map.remove(key), "Результат удаления должен совпадать.");
+                expected.remove(key);
+            } else {
+                int value = random.nextInt(1_000);
+                Integer previous = expected.put(key, value);
+                assertEquals(previous == null ? -1 : previous, map.put(key, value),
+                        "Результат добавления должен совпадать.");
+            }
+        }
+
+        assertEquals(expected.size(), map.size(), "Размеры должны совпадать.");
+        for (int key = 0; key < 3_000; key++) {
+            assertEquals(expected.getOrDefault(key, -1), map.get(key), "Значение должно совпадать для " + key);
+        }
+    }
+}